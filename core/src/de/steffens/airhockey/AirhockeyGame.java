@@ -13,29 +13,26 @@ import com.badlogic.gdx.graphics.g3d.environment.DirectionalLight;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.math.Matrix4;
 
+import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
-import de.steffens.airhockey.control.AIPlayer;
 import de.steffens.airhockey.control.AiClientPlayer;
 import de.steffens.airhockey.control.GlobalUiInputProcessor;
 import de.steffens.airhockey.control.HumanClientPlayer;
-import de.steffens.airhockey.control.HumanPlayer;
 import de.steffens.airhockey.control.Mouse;
 import de.steffens.airhockey.control.Player;
-import de.steffens.airhockey.control.RemotePlayer;
 import de.steffens.airhockey.model.AbstractPlayingFieldBase;
 import de.steffens.airhockey.model.Disk;
 import de.steffens.airhockey.model.Game;
 import de.steffens.airhockey.model.PlayingField;
-import de.steffens.airhockey.model.PlayingFieldNPlayers;
-import de.steffens.airhockey.model.PlayingFieldTwoPlayers;
 import de.steffens.airhockey.model.RemoteSimulation;
 import de.steffens.airhockey.model.Simulation;
-import de.steffens.airhockey.model.vector.Vector2D;
 import de.steffens.airhockey.model.vector.VectorFactory;
 import de.steffens.airhockey.net.AbstractServer;
 import de.steffens.airhockey.net.Client;
+import de.steffens.airhockey.net.MatchPlayer;
 import de.steffens.airhockey.sound.CollisionSoundListener;
 import de.steffens.airhockey.view.GLDisplay;
 
@@ -54,6 +51,23 @@ public class AirhockeyGame extends ApplicationAdapter {
 
     GLDisplay display;
 
+    /** the command line arguments, see {@link GameConfiguration#create(String[])} */
+    private final String[] args;
+
+    public AirhockeyGame() {
+        this(new String[0]);
+    }
+
+    /**
+     * Create the game with the given command line arguments. Without arguments,
+     * the demo is started.
+     *
+     * @param args the command line arguments
+     */
+    public AirhockeyGame(String[] args) {
+        this.args = args;
+    }
+
     @Override
     public void create() {
         System.out.println("#########################################");
@@ -61,7 +75,6 @@ public class AirhockeyGame extends ApplicationAdapter {
         System.out.println("#########################################");
 
         VectorFactory.useMutableVector();
-        String[] args = new String[0];
         GameConfiguration config = args.length == 0 ? GameConfiguration.createDemoConfig()
                 : GameConfiguration.create(args);
 
@@ -105,7 +118,15 @@ public class AirhockeyGame extends ApplicationAdapter {
 
         Game.setConfiguration(config);
 
-        if (Game.isClient()) {
+        if (Game.isReplay()) {
+            System.out.println("Initializing replay...");
+            try {
+                initReplay(config);
+            } catch (IOException e) {
+                System.err.println("Error opening the recorded match.");
+                e.printStackTrace();
+            }
+        } else if (Game.isClient()) {
             System.out.println("Initializing client...");
             try {
                 initClient(config);
@@ -163,6 +184,7 @@ public class AirhockeyGame extends ApplicationAdapter {
         System.out.println("###  dispose() ");
         System.out.println("#########################################");
 
+        Game.getSession().stopRecording();
         modelBatch.dispose();
         spriteBatch.dispose();
         display.dispose();
@@ -233,80 +255,62 @@ public class AirhockeyGame extends ApplicationAdapter {
         Client.start();
     }
 
-    private void initServer(GameConfiguration config) {
-        Simulation simulation = new Simulation();
-        Game.setSimulation(simulation);
+    private void initReplay(GameConfiguration config) throws IOException {
+        MatchPlayer replay = MatchPlayer.open(new File(config.getReplayFile()));
+        DataInputStream is = replay.getGameData();
 
-        // //////// the playing field, use default field for 2 players //////////
+        // update the game configuration to match the recorded game.
+        config.read(is);
 
-        PlayingField field;
-        if (config.getNumberOfPlayers() == 2) {
-            field = new PlayingFieldTwoPlayers();
-        } else {
-            field = new PlayingFieldNPlayers(config.getNumberOfPlayers());
-        }
-        Game.setPlayingField(field);
+        Simulation simulation = new RemoteSimulation();
+        Game.setSimulation(simulation);
 
-        // //////// the disk model used for the puck /////////
+        PlayingField field = AbstractPlayingFieldBase.read(is);
+        Game.setPlayingField(field);
 
-        Disk puckModel = field.createPuckDisk();
-        puckModel.setAcceleration(0.9995);
-        puckModel.setMass(0.1);
+        // the puck disk
+        Disk puckModel = Disk.read(is);
         simulation.addDisk(puckModel);
         Game.setPuck(puckModel);
 
-        // //////// the players and their disks //////////
+        // the players and player disks, all of them are shown as recorded
+        int playerCount = is.readInt();
+        Player[] players = new Player[playerCount];
+        Disk[] disks = new Disk[playerCount];
+        Game.setPlayers(players);
 
-        Player[] players = new Player[config.getNumberOfPlayers()];
-        Disk[] disks = new Disk[config.getNumberOfPlayers()];
+        for (short plIdx = 0; plIdx < playerCount; plIdx++) {
+            disks[plIdx] = Disk.read(is);
+            simulation.addDisk(disks[plIdx]);
+            players[plIdx] = new Player(plIdx, disks[plIdx], puckModel) {
+                @Override
+                public void update(long newTime) {
+                    // Nothing to do here.
+                }
+            };
+        }
+        for (short plIdx = 0; plIdx < playerCount; plIdx++) {
+            players[plIdx].readData(is);
+        }
 
-        int remotePlayerIdx = 1;
-        int aiIdx = 1;
-        for (short playerIdx = 0; playerIdx < config.getNumberOfPlayers(); playerIdx++) {
+        initDisplay(field, simulation, 0);
 
-            // the player disk
-            disks[playerIdx] = field.createPlayerDisk(playerIdx);
-            disks[playerIdx].setLastHitPlayerIndex(playerIdx);
-            Vector2D pos = field.getInitialPosition(playerIdx);
-            disks[playerIdx].setPosition(pos.getX(), pos.getY());
-            disks[playerIdx].setFixed();
-            simulation.addDisk(disks[playerIdx]);
+        // add collision listener for collision sounds
+        simulation.addCollisionListener(new CollisionSoundListener());
 
-            // the player model
-            if (playerIdx == 0) {
-                if (config.isHumanPlayer()) {
-                    players[playerIdx] = new HumanPlayer(playerIdx, disks[playerIdx], puckModel);
-                    players[playerIdx].setName(config.getPlayerName());
-                }
-                else {
-                    players[playerIdx] = new AIPlayer(playerIdx, disks[playerIdx], puckModel);
-                    players[playerIdx].setName(config.getPlayerName() + " [AI]");
-                }
-                players[playerIdx].setColor(config.getPlayerColor());
-            } else {
-                if (remotePlayerIdx <= config.getRemotePlayers()) {
-                    players[playerIdx] = new RemotePlayer(playerIdx, disks[playerIdx], puckModel);
-                    players[playerIdx].setName("Network Player " + remotePlayerIdx++);
-                } else {
-                    players[playerIdx] = new AIPlayer(playerIdx, disks[playerIdx], puckModel);
-                    players[playerIdx].setName("Blechtrottel " + aiIdx++);
-                }
-            }
-            simulation.addPlayer(players[playerIdx]);
-        }
+        replay.start();
+    }
 
-        // all players created
-        Game.setPlayers(players);
+    private void initServer(GameConfiguration config) {
+        // the simulation, playing field, puck and players
+        Game.getSession().setupServerGame(config);
+        Simulation simulation = Game.getSimulation();
+        PlayingField field = Game.getPlayingField();
 
         // /////////// the display objects //////////////
 
         initDisplay(field, simulation, 0);
 
-        // ////////// initial game state /////////////////
-
-        // player begins
-        puckModel.setPosition(field.getKickoffPosition(0));
-
         // ///////////////// Sound //////////////////////
 
         // add collision listener for collision sounds
@@ -320,6 +324,8 @@ public class AirhockeyGame extends ApplicationAdapter {
         String addon = "";
         if (Game.isServer()) {
             addon = " (Server)";
+        } else if (Game.isReplay()) {
+            addon = " (Replay)";
         } else if (Game.isClient()) {
             addon = Client.getPlayer() >= 0 ? " (Client)" : " (Viewer)";
         }
@@ -34,8 +34,11 @@ public class GameConfiguration {
     private int width = 1024;
     private int height = 576;
     private int fps = 60;
+    private int tickRate = 0;
+    private int maxSubSteps = 5;
     private boolean showCursor = false;
     private boolean demo = false;
+    private boolean dedicatedServer = false;
 
     // server side configuration
     private int numPlayers = 5;
@@ -44,13 +47,28 @@ public class GameConfiguration {
     private int maximumScore = 10;
     private int maximumGameTimeMin = 10;
     private String networkProtocol = AbstractServer.TCP;
+    private String recordFile = null;
+    private String replayFile = null;
+    private String inputLogFile = null;
+    private boolean deterministic = false;
+    private long seed = 0;
 
     /**
      * Create a new game configuration initialized with default values
      * from the default preferences store.
      */
     public GameConfiguration() {
-        readPreferences(Gdx.app.getPreferences(PREFS_NAME));
+        this(true);
+    }
+
+    /**
+     * Create a new game configuration initialized with default values,
+     * optionally from the default preferences store.
+     */
+    private GameConfiguration(boolean readPreferences) {
+        if (readPreferences) {
+            readPreferences(Gdx.app.getPreferences(PREFS_NAME));
+        }
     }
 
     /**
@@ -77,6 +95,8 @@ public class GameConfiguration {
         width = prefs.getInteger("width", width);
         height = prefs.getInteger("height", height);
         fps = prefs.getInteger("fps", fps);
+        tickRate = prefs.getInteger("tickRate", tickRate);
+        maxSubSteps = prefs.getInteger("maxSubSteps", maxSubSteps);
         showCursor = prefs.getBoolean("showCursor", showCursor);
         numPlayers = prefs.getInteger("numPlayers", numPlayers);
         breakout = prefs.getBoolean("breakout", breakout);
@@ -140,7 +160,7 @@ public class GameConfiguration {
     }
 
     public boolean isDedicatedServer() {
-        return false;
+        return dedicatedServer;
     }
 
     public boolean isBreakout() {
@@ -176,10 +196,73 @@ public class GameConfiguration {
         return fps;
     }
 
+    /**
+     * Returns the number of fixed simulation steps per second, or 0 if the
+     * simulation is updated with the frame rate.
+     */
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    /**
+     * Returns the maximum number of simulation steps done at once to catch up
+     * with the real time, if the simulation runs with a fixed tick rate.
+     */
+    public int getMaxSubSteps() {
+        return maxSubSteps;
+    }
+
     public boolean showCursor() {
         return showCursor;
     }
 
+    /**
+     * Returns the file a server records the match to, see
+     * {@link de.steffens.airhockey.net.MatchRecorder}.
+     *
+     * @return the file name, or <code>null</code> if the match is not recorded
+     */
+    public String getRecordFile() {
+        return recordFile;
+    }
+
+    /**
+     * Returns the recorded match to play, see {@link de.steffens.airhockey.net.MatchPlayer}.
+     *
+     * @return the file name, or <code>null</code> if no recording is played
+     */
+    public String getReplayFile() {
+        return replayFile;
+    }
+
+    /**
+     * Returns the file a server logs the player inputs to, see
+     * {@link de.steffens.airhockey.model.InputLog}.
+     *
+     * @return the file name, or <code>null</code> if the inputs are not logged
+     */
+    public String getInputLogFile() {
+        return inputLogFile;
+    }
+
+    /**
+     * Check, if the simulation of a server is deterministic, see
+     * {@link de.steffens.airhockey.model.Simulation#setDeterministic(boolean)}.
+     * A deterministic simulation always uses a fixed tick rate.
+     */
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    /**
+     * Returns the seed of the AI players.
+     *
+     * @return the seed, or 0 for a random seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
     public boolean showConsole() {
         return showConsole;
     }
@@ -294,7 +377,17 @@ public class GameConfiguration {
     }
 
     public static GameConfiguration create(String[] args) {
-        GameConfiguration config = new GameConfiguration();
+        return create(args, new GameConfiguration());
+    }
+
+    /**
+     * Parse the given command line arguments into the given configuration.
+     *
+     * @param args   the command line arguments
+     * @param config the configuration to change
+     * @return the given configuration
+     */
+    public static GameConfiguration create(String[] args, GameConfiguration config) {
         for (int i = 0; i < args.length; i++) {
             String argument = args[i];
             if ("-full".equals(argument)) {
@@ -306,6 +399,20 @@ public class GameConfiguration {
                 } catch (NumberFormatException e) {
                     System.err.println("Unable to parse target frame rate: " + args[i]);
                 }
+            } else if ("-tick".equals(argument) && i + 1 < args.length) {
+                i++;
+                try {
+                    config.tickRate = Integer.parseInt(args[i]);
+                } catch (NumberFormatException e) {
+                    System.err.println("Unable to parse simulation tick rate: " + args[i]);
+                }
+            } else if ("-substeps".equals(argument) && i + 1 < args.length) {
+                i++;
+                try {
+                    config.maxSubSteps = Math.max(1, Integer.parseInt(args[i]));
+                } catch (NumberFormatException e) {
+                    System.err.println("Unable to parse maximum simulation sub steps: " + args[i]);
+                }
             } else if ("-nobreakout".equals(argument)) {
                 config.breakout = false;
             } else if ("-server".equals(argument) && i + 1 < args.length) {
@@ -339,7 +446,8 @@ public class GameConfiguration {
                         config.remotePlayers = -1;
                         continue;
                     }
-                    if (config.remotePlayers >= config.numPlayers) {
+                    int localPlayers = config.dedicatedServer ? 0 : 1;
+                    if (config.remotePlayers > config.numPlayers - localPlayers) {
                         System.err.println("Illegal option \"-wait " + args[i]
                                 + "\", specify appropriate number for \"-player\" beforehand.");
                         config.remotePlayers = -1;
@@ -355,12 +463,31 @@ public class GameConfiguration {
                 } catch (NumberFormatException e) {
                     System.err.println("Unable to parse the number of players: " + args[i]);
                 }
+            } else if ("-record".equals(argument) && i + 1 < args.length) {
+                config.recordFile = args[++i];
+            } else if ("-replay".equals(argument) && i + 1 < args.length) {
+                config.replayFile = args[++i];
+            } else if ("-inputlog".equals(argument) && i + 1 < args.length) {
+                config.inputLogFile = args[++i];
+                config.deterministic = true;
+            } else if ("-seed".equals(argument) && i + 1 < args.length) {
+                i++;
+                try {
+                    config.seed = Long.parseLong(args[i]);
+                    config.deterministic = true;
+                } catch (NumberFormatException e) {
+                    System.err.println("Unable to parse the seed: " + args[i]);
+                }
             } else if ("-nohuman".equals(argument)) {
                 config.humanPlayer = false;
             } else if ("-showCursor".equals(argument)) {
                 config.showCursor = true;
             }
         }
+        if (config.deterministic && config.tickRate <= 0) {
+            // a deterministic simulation needs fixed time steps
+            config.tickRate = 60;
+        }
         return config;
     }
 
@@ -368,6 +495,8 @@ public class GameConfiguration {
         GameConfiguration result = new GameConfiguration();
         result.breakout = breakout;
         result.fps = fps;
+        result.tickRate = tickRate;
+        result.maxSubSteps = maxSubSteps;
         result.fullScreen = fullScreen;
         result.humanPlayer = humanPlayer;
         result.numPlayers = numPlayers;
@@ -379,6 +508,11 @@ public class GameConfiguration {
         result.maximumScore = maximumScore;
         result.maximumGameTimeMin = maximumGameTimeMin;
         result.networkProtocol = networkProtocol;
+        result.dedicatedServer = dedicatedServer;
+        result.recordFile = recordFile;
+        result.inputLogFile = inputLogFile;
+        result.deterministic = deterministic;
+        result.seed = seed;
         System.arraycopy(playerColor, 0, result.playerColor, 0, 3);
         return result;
     }
@@ -405,6 +539,25 @@ public class GameConfiguration {
         return result;
     }
 
+    /**
+     * Create the configuration for a dedicated server without display and
+     * local player. This does not need the preferences store.
+     *
+     * @param args the command line arguments
+     * @return the server configuration
+     */
+    public static GameConfiguration createDedicatedServerConfig(String[] args) {
+        GameConfiguration result = new GameConfiguration(false);
+        result.dedicatedServer = true;
+        result.humanPlayer = false;
+        result.showConsole = false;
+        result.numPlayers = 2;
+        result.tickRate = 60;
+        create(args, result);
+        result.serverAddress = null;
+        return result;
+    }
+
     public static GameConfiguration createDemoConfig() {
         GameConfiguration result = getConfig().copy();
         result.humanPlayer = false;
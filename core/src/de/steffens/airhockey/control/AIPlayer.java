@@ -1,5 +1,7 @@
 package de.steffens.airhockey.control;
 
+import java.util.Random;
+
 import de.steffens.airhockey.model.Disk;
 import de.steffens.airhockey.model.Game;
 import de.steffens.airhockey.model.Rectangle;
@@ -21,6 +23,9 @@ public class AIPlayer extends Player {
     // Temporary scratch vector used for temporary results.
     private Vector2D tmp = VectorFactory.getVector(0, 0);
 
+    // the source of the randomness of the player's moves
+    private final Random random = new Random();
+
 
     /**
      * Create a new computer player controlling the given disk.
@@ -38,6 +43,18 @@ public class AIPlayer extends Player {
     }
 
 
+    /**
+     * Set the seed of the randomness of the player's moves. A player with the
+     * same seed moves the same way in the same situation, this is needed for a
+     * deterministic simulation.
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+
     /**
      * @see de.steffens.airhockey.control.Player#update(long)
      */
@@ -71,9 +88,9 @@ public class AIPlayer extends Player {
                     newVelocity = tmp.getVelocity(oldPosition, puckPos, deltaT);
                     // add some randomness
                     double x = newVelocity.getX();
-                    x = x + (0.02 * x * (Math.random() - 0.5));
+                    x = x + (0.02 * x * (random.nextDouble() - 0.5));
                     double y = newVelocity.getY();
-                    y = y + (0.02 * y * (Math.random() - 0.5));
+                    y = y + (0.02 * y * (random.nextDouble() - 0.5));
                     newVelocity.reset(x, y);
                 } else {
                     // FIXME: moving at the base line is not working for generic playing fields
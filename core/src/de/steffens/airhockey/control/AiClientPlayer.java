@@ -27,6 +27,8 @@ public class AiClientPlayer extends Player {
      */
     private boolean error = false;
 
+    private final ClientPrediction prediction = new ClientPrediction(this);
+
 
     /**
      * Create a new computer player controlling the given disk.
@@ -91,8 +93,8 @@ public class AiClientPlayer extends Player {
             }
         }
         try {
-            Client.getOs().writeDouble(destinationPos.getX());
-            Client.getOs().writeDouble(destinationPos.getY());
+            int input = Client.sendMouse(destinationPos.getX(), destinationPos.getY());
+            prediction.update(newTime, destinationPos, input);
         } catch (IOException e) {
             error = true;
             System.err.println("Error writing new mouse position.");
@@ -0,0 +1,123 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.control;
+
+import java.util.Arrays;
+
+import de.steffens.airhockey.model.Disk;
+import de.steffens.airhockey.model.Game;
+import de.steffens.airhockey.model.RemoteSimulation;
+import de.steffens.airhockey.model.Simulation;
+import de.steffens.airhockey.model.vector.Vector2D;
+import de.steffens.airhockey.model.vector.VectorFactory;
+
+/**
+ * Prediction of the disk controlled by the player of a client. The disk follows the
+ * mouse position right away, moved like the {@link RemotePlayer} moves it on the
+ * server, instead of waiting a round trip for the simulation update of the server.
+ * <p/>
+ * The server acknowledges the sequence number of the last input used by its
+ * simulation. The position of the disk in the following update is compared to the
+ * predicted position of the last frame with this input, and the difference is
+ * corrected smoothly over the next frames.
+ */
+public class ClientPrediction {
+
+    /** Predict the disk of the player, instead of showing the state received from the server. */
+    public static boolean PREDICTION = true;
+
+    /** part of the remaining difference to the server state corrected per frame */
+    private static final double CORRECTION_RATE = 0.15;
+    /** differences larger than this are corrected at once */
+    private static final double MAX_CORRECTION = 1.0;
+    /** number of inputs with a known predicted position */
+    private static final int HISTORY_SIZE = 64;
+
+    private final Player player;
+    private Vector2D velocity = VectorFactory.getVector(0, 0);
+    private long lastTime = -1;
+
+    /** the predicted position of the last frame of each input */
+    private final int[] historyInput = new int[HISTORY_SIZE];
+    private final double[] historyX = new double[HISTORY_SIZE];
+    private final double[] historyY = new double[HISTORY_SIZE];
+
+    /** the difference to the server state not corrected yet */
+    private double correctionX = 0;
+    private double correctionY = 0;
+
+
+    /**
+     * Create a new prediction for the disk of the given player.
+     *
+     * @param player the player of this client
+     */
+    public ClientPrediction(Player player) {
+        this.player = player;
+        Arrays.fill(historyInput, -1);
+    }
+
+
+    /**
+     * Move the disk of the player towards the given mouse position.
+     * This is called with every update of the simulation.
+     *
+     * @param newTime the current simulation time
+     * @param mouse the mouse position last sent to the server
+     * @param input the sequence number of the last input sent to the server, or -1
+     */
+    public void update(long newTime, Vector2D mouse, int input) {
+        Simulation simulation = Game.getSimulation();
+        if (!PREDICTION || !(simulation instanceof RemoteSimulation)) {
+            return;
+        }
+        RemoteSimulation remote = (RemoteSimulation) simulation;
+        Disk disk = player.getControlledDisk();
+        if (lastTime < 0) {
+            // from now on, the disk is not set to the received state
+            remote.setPredictedDisk(disk);
+            lastTime = newTime;
+            return;
+        }
+        long deltaT = newTime - lastTime;
+        if (deltaT <= 0) {
+            return;
+        }
+        lastTime = newTime;
+
+        velocity = player.getMouseVelocity(mouse, deltaT, velocity);
+        double x = disk.getPosition().getX() + velocity.getX() * deltaT;
+        double y = disk.getPosition().getY() + velocity.getY() * deltaT;
+
+        if (remote.pollServerState()) {
+            int acknowledged = remote.getServerInput();
+            int slot = acknowledged & (HISTORY_SIZE - 1);
+            if (acknowledged >= 0 && historyInput[slot] == acknowledged) {
+                correctionX = remote.getServerX() - historyX[slot];
+                correctionY = remote.getServerY() - historyY[slot];
+                if (Math.hypot(correctionX, correctionY) > MAX_CORRECTION) {
+                    x += correctionX;
+                    y += correctionY;
+                    correctionX = 0;
+                    correctionY = 0;
+                }
+            }
+        }
+        double dx = correctionX * CORRECTION_RATE;
+        double dy = correctionY * CORRECTION_RATE;
+        x += dx;
+        y += dy;
+        correctionX -= dx;
+        correctionY -= dy;
+
+        disk.setPosition(x, y);
+        disk.setVelocity(velocity);
+        if (input >= 0) {
+            int slot = input & (HISTORY_SIZE - 1);
+            historyInput[slot] = input;
+            historyX[slot] = x;
+            historyY[slot] = y;
+        }
+    }
+}
@@ -10,6 +10,8 @@ import com.badlogic.gdx.InputAdapter;
 
 import de.steffens.airhockey.model.Collision;
 import de.steffens.airhockey.model.Game;
+import de.steffens.airhockey.net.ConnectionStats;
+import de.steffens.airhockey.net.MatchPlayer;
 import de.steffens.airhockey.view.GLMenu;
 
 /**
@@ -56,6 +58,11 @@ public class GlobalUiInputProcessor extends InputAdapter {
 
         switch (keycode) {
             case Input.Keys.SPACE:
+                if (MatchPlayer.getActive() != null) {
+                    // pause the replay
+                    MatchPlayer.getActive().togglePause();
+                    break;
+                }
                 // toggle simulation pause
                 Game.getSimulation().togglePause();
                 break;
@@ -84,13 +91,20 @@ public class GlobalUiInputProcessor extends InputAdapter {
                 Game.getDisplay().followPlayer(-1);
                 break;
 
+            case Input.Keys.N:
+                // toggle the network telemetry, and dump it to the console
+                Game.getDisplay().toggleNetworkStats();
+                System.out.println("Network: " + ConnectionStats.dumpAll());
+                break;
+
             case Input.Keys.PLUS:
                 if (menu.isActive()) {
                     menu.selectPlus();
                 }
                 else {
-                    Collision.IMPULSE_LOSS += 0.02;
-                    System.out.println("Impulse loss = " + Collision.IMPULSE_LOSS);
+                    Collision collision = Game.getSimulation().getCollision();
+                    collision.setImpulseLoss(collision.getImpulseLoss() + 0.02);
+                    System.out.println("Impulse loss = " + collision.getImpulseLoss());
                 }
                 break;
 
@@ -99,8 +113,9 @@ public class GlobalUiInputProcessor extends InputAdapter {
                     menu.selectMinus();
                 }
                 else {
-                    Collision.IMPULSE_LOSS -= 0.02;
-                    System.out.println("Impulse loss = " + Collision.IMPULSE_LOSS);
+                    Collision collision = Game.getSimulation().getCollision();
+                    collision.setImpulseLoss(collision.getImpulseLoss() - 0.02);
+                    System.out.println("Impulse loss = " + collision.getImpulseLoss());
                 }
                 break;
 
@@ -119,11 +134,23 @@ public class GlobalUiInputProcessor extends InputAdapter {
                 if (menu.isActive()) {
                     menu.selectMinus();
                 }
+                else if (MatchPlayer.getActive() != null) {
+                    MatchPlayer.getActive().skip(-MatchPlayer.SEEK_STEP_MS);
+                }
                 break;
             case Input.Keys.RIGHT:
                 if (menu.isActive()) {
                     menu.selectPlus();
                 }
+                else if (MatchPlayer.getActive() != null) {
+                    MatchPlayer.getActive().skip(MatchPlayer.SEEK_STEP_MS);
+                }
+                break;
+            case Input.Keys.HOME:
+                if (MatchPlayer.getActive() != null) {
+                    // back to the start of the replay
+                    MatchPlayer.getActive().seek(0);
+                }
                 break;
             case Input.Keys.ENTER:
                 if (menu.isActive()) {
@@ -28,6 +28,13 @@ public class HumanClientPlayer extends Player {
      * Error state of the connection.
      */
     private boolean error = false;
+
+    /**
+     * Sequence number of the last sent mouse position.
+     */
+    private int input = -1;
+
+    private final ClientPrediction prediction = new ClientPrediction(this);
     
     /**
      * Create a new human player object.
@@ -51,19 +58,21 @@ public class HumanClientPlayer extends Player {
         // We just send the current mouse position to the server.
         // The server simulation will handle this in a RemotePlayer.
 
+        // The own disk is predicted locally meanwhile.
+
         MousePosition mousePos = Mouse.getFilteredMousePosition(newTime);
 
-        if (mouse.getX() == mousePos.x && mouse.getY() == mousePos.y) {
-        	return;
-        }
+        // Unchanged positions are not sent again, but the call sends the
+        // collected positions once the batch is due.
         mouse = mouse.reset(mousePos.x, mousePos.y);
         try {
-	        Client.getOs().writeDouble(mousePos.x);
-	        Client.getOs().writeDouble(mousePos.y);
+            input = Client.sendMouse(mousePos.x, mousePos.y);
         } catch (IOException e) {
-        	error = true;
-	        System.err.println("Error writing new mouse position.");
-	        e.printStackTrace();
+            error = true;
+            System.err.println("Error writing new mouse position.");
+            e.printStackTrace();
+            return;
         }
+        prediction.update(newTime, mouse, input);
     }
 }
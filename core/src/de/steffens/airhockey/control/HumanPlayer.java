@@ -50,7 +50,7 @@ public class HumanPlayer extends Player {
         long deltaT = newTime - controlledDisk.getTimestampNs();
 
         if (wait) {
-            controlledDisk.getVelocity().reset();
+            controlledDisk.setVelocity(0, 0);
             return;
         }
         
@@ -0,0 +1,155 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.control;
+
+/**
+ * Jitter buffer of the inputs of a {@link RemotePlayer}. The inputs arrive in
+ * batches, with varying network delay, but every input carries the time it was
+ * sampled by the client. The input is applied to the simulation at this time,
+ * shifted to the local clock and delayed by {@link #BUFFER_DELAY_MS}, so the
+ * mallet moves as smoothly as on the client, no matter how the inputs were
+ * batched and delayed by the network.
+ * <p/>
+ * The offset of the client clock is estimated from the batches arriving fastest,
+ * like the {@link de.steffens.airhockey.model.RemoteSimulation} does it for the
+ * simulation updates. All times are local {@link System#nanoTime()} values.
+ * <p/>
+ * Inputs are added by the network thread and applied by the simulation thread.
+ */
+public class InputBuffer {
+
+    /** Apply the inputs at the time they were sampled, instead of as soon as they arrive. */
+    public static boolean JITTER_BUFFER = true;
+
+    /** the delay of the inputs in ms, covering the jitter of the network delay */
+    public static int BUFFER_DELAY_MS = 20;
+
+    /** the number of inputs waiting to be applied */
+    private static final int CAPACITY = 64;
+    /** how fast the clock offset follows slower batches */
+    private static final double OFFSET_ADAPTION = 0.01;
+
+    private final int[] sequence = new int[CAPACITY];
+    private final long[] time = new long[CAPACITY];
+    private final double[] x = new double[CAPACITY];
+    private final double[] y = new double[CAPACITY];
+    private int first = 0;
+    private int count = 0;
+
+    /** the sequence number of the last added input */
+    private int lastSequence = -1;
+
+    /** local time minus client time */
+    private long clockOffset = 0;
+    private boolean clockOffsetValid = false;
+
+    /** the last applied input */
+    private int appliedSequence = -1;
+    private double appliedX;
+    private double appliedY;
+
+
+    /**
+     * Synchronize with the clock of the client, using a batch of inputs sent by the
+     * client at the given time. Only the send time of the batch is used, as the
+     * older inputs of a batch were waiting on the client.
+     *
+     * @param clientTime the time the client sent the batch, in ns of the client clock
+     * @param receiveTime the local time the batch was received
+     */
+    public synchronized void synchronize(long clientTime, long receiveTime) {
+        long offset = receiveTime - clientTime;
+        if (!clockOffsetValid || offset < clockOffset) {
+            // the fastest batch so far
+            clockOffset = offset;
+            clockOffsetValid = true;
+        } else {
+            // follow slowly, in case of clock drift or a changing network delay
+            clockOffset += (long) ((offset - clockOffset) * OFFSET_ADAPTION);
+        }
+    }
+
+
+    /**
+     * Add an input received from the client. Inputs not newer than the last
+     * added input are ignored.
+     *
+     * @param sequence the sequence number of the input
+     * @param clientTime the time the client sampled the input, in ns of the client clock
+     * @param x the x coordinate of the mouse
+     * @param y the y coordinate of the mouse
+     * @return <code>true</code>, if the input was added
+     */
+    public synchronized boolean add(int sequence, long clientTime, double x, double y) {
+        int distance = (sequence - lastSequence) & 0xffff;
+        if (lastSequence >= 0 && (distance == 0 || distance >= 0x8000)) {
+            // duplicate or late input
+            return false;
+        }
+        lastSequence = sequence;
+
+        if (count == CAPACITY) {
+            // the simulation does not take the inputs, drop the oldest one
+            first = (first + 1) % CAPACITY;
+            count--;
+        }
+        int slot = (first + count) % CAPACITY;
+        this.sequence[slot] = sequence;
+        this.time[slot] = clientTime;
+        this.x[slot] = x;
+        this.y[slot] = y;
+        count++;
+        return true;
+    }
+
+
+    /**
+     * Take all inputs due at the given time. The last of them becomes the applied
+     * input, see {@link #getX()}, {@link #getY()} and {@link #getSequence()}.
+     * Inputs between two simulation updates are skipped.
+     *
+     * @param now the current local time
+     * @return <code>true</code>, if a new input is applied
+     */
+    public synchronized boolean poll(long now) {
+        boolean applied = false;
+        long delay = JITTER_BUFFER ? BUFFER_DELAY_MS * 1000000L : 0;
+        while (count > 0 && (!JITTER_BUFFER || time[first] + clockOffset + delay <= now)) {
+            appliedSequence = sequence[first];
+            appliedX = x[first];
+            appliedY = y[first];
+            first = (first + 1) % CAPACITY;
+            count--;
+            applied = true;
+        }
+        return applied;
+    }
+
+
+    /**
+     * Returns the number of inputs waiting to be applied.
+     *
+     * @return the number of inputs
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the sequence number of the last applied input.
+     *
+     * @return the sequence number, or -1 if no input was applied yet
+     */
+    public synchronized int getSequence() {
+        return appliedSequence;
+    }
+
+    public synchronized double getX() {
+        return appliedX;
+    }
+
+    public synchronized double getY() {
+        return appliedY;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.control;
+
+import de.steffens.airhockey.model.Disk;
+import de.steffens.airhockey.model.InputLog;
+import de.steffens.airhockey.model.vector.Vector2D;
+import de.steffens.airhockey.model.vector.VectorFactory;
+
+/**
+ * A player replaying the logged inputs of a human or remote player, when a match
+ * is re-simulated from its {@link InputLog}. The log contains the velocity of the
+ * controlled disk whenever it changed, the player sets it in every simulation step
+ * like the original player did.
+ */
+public class LoggedPlayer extends Player {
+
+    // the velocity of the controlled disk, set from the log
+    private Vector2D velocity = VectorFactory.getVector(0, 0);
+
+
+    /**
+     * Create a new logged player controlling the given disk.
+     *
+     * @param index          the player index
+     * @param controlledDisk the player's disk
+     * @param puck           the puck
+     */
+    public LoggedPlayer(int index, Disk controlledDisk, Disk puck) {
+        super(index, controlledDisk, puck);
+    }
+
+
+    /**
+     * Set the logged velocity, that is used from the next simulation step on.
+     *
+     * @param x the x component of the velocity
+     * @param y the y component of the velocity
+     */
+    public void setVelocity(double x, double y) {
+        velocity = velocity.reset(x, y);
+    }
+
+
+    /**
+     * @see de.steffens.airhockey.control.Player#update(long)
+     */
+    @Override
+    public void update(long newTime) {
+        controlledDisk.setVelocity(velocity);
+    }
+}
@@ -9,6 +9,8 @@ import java.util.Arrays;
 import de.steffens.airhockey.GameConfiguration;
 import de.steffens.airhockey.model.Disk;
 import de.steffens.airhockey.model.Game;
+import de.steffens.airhockey.model.Rectangle;
+import de.steffens.airhockey.model.vector.Vector2D;
 
 /**
  * Base class for player implementations (human or AI players).
@@ -82,6 +84,33 @@ public abstract class Player {
      */
     public abstract void update(long newTime);
 
+    /**
+     * Calculate the velocity that moves the controlled disk to the given mouse position
+     * within the given time. The mouse position is clamped to the reachable area of the
+     * player and the speed is limited to {@link HumanPlayer#MAX_SPEED}.
+     *
+     * @param mouse the mouse position
+     * @param deltaT the time to reach the mouse position in ns
+     * @param result a scratch vector used for the result
+     * @return the new velocity of the controlled disk
+     */
+    protected Vector2D getMouseVelocity(Vector2D mouse, long deltaT, Vector2D result) {
+        // calculate the new position from mouse position
+        Rectangle playerArea = Game.getPlayingField().getReachableArea(playerIndex);
+        Vector2D newPos = playerArea.clamp(result.reset(mouse));
+
+        // calculate a new velocity
+        Vector2D newVelocity = result.getVelocity(controlledDisk.getPosition(), newPos, deltaT);
+
+        double speed = newVelocity.getValue();
+        if (speed > HumanPlayer.MAX_SPEED) {
+            // limit the mouse speed...
+            newVelocity = newVelocity.getNormalized().multiply(HumanPlayer.MAX_SPEED);
+        }
+        return newVelocity;
+    }
+
+
     /**
      * The goal that the player is trying to defend was hit.
      */
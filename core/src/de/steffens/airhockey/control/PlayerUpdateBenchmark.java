@@ -0,0 +1,137 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.control;
+
+import java.lang.reflect.Constructor;
+
+import de.steffens.airhockey.GameConfiguration;
+import de.steffens.airhockey.model.Disk;
+import de.steffens.airhockey.model.Game;
+import de.steffens.airhockey.model.GameSession;
+import de.steffens.airhockey.model.PlayingField;
+import de.steffens.airhockey.model.vector.ImmutableVector2D;
+import de.steffens.airhockey.model.vector.MutableVector2D;
+import de.steffens.airhockey.model.vector.Vector2D;
+import de.steffens.airhockey.model.vector.VectorFactory;
+
+/**
+ * Benchmark of the vector creation in the player updates, comparing the old
+ * reflective creation ({@link VectorFactory#useReflectiveCreation(boolean)}) with
+ * the direct creation of the {@link VectorFactory}. It times the creation alone,
+ * and {@link AIPlayer#update(long)} and {@link RemotePlayer#update(long)} with
+ * both creations, for mutable and immutable vectors. With mutable vectors, the
+ * updates work on scratch vectors and create none, so only the immutable updates
+ * show a difference.
+ * <p/>
+ * Run without arguments, no display is needed. The arguments "-iterations &lt;n&gt;"
+ * and "-runs &lt;n&gt;" change the number of operations per measurement and the
+ * number of runs.
+ */
+public class PlayerUpdateBenchmark {
+
+    private static int iterations = 2000000;
+
+    private static volatile double sink;
+
+
+    public static void main(String[] args) throws Exception {
+        int runs = 5;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if ("-iterations".equals(args[i])) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if ("-runs".equals(args[i])) {
+                runs = Integer.parseInt(args[++i]);
+            }
+        }
+
+        VectorFactory.useMutableVector();
+        GameSession session = new GameSession();
+        Game.setSession(session);
+        session.setupServerGame(GameConfiguration.createDedicatedServerConfig(new String[0]));
+        PlayingField field = session.getPlayingField();
+
+        Disk puck = field.createPuckDisk();
+        AIPlayer aiPlayer = new AIPlayer(0, field.createPlayerDisk(0), puck);
+        RemotePlayer remotePlayer = new RemotePlayer(1, field.createPlayerDisk(1), puck);
+
+        for (int run = 0; run < runs; run++) {
+            System.out.println("Run " + (run + 1) + ":");
+            for (int mode = 0; mode < 2; mode++) {
+                boolean immutable = mode == 1;
+                String policy = immutable ? "immutable" : "mutable  ";
+                Class<? extends Vector2D> type = immutable ? ImmutableVector2D.class : MutableVector2D.class;
+                if (immutable) {
+                    VectorFactory.useImmutableVector();
+                } else {
+                    VectorFactory.useMutableVector();
+                }
+                benchmarkCreation("  creation,            reflective, " + policy, type);
+                benchmarkCreation("  creation,            factory,    " + policy, null);
+
+                VectorFactory.useReflectiveCreation(true);
+                benchmarkUpdate("  AIPlayer.update,     reflective, " + policy, aiPlayer, puck);
+                benchmarkUpdate("  RemotePlayer.update, reflective, " + policy, remotePlayer, puck);
+                VectorFactory.useReflectiveCreation(false);
+                benchmarkUpdate("  AIPlayer.update,     factory,    " + policy, aiPlayer, puck);
+                benchmarkUpdate("  RemotePlayer.update, factory,    " + policy, remotePlayer, puck);
+            }
+        }
+        VectorFactory.useMutableVector();
+    }
+
+
+    /**
+     * Create vectors either with a reflective constructor call, as the vector
+     * factory did before, or with the vector factory.
+     */
+    private static void benchmarkCreation(String name, Class<? extends Vector2D> reflectiveClass)
+            throws Exception {
+        Constructor<? extends Vector2D> constructor = reflectiveClass == null ? null
+            : reflectiveClass.getConstructor(Double.TYPE, Double.TYPE);
+        double sum = 0.0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            Vector2D v;
+            if (constructor != null) {
+                v = constructor.newInstance(i, 1.0);
+            } else {
+                v = VectorFactory.getVector(i, 1.0);
+            }
+            sum += v.getX();
+        }
+        long time = System.nanoTime() - start;
+        sink = sum;
+        report(name, time);
+    }
+
+
+    /**
+     * Update the player with the puck moving around in front of it.
+     */
+    private static void benchmarkUpdate(String name, Player player, Disk puck) {
+        Disk disk = player.getControlledDisk();
+        long time = disk.getTimestampNs();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            double angle = (i % 360) * Math.PI / 180.0;
+            puck.setPosition(Math.cos(angle) * 3.0, Math.sin(angle) * 5.0);
+            puck.setVelocity(Math.sin(angle) * 1e-9, -Math.cos(angle) * 1e-9);
+            if (player instanceof RemotePlayer) {
+                ((RemotePlayer) player).setMouse(Math.sin(angle) * 3.0, Math.cos(angle) * 5.0);
+            }
+            time += 16000000;
+            player.update(time);
+            disk.setTimestampNs(time);
+        }
+        long duration = System.nanoTime() - start;
+        sink = disk.getVelocity().getX();
+        report(name, duration);
+    }
+
+
+    private static void report(String name, long time) {
+        System.out.println(name + ": " + (time / iterations) + "."
+            + ((time * 10 / iterations) % 10) + " ns/op");
+    }
+}
@@ -7,7 +7,6 @@ import java.io.DataOutputStream;
 
 import de.steffens.airhockey.model.Disk;
 import de.steffens.airhockey.model.Game;
-import de.steffens.airhockey.model.Rectangle;
 import de.steffens.airhockey.model.vector.Vector2D;
 import de.steffens.airhockey.model.vector.VectorFactory;
 
@@ -28,6 +27,13 @@ public class RemotePlayer extends Player {
      */
     private Vector2D virtualMouse = VectorFactory.getVector(0, 0);
 
+    /**
+     * The inputs received from the client, and the sequence number of the input
+     * used by the last update of the simulation.
+     */
+    private final InputBuffer inputs = new InputBuffer();
+    private int appliedInput = -1;
+
     /**
      * The output stream used to send server messages to this player.
      */
@@ -49,31 +55,41 @@ public class RemotePlayer extends Player {
      */
     @Override
     public void update(long newTime) {
-        // get the player's disk position
-        Vector2D oldPos = controlledDisk.getPosition();
+        // only the inputs due by the time of this step, also if the simulation catches up
+        if (inputs.poll(Game.getSimulation().toLocalTime(newTime))) {
+            virtualMouse = virtualMouse.reset(inputs.getX(), inputs.getY());
+            appliedInput = inputs.getSequence();
+        }
         long deltaT = newTime - controlledDisk.getTimestampNs();
-        
-        // calculate the new position from mouse position
-        Rectangle playerArea = Game.getPlayingField().getReachableArea(playerIndex);
-        Vector2D newPos = playerArea.clamp(tmp.reset(virtualMouse));
 
-        // calculate a new velocity
-        Vector2D newVelocity = tmp.getVelocity(oldPos, newPos, deltaT);
-
-        double speed = newVelocity.getValue();
-        if (speed > HumanPlayer.MAX_SPEED) {
-            // limit the mouse speed...
-            newVelocity = newVelocity.getNormalized().multiply(HumanPlayer.MAX_SPEED);
-        }
-        
         // set the mouse velocity to the players disk
-        controlledDisk.setVelocity(newVelocity);
+        controlledDisk.setVelocity(getMouseVelocity(virtualMouse, deltaT, tmp));
     }
     
     public void setMouse(double x, double y) {
     	virtualMouse = virtualMouse.reset(x, y);
     }
 
+    /**
+     * Returns the buffer of the inputs sent by the client. An input is applied by
+     * the first update of the simulation with a time stamp after it is due.
+     *
+     * @return the input buffer
+     */
+    public InputBuffer getInputs() {
+        return inputs;
+    }
+
+    /**
+     * Returns the sequence number of the last input used by the simulation. The
+     * client compares the position of its disk with its prediction for this input.
+     *
+     * @return the sequence number, or -1 if no input was used yet
+     */
+    public int getAppliedInput() {
+        return appliedInput;
+    }
+
     /**
      * Set the output stream that can be used to send server messages to the remote player.
      * @param os the connection output stream
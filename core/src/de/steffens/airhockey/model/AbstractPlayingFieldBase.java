@@ -12,6 +12,7 @@ import java.util.List;
 
 import de.steffens.airhockey.model.vector.Vector2D;
 import de.steffens.airhockey.model.vector.VectorFactory;
+import de.steffens.airhockey.view.GLDisplay;
 
 /**
  * Abstract base class for playing field models.
@@ -257,7 +258,7 @@ public abstract class AbstractPlayingFieldBase implements PlayingField {
         // start waiting time before a new round begins
         lastResetTime = Game.getSimulation().getCurrentTime();
         inWait = 3;
-        Game.getDisplay().showFlashMsg("3", SHOW_TIME, FADE_TIME);
+        showFlashMsg("3", SHOW_TIME, FADE_TIME);
 
         for (int i = 0; i < Game.getPlayerCount(); i++) {
         	Game.getPlayer(i).getControlledDisk().setPosition(getInitialPosition(i));
@@ -269,7 +270,7 @@ public abstract class AbstractPlayingFieldBase implements PlayingField {
     }
 
     protected void stopGame() {
-        Game.getDisplay().removeObject(Game.getPuck());
+        removeFromDisplay(Game.getPuck());
         Game.getSimulation().removeDisk(Game.getPuck());
         int winner = 0;
         int[] score = Game.getScore();
@@ -278,7 +279,7 @@ public abstract class AbstractPlayingFieldBase implements PlayingField {
                 winner = i;
             }
         }
-        Game.getDisplay().showFlashMsg("Player " + Game.getPlayer(winner).getName() + " won", Long.MAX_VALUE, 0);
+        showFlashMsg("Player " + Game.getPlayer(winner).getName() + " won", Long.MAX_VALUE, 0);
         for (int i = 0; i < Game.getPlayerCount(); i++) {
             Game.getPlayer(i).getControlledDisk().setPosition(getInitialPosition(i));
             Game.getPlayer(i).setWait(true);
@@ -288,6 +289,36 @@ public abstract class AbstractPlayingFieldBase implements PlayingField {
 
     protected abstract void resetStateImpl();
 
+    /**
+     * Show a message on the display, if the game has a display.
+     */
+    protected void showFlashMsg(String msg, long showTime, long fadeTime) {
+        GLDisplay display = Game.getDisplay();
+        if (display != null) {
+            display.showFlashMsg(msg, showTime, fadeTime);
+        }
+    }
+
+    /**
+     * Add an object to the display, if the game has a display.
+     */
+    protected void addToDisplay(VisualObject object) {
+        GLDisplay display = Game.getDisplay();
+        if (display != null) {
+            display.addObject(object);
+        }
+    }
+
+    /**
+     * Remove an object from the display, if the game has a display.
+     */
+    protected void removeFromDisplay(VisualObject object) {
+        GLDisplay display = Game.getDisplay();
+        if (display != null) {
+            display.removeObject(object);
+        }
+    }
+
     @Override
     public void update() {
         if (inWait > 0) {
@@ -295,7 +326,7 @@ public abstract class AbstractPlayingFieldBase implements PlayingField {
             if (nanosSinceReset > WAIT_TIME) {
                 // finished waiting
                 inWait = 0;
-                Game.getDisplay().showFlashMsg("Go!", SHOW_TIME / 2, FADE_TIME / 2);
+                showFlashMsg("Go!", SHOW_TIME / 2, FADE_TIME / 2);
                 Game.getPuck().getMaterial().setAlpha(1f);
                 // restore reachable areas
                 for (int i=0; i<numPlayers; i++) {
@@ -308,11 +339,11 @@ public abstract class AbstractPlayingFieldBase implements PlayingField {
             else {
                 if (nanosSinceReset > 2 * PHASE && inWait == 2) {
                     inWait = 1;
-                    Game.getDisplay().showFlashMsg("1", SHOW_TIME, FADE_TIME);
+                    showFlashMsg("1", SHOW_TIME, FADE_TIME);
                 }
                 else if (nanosSinceReset > PHASE && inWait == 3) {
                     inWait = 2;
-                    Game.getDisplay().showFlashMsg("2", SHOW_TIME, FADE_TIME);
+                    showFlashMsg("2", SHOW_TIME, FADE_TIME);
                 }
                 double fraction = (double) nanosSinceReset / (double) WAIT_TIME;
                 float alpha = Math.max(0f, (3f * (float)fraction) -2f);
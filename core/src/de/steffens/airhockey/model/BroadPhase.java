@@ -0,0 +1,311 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.model;
+
+import java.util.List;
+
+import de.steffens.airhockey.model.vector.Vector2D;
+
+/**
+ * Broad phase of the collision checks.
+ * This finds the candidate pairs of disks and walls that may collide in a given
+ * time range, so that the exact (and more expensive) collision checks only have
+ * to be done for these pairs.
+ * <p/>
+ * Every disk is enclosed in an axis aligned bounding box that covers its whole
+ * way from its current position to its position at the time limit (swept bounds).
+ * Walls get a box around their four corners, infinite walls get an infinite box.
+ * The boxes are sorted by their minimum x coordinate (sweep and prune), so only
+ * boxes that overlap on the x axis have to be compared. As the order of the boxes
+ * hardly changes between two checks, the sort order of the last check is used as
+ * start for an insertion sort, which is almost linear in that case.
+ */
+public class BroadPhase {
+
+    /** box bounds, disks first (index = disk index), walls after the disks */
+    private double[] minX = new double[0];
+    private double[] maxX = new double[0];
+    private double[] minY = new double[0];
+    private double[] maxY = new double[0];
+
+    /** box indices sorted by minimum x coordinate */
+    private int[] order = new int[0];
+
+    /** boxes that overlap the current sweep position on the x axis */
+    private int[] active = new int[0];
+
+    /** candidate walls for each disk (wall indices) */
+    private int[][] wallCandidates = new int[0][];
+    private int[] wallCandidateCt = new int[0];
+
+    /** candidate disks for each disk (only disk indices greater than the disk's own index) */
+    private int[][] diskCandidates = new int[0][];
+    private int[] diskCandidateCt = new int[0];
+
+    private int diskCt = 0;
+
+
+    /**
+     * Find the candidate pairs for the given disks and walls in the given
+     * time range. The candidates can be fetched afterwards using
+     * {@link #getWallCandidate(int, int)} and {@link #getDiskCandidate(int, int)}.
+     *
+     * @param walls     the list of walls
+     * @param disks     the list of disks
+     * @param timeLimit the end of the time range, disks are swept from
+     *                  their current timestamp up to this time
+     */
+    public void update(List<Wall> walls, List<Disk> disks, long timeLimit) {
+        diskCt = disks.size();
+        int wallCt = walls.size();
+        int boxCt = diskCt + wallCt;
+        ensureCapacity(diskCt, boxCt);
+
+        // the swept bounds of the disks
+        for (int i = 0; i < diskCt; i++) {
+            updateDisk(i, disks.get(i), timeLimit);
+            wallCandidateCt[i] = 0;
+            diskCandidateCt[i] = 0;
+        }
+
+        // the bounds of the walls
+        for (int i = 0; i < wallCt; i++) {
+            Wall wall = walls.get(i);
+            int box = diskCt + i;
+            if (wall.isInfinite()) {
+                minX[box] = Double.NEGATIVE_INFINITY;
+                maxX[box] = Double.POSITIVE_INFINITY;
+                minY[box] = Double.NEGATIVE_INFINITY;
+                maxY[box] = Double.POSITIVE_INFINITY;
+                continue;
+            }
+            Vector2D[] coords = wall.getCoords();
+            double x = coords[0].getX();
+            double y = coords[0].getY();
+            minX[box] = x;
+            maxX[box] = x;
+            minY[box] = y;
+            maxY[box] = y;
+            for (int c = 1; c < coords.length; c++) {
+                x = coords[c].getX();
+                y = coords[c].getY();
+                minX[box] = Math.min(minX[box], x);
+                maxX[box] = Math.max(maxX[box], x);
+                minY[box] = Math.min(minY[box], y);
+                maxY[box] = Math.max(maxY[box], y);
+            }
+        }
+
+        // sort the boxes by their minimum x coordinate
+        for (int i = 1; i < boxCt; i++) {
+            int box = order[i];
+            double key = minX[box];
+            int j = i - 1;
+            while (j >= 0 && minX[order[j]] > key) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = box;
+        }
+
+        // sweep along the x axis and compare all boxes overlapping on x
+        int activeCt = 0;
+        for (int i = 0; i < boxCt; i++) {
+            int box = order[i];
+            double boxMinX = minX[box];
+            int newActiveCt = 0;
+            for (int a = 0; a < activeCt; a++) {
+                int other = active[a];
+                if (maxX[other] < boxMinX) {
+                    // this box is behind the sweep position, remove it
+                    continue;
+                }
+                active[newActiveCt++] = other;
+                if (minY[box] <= maxY[other] && minY[other] <= maxY[box]) {
+                    addCandidate(box, other);
+                }
+            }
+            active[newActiveCt++] = box;
+            activeCt = newActiveCt;
+        }
+
+        // keep the candidates in index order, so that the narrow phase
+        // checks pairs in the same order as without the broad phase
+        for (int i = 0; i < diskCt; i++) {
+            sort(wallCandidates[i], wallCandidateCt[i]);
+            sort(diskCandidates[i], diskCandidateCt[i]);
+        }
+    }
+
+
+    /**
+     * Update the swept bounds of a single disk, e.g. after its velocity changed.
+     * This does not update the candidate lists, use {@link #overlapsWall(int, int)}
+     * and {@link #overlapsDisk(int, int)} to check single pairs afterwards.
+     *
+     * @param diskIdx   the index of the disk in the disk list
+     * @param disk      the disk
+     * @param timeLimit the disk is swept from its current timestamp up to this time
+     */
+    public void updateDisk(int diskIdx, Disk disk, long timeLimit) {
+        DiskStore store = disk.store;
+        int slot = disk.slot;
+        double deltaT = timeLimit - store.timestamp[slot];
+        double x1 = store.x[slot];
+        double y1 = store.y[slot];
+        double x2 = x1 + store.vx[slot] * deltaT;
+        double y2 = y1 + store.vy[slot] * deltaT;
+        double r = disk.getRadius() + Vector2D.EPSILON;
+        minX[diskIdx] = Math.min(x1, x2) - r;
+        maxX[diskIdx] = Math.max(x1, x2) + r;
+        minY[diskIdx] = Math.min(y1, y2) - r;
+        maxY[diskIdx] = Math.max(y1, y2) + r;
+    }
+
+
+    /**
+     * Check, if the bounds of the given disk and wall overlap.
+     *
+     * @param diskIdx the index of the disk in the disk list
+     * @param wallIdx the index of the wall in the wall list
+     * @return <code>true</code>, if the disk may collide with the wall
+     */
+    public boolean overlapsWall(int diskIdx, int wallIdx) {
+        return overlaps(diskIdx, diskCt + wallIdx);
+    }
+
+
+    /**
+     * Check, if the bounds of the given disks overlap.
+     *
+     * @param diskIdx  the index of the disk in the disk list
+     * @param otherIdx the index of the other disk in the disk list
+     * @return <code>true</code>, if the disks may collide
+     */
+    public boolean overlapsDisk(int diskIdx, int otherIdx) {
+        return overlaps(diskIdx, otherIdx);
+    }
+
+
+    private boolean overlaps(int box1, int box2) {
+        return minX[box1] <= maxX[box2] && minX[box2] <= maxX[box1]
+            && minY[box1] <= maxY[box2] && minY[box2] <= maxY[box1];
+    }
+
+
+    /**
+     * Get the number of candidate walls for the given disk.
+     *
+     * @param diskIdx the index of the disk in the disk list
+     * @return the number of walls the disk may collide with
+     */
+    public int getWallCandidateCount(int diskIdx) {
+        return wallCandidateCt[diskIdx];
+    }
+
+
+    /**
+     * Get a candidate wall for the given disk.
+     *
+     * @param diskIdx the index of the disk in the disk list
+     * @param n       the number of the candidate
+     * @return the index of the wall in the wall list
+     */
+    public int getWallCandidate(int diskIdx, int n) {
+        return wallCandidates[diskIdx][n];
+    }
+
+
+    /**
+     * Get the number of candidate disks for the given disk.
+     * Only disks with a higher index in the disk list are returned as candidates,
+     * so every pair is reported exactly once.
+     *
+     * @param diskIdx the index of the disk in the disk list
+     * @return the number of disks the disk may collide with
+     */
+    public int getDiskCandidateCount(int diskIdx) {
+        return diskCandidateCt[diskIdx];
+    }
+
+
+    /**
+     * Get a candidate disk for the given disk.
+     *
+     * @param diskIdx the index of the disk in the disk list
+     * @param n       the number of the candidate
+     * @return the index of the other disk in the disk list
+     */
+    public int getDiskCandidate(int diskIdx, int n) {
+        return diskCandidates[diskIdx][n];
+    }
+
+
+    private void addCandidate(int box1, int box2) {
+        boolean isDisk1 = box1 < diskCt;
+        boolean isDisk2 = box2 < diskCt;
+        if (isDisk1 && isDisk2) {
+            int disk = Math.min(box1, box2);
+            diskCandidates[disk] = add(diskCandidates[disk], diskCandidateCt[disk]++,
+                Math.max(box1, box2));
+        } else if (isDisk1) {
+            wallCandidates[box1] = add(wallCandidates[box1], wallCandidateCt[box1]++, box2 - diskCt);
+        } else if (isDisk2) {
+            wallCandidates[box2] = add(wallCandidates[box2], wallCandidateCt[box2]++, box1 - diskCt);
+        }
+        // wall - wall pairs are not interesting
+    }
+
+
+    private static int[] add(int[] array, int idx, int value) {
+        if (idx >= array.length) {
+            int[] newArray = new int[Math.max(4, array.length * 2)];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            array = newArray;
+        }
+        array[idx] = value;
+        return array;
+    }
+
+
+    private static void sort(int[] array, int length) {
+        for (int i = 1; i < length; i++) {
+            int value = array[i];
+            int j = i - 1;
+            while (j >= 0 && array[j] > value) {
+                array[j + 1] = array[j];
+                j--;
+            }
+            array[j + 1] = value;
+        }
+    }
+
+
+    private void ensureCapacity(int disks, int boxes) {
+        if (minX.length != boxes) {
+            minX = new double[boxes];
+            maxX = new double[boxes];
+            minY = new double[boxes];
+            maxY = new double[boxes];
+            active = new int[boxes];
+            // the objects changed, start with a new sort order
+            order = new int[boxes];
+            for (int i = 0; i < boxes; i++) {
+                order[i] = i;
+            }
+        }
+        if (wallCandidates.length < disks) {
+            int[][] newWallCandidates = new int[disks][];
+            int[][] newDiskCandidates = new int[disks][];
+            for (int i = 0; i < disks; i++) {
+                newWallCandidates[i] = i < wallCandidates.length ? wallCandidates[i] : new int[4];
+                newDiskCandidates[i] = i < diskCandidates.length ? diskCandidates[i] : new int[4];
+            }
+            wallCandidates = newWallCandidates;
+            diskCandidates = newDiskCandidates;
+            wallCandidateCt = new int[disks];
+            diskCandidateCt = new int[disks];
+        }
+    }
+}
@@ -10,6 +10,7 @@ import de.steffens.airhockey.model.CollisionListener.DiskDiskCollision;
 import de.steffens.airhockey.model.CollisionListener.DiskWallCollision;
 import de.steffens.airhockey.model.Wall.Face;
 import de.steffens.airhockey.model.vector.Vector2D;
+import de.steffens.airhockey.model.vector.VectorArena;
 import de.steffens.airhockey.model.vector.VectorFactory;
 
 /**
@@ -36,31 +37,130 @@ public class Collision {
     public static final boolean DEBUG_COLLISIONS = false;
 
     /**
-     * factor to multiply with velocity after collision
+     * default factor to multiply with velocity after collision,
+     * see {@link #setImpulseLoss(double)}
      */
     public static double IMPULSE_LOSS = 0.9;
 
     /**
-     * The last handled collision event, for debugging...
+     * Calculate collision times analytically (swept circles for disk-disk and
+     * disk-wall edge collisions, ray/plane intersections for wall faces).
+     * If this is switched off, collision times are searched by sampling disk
+     * positions and bisection, which is much slower and may miss grazing contacts.
+     * This is the default for new collision engines.
      */
-    public static CollisionEvent lastCollisionEvent;
+    public static boolean ANALYTIC_COLLISION_TIMES = true;
 
+    /**
+     * Use a broad phase to find candidate pairs before doing the exact collision
+     * checks. If this is switched off, every disk is checked against every wall
+     * and every other disk.
+     * This is the default for new collision engines.
+     */
+    public static boolean USE_BROAD_PHASE = true;
+
+    /**
+     * Use an event driven scheduler that keeps the predicted collision times of all
+     * pairs and only predicts the disks involved in a collision again, see
+     * {@link CollisionScheduler}. If this is switched off, all pairs are checked
+     * again after each handled collision and at most 10 collisions are handled
+     * per call.
+     * This is the default for new collision engines.
+     */
+    public static boolean EVENT_DRIVEN_COLLISIONS = true;
+
+    /**
+     * The last collision event handled by the current thread, for debugging...
+     * Note that this event may already be recycled.
+     */
+    private static final ThreadLocal<CollisionEvent> lastCollisionEvent =
+        new ThreadLocal<CollisionEvent>();
+
+
+    private double impulseLoss = IMPULSE_LOSS;
+    private boolean analyticCollisionTimes = ANALYTIC_COLLISION_TIMES;
+    private boolean useBroadPhase = USE_BROAD_PHASE;
+    private boolean eventDrivenCollisions = EVENT_DRIVEN_COLLISIONS;
 
     /**
      * Scratch vectors used for temporary calculations.
+     * The collision checks hold the lock of this engine, so only one thread uses
+     * them at a time.
+     */
+    private final VectorArena scratch = new VectorArena(10);
+
+    /**
+     * The broad phase used to find candidate pairs for collision checks.
+     */
+    private final BroadPhase broadPhase = new BroadPhase();
+
+    /**
+     * Pool of collision events, see {@link CollisionEventPool}.
+     */
+    final CollisionEventPool eventPool = new CollisionEventPool();
+
+    /**
+     * The scheduler used for event driven collision checks.
+     */
+    private final CollisionScheduler scheduler = new CollisionScheduler(this);
+
+
+    /**
+     * Returns the last collision event handled by the current thread, for debugging.
+     * Note that this event may already be recycled.
+     *
+     * @return the last collision event, or <code>null</code>
+     */
+    public static CollisionEvent getLastCollisionEvent() {
+        return lastCollisionEvent.get();
+    }
+
+
+    /**
+     * Returns the factor the velocities are multiplied with after a collision.
+     *
+     * @return the impulse loss factor
+     */
+    public double getImpulseLoss() {
+        return impulseLoss;
+    }
+
+    /**
+     * Set the factor the velocities are multiplied with after a collision.
+     *
+     * @param impulseLoss the impulse loss factor
+     */
+    public void setImpulseLoss(double impulseLoss) {
+        this.impulseLoss = impulseLoss;
+    }
+
+    /**
+     * Calculate collision times analytically or by sampling,
+     * see {@link #ANALYTIC_COLLISION_TIMES}.
+     *
+     * @param analyticCollisionTimes use analytic collision times
      */
-    private static final Vector2D scratchVectors[] = {
-        VectorFactory.getVector(0.0, 0.0), VectorFactory.getVector(0.0, 0.0),
-        VectorFactory.getVector(0.0, 0.0), VectorFactory.getVector(0.0, 0.0),
-        VectorFactory.getVector(0.0, 0.0), VectorFactory.getVector(0.0, 0.0),
-        VectorFactory.getVector(0.0, 0.0), VectorFactory.getVector(0.0, 0.0),
-        VectorFactory.getVector(0.0, 0.0), VectorFactory.getVector(0.0, 0.0)
-    };
+    public void setAnalyticCollisionTimes(boolean analyticCollisionTimes) {
+        this.analyticCollisionTimes = analyticCollisionTimes;
+    }
 
     /**
-     * Index of the next free scratch vector.
+     * Use a broad phase to find candidate pairs, see {@link #USE_BROAD_PHASE}.
+     *
+     * @param useBroadPhase use the broad phase
      */
-    private static int nextFreeScratch = 0;
+    public void setUseBroadPhase(boolean useBroadPhase) {
+        this.useBroadPhase = useBroadPhase;
+    }
+
+    /**
+     * Use the event driven scheduler, see {@link #EVENT_DRIVEN_COLLISIONS}.
+     *
+     * @param eventDrivenCollisions use the event driven scheduler
+     */
+    public void setEventDrivenCollisions(boolean eventDrivenCollisions) {
+        this.eventDrivenCollisions = eventDrivenCollisions;
+    }
 
 
     /**
@@ -74,8 +174,31 @@ public class Collision {
      * @param timeLimit only handle collisions up to this time
      * @return the list of found collisions
      */
-    public static synchronized List<CollisionEvent> checkCollisions(List<Wall> walls,
+    public synchronized List<CollisionEvent> checkCollisions(List<Wall> walls,
             List<Disk> disks, long afterTime, long timeLimit) {
+        List<CollisionEvent> handledCollisions = new ArrayList<CollisionEvent>();
+        checkCollisions(walls, disks, afterTime, timeLimit, handledCollisions);
+        return handledCollisions;
+    }
+
+
+    /**
+     * Check for collisions between the given list of disks and walls up to the
+     * given time limit. Any found collisions will be handled by position updates.
+     * <p/>
+     * The found collisions are stored in the given list. Events still in this list
+     * from the last call are recycled first, so the same list should be passed in
+     * on every simulation step and the events must not be used after the next call
+     * (see {@link CollisionListener}).
+     *
+     * @param walls             the list of walls
+     * @param disks             the list of disks
+     * @param afterTime         only handle collisions after this time, may be 0
+     * @param timeLimit         only handle collisions up to this time
+     * @param handledCollisions the list for the found collisions
+     */
+    public synchronized void checkCollisions(List<Wall> walls, List<Disk> disks,
+            long afterTime, long timeLimit, List<CollisionEvent> handledCollisions) {
 
         // This is the entry method for collision checks.
 
@@ -84,13 +207,18 @@ public class Collision {
         // (or two heavy disks for that matter).
         // If a handled collision (i.e. with a disk) would result in a new collision
         // (i.e. with a wall) we try to find a 'new way out'...
-        List<CollisionEvent> handledCollisions = new ArrayList<CollisionEvent>();
+        for (int i = 0; i < handledCollisions.size(); i++) {
+            eventPool.release(handledCollisions.get(i));
+        }
+        handledCollisions.clear();
 
         // now perform the collision checks, starting with an empty list
         // (the implementation method is recursive)
-        checkCollisionsImpl(walls, disks, handledCollisions, afterTime, timeLimit);
-
-        return handledCollisions;
+        if (eventDrivenCollisions) {
+            scheduler.checkCollisions(walls, disks, handledCollisions, afterTime, timeLimit);
+        } else {
+            checkCollisionsImpl(walls, disks, handledCollisions, afterTime, timeLimit);
+        }
     }
 
 
@@ -104,7 +232,7 @@ public class Collision {
      * @param timeLimit
      * @see #checkCollisions(List, List, long, long)
      */
-    private static void checkCollisionsImpl(List<Wall> walls, List<Disk> disks,
+    private void checkCollisionsImpl(List<Wall> walls, List<Disk> disks,
             List<CollisionEvent> handledCollisions, long afterTime, long timeLimit) {
 
         // find the closest collision...
@@ -114,40 +242,54 @@ public class Collision {
         int maxCollisions = 10;
         do {
             closestCollision = null;
+            if (useBroadPhase) {
+                // velocities may have changed, so update the candidates on each iteration
+                broadPhase.update(walls, disks, timeLimit);
+            }
             for (int mainDiskId = 0; mainDiskId < disks.size(); mainDiskId++) {
                 Disk mainDisk = disks.get(mainDiskId);
 
                 // first check collisions with walls
-                for (Wall wall : walls) {
+                int wallCt = useBroadPhase ? broadPhase.getWallCandidateCount(mainDiskId) : walls.size();
+                for (int n = 0; n < wallCt; n++) {
+                    Wall wall = walls.get(useBroadPhase ? broadPhase.getWallCandidate(mainDiskId, n) : n);
                     CollisionEvent collision = getCollision(mainDisk, wall, afterTime, timeLimit);
                     if (collision != null) {
                         assert afterTime <= collision.time;
                         assert collision.time <= timeLimit;
-                        if (closestCollision == null
-                            || collision.time < closestCollision.time) {
+                        if ((closestCollision == null
+                            || collision.time < closestCollision.time)
                             // don't handle the same collision twice!
                             // (this could happen because of rounding errors...)
-                            if (!collision.equals(lastHandled)) {
-                                closestCollision = collision;
-                            }
+                            && !collision.equals(lastHandled)) {
+                            eventPool.release(closestCollision);
+                            closestCollision = collision;
+                        } else {
+                            eventPool.release(collision);
                         }
                     }
                 }
 
                 // now check for other disks
-                for (int otherId = mainDiskId + 1; otherId < disks.size(); otherId++) {
+                int diskCt = useBroadPhase
+                    ? broadPhase.getDiskCandidateCount(mainDiskId) : disks.size() - mainDiskId - 1;
+                for (int n = 0; n < diskCt; n++) {
+                    int otherId = useBroadPhase
+                        ? broadPhase.getDiskCandidate(mainDiskId, n) : mainDiskId + 1 + n;
                     Disk otherDisk = disks.get(otherId);
                     CollisionEvent collision =
                         getCollision(mainDisk, otherDisk, afterTime, timeLimit);
                     assert collision == null || collision.time >= afterTime;
                     if (collision != null) {
-                        if (closestCollision == null
-                            || collision.time < closestCollision.time) {
+                        if ((closestCollision == null
+                            || collision.time < closestCollision.time)
                             // don't handle the same collision twice!
                             // (this could happen because of rounding errors...)
-                            if (!collision.equals(lastHandled)) {
-                                closestCollision = collision;
-                            }
+                            && !collision.equals(lastHandled)) {
+                            eventPool.release(closestCollision);
+                            closestCollision = collision;
+                        } else {
+                            eventPool.release(collision);
                         }
                     }
                 }
@@ -193,8 +335,8 @@ public class Collision {
      * @param event             the collision event.
      * @param handledCollisions
      */
-    private static void handleCollision(CollisionEvent event, List<CollisionEvent> handledCollisions) {
-        lastCollisionEvent = event;
+    void handleCollision(CollisionEvent event, List<CollisionEvent> handledCollisions) {
+        lastCollisionEvent.set(event);
         if (event instanceof DiskWallCollision) {
             // this is a disk - wall collision
             DiskWallCollision wallCollision = (DiskWallCollision) event;
@@ -203,7 +345,7 @@ public class Collision {
             int pastCollisions = findPastCollisions(wallCollision, handledCollisions);
             if (pastCollisions > 0) {
                 // reduce disk speed
-                wallCollision.disk.getVelocity().multiply(Math.pow(IMPULSE_LOSS,pastCollisions));
+                wallCollision.disk.getVelocity().multiply(Math.pow(impulseLoss,pastCollisions));
             }
 
             if (wallCollision.wallEdge == null) {
@@ -244,8 +386,8 @@ public class Collision {
 
     private static int findPastCollisions(DiskWallCollision col, List<CollisionEvent> pastCollisions) {
         int result = 0;
-        for (CollisionEvent event : pastCollisions) {
-            if (col.equals(event)) {
+        for (int i = 0; i < pastCollisions.size(); i++) {
+            if (col.equals(pastCollisions.get(i))) {
                 result++;
             }
         }
@@ -254,8 +396,8 @@ public class Collision {
 
     private static int findPastCollisions(DiskDiskCollision col, List<CollisionEvent> pastCollisions) {
         int result = 0;
-        for (CollisionEvent event : pastCollisions) {
-            if (col.equals(event)) {
+        for (int i = 0; i < pastCollisions.size(); i++) {
+            if (col.equals(pastCollisions.get(i))) {
                 result++;
             }
         }
@@ -268,13 +410,12 @@ public class Collision {
      *
      * @param event the collision event
      */
-    private static void handleCollisionImpl(DiskDiskCollision event) {
+    private void handleCollisionImpl(DiskDiskCollision event) {
 
         Disk disk1 = event.disk1;
         Disk disk2 = event.disk2;
         long time = event.time;
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        Vector2D point = scratchVectors[nextFreeScratch++].reset(event.point);
+        Vector2D point = scratch.get().reset(event.point);
 
         // update positions 
         disk1.setPosition(disk1.getPositionAt(time, disk1.getPosition()));
@@ -299,22 +440,17 @@ public class Collision {
         // find the normal on the solid disk surface at the collision point 
         Vector2D normal = point.subtract(disk1.getPosition());
         Vector2D centralDir = normal.getNormalized();
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        Vector2D tangentialDir = scratchVectors[nextFreeScratch++].reset(-centralDir.getY(), centralDir.getX());
+        Vector2D tangentialDir = scratch.get().reset(-centralDir.getY(), centralDir.getX());
 
         // get the velocity components in tangential and central direction
 
         // the tangential velocity:
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        Vector2D v1Tang = scratchVectors[nextFreeScratch++].reset(tangentialDir).multiply(tangentialDir.getScalarProduct(v1));
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        Vector2D v2Tang = scratchVectors[nextFreeScratch++].reset(tangentialDir).multiply(tangentialDir.getScalarProduct(v2));
+        Vector2D v1Tang = scratch.get().reset(tangentialDir).multiply(tangentialDir.getScalarProduct(v1));
+        Vector2D v2Tang = scratch.get().reset(tangentialDir).multiply(tangentialDir.getScalarProduct(v2));
 
         // now the central velocity:
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        Vector2D v1Cent = scratchVectors[nextFreeScratch++].reset(centralDir).multiply(centralDir.getScalarProduct(v1));
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        Vector2D v2Cent = scratchVectors[nextFreeScratch++].reset(centralDir).multiply(centralDir.getScalarProduct(v2));
+        Vector2D v1Cent = scratch.get().reset(centralDir).multiply(centralDir.getScalarProduct(v1));
+        Vector2D v2Cent = scratch.get().reset(centralDir).multiply(centralDir.getScalarProduct(v2));
 
         if (DEBUG_COLLISIONS) {
             System.out.println("  v1 tang = " + v1Tang.asVelocityString()
@@ -324,10 +460,8 @@ public class Collision {
         }
 
         // set the difference of central velocities as collision velocity
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        event.velocity = scratchVectors[nextFreeScratch++].reset(v1Cent).subtract(v2Cent).copy();
-        nextFreeScratch--;
-        assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+        event.velocity = event.velocity.reset(scratch.get().reset(v1Cent).subtract(v2Cent));
+        scratch.release();
 
         // now calculate the new velocities depending on the masses...
         double m1 = disk1.getMass();
@@ -343,24 +477,22 @@ public class Collision {
         // in the general case: keep tangential velocity, calculate 
         // central velocity depending on the masses
         else {
-            assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-            assert scratchVectors[nextFreeScratch + 1].getX() == 0.0 && scratchVectors[nextFreeScratch + 1].getY() == 0.0;
             // central vel:        v1*(m1-m2) + v2*(2*m2)
             //               v1' = ----------------------
             //                            m1 + m2
             newV1 = v1Tang.add(
-                scratchVectors[nextFreeScratch].reset(v1Cent).multiply(m1 - m2)
-                    .add(scratchVectors[nextFreeScratch + 1].reset(v2Cent).multiply(2 * m2)).multiply(
+                scratch.get().reset(v1Cent).multiply(m1 - m2)
+                    .add(scratch.get().reset(v2Cent).multiply(2 * m2)).multiply(
                     1.0 / (m1 + m2)));
-            assert nextFreeScratch + 1 >= 0 && (scratchVectors[nextFreeScratch + 1] = scratchVectors[nextFreeScratch + 1].reset()) != null;
-            assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+            scratch.release();
+            scratch.release();
             newV2 = v2Tang.add(
                 v2Cent.multiply(m2 - m1).add(v1Cent.multiply(2 * m1)).multiply(
                     1.0 / (m1 + m2)));
         }
 
-        disk1.setVelocity(newV1.multiply(IMPULSE_LOSS));
-        disk2.setVelocity(newV2.multiply(IMPULSE_LOSS));
+        disk1.setVelocity(newV1.multiply(impulseLoss));
+        disk2.setVelocity(newV2.multiply(impulseLoss));
 
         // make sure the collision is solved:
         // by just updating the velocities, the disks might run in the same
@@ -375,16 +507,13 @@ public class Collision {
             heavyDisk = disk2;
             lighterDisk = disk1;
         }
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        Vector2D pushDirection = scratchVectors[nextFreeScratch++].reset(lighterDisk.getPosition()).subtract(heavyDisk.getPosition());
+        Vector2D pushDirection = scratch.get().reset(lighterDisk.getPosition()).subtract(heavyDisk.getPosition());
         double minDistance = disk1.getRadius() + disk2.getRadius();
         if (pushDirection.getValue() <= minDistance) {
             // disks are still overlapping...
             Vector2D positionPush = pushDirection.getNormalized().multiply(minDistance * 1.001);
-            assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-            lighterDisk.setPosition(scratchVectors[nextFreeScratch++].reset(heavyDisk.getPosition()).add(positionPush));
-            nextFreeScratch--;
-            assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+            lighterDisk.setPosition(scratch.get().reset(heavyDisk.getPosition()).add(positionPush));
+            scratch.release();
             if (DEBUG_COLLISIONS) {
                 System.out.println("Added push " + positionPush
                     + " to " + lighterDisk);
@@ -397,8 +526,7 @@ public class Collision {
                 "      and:  " + disk2 + "\n");
         }
         for (int i = 0; i < 7; i++) {
-            nextFreeScratch--;
-            assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+            scratch.release();
         }
     }
 
@@ -412,7 +540,7 @@ public class Collision {
      * @param lightDisk the second disk
      * @param event     the collision event
      */
-    private static void handleCollisionFixedDiskImpl(Disk fixedDisk, Disk lightDisk,
+    private void handleCollisionFixedDiskImpl(Disk fixedDisk, Disk lightDisk,
                                                      DiskDiskCollision event) {
 
         long time = event.time;
@@ -441,22 +569,19 @@ public class Collision {
         Vector2D vLight = lightDisk.getVelocity().subtract(vFixed);
 
         // store the collision velocity in the event
-        event.velocity = vLight.copy();
+        event.velocity = event.velocity.reset(vLight);
 
         // find the normal on the fixed disk surface at the collision point
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        Vector2D normal = scratchVectors[nextFreeScratch++].reset(event.point).subtract(fixedDisk.getPosition()).getNormalized();
+        Vector2D normal = scratch.get().reset(event.point).subtract(fixedDisk.getPosition()).getNormalized();
 
         // make sure the disks don't overlap
         double minDistance = lightDisk.getRadius() + fixedDisk.getRadius() + EPSILON;
 
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        Vector2D dist = scratchVectors[nextFreeScratch++].reset(lightDisk.getPosition()).subtract(fixedDisk.getPosition());
+        Vector2D dist = scratch.get().reset(lightDisk.getPosition()).subtract(fixedDisk.getPosition());
         double distance = dist.getValue();
-        nextFreeScratch--;
-        assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+        scratch.release();
         if (distance < minDistance) {
-            lightDisk.getPosition().addMultiple(normal, (minDistance-distance));
+            lightDisk.setPosition(lightDisk.getPosition().addMultiple(normal, (minDistance-distance)));
         }
 
         // reflect the lighter disk velocity at this normal just like with wall reflections
@@ -464,10 +589,9 @@ public class Collision {
         Vector2D vReflection = vLight.addMultiple(normal, -2.0 * scalarVLight);
 
         // now add the fixed disk velocity again -> we have the new velocity
-        lightDisk.setVelocity(vReflection.add(vFixed).multiply(IMPULSE_LOSS));
+        lightDisk.setVelocity(vReflection.add(vFixed).multiply(impulseLoss));
 
-        nextFreeScratch--;
-        assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+        scratch.release();
         assert lightDisk.getVelocity().getValue() < (MovingObject.MAX_VELOCITY_VALUE * 1.001);
 
         if (DEBUG_COLLISIONS) {
@@ -490,7 +614,7 @@ public class Collision {
      *
      * @param event the collision event
      */
-    private static void handleWallFaceCollisionImpl(DiskWallCollision event) {
+    private void handleWallFaceCollisionImpl(DiskWallCollision event) {
 
         Disk disk = event.disk;
         Wall wall = event.wall;
@@ -502,32 +626,28 @@ public class Collision {
                 + " at point " + event.point + " and time " + event.time + "ns");
         }
         // store collision velocity in the event
-        event.velocity = velocity.copy();
+        event.velocity = event.velocity.reset(velocity);
 
         // update position 
         disk.setPosition(disk.getPositionAt(event.time, disk.getPosition()));
 
         // if the disk is inside the wall at that time, move...
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        Vector2D inverseNormal = scratchVectors[nextFreeScratch++].reset(normal).getInverse();
+        Vector2D inverseNormal = scratch.get().reset(normal).getInverse();
         double distance = planeRayIntersection(event.wallFace.getPositionVector(),
             event.wallFace.getNormalVector(), disk.getPosition(), inverseNormal);
         if (distance < disk.getRadius()) {
             // move disk outside of the wall
-            disk.getPosition().addMultiple(normal, (disk.getRadius() - distance + EPSILON));
+            disk.setPosition(disk.getPosition().addMultiple(normal, (disk.getRadius() - distance + EPSILON)));
             // reduce speed so that
         }
-        nextFreeScratch--;
-        assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+        scratch.release();
 
 
         // update direction
         double scalar = normal.getScalarProduct(velocity);
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        Vector2D newVelocity = velocity.subtract(scratchVectors[nextFreeScratch++].reset(normal).multiply(scalar * 2));
-        nextFreeScratch--;
-        assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
-        disk.setVelocity(newVelocity.multiply(IMPULSE_LOSS));
+        Vector2D newVelocity = velocity.subtract(scratch.get().reset(normal).multiply(scalar * 2));
+        scratch.release();
+        disk.setVelocity(newVelocity.multiply(impulseLoss));
         // update timestamp
         disk.setTimestampNs(event.time);
     }
@@ -538,7 +658,7 @@ public class Collision {
      *
      * @param event the collision event
      */
-    private static void handleWallEdgeCollisionImpl(DiskWallCollision event) {
+    private void handleWallEdgeCollisionImpl(DiskWallCollision event) {
 
         Disk disk = event.disk;
         Wall wall = event.wall;
@@ -560,19 +680,17 @@ public class Collision {
 
         // store the collision velocity in the event
         Vector2D vLight = disk.getVelocity();
-        event.velocity = vLight.copy();
+        event.velocity = event.velocity.reset(vLight);
 
         // update direction:
 
         // find the normal on the wall edge surface at the collision point
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        Vector2D normal = scratchVectors[nextFreeScratch++].reset(disk.getPosition()).subtract(wallEdge).getNormalized();
+        Vector2D normal = scratch.get().reset(disk.getPosition()).subtract(wallEdge).getNormalized();
 
         // reflect the disk velocity at this normal just like with wall reflections
         double scalarVLight = normal.getScalarProduct(vLight);
-        disk.setVelocity(vLight.addMultiple(normal, -2.0 * scalarVLight).multiply(IMPULSE_LOSS));
-        nextFreeScratch--;
-        assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+        disk.setVelocity(vLight.addMultiple(normal, -2.0 * scalarVLight).multiply(impulseLoss));
+        scratch.release();
 
         if (DEBUG_COLLISIONS) {
             System.out.println(
@@ -592,8 +710,113 @@ public class Collision {
      * @param timeLimit the time limit for collision checks
      * @return the found collision event
      */
-    private static DiskDiskCollision getCollision(Disk disk1, Disk disk2,
+    DiskDiskCollision getCollision(Disk disk1, Disk disk2,
                                                   long afterTime, long timeLimit) {
+        if (analyticCollisionTimes) {
+            return getCollisionAnalytic(disk1, disk2, afterTime, timeLimit);
+        }
+        return getCollisionSampled(disk1, disk2, afterTime, timeLimit);
+    }
+
+
+    /**
+     * Analytic implementation of {@link #getCollision(Disk, Disk, long, long)}.
+     * Both disks move linearly in the given time range, so the distance of the
+     * disk centers is given by |dp + dv * t|, with dp the difference of the positions
+     * and dv the difference of the velocities at start time. The disks touch when
+     * this distance is equal to the sum of the radii, so we only have to solve the
+     * quadratic equation
+     * <pre>
+     *   (dv * dv) t^2 + 2 (dp * dv) t + (dp * dp) - (r1 + r2)^2 = 0
+     * </pre>
+     * and take the smaller root.
+     *
+     * @param disk1     the first disk
+     * @param disk2     the second disk
+     * @param afterTime only handle collisions after this time, may be 0
+     * @param timeLimit the time limit for collision checks
+     * @return the found collision event
+     */
+    private DiskDiskCollision getCollisionAnalytic(Disk disk1, Disk disk2,
+                                                          long afterTime, long timeLimit) {
+
+        long startTime = Math.max(afterTime, Math.max(disk1.getTimestampNs(), disk2.getTimestampNs()));
+        double maxDistance = disk1.getRadius() + disk2.getRadius() + EPSILON;
+
+        // positions at start time
+        Vector2D p1 = disk1.getPositionAt(startTime, scratch.get());
+        Vector2D p2 = disk2.getPositionAt(startTime, scratch.get());
+
+        Vector2D v1 = disk1.getVelocity();
+        Vector2D v2 = disk2.getVelocity();
+        double dpX = p2.getX() - p1.getX();
+        double dpY = p2.getY() - p1.getY();
+        double dvX = v2.getX() - v1.getX();
+        double dvY = v2.getY() - v1.getY();
+
+        double a = dvX * dvX + dvY * dvY;
+        double b = dpX * dvX + dpY * dvY;    // half of the linear coefficient
+        double c = dpX * dpX + dpY * dpY - maxDistance * maxDistance;
+
+        long collisionTime = -1;
+        if (b < 0.0) {
+            // the disks are approaching each other
+            if (c <= 0.0) {
+                // already touching at start time
+                System.out.println("!! Disk-Disk Collision at start time of iteration: " + startTime);
+                collisionTime = startTime;
+            } else {
+                double discriminant = b * b - a * c;
+                if (discriminant >= 0.0) {
+                    // smaller root, written in a form that is stable for b < 0
+                    double t = c / (-b + Math.sqrt(discriminant));
+                    // round down, the disks should not overlap at collision time
+                    if (t <= (timeLimit - startTime)) {
+                        collisionTime = startTime + (long) t;
+                    }
+                }
+            }
+        }
+
+        if (collisionTime < 0) {
+            scratch.release();
+            scratch.release();
+            // disks are moving apart or miss each other in the given time frame
+            return null;
+        }
+
+        p1 = disk1.getPositionAt(collisionTime, p1);
+        p2 = disk2.getPositionAt(collisionTime, p2);
+
+        // collision point is on the segment [p1 - p2],
+        // exact point depends on disk radii
+        double cpDistance = disk1.getRadius() / (disk1.getRadius() + disk2.getRadius());
+        Vector2D collisionPoint = p1.addMultiple(p2.subtract(p1), cpDistance);
+
+        DiskDiskCollision result = eventPool.obtainDiskDisk();
+        result.disk1 = disk1;
+        result.disk2 = disk2;
+        result.time = collisionTime;
+        result.point = result.point.reset(collisionPoint);
+        scratch.release();
+        scratch.release();
+        return result;
+    }
+
+
+    /**
+     * Sampling implementation of {@link #getCollision(Disk, Disk, long, long)}.
+     * This checks the disk distance at a number of samples in the given time range
+     * and uses bisection to find the exact collision time.
+     *
+     * @param disk1     the first disk
+     * @param disk2     the second disk
+     * @param afterTime only handle collisions after this time, may be 0
+     * @param timeLimit the time limit for collision checks
+     * @return the found collision event
+     */
+    private DiskDiskCollision getCollisionSampled(Disk disk1, Disk disk2,
+                                                         long afterTime, long timeLimit) {
 
         // both disks should start at the same timestamp, but let's check this
         // assert disk1.getTimestampNs() == disk2.getTimestampNs();
@@ -605,18 +828,12 @@ public class Collision {
         // we check for collision at samples between start and end time
         // how many samples do we want?
         // at least 3 samples, add more for small and fast disks
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        Vector2D tmpPos1 = disk1.getPositionAt(timeLimit, scratchVectors[nextFreeScratch++]);
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        double wayLength1 = tmpPos1.getDistance(disk1.getPositionAt(startTime, scratchVectors[nextFreeScratch++]));
-        nextFreeScratch--;
-        assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        Vector2D tmpPos2 = disk2.getPositionAt(timeLimit, scratchVectors[nextFreeScratch++]);
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        double wayLength2 = tmpPos2.getDistance(disk2.getPositionAt(startTime, scratchVectors[nextFreeScratch++]));
-        nextFreeScratch--;
-        assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+        Vector2D tmpPos1 = disk1.getPositionAt(timeLimit, scratch.get());
+        double wayLength1 = tmpPos1.getDistance(disk1.getPositionAt(startTime, scratch.get()));
+        scratch.release();
+        Vector2D tmpPos2 = disk2.getPositionAt(timeLimit, scratch.get());
+        double wayLength2 = tmpPos2.getDistance(disk2.getPositionAt(startTime, scratch.get()));
+        scratch.release();
         double maxWayLength = Math.max(wayLength1, wayLength2);
         double minRadius = Math.min(disk1.getRadius(), disk2.getRadius());
         long samplesCount = Math.max(3, Math.round(5.0 * maxWayLength / minRadius));
@@ -660,10 +877,8 @@ public class Collision {
                 }
 
 //                if (!(collisionTime > afterTime)) {
-//                    nextFreeScratch--;
-//                    assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
-//                    nextFreeScratch--;
-//                    assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+//                    scratch.release();
+//                    scratch.release();
 //                    // No collision in the given time frame.
 //                    return null;
 //                }
@@ -676,24 +891,20 @@ public class Collision {
                 double cpDistance = disk1.getRadius() / (disk1.getRadius() + disk2.getRadius());
                 Vector2D collisionPoint = p1.addMultiple(p2.subtract(p1), cpDistance);
 
-                DiskDiskCollision result = new DiskDiskCollision();
+                DiskDiskCollision result = eventPool.obtainDiskDisk();
                 result.disk1 = disk1;
                 result.disk2 = disk2;
                 result.time = collisionTime;
-                result.point = collisionPoint.copy();
-                nextFreeScratch--;
-                assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
-                nextFreeScratch--;
-                assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+                result.point = result.point.reset(collisionPoint);
+                scratch.release();
+                scratch.release();
                 return result;
             }
 
         }
 
-        nextFreeScratch--;
-        assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
-        nextFreeScratch--;
-        assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+        scratch.release();
+        scratch.release();
         // no collision found at any sample point.
         return null;
     }
@@ -712,7 +923,7 @@ public class Collision {
      * @param timeLimit only handle collisions up to this time
      * @return the collision event, or <code>null</code>
      */
-    private static DiskWallCollision getCollision(Disk disk, Wall wall, long afterTime, long timeLimit) {
+    DiskWallCollision getCollision(Disk disk, Wall wall, long afterTime, long timeLimit) {
         // if the disk is a player disk and the wall is a destroyable wall,
         // we ignore collisions...
         if (disk.isFixed() && wall instanceof DestroyableWall) {
@@ -735,7 +946,10 @@ public class Collision {
             DiskWallCollision event = getCollisionGeneralWall(disk, wall, face, afterTime, timeLimit);
             if (event != null) {
                 if (result == null || event.time < result.time) {
+                    eventPool.release(result);
                     result = event;
+                } else {
+                    eventPool.release(event);
                 }
             }
         }
@@ -757,8 +971,11 @@ public class Collision {
      * @param timeLimit only handle collisions up to this time
      * @return the collision event, or <code>null</code>
      */
-    private static DiskWallCollision getCollisionGeneralWall(Disk disk,
+    private DiskWallCollision getCollisionGeneralWall(Disk disk,
             Wall wall, Face face, long afterTime, long timeLimit) {
+        if (analyticCollisionTimes) {
+            return getCollisionGeneralWallAnalytic(disk, wall, face, afterTime, timeLimit);
+        }
 
         Vector2D diskVelocity = disk.getVelocity();
         Vector2D wallNormal = face.getNormalVector();
@@ -783,11 +1000,10 @@ public class Collision {
             return null;
         }
 
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
         // Find the point on the disk surface that is nearest to the wall. 
         // Go from the disk center in inverted wall-normal direction:
         double diskRadius = disk.getRadius();
-        Vector2D nearestPoint = scratchVectors[nextFreeScratch++].reset(diskCenter).addMultiple(wallNormal, -diskRadius);
+        Vector2D nearestPoint = scratch.get().reset(diskCenter).addMultiple(wallNormal, -diskRadius);
 
         // shoot a ray in disk-velocity direction from this point to the wall to find
         // out, where the disk would hit the wall plane
@@ -808,10 +1024,8 @@ public class Collision {
 
         // Now we know the point where the disk surface will hit the wall plane first.
         // If this point is on the wall face, we are lucky -> FINISHED
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        Vector2D dirStart = scratchVectors[nextFreeScratch++].reset(wallStart).subtract(collisionPoint);
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        Vector2D dirEnd = scratchVectors[nextFreeScratch++].reset(wallEnd).subtract(collisionPoint);
+        Vector2D dirStart = scratch.get().reset(wallStart).subtract(collisionPoint);
+        Vector2D dirEnd = scratch.get().reset(wallEnd).subtract(collisionPoint);
         boolean onWall = (dirStart.getScalarProduct(dirEnd) < 0);
         // NOTE: if we are in the second case (nearest point crossed the wall plane) and
         // onWall is still true, we assume that the disk went through the wall because
@@ -826,28 +1040,22 @@ public class Collision {
             long collisionTime = disk.getTimestampNs() + Math.round(collisionLambda);
             if (!((afterTime == 0 || afterTime <= collisionTime) && collisionTime <= timeLimit)) {
 //            if (!((afterTime == 0 || afterTime < collisionTime) && collisionTime <= timeLimit)) {
-                nextFreeScratch--;
-                assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
-                nextFreeScratch--;
-                assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
-                nextFreeScratch--;
-                assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+                scratch.release();
+                scratch.release();
+                scratch.release();
                 // No collision in the given time frame.
                 return null;
             }
-            DiskWallCollision result = new DiskWallCollision();
+            DiskWallCollision result = eventPool.obtainDiskWall();
             result.disk = disk;
-            result.point = collisionPoint.copy();
+            result.point = result.point.reset(collisionPoint);
             result.time = collisionTime;
             result.wall = wall;
             result.wallFace = face;
 
-            nextFreeScratch--;
-            assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
-            nextFreeScratch--;
-            assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
-            nextFreeScratch--;
-            assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+            scratch.release();
+            scratch.release();
+            scratch.release();
             return result;
         }
 
@@ -868,12 +1076,9 @@ public class Collision {
             collisionEdge = wallEnd;
             collisionTime = timeEnd;
         }
-        nextFreeScratch--;
-        assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
-        nextFreeScratch--;
-        assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
-        nextFreeScratch--;
-        assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+        scratch.release();
+        scratch.release();
+        scratch.release();
 
         if (collisionEdge == null) {
             // no collision
@@ -881,11 +1086,120 @@ public class Collision {
         }
 
         // now we only have to calculate the disk position at collision time
-        collisionPoint = disk.getPositionAt(collisionTime, VectorFactory.getVector(0.0, 0.0));
+        DiskWallCollision result = eventPool.obtainDiskWall();
+        result.disk = disk;
+        result.point = disk.getPositionAt(collisionTime, result.point);
+        result.time = collisionTime;
+        result.wall = wall;
+        result.wallFace = face;
+        result.wallEdge = collisionEdge;
+        return result;
+    }
+
+
+    /**
+     * Analytic implementation of
+     * {@link #getCollisionGeneralWall(Disk, Wall, Face, long, long)}.
+     * The disk surface hits the face plane when the signed distance of the disk
+     * center to the plane equals the radius (ray/plane intersection). If the
+     * contact point misses the face, the collision with the face edges is calculated
+     * as intersection of the disk center path with a circle around the edge
+     * (ray/circle intersection). All of this is done on plain coordinates, so one
+     * check costs a fixed number of operations and does not need any scratch vectors.
+     *
+     * @param disk      the moving disk
+     * @param wall      the wall model
+     * @param face      one specific face of that wall
+     * @param afterTime only handle collisions after this time, may be 0
+     * @param timeLimit only handle collisions up to this time
+     * @return the collision event, or <code>null</code>
+     */
+    private DiskWallCollision getCollisionGeneralWallAnalytic(Disk disk,
+            Wall wall, Face face, long afterTime, long timeLimit) {
+
+        Vector2D velocity = disk.getVelocity();
+        Vector2D normal = face.getNormalVector();
+        double vX = velocity.getX();
+        double vY = velocity.getY();
+        double nX = normal.getX();
+        double nY = normal.getY();
+
+        double vn = vX * nX + vY * nY;
+        if (vn >= 0) {
+            // disk is moving away from wall, no need to check
+            return null;
+        }
+
+        Vector2D position = disk.getPosition();
+        Vector2D wallStart = face.getPositionVector();
+        Vector2D wallEnd = face.getFaceEndVector();
+        double cX = position.getX();
+        double cY = position.getY();
+        double sX = wallStart.getX();
+        double sY = wallStart.getY();
+        double eX = wallEnd.getX();
+        double eY = wallEnd.getY();
+
+        // signed distance of the disk center to the wall plane
+        double centerDistance = (cX - sX) * nX + (cY - sY) * nY;
+        if (centerDistance <= 0.0) {
+            // disk center is behind the wall plane -> no collision
+            return null;
+        }
+
+        // The point on the disk surface that is nearest to the wall plane
+        // hits the plane after lambda ns, or already crossed it (lambda = 0).
+        // In the second case we still check for a collision on the wall edge.
+        double radius = disk.getRadius();
+        double lambda = Math.max(0.0, (centerDistance - radius) / -vn);
+        double pX = cX - nX * radius + vX * lambda;
+        double pY = cY - nY * radius + vY * lambda;
 
-        DiskWallCollision result = new DiskWallCollision();
+        // If this point is on the wall face, we are lucky -> FINISHED
+        // NOTE: if the nearest point crossed the wall plane and is still on the
+        // wall face, we assume that the disk went through the wall because
+        // of precision problems. Handle this as if the collision happened now.
+        boolean onWall = ((sX - pX) * (eX - pX) + (sY - pY) * (eY - pY)) < 0;
+        if (onWall) {
+            if (lambda == 0.0) {
+                System.out.println("!! Disk-WallFace Collision at start time");
+            }
+            long collisionTime = disk.getTimestampNs() + Math.round(lambda);
+            if (!((afterTime == 0 || afterTime <= collisionTime) && collisionTime <= timeLimit)) {
+                // No collision in the given time frame.
+                return null;
+            }
+            DiskWallCollision result = eventPool.obtainDiskWall();
+            result.disk = disk;
+            result.point = result.point.reset(pX, pY);
+            result.time = collisionTime;
+            result.wall = wall;
+            result.wallFace = face;
+            return result;
+        }
+
+        // the point is NOT on the wall, we need to check the wall edges.
+        long timeStart = getCollisionTimeAnalytic(disk, sX, sY, afterTime, timeLimit);
+        long timeEnd = getCollisionTimeAnalytic(disk, eX, eY, afterTime, timeLimit);
+
+        Vector2D collisionEdge = null;
+        long collisionTime = -1;
+        // find the edge with the smaller time while ignoring time < 0 (no collision)
+        if (timeStart >= 0 && (timeStart < timeEnd || timeEnd < 0)) {
+            collisionEdge = wallStart;
+            collisionTime = timeStart;
+        } else if (timeEnd >= 0) {
+            collisionEdge = wallEnd;
+            collisionTime = timeEnd;
+        }
+        if (collisionEdge == null) {
+            // no collision
+            return null;
+        }
+
+        DiskWallCollision result = eventPool.obtainDiskWall();
         result.disk = disk;
-        result.point = collisionPoint;
+        result.point = disk.getPositionAt(collisionTime, result.point);
         result.time = collisionTime;
         result.wall = wall;
         result.wallFace = face;
@@ -894,6 +1208,66 @@ public class Collision {
     }
 
 
+    /**
+     * Check for collisions between the given disk and the given wall edge.
+     * The disk center moves on a ray, so the disk touches the edge when this ray
+     * intersects the circle with the disk radius around the edge.
+     *
+     * @param disk      the disk
+     * @param edgeX     the x coordinate of the wall edge
+     * @param edgeY     the y coordinate of the wall edge
+     * @param afterTime only handle collisions after this time, may be 0
+     * @param timeLimit the time limit for collision checks
+     * @return the found collision time, or < 0 if no collision happened
+     */
+    private long getCollisionTimeAnalytic(Disk disk, double edgeX, double edgeY,
+                                                 long afterTime, long timeLimit) {
+
+        long startTime = disk.getTimestampNs();
+        double maxDistance = disk.getRadius() + EPSILON;
+
+        Vector2D position = disk.getPosition();
+        Vector2D velocity = disk.getVelocity();
+        double dX = position.getX() - edgeX;
+        double dY = position.getY() - edgeY;
+        double vX = velocity.getX();
+        double vY = velocity.getY();
+
+        double a = vX * vX + vY * vY;
+        double b = dX * vX + dY * vY;    // half of the linear coefficient
+        double c = dX * dX + dY * dY - maxDistance * maxDistance;
+
+        if (b >= 0.0) {
+            // moving away from the edge (or not moving at all)
+            return -1;
+        }
+
+        long collisionTime;
+        if (c <= 0.0) {
+            System.out.println("!! Disk-Edge Collision at start time of iteration: " + startTime);
+            collisionTime = startTime;
+        } else {
+            double discriminant = b * b - a * c;
+            if (discriminant < 0.0) {
+                // the disk passes by
+                return -1;
+            }
+            // smaller root, written in a form that is stable for b < 0
+            double t = c / (-b + Math.sqrt(discriminant));
+            if (t > (timeLimit - startTime)) {
+                return -1;
+            }
+            collisionTime = startTime + (long) t;
+        }
+
+        if (!(collisionTime > afterTime)) {
+            // No collision in the given time frame.
+            return -1;
+        }
+        return collisionTime;
+    }
+
+
     /**
      * Check for collisions between the given disk and the given wall edge.
      *
@@ -903,7 +1277,7 @@ public class Collision {
      * @param timeLimit the time limit for collision checks
      * @return the found collision time, or < 0 if no collision happened
      */
-    private static long getCollisionTime(Disk disk, Vector2D edge, long afterTime, long timeLimit) {
+    private long getCollisionTime(Disk disk, Vector2D edge, long afterTime, long timeLimit) {
 
         long startTime = disk.getTimestampNs();
         double maxDistance = disk.getRadius() + EPSILON;
@@ -911,8 +1285,7 @@ public class Collision {
         // we check for collision at samples between start and end time
         // how many samples do we want?
         // at least 3 samples, add more for small and fast disk
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
-        Vector2D tmpPos = disk.getPositionAt(timeLimit, scratchVectors[nextFreeScratch++]);
+        Vector2D tmpPos = disk.getPositionAt(timeLimit, scratch.get());
         double wayLength = tmpPos.getDistance(disk.getPosition());
 
         long samplesCount = Math.max(3, Math.round(5.0 * wayLength / disk.getRadius()));
@@ -954,21 +1327,18 @@ public class Collision {
                 }
 
                 if (!(collisionTime > afterTime)) {
-                    nextFreeScratch--;
-                    assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+                    scratch.release();
                     // No collision in the given time frame.
                     return -1;
                 }
 
                 // found a collision at collisionTime
-                nextFreeScratch--;
-                assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+                scratch.release();
                 return collisionTime;
             }
         }
 
-        nextFreeScratch--;
-        assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+        scratch.release();
         // no collision found at any sample point.
         return -1;
     }
@@ -985,9 +1355,8 @@ public class Collision {
      * @param timeLimit only handle collisions up to this time
      * @return the collision event, or <code>null</code>
      */
-    private static DiskWallCollision getCollisionInfiniteWall(Disk disk, Wall wall, Face face,
+    private DiskWallCollision getCollisionInfiniteWall(Disk disk, Wall wall, Face face,
                                                               long afterTime, long timeLimit) {
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
 
         Vector2D diskVelocity = disk.getVelocity();
         Vector2D wallNormal = face.getNormalVector();
@@ -1002,36 +1371,32 @@ public class Collision {
         // that is next to the wall. Go from the disk center in
         // inverted wall-normal direction to find this point
         double diskRadius = disk.getRadius();
-        Vector2D point = scratchVectors[nextFreeScratch++].reset(disk.getPosition()).addMultiple(wallNormal, -diskRadius);
+        Vector2D point = scratch.get().reset(disk.getPosition()).addMultiple(wallNormal, -diskRadius);
 
         // now get the intersection of the ray from this point to the 
         // wall in disk velocity direction
         double lambda = planeRayIntersection(wallPosition, wallNormal, point, diskVelocity);
 
         if (lambda == 0.0) {
-            nextFreeScratch--;
-            assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+            scratch.release();
             // no intersection, no collision
             return null;
         }
         long collisionTime = disk.getTimestampNs() + Math.round(lambda);
         // we have a collision after lambda nano seconds
         if (!(afterTime < collisionTime && collisionTime <= timeLimit)) {
-            nextFreeScratch--;
-            assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+            scratch.release();
             // No collision in the given time frame.
             return null;
         }
-        Vector2D collisionPoint = point.copy().addMultiple(diskVelocity, lambda);
-        DiskWallCollision result = new DiskWallCollision();
+        DiskWallCollision result = eventPool.obtainDiskWall();
         result.disk = disk;
-        result.point = collisionPoint;
+        result.point = result.point.reset(point).addMultiple(diskVelocity, lambda);
         result.time = collisionTime;
         result.wall = wall;
         result.wallFace = face;
 
-        nextFreeScratch--;
-        assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+        scratch.release();
         return result;
     }
 
@@ -1050,7 +1415,7 @@ public class Collision {
      * @param rayDirection
      * @return lambda, or <code>0.0</code>
      */
-    private static double planeRayIntersection(Vector2D planePos, Vector2D planeNor,
+    private double planeRayIntersection(Vector2D planePos, Vector2D planeNor,
             Vector2D rayPos, Vector2D rayDirection) {
 
         // http://nehe.gamedev.net/data/lessons/lesson.asp?lesson=30
@@ -1063,12 +1428,10 @@ public class Collision {
             return 0.0;
         }
 
-        assert scratchVectors[nextFreeScratch].getX() == 0.0 && scratchVectors[nextFreeScratch].getY() == 0.0;
         // distance to intersection point
         double lambda =
-            planeNor.getScalarProduct(scratchVectors[nextFreeScratch++].reset(planePos).subtract(rayPos)) / scalarProd;
-        nextFreeScratch--;
-        assert nextFreeScratch >= 0 && (scratchVectors[nextFreeScratch] = scratchVectors[nextFreeScratch].reset()) != null;
+            planeNor.getScalarProduct(scratch.get().reset(planePos).subtract(rayPos)) / scalarProd;
+        scratch.release();
         // test if collision is behind start (lambda > 0)
         if (lambda < 0) {
             return 0.0;
@@ -1137,6 +1500,8 @@ public class Collision {
      * @param args
      */
     public static void main(String[] args) {
+        Collision collision = new Collision();
+
         // a disk of radius 
         Disk disk = new Disk(1.0, 1.0);
 
@@ -1153,21 +1518,43 @@ public class Collision {
             disk.setVelocity(VectorFactory.getVector(3 * vel, -0.00000000000001));
 
             System.out.println("\nCollision for disk " + disk + ": ");
-            CollisionEvent result = getCollisionGeneralWall(disk, wall, wall.getFrontFace(), 0, Integer.MAX_VALUE);
-            if (result == null) {
-                System.out.println("  -> none");
-            } else {
-                DiskWallCollision wallCollision = (DiskWallCollision) result;
-                if (wallCollision.wallEdge == null) {
-                    // a collision with the wall face
-                    System.out.println("  -> Wall face, point " + result.point);
+            // compare analytic and sampled collision times
+            for (int i = 0; i < 2; i++) {
+                collision.setAnalyticCollisionTimes(i == 0);
+                String mode = (i == 0) ? "  analytic" : "  sampled ";
+                CollisionEvent result = collision.getCollisionGeneralWall(disk, wall, wall.getFrontFace(), 0, Integer.MAX_VALUE);
+                if (result == null) {
+                    System.out.println(mode + " -> none");
                 } else {
-                    // a collision with the wall edge
-                    System.out.println("  -> Wall edge " + wallCollision.wallEdge
-                        + ", point " + result.point
-                        + " (distance " + result.point.getDistance(wallCollision.wallEdge) + ")");
+                    DiskWallCollision wallCollision = (DiskWallCollision) result;
+                    if (wallCollision.wallEdge == null) {
+                        // a collision with the wall face
+                        System.out.println(mode + " -> Wall face, point " + result.point);
+                    } else {
+                        // a collision with the wall edge
+                        System.out.println(mode + " -> Wall edge " + wallCollision.wallEdge
+                            + ", point " + result.point + ", time " + result.time
+                            + " (distance " + result.point.getDistance(wallCollision.wallEdge) + ")");
+                    }
                 }
             }
         }
+        collision.setAnalyticCollisionTimes(true);
+
+        // compare analytic and sampled disk-disk collision times
+        Disk other = new Disk(1.0, 1.0);
+        other.setPosition(VectorFactory.getVector(5.0, 0.0));
+        other.setVelocity(VectorFactory.getVector(0.0, 0.0));
+        long timeLimit = Math.round(10.0 / vel);
+        for (double y = -2.5; y <= 2.5; y += 0.25) {
+            disk.setPosition(VectorFactory.getVector(0.0, y));
+            disk.setVelocity(VectorFactory.getVector(vel, 0.0));
+
+            DiskDiskCollision analytic = collision.getCollisionAnalytic(disk, other, 0, timeLimit);
+            DiskDiskCollision sampled = collision.getCollisionSampled(disk, other, 0, timeLimit);
+            System.out.println("\nDisk-disk collision for offset " + y + ": "
+                + "\n  analytic: " + (analytic == null ? "none" : analytic.time + "ns at " + analytic.point)
+                + "\n  sampled:  " + (sampled == null ? "none" : sampled.time + "ns at " + sampled.point));
+        }
     }
 }
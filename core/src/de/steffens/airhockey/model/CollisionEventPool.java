@@ -0,0 +1,97 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.model;
+
+import java.util.ArrayList;
+
+import de.steffens.airhockey.model.CollisionListener.CollisionEvent;
+import de.steffens.airhockey.model.CollisionListener.DiskDiskCollision;
+import de.steffens.airhockey.model.CollisionListener.DiskWallCollision;
+import de.steffens.airhockey.model.vector.VectorFactory;
+
+/**
+ * Pool of collision events.
+ * The collision checks create lots of candidate events, most of them are dropped
+ * right away because another collision happens earlier. Events are recycled through
+ * this pool, so stepping the simulation does not create garbage.
+ * <p/>
+ * Pooled events own their point and velocity vectors, which are reset instead
+ * of replaced when the event is filled.
+ */
+public class CollisionEventPool {
+
+    private final ArrayList<DiskDiskCollision> freeDiskDisk = new ArrayList<DiskDiskCollision>();
+    private final ArrayList<DiskWallCollision> freeDiskWall = new ArrayList<DiskWallCollision>();
+
+
+    /**
+     * Get a disk-disk collision event from the pool.
+     *
+     * @return an unused event
+     */
+    public DiskDiskCollision obtainDiskDisk() {
+        DiskDiskCollision result;
+        int size = freeDiskDisk.size();
+        if (size == 0) {
+            result = new DiskDiskCollision();
+            init(result);
+        } else {
+            result = freeDiskDisk.remove(size - 1);
+        }
+        result.pooled = false;
+        return result;
+    }
+
+
+    /**
+     * Get a disk-wall collision event from the pool.
+     *
+     * @return an unused event
+     */
+    public DiskWallCollision obtainDiskWall() {
+        DiskWallCollision result;
+        int size = freeDiskWall.size();
+        if (size == 0) {
+            result = new DiskWallCollision();
+            init(result);
+        } else {
+            result = freeDiskWall.remove(size - 1);
+        }
+        result.pooled = false;
+        return result;
+    }
+
+
+    /**
+     * Give an event back to the pool. The event must not be used afterwards.
+     *
+     * @param event the event, may be <code>null</code>
+     */
+    public void release(CollisionEvent event) {
+        if (event == null) {
+            return;
+        }
+        assert !event.pooled : "collision event released twice";
+        event.pooled = true;
+        if (event instanceof DiskDiskCollision) {
+            DiskDiskCollision ddEvent = (DiskDiskCollision) event;
+            ddEvent.disk1 = null;
+            ddEvent.disk2 = null;
+            freeDiskDisk.add(ddEvent);
+        } else {
+            DiskWallCollision dwEvent = (DiskWallCollision) event;
+            dwEvent.disk = null;
+            dwEvent.wall = null;
+            dwEvent.wallFace = null;
+            dwEvent.wallEdge = null;
+            freeDiskWall.add(dwEvent);
+        }
+    }
+
+
+    private static void init(CollisionEvent event) {
+        event.point = VectorFactory.getVector(0.0, 0.0);
+        event.velocity = VectorFactory.getVector(0.0, 0.0);
+    }
+}
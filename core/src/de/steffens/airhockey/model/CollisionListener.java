@@ -14,6 +14,11 @@ import de.steffens.airhockey.model.vector.VectorFactory;
 
 /**
  * Interface for listeners interested in collision events.
+ * <p/>
+ * Collision events are recycled by the simulation (see {@link CollisionEventPool}).
+ * An event passed to a listener is only valid during the call and until the next
+ * simulation update. Listeners that need an event later on have to keep a
+ * {@link CollisionEvent#copy() copy}.
  * 
  * @author Steffen Schreiber
  */
@@ -27,6 +32,26 @@ public interface CollisionListener {
         public Vector2D point;
         public Vector2D velocity;
 
+        /** event is in the pool, see {@link CollisionEventPool} */
+        boolean pooled = false;
+
+        /**
+         * Returns a copy of this event, that is not recycled by the simulation.
+         *
+         * @return a copy of this event
+         */
+        public CollisionEvent copy() {
+            CollisionEvent result = createCopy();
+            result.time = time;
+            result.point = point == null ? null : point.copy();
+            result.velocity = velocity == null ? null : velocity.copy();
+            return result;
+        }
+
+        protected CollisionEvent createCopy() {
+            return new CollisionEvent();
+        }
+
         /**
          * Writes the collision event.
          *
@@ -46,6 +71,15 @@ public interface CollisionListener {
             point = VectorFactory.getVector(is.readDouble(), is.readDouble());
             velocity = VectorFactory.getVector(is.readDouble(), is.readDouble());
         }
+
+        protected static void skipBase(DataInputStream is) throws IOException {
+            is.readLong();
+            is.readDouble();
+            is.readDouble();
+            is.readDouble();
+            is.readDouble();
+            // NOTE: make sure that methods write() and readBase() match!
+        }
     }
 
     /**
@@ -59,6 +93,21 @@ public interface CollisionListener {
         public Wall.Face wallFace;
         public Vector2D wallEdge;
 
+        @Override
+        public DiskWallCollision copy() {
+            return (DiskWallCollision) super.copy();
+        }
+
+        @Override
+        protected CollisionEvent createCopy() {
+            DiskWallCollision result = new DiskWallCollision();
+            result.disk = disk;
+            result.wall = wall;
+            result.wallFace = wallFace;
+            result.wallEdge = wallEdge;
+            return result;
+        }
+
         /**
          * @see java.lang.Object#toString()
          */
@@ -81,12 +130,23 @@ public interface CollisionListener {
             DiskWallCollision result = new DiskWallCollision();
             result.readBase(is);
             result.disk = Game.getSimulation().getDisk(is.readInt());
-            int wallIdx = is.readInt();
-            System.out.println("Client: Collision with wall " + wallIdx);
-            result.wall = Game.getSimulation().getWall(wallIdx);
+            result.wall = Game.getSimulation().getWall(is.readInt());
             return result;
         }
 
+        /**
+         * Skips a collision event written by {@link #write(DataOutputStream)}, without
+         * looking up the disk and the wall.
+         *
+         * @param is the input stream
+         * @throws IOException if an error occurs during reading
+         */
+        public static void skip(DataInputStream is) throws IOException {
+            skipBase(is);
+            is.readInt();
+            is.readInt();
+        }
+
         /**
          * @see java.lang.Object#equals(java.lang.Object)
          */
@@ -126,6 +186,19 @@ public interface CollisionListener {
         public Disk disk1;
         public Disk disk2;
 
+        @Override
+        public DiskDiskCollision copy() {
+            return (DiskDiskCollision) super.copy();
+        }
+
+        @Override
+        protected CollisionEvent createCopy() {
+            DiskDiskCollision result = new DiskDiskCollision();
+            result.disk1 = disk1;
+            result.disk2 = disk2;
+            return result;
+        }
+
         /**
          * @see java.lang.Object#toString()
          */
@@ -153,6 +226,19 @@ public interface CollisionListener {
             return result;
         }
 
+        /**
+         * Skips a collision event written by {@link #write(DataOutputStream)}, without
+         * looking up the disks.
+         *
+         * @param is the input stream
+         * @throws IOException if an error occurs during reading
+         */
+        public static void skip(DataInputStream is) throws IOException {
+            skipBase(is);
+            is.readInt();
+            is.readInt();
+        }
+
         /**
          * @see java.lang.Object#equals(java.lang.Object)
          */
@@ -0,0 +1,392 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import de.steffens.airhockey.model.CollisionListener.CollisionEvent;
+
+/**
+ * Event driven collision checks.
+ * Instead of searching all pairs of disks and walls for the next collision after
+ * each handled collision, the predicted collision times of all pairs are kept in
+ * a priority queue. When a collision is handled, only the predictions of the one
+ * or two involved disks are invalidated and calculated again.
+ * <p/>
+ * Predictions are done up to a horizon a bit beyond the current time limit, so they
+ * can be reused in the next simulation steps for all disks that keep moving along the
+ * same trajectory (e.g. resting disks). At the start of each step, the trajectory
+ * of every disk is compared to the trajectory its predictions were based on, so
+ * disks that were moved or accelerated from outside (players, friction, resets)
+ * are detected without any bookkeeping in the disk itself.
+ * <p/>
+ * Old queue entries are not removed when a disk changes, instead every entry
+ * remembers the versions of its disks and is dropped when it is polled with
+ * outdated versions.
+ */
+class CollisionScheduler {
+
+    /**
+     * How far beyond the time limit collisions are predicted, in ns.
+     */
+    public static long PREDICTION_HORIZON_NS = 50 * 1000 * 1000;
+
+    /**
+     * Maximum number of collisions per disk in one call, only to get out of endless
+     * loops in case of a broken simulation state.
+     */
+    public static int MAX_COLLISIONS_PER_DISK = 100;
+
+    /**
+     * Maximum difference between a disk position and the position expected from
+     * its last predicted trajectory.
+     */
+    private static final double MAX_TRAJECTORY_ERROR = 1e-9;
+
+    /**
+     * A predicted collision of a disk pair or a disk-wall pair.
+     * Predictions are recycled, see {@link CollisionScheduler#obtainPrediction}.
+     */
+    private static class Prediction implements Comparable<Prediction> {
+        CollisionEvent event;
+        /** index of the (first) disk */
+        int diskIdx;
+        /** index of the other disk, or -1 for wall collisions */
+        int otherIdx;
+        /** index of the wall, or -1 for disk-disk collisions */
+        int wallIdx;
+        int diskVersion;
+        int otherVersion;
+
+        void set(CollisionEvent event, int diskIdx, int otherIdx, int wallIdx,
+                int diskVersion, int otherVersion) {
+            this.event = event;
+            this.diskIdx = diskIdx;
+            this.otherIdx = otherIdx;
+            this.wallIdx = wallIdx;
+            this.diskVersion = diskVersion;
+            this.otherVersion = otherVersion;
+        }
+
+        /**
+         * Order by time. Collisions at the same time are ordered like the
+         * pairs are checked by {@link Collision}: by disk, walls first.
+         */
+        @Override
+        public int compareTo(Prediction o) {
+            if (event.time != o.event.time) {
+                return event.time < o.event.time ? -1 : 1;
+            }
+            if (diskIdx != o.diskIdx) {
+                return diskIdx < o.diskIdx ? -1 : 1;
+            }
+            if (wallIdx != o.wallIdx) {
+                // walls (wallIdx >= 0) before disks (wallIdx == -1)
+                return wallIdx < o.wallIdx ? 1 : -1;
+            }
+            return otherIdx < o.otherIdx ? -1 : (otherIdx == o.otherIdx ? 0 : 1);
+        }
+    }
+
+    private final BroadPhase broadPhase = new BroadPhase();
+
+    private final PriorityQueue<Prediction> queue = new PriorityQueue<Prediction>();
+
+    /** unused predictions */
+    private final ArrayList<Prediction> freePredictions = new ArrayList<Prediction>();
+
+    private final Collision engine;
+    private final CollisionEventPool eventPool;
+
+    /** the walls and disks the predictions are based on */
+    private final List<Wall> knownWalls = new ArrayList<Wall>();
+    private final List<Disk> knownDisks = new ArrayList<Disk>();
+
+    /** per disk: version of its trajectory, increased on every change */
+    private int[] versions = new int[0];
+
+    /** per disk: the trajectory the predictions are based on */
+    private double[] refX = new double[0];
+    private double[] refY = new double[0];
+    private double[] refVX = new double[0];
+    private double[] refVY = new double[0];
+    private long[] refTime = new long[0];
+
+    /** per disk: predictions are complete up to this time */
+    private long[] horizon = new long[0];
+
+    /** per disk: trajectory changed in the current step */
+    private boolean[] changed = new boolean[0];
+
+
+    /**
+     * Create a new scheduler.
+     *
+     * @param engine the collision engine used for the exact collision checks
+     */
+    CollisionScheduler(Collision engine) {
+        this.engine = engine;
+        this.eventPool = engine.eventPool;
+    }
+
+
+    /**
+     * Check for collisions between the given list of disks and walls up to the
+     * given time limit and handle them.
+     *
+     * @param walls             the list of walls
+     * @param disks             the list of disks
+     * @param handledCollisions the list to add the handled collisions to
+     * @param afterTime         only handle collisions after this time
+     * @param timeLimit         only handle collisions up to this time
+     */
+    void checkCollisions(List<Wall> walls, List<Disk> disks,
+            List<CollisionEvent> handledCollisions, long afterTime, long timeLimit) {
+
+        boolean reset = updateObjects(walls, disks);
+        long predictionLimit = timeLimit + PREDICTION_HORIZON_NS;
+        int diskCt = disks.size();
+
+        // find the disks that have to be predicted again
+        for (int i = 0; i < diskCt; i++) {
+            changed[i] = reset || horizon[i] < timeLimit || !onTrajectory(i, disks.get(i));
+        }
+        broadPhase.update(walls, disks, predictionLimit);
+        for (int i = 0; i < diskCt; i++) {
+            if (changed[i]) {
+                startTrajectory(i, disks.get(i), predictionLimit);
+            }
+        }
+        for (int i = 0; i < diskCt; i++) {
+            Disk disk = disks.get(i);
+            if (changed[i]) {
+                int wallCt = broadPhase.getWallCandidateCount(i);
+                for (int n = 0; n < wallCt; n++) {
+                    predict(disk, i, walls, broadPhase.getWallCandidate(i, n), null,
+                        afterTime, predictionLimit);
+                }
+            }
+            int candidateCt = broadPhase.getDiskCandidateCount(i);
+            for (int n = 0; n < candidateCt; n++) {
+                int other = broadPhase.getDiskCandidate(i, n);
+                if (changed[i] || changed[other]) {
+                    predict(disk, i, disks, other, null, afterTime, predictionLimit);
+                }
+            }
+        }
+
+        // handle the collisions in time order
+        int maxCollisions = MAX_COLLISIONS_PER_DISK * Math.max(1, diskCt);
+        while (!queue.isEmpty() && queue.peek().event.time <= timeLimit) {
+            Prediction next = queue.poll();
+            if (!isValid(next)) {
+                eventPool.release(next.event);
+                releasePrediction(next);
+                continue;
+            }
+            CollisionEvent collision = next.event;
+            int diskIdx = next.diskIdx;
+            int otherIdx = next.otherIdx;
+            releasePrediction(next);
+            assert afterTime <= collision.time;
+
+            if (Collision.DEBUG_COLLISIONS) {
+                Collision.sanityChecks(disks, walls);
+                System.out.println("Found collision in time [" + afterTime
+                    + " .. " + timeLimit + "]");
+            }
+
+            engine.handleCollision(collision, handledCollisions);
+            handledCollisions.add(collision);
+
+            if (!Collision.sanityChecks(disks, walls)) {
+                System.out.println("Insane after handleCollision at time " + collision.time);
+            }
+
+            afterTime = collision.time;
+            if (--maxCollisions <= 0) {
+                System.out.println("Insane number of collisions => Exiting collision check.");
+                // predict everything again in the next step
+                knownDisks.clear();
+                break;
+            }
+
+            // only the involved disks changed, predict them again
+            startTrajectory(diskIdx, disks.get(diskIdx), predictionLimit);
+            if (otherIdx >= 0) {
+                startTrajectory(otherIdx, disks.get(otherIdx), predictionLimit);
+            }
+            predictAll(diskIdx, walls, disks, -1, collision, afterTime, predictionLimit);
+            if (otherIdx >= 0) {
+                predictAll(otherIdx, walls, disks, diskIdx, collision,
+                    afterTime, predictionLimit);
+            }
+        }
+    }
+
+
+    /**
+     * Compare the given objects with the objects of the last call, and forget all
+     * predictions if they changed.
+     *
+     * @return <code>true</code>, if all predictions were dropped
+     */
+    private boolean updateObjects(List<Wall> walls, List<Disk> disks) {
+        if (sameObjects(knownWalls, walls) && sameObjects(knownDisks, disks)) {
+            return false;
+        }
+        knownWalls.clear();
+        knownWalls.addAll(walls);
+        knownDisks.clear();
+        knownDisks.addAll(disks);
+        while (!queue.isEmpty()) {
+            Prediction prediction = queue.poll();
+            eventPool.release(prediction.event);
+            releasePrediction(prediction);
+        }
+
+        int diskCt = disks.size();
+        if (versions.length < diskCt) {
+            versions = new int[diskCt];
+            refX = new double[diskCt];
+            refY = new double[diskCt];
+            refVX = new double[diskCt];
+            refVY = new double[diskCt];
+            refTime = new long[diskCt];
+            horizon = new long[diskCt];
+            changed = new boolean[diskCt];
+        }
+        return true;
+    }
+
+
+    private static boolean sameObjects(List<?> known, List<?> current) {
+        if (known.size() != current.size()) {
+            return false;
+        }
+        for (int i = 0; i < known.size(); i++) {
+            if (known.get(i) != current.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Check, if the disk still moves along the trajectory of its predictions.
+     */
+    private boolean onTrajectory(int diskIdx, Disk disk) {
+        DiskStore store = disk.store;
+        int slot = disk.slot;
+        if (store.vx[slot] != refVX[diskIdx] || store.vy[slot] != refVY[diskIdx]) {
+            return false;
+        }
+        double deltaT = store.timestamp[slot] - refTime[diskIdx];
+        double expectedX = refX[diskIdx] + refVX[diskIdx] * deltaT;
+        double expectedY = refY[diskIdx] + refVY[diskIdx] * deltaT;
+        return Math.abs(store.x[slot] - expectedX) <= MAX_TRAJECTORY_ERROR
+            && Math.abs(store.y[slot] - expectedY) <= MAX_TRAJECTORY_ERROR;
+    }
+
+
+    /**
+     * Invalidate all predictions of the given disk and remember its current trajectory.
+     */
+    private void startTrajectory(int diskIdx, Disk disk, long predictionLimit) {
+        versions[diskIdx]++;
+        DiskStore store = disk.store;
+        int slot = disk.slot;
+        refX[diskIdx] = store.x[slot];
+        refY[diskIdx] = store.y[slot];
+        refVX[diskIdx] = store.vx[slot];
+        refVY[diskIdx] = store.vy[slot];
+        refTime[diskIdx] = store.timestamp[slot];
+        horizon[diskIdx] = predictionLimit;
+        broadPhase.updateDisk(diskIdx, disk, predictionLimit);
+    }
+
+
+    /**
+     * Predict all collisions of the given disk.
+     *
+     * @param skipDisk    don't predict collisions with this disk (already done), may be -1
+     * @param lastHandled the last handled collision, which is not predicted again
+     */
+    private void predictAll(int diskIdx, List<Wall> walls, List<Disk> disks, int skipDisk,
+            CollisionEvent lastHandled, long afterTime, long predictionLimit) {
+        Disk disk = disks.get(diskIdx);
+        for (int w = 0; w < walls.size(); w++) {
+            if (broadPhase.overlapsWall(diskIdx, w)) {
+                predict(disk, diskIdx, walls, w, lastHandled, afterTime, predictionLimit);
+            }
+        }
+        for (int d = 0; d < disks.size(); d++) {
+            if (d != diskIdx && d != skipDisk && broadPhase.overlapsDisk(diskIdx, d)) {
+                if (d < diskIdx) {
+                    predict(disks.get(d), d, disks, diskIdx, lastHandled, afterTime, predictionLimit);
+                } else {
+                    predict(disk, diskIdx, disks, d, lastHandled, afterTime, predictionLimit);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Predict the collision of a disk with a wall or another disk and queue it.
+     *
+     * @param objects either the wall list or the disk list
+     * @param idx     the index in the given list
+     */
+    private void predict(Disk disk, int diskIdx, List<?> objects, int idx,
+            CollisionEvent lastHandled, long afterTime, long predictionLimit) {
+        Object other = objects.get(idx);
+        CollisionEvent collision;
+        Prediction prediction;
+        if (other instanceof Wall) {
+            collision = engine.getCollision(disk, (Wall) other, afterTime, predictionLimit);
+            if (collision == null || collision.equals(lastHandled)) {
+                eventPool.release(collision);
+                return;
+            }
+            prediction = obtainPrediction();
+            prediction.set(collision, diskIdx, -1, idx, versions[diskIdx], 0);
+        } else {
+            collision = engine.getCollision(disk, (Disk) other, afterTime, predictionLimit);
+            if (collision == null || collision.equals(lastHandled)) {
+                eventPool.release(collision);
+                return;
+            }
+            prediction = obtainPrediction();
+            prediction.set(collision, diskIdx, idx, -1, versions[diskIdx], versions[idx]);
+        }
+        assert afterTime <= collision.time;
+        queue.add(prediction);
+    }
+
+
+    private Prediction obtainPrediction() {
+        int size = freePredictions.size();
+        if (size == 0) {
+            return new Prediction();
+        }
+        return freePredictions.remove(size - 1);
+    }
+
+
+    private void releasePrediction(Prediction prediction) {
+        prediction.event = null;
+        freePredictions.add(prediction);
+    }
+
+
+    private boolean isValid(Prediction prediction) {
+        return prediction.diskVersion == versions[prediction.diskIdx]
+            && (prediction.otherIdx < 0
+                || prediction.otherVersion == versions[prediction.otherIdx]);
+    }
+}
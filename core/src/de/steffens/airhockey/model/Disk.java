@@ -164,6 +164,19 @@ public class Disk extends MovingObject {
         // NOTE: make sure that methods writeUpdate() and skipUpdate() match!!!!
     }
 
+    /**
+     * Sets the changeable attributes of the disk, as received
+     * in a delta update (see {@link SnapshotDecoder}).
+     */
+    void update(double x, double y, double vx, double vy, double acceleration,
+                short lastHitPlayerIndex, short secondLastHitPlayerIndex) {
+        setPosition(getPosition().reset(x, y));
+        setVelocity(getVelocity().reset(vx, vy));
+        setAcceleration(acceleration);
+        this.lastHitPlayerIndex = lastHitPlayerIndex;
+        this.secondLastHitPlayerIndex = secondLastHitPlayerIndex;
+    }
+
 
     public static void skipUpdate(DataInputStream is) throws IOException {
         is.readDouble();
@@ -0,0 +1,304 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.model;
+
+import de.steffens.airhockey.model.vector.Vector2D;
+import de.steffens.airhockey.model.vector.VectorFactory;
+
+/**
+ * Packed state of moving objects.
+ * Positions, velocities, accelerations and timestamps of all objects are kept in
+ * primitive arrays (structure of arrays), so bulk updates and collision checks run
+ * over contiguous memory instead of chasing vector objects all over the heap.
+ * <p/>
+ * Every {@link MovingObject} is a view on one slot of a store. Objects that are not
+ * part of a simulation have a small store of their own; when a disk is added to a
+ * simulation, its state is moved into the simulation's store using the disk index
+ * as slot.
+ */
+public class DiskStore {
+
+    double[] x;
+    double[] y;
+    double[] vx;
+    double[] vy;
+    double[] acceleration;
+    long[] timestamp;
+
+    /** slot is in use */
+    private boolean[] used;
+    /** the position of the slot is updated by {@link #updatePositions(long, long)} */
+    private boolean[] updatePosition;
+
+    /** all used slots are below this index */
+    private int size = 0;
+
+
+    /**
+     * Create a new store with room for the given number of objects.
+     * The store grows automatically if more objects are added.
+     *
+     * @param capacity the initial capacity
+     */
+    public DiskStore(int capacity) {
+        x = new double[capacity];
+        y = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        acceleration = new double[capacity];
+        timestamp = new long[capacity];
+        used = new boolean[capacity];
+        updatePosition = new boolean[capacity];
+    }
+
+
+    /**
+     * Move the state of the given disk into this store. The slot is the
+     * index of the disk, so it has to be set before.
+     *
+     * @param disk            the disk to add
+     * @param updatePositions the position of the disk is updated by
+     *                        {@link #updatePositions(long, long)}
+     */
+    public void add(MovingObject disk, boolean updatePositions) {
+        int slot = disk.getIndex();
+        ensureCapacity(slot + 1);
+        assert !used[slot] : "slot " + slot + " is used twice";
+        used[slot] = true;
+        updatePosition[slot] = updatePositions;
+        size = Math.max(size, slot + 1);
+        disk.moveTo(this, slot);
+    }
+
+
+    /**
+     * Remove the given disk from this store. The disk keeps its state
+     * in a store of its own.
+     *
+     * @param disk the disk to remove
+     */
+    public void remove(MovingObject disk) {
+        if (disk.store != this) {
+            return;
+        }
+        int slot = disk.slot;
+        disk.moveTo(new DiskStore(1), 0);
+        used[slot] = false;
+        updatePosition[slot] = false;
+        while (size > 0 && !used[size - 1]) {
+            size--;
+        }
+    }
+
+
+    /**
+     * Update the position of all objects that were added for position updates,
+     * see {@link MovingObject#update(long)}.
+     * The friction is applied for the given step length, not for the time since the
+     * objects' timestamps, as collisions within the step move the timestamps.
+     *
+     * @param time     the new time
+     * @param stepTime the length of the simulation step in ns
+     */
+    public void updatePositions(long time, long stepTime) {
+        for (int i = 0; i < size; i++) {
+            if (updatePosition[i]) {
+                update(i, time, stepTime);
+            }
+        }
+    }
+
+
+    /**
+     * Set the timestamp of all objects in this store.
+     *
+     * @param time the new time
+     */
+    public void setTimestamps(long time) {
+        for (int i = 0; i < size; i++) {
+            if (used[i]) {
+                timestamp[i] = time;
+            }
+        }
+    }
+
+
+    /**
+     * Update the position and timestamp of the object in the given slot.
+     *
+     * @param slot         the slot
+     * @param time         the new time
+     * @param frictionTime the time in ns to apply the friction for
+     */
+    void update(int slot, long time, long frictionTime) {
+        double deltaT = (time - timestamp[slot]);
+        x[slot] = x[slot] + (vx[slot] * deltaT);
+        y[slot] = y[slot] + (vy[slot] * deltaT);
+        timestamp[slot] = time;
+        // simple friction model:
+        // multiply velocity with an acceleration factor < 1 per reference time
+        // (one frame at 60 fps), so the result does not depend on the update rate.
+        double acc = acceleration[slot];
+        if (acc != 1.0 && frictionTime > 0) {
+            // reduce the acceleration factor even more if the speed is near max speed.
+            double value = Math.sqrt(vx[slot] * vx[slot] + vy[slot] * vy[slot]);
+            acc = acc - MovingObject.HIGH_VELOCITY_FRICTION * (value / MovingObject.MAX_VELOCITY_VALUE);
+            if (frictionTime != MovingObject.FRICTION_REFERENCE_TIME) {
+                acc = Math.pow(acc, (double) frictionTime / MovingObject.FRICTION_REFERENCE_TIME);
+            }
+            vx[slot] = vx[slot] * acc;
+            vy[slot] = vy[slot] * acc;
+        }
+    }
+
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= x.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, x.length * 2);
+        x = copyOf(x, newCapacity);
+        y = copyOf(y, newCapacity);
+        vx = copyOf(vx, newCapacity);
+        vy = copyOf(vy, newCapacity);
+        acceleration = copyOf(acceleration, newCapacity);
+        long[] newTimestamp = new long[newCapacity];
+        System.arraycopy(timestamp, 0, newTimestamp, 0, timestamp.length);
+        timestamp = newTimestamp;
+        boolean[] newUsed = new boolean[newCapacity];
+        System.arraycopy(used, 0, newUsed, 0, used.length);
+        used = newUsed;
+        boolean[] newUpdatePosition = new boolean[newCapacity];
+        System.arraycopy(updatePosition, 0, newUpdatePosition, 0, updatePosition.length);
+        updatePosition = newUpdatePosition;
+    }
+
+
+    private static double[] copyOf(double[] array, int length) {
+        double[] result = new double[length];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+
+
+    /**
+     * A mutable vector that reads and writes the position or velocity
+     * of a moving object in its store. With immutable vectors, the moving
+     * object hands out copies instead, see {@link MovingObject#getPosition()}.
+     */
+    static final class StateVector extends Vector2D {
+
+        private final MovingObject owner;
+        private final boolean isVelocity;
+
+        StateVector(MovingObject owner, boolean isVelocity) {
+            this.owner = owner;
+            this.isVelocity = isVelocity;
+        }
+
+        @Override
+        public synchronized double getX() {
+            return isVelocity ? owner.store.vx[owner.slot] : owner.store.x[owner.slot];
+        }
+
+        @Override
+        public synchronized double getY() {
+            return isVelocity ? owner.store.vy[owner.slot] : owner.store.y[owner.slot];
+        }
+
+        private void set(double newX, double newY) {
+            DiskStore store = owner.store;
+            int slot = owner.slot;
+            if (isVelocity) {
+                store.vx[slot] = newX;
+                store.vy[slot] = newY;
+            } else {
+                store.x[slot] = newX;
+                store.y[slot] = newY;
+            }
+        }
+
+        @Override
+        public synchronized Vector2D getNormalized() {
+            double value = getValue();
+
+            assert value != 0;
+
+            if (Math.abs(value) < EPSILON) {
+                System.out.println("WARNING: normalizing a very short vector");
+            }
+            set(getX() / value, getY() / value);
+            return this;
+        }
+
+        @Override
+        public synchronized Vector2D getInverse() {
+            set(getX() * -1.0, getY() * -1.0);
+            return this;
+        }
+
+        @Override
+        public synchronized Vector2D add(Vector2D vector2) {
+            synchronized (vector2) {
+                set(getX() + vector2.getX(), getY() + vector2.getY());
+            }
+            return this;
+        }
+
+        @Override
+        public synchronized Vector2D addMultiple(Vector2D vector2, double factor) {
+            synchronized (vector2) {
+                set(getX() + (vector2.getX() * factor), getY() + (vector2.getY() * factor));
+            }
+            return this;
+        }
+
+        @Override
+        public synchronized Vector2D subtract(Vector2D vector2) {
+            synchronized (vector2) {
+                set(getX() - vector2.getX(), getY() - vector2.getY());
+            }
+            return this;
+        }
+
+        @Override
+        public synchronized Vector2D multiply(double factor) {
+            if ((factor != 0) && (Math.abs(factor) < EPSILON)) {
+                System.out.println("WARNING: multiplying vector with a very small factor");
+            }
+            set(getX() * factor, getY() * factor);
+            return this;
+        }
+
+        @Override
+        public synchronized Vector2D getVelocity(Vector2D position, Vector2D destination, long deltaT) {
+            synchronized (position) {
+                synchronized (destination) {
+                    set((destination.getX() - position.getX()) / deltaT,
+                        (destination.getY() - position.getY()) / deltaT);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public synchronized Vector2D copy() {
+            return VectorFactory.getVector(getX(), getY());
+        }
+
+        @Override
+        public synchronized Vector2D reset(double x, double y) {
+            set(x, y);
+            return this;
+        }
+
+        @Override
+        public synchronized Vector2D reset(Vector2D vector2) {
+            synchronized (vector2) {
+                set(vector2.getX(), vector2.getY());
+            }
+            return this;
+        }
+    }
+}
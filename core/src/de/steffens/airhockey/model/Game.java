@@ -6,130 +6,174 @@ package de.steffens.airhockey.model;
 
 import com.badlogic.gdx.Gdx;
 
+import java.io.File;
+
 import de.steffens.airhockey.AirhockeyGame;
 import de.steffens.airhockey.GameConfiguration;
 import de.steffens.airhockey.control.Player;
+import de.steffens.airhockey.net.MatchPlayer;
 import de.steffens.airhockey.view.GLDisplay;
 
 /**
  * Global state and objects of the game.
  * This class holds references that are used everywhere in the game, like the 
- * simulation and the playing field.
+ * simulation and the playing field. The objects belong to the {@link GameSession}
+ * of the calling thread, so several matches can run in one process.
  * 
  * @author Steffen Schreiber
  */
 public class Game {
 
-    private static PlayingField field;
-    private static Simulation simulation;
-    private static Player[] players;
-    private static int[] score;
-    private static Disk puck;
-    private static GLDisplay display = null;
-    private static GameConfiguration config = null;
+    /** the session used by threads without a session of their own */
+    private static final GameSession defaultSession = new GameSession();
+
+    /**
+     * the session bound to the current thread, inherited by new threads;
+     * threads of a pool shared by sessions have to clear it, see GameHost
+     */
+    private static final InheritableThreadLocal<GameSession> currentSession =
+        new InheritableThreadLocal<GameSession>();
+
     private static AirhockeyGame main = null;
-    private static Console console = new Console();
-    private static long gameTimeoutMs = -1;
 
 
+    /**
+     * Returns the session of the calling thread. This is the session bound with
+     * {@link #setSession(GameSession)} in this thread or the thread that created it,
+     * or the default session.
+     *
+     * @return the current session
+     */
+    public static GameSession getSession() {
+        GameSession session = currentSession.get();
+        return session != null ? session : defaultSession;
+    }
+
+    /**
+     * Bind the given session to the calling thread. Threads created afterwards
+     * by this thread inherit the session.
+     *
+     * @param session the session, <code>null</code> to use the default session
+     * @return the session bound before, may be <code>null</code>
+     */
+    public static GameSession setSession(GameSession session) {
+        GameSession previous = currentSession.get();
+        if (session == null) {
+            currentSession.remove();
+        } else {
+            currentSession.set(session);
+        }
+        return previous;
+    }
+
     public static void setPlayingField(PlayingField field) {
-        Game.field = field;
+        getSession().setPlayingField(field);
     }
     
     public static PlayingField getPlayingField() {
-        return field;
+        return getSession().getPlayingField();
     }
     
     public static void setSimulation(Simulation simulation) {
-        Game.simulation = simulation;
+        getSession().setSimulation(simulation);
     }
     
     public static Simulation getSimulation() {
-        return simulation;
+        return getSession().getSimulation();
     }
     
     public static void setPlayers(Player[] players) {
-        Game.players = players;
-        Game.score = new int[players.length];
+        getSession().setPlayers(players);
     }
     
     public static Player getPlayer(int playerIndex) {
-        return players[playerIndex];
+        return getSession().getPlayer(playerIndex);
     }
     
     public static int getPlayerCount() {
-    	return players.length;
+    	return getSession().getPlayerCount();
     }
 
     public static int[] getScore() {
-        return score;
+        return getSession().getScore();
     }
 
     public static boolean isGameOver() {
-        if (System.currentTimeMillis() > gameTimeoutMs) {
-            return true;
-        }
-        for (int i : score) {
-            if (i >= config.getMaximumScore()) {
-                return true;
-            }
-        }
-        return false;
+        return getSession().isGameOver();
     }
 
-    public static long getMaximumGameLengthMs() { return config.getMaximumGameTimeMin() * 60 * 1000; }
+    public static long getMaximumGameLengthMs() { return getConfig().getMaximumGameTimeMin() * 60 * 1000; }
 
     public static void setPuck(Disk puck) {
-        Game.puck = puck;
+        getSession().setPuck(puck);
     }
 
     public static Disk getPuck() {
-        return puck;
+        return getSession().getPuck();
     }
 
     public static boolean isFullscreen() {
-        return config.isFullScreen();
+        return getConfig().isFullScreen();
     }
 
     public static int getTargetFPS() {
-        return config.getFramesPerSecond();
+        return getConfig().getFramesPerSecond();
+    }
+
+    public static int getTickRate() {
+        return getConfig().getTickRate();
+    }
+
+    public static int getMaxSubSteps() {
+        return getConfig().getMaxSubSteps();
     }
 
 	public static boolean isBreakout() {
-	    return config.isBreakout();
+	    return getConfig().isBreakout();
     }
 
 	public static boolean isClient() {
-	    return config.getPort() > 0 && config.getServerAddress() != null;
+	    return isReplay() || (getConfig().getPort() > 0 && getConfig().getServerAddress() != null);
     }
 
 	public static boolean isServer() {
-	    return config.getPort() > 0 && config.getServerAddress() == null;
+	    return !isReplay() && getConfig().getPort() > 0 && getConfig().getServerAddress() == null;
+    }
+
+    /**
+     * Check, if a recorded match is played. The game is shown like on a client.
+     */
+    public static boolean isReplay() {
+        return getConfig().getReplayFile() != null;
     }
 	
 	public static void setDisplay(GLDisplay display) {
-	    Game.display = display;
+	    getSession().setDisplay(display);
     }
 
 	public static GLDisplay getDisplay() {
-	    return display;
+	    return getSession().getDisplay();
     }
 
 
     public static Console getConsole() {
-        return console;
+        return getSession().getConsole();
     }
 
     public static void setConfiguration(GameConfiguration config) {
-	    Game.config = config;
+	    getSession().setConfiguration(config);
+    }
+
+    private static GameConfiguration getConfig() {
+        return getSession().getConfiguration();
     }
 
 	public static boolean isDemo() {
-		return config.isDemo();
+		return getConfig().isDemo();
 	}
 
 	public static boolean showCursor() {
-		return config.showCursor();
+		return getConfig().showCursor();
 	}
 
 
@@ -141,15 +185,25 @@ public class Game {
     public static void createGame(GameConfiguration gameConfig) {
         getDisplay().dispose();
         getSimulation().stop();
+        getSession().stopRecording();
+        if (MatchPlayer.getActive() != null) {
+            MatchPlayer.getActive().close();
+        }
 
         main.createGame(gameConfig);
     }
 
 
     public static void start() {
-        gameTimeoutMs = System.currentTimeMillis() + config.getMaximumGameTimeMin() * 60 * 1000;
-        field.resetState(true);
-        simulation.start();
+        GameSession session = getSession();
+        session.start();
+        if (!isClient() && getConfig().getRecordFile() != null) {
+            session.startRecording(new File(getConfig().getRecordFile()));
+        }
+        if (!isClient() && getConfig().getInputLogFile() != null) {
+            session.startInputLog(new File(getConfig().getInputLogFile()));
+        }
+        session.getSimulation().start();
     }
 
 
@@ -0,0 +1,323 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import de.steffens.airhockey.GameConfiguration;
+import de.steffens.airhockey.control.AIPlayer;
+import de.steffens.airhockey.control.HumanPlayer;
+import de.steffens.airhockey.control.LoggedPlayer;
+import de.steffens.airhockey.control.Player;
+import de.steffens.airhockey.control.RemotePlayer;
+import de.steffens.airhockey.model.vector.Vector2D;
+import de.steffens.airhockey.net.MatchRecorder;
+import de.steffens.airhockey.view.GLDisplay;
+
+/**
+ * The state of one match: the simulation, the playing field, the players and
+ * their score. The static accessors of {@link Game} return the objects of the
+ * session bound to the calling thread, see {@link Game#setSession(GameSession)}.
+ * A process with a display has a single session, a {@link de.steffens.airhockey.net.GameHost}
+ * runs many headless sessions side by side.
+ */
+public class GameSession {
+
+    private PlayingField field;
+    private Simulation simulation;
+    private Player[] players;
+    private int[] score;
+    private Disk puck;
+    private GLDisplay display = null;
+    private GameConfiguration config = null;
+    private final Console console = new Console();
+    private long gameTimeoutMs = -1;
+    /** the recorder of the match, null if not recorded */
+    private MatchRecorder recorder = null;
+    /** the log of the player inputs, null if not logged */
+    private InputLog inputLog = null;
+    /** the seed of the AI players */
+    private long seed = 0;
+
+
+    public void setPlayingField(PlayingField field) {
+        this.field = field;
+    }
+
+    public PlayingField getPlayingField() {
+        return field;
+    }
+
+    public void setSimulation(Simulation simulation) {
+        this.simulation = simulation;
+    }
+
+    public Simulation getSimulation() {
+        return simulation;
+    }
+
+    public void setPlayers(Player[] players) {
+        this.players = players;
+        this.score = new int[players.length];
+    }
+
+    public Player getPlayer(int playerIndex) {
+        return players[playerIndex];
+    }
+
+    public int getPlayerCount() {
+        return players.length;
+    }
+
+    public int[] getScore() {
+        return score;
+    }
+
+    public boolean isGameOver() {
+        if (isTimedOut()) {
+            return true;
+        }
+        for (int i : score) {
+            if (i >= config.getMaximumScore()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check, if the maximum game time is over. A deterministic simulation measures
+     * the game time in simulation time, see {@link Simulation#setGameEndTime(long)}.
+     *
+     * @return <code>true</code>, if the game time is over or the game was not started
+     */
+    public boolean isTimedOut() {
+        if (simulation.isDeterministic()) {
+            return simulation.isGameTimeOver();
+        }
+        return System.currentTimeMillis() > gameTimeoutMs;
+    }
+
+    /**
+     * Returns the seed of the AI players of a server side game, see
+     * {@link #setupServerGame(GameConfiguration)}.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the time the game ends, see {@link #start()}.
+     *
+     * @return the end time in ms, or -1 if the game was not started
+     */
+    public long getGameTimeoutMs() {
+        return gameTimeoutMs;
+    }
+
+    public void setPuck(Disk puck) {
+        this.puck = puck;
+    }
+
+    public Disk getPuck() {
+        return puck;
+    }
+
+    /**
+     * Set the display showing this session.
+     *
+     * @param display the display, <code>null</code> for a headless session
+     */
+    public void setDisplay(GLDisplay display) {
+        this.display = display;
+    }
+
+    /**
+     * Returns the display showing this session.
+     *
+     * @return the display, or <code>null</code> for a headless session
+     */
+    public GLDisplay getDisplay() {
+        return display;
+    }
+
+    public Console getConsole() {
+        return console;
+    }
+
+    public void setConfiguration(GameConfiguration config) {
+        this.config = config;
+    }
+
+    public GameConfiguration getConfiguration() {
+        return config;
+    }
+
+    /**
+     * Set up a new server side game in this session: the simulation, the playing
+     * field, the puck and the players. The local player (index 0) is a human or AI
+     * player, followed by the configured number of remote players, all other players
+     * are AI players. A dedicated server has no local player.
+     * The AI players are seeded with the configured seed, or a random seed. With a
+     * deterministic configuration, the simulation is deterministic.
+     * This has to be called in a thread bound to this session.
+     *
+     * @param config the game configuration
+     */
+    public void setupServerGame(GameConfiguration config) {
+        long seed = config.getSeed() != 0 ? config.getSeed() : new Random().nextLong();
+        setupServerGame(config, seed, null);
+    }
+
+    /**
+     * Set up a new server side game in this session, see {@link #setupServerGame(GameConfiguration)}.
+     * The players flagged as logged are {@link LoggedPlayer}s replaying an {@link InputLog},
+     * this is used by a {@link Resimulation}.
+     *
+     * @param config the game configuration
+     * @param seed   the seed of the AI players
+     * @param logged the flags of the logged players, null if there are none
+     */
+    public void setupServerGame(GameConfiguration config, long seed, boolean[] logged) {
+        this.config = config;
+        this.seed = seed;
+        simulation = new Simulation();
+        simulation.setDeterministic(config.isDeterministic() || logged != null);
+
+        // //////// the playing field, use default field for 2 players //////////
+
+        if (config.getNumberOfPlayers() == 2) {
+            field = new PlayingFieldTwoPlayers();
+        } else {
+            field = new PlayingFieldNPlayers(config.getNumberOfPlayers());
+        }
+
+        // //////// the disk model used for the puck /////////
+
+        puck = field.createPuckDisk();
+        puck.setAcceleration(0.9995);
+        puck.setMass(0.1);
+        simulation.addDisk(puck);
+
+        // //////// the players and their disks //////////
+
+        Player[] players = new Player[config.getNumberOfPlayers()];
+        Disk[] disks = new Disk[config.getNumberOfPlayers()];
+
+        int localPlayers = config.isDedicatedServer() ? 0 : 1;
+        int remotePlayerIdx = 1;
+        int aiIdx = 1;
+        for (short playerIdx = 0; playerIdx < config.getNumberOfPlayers(); playerIdx++) {
+
+            // the player disk
+            disks[playerIdx] = field.createPlayerDisk(playerIdx);
+            disks[playerIdx].setLastHitPlayerIndex(playerIdx);
+            Vector2D pos = field.getInitialPosition(playerIdx);
+            disks[playerIdx].setPosition(pos.getX(), pos.getY());
+            disks[playerIdx].setFixed();
+            simulation.addDisk(disks[playerIdx]);
+
+            // the player model
+            if (logged != null && logged[playerIdx]) {
+                players[playerIdx] = new LoggedPlayer(playerIdx, disks[playerIdx], puck);
+            } else if (playerIdx < localPlayers) {
+                if (config.isHumanPlayer()) {
+                    players[playerIdx] = new HumanPlayer(playerIdx, disks[playerIdx], puck);
+                    players[playerIdx].setName(config.getPlayerName());
+                }
+                else {
+                    players[playerIdx] = new AIPlayer(playerIdx, disks[playerIdx], puck);
+                    players[playerIdx].setName(config.getPlayerName() + " [AI]");
+                }
+                players[playerIdx].setColor(config.getPlayerColor());
+            } else {
+                if (remotePlayerIdx <= config.getRemotePlayers()) {
+                    players[playerIdx] = new RemotePlayer(playerIdx, disks[playerIdx], puck);
+                    players[playerIdx].setName("Network Player " + remotePlayerIdx++);
+                } else {
+                    players[playerIdx] = new AIPlayer(playerIdx, disks[playerIdx], puck);
+                    players[playerIdx].setName("Blechtrottel " + aiIdx++);
+                }
+            }
+            if (players[playerIdx] instanceof AIPlayer) {
+                ((AIPlayer) players[playerIdx]).setSeed(seed + playerIdx);
+            }
+            simulation.addPlayer(players[playerIdx]);
+        }
+
+        // all players created
+        setPlayers(players);
+
+        // player begins
+        puck.setPosition(field.getKickoffPosition(0));
+    }
+
+    /**
+     * Start the game: reset the playing field and set the end of the game.
+     * This does not start the simulation updates.
+     */
+    public void start() {
+        gameTimeoutMs = System.currentTimeMillis() + config.getMaximumGameTimeMin() * 60 * 1000;
+        simulation.setGameEndTime(simulation.getSimulationTime()
+            + config.getMaximumGameTimeMin() * 60 * 1000000000L);
+        field.resetState(true);
+    }
+
+    /**
+     * Record the match of this server side session into the given file, see
+     * {@link MatchRecorder}. A running recording is stopped. The recording starts
+     * with the next simulation update.
+     *
+     * @param file the file to write
+     */
+    public synchronized void startRecording(File file) {
+        stopRecording();
+        try {
+            recorder = new MatchRecorder(file, this);
+        } catch (IOException e) {
+            System.err.println("Unable to record the match to " + file);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Log the player inputs of this deterministic server side session into the given
+     * file, see {@link InputLog}. A running log is stopped. The inputs are logged
+     * from the next simulation update on.
+     *
+     * @param file the file to write
+     */
+    public synchronized void startInputLog(File file) {
+        if (inputLog != null) {
+            inputLog.close();
+            inputLog = null;
+        }
+        if (!simulation.isDeterministic()) {
+            System.err.println("The simulation is not deterministic, not logging the inputs to " + file);
+            return;
+        }
+        try {
+            inputLog = new InputLog(file, this);
+        } catch (IOException e) {
+            System.err.println("Unable to log the inputs to " + file);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stop recording the match and logging the player inputs, if they are.
+     */
+    public synchronized void stopRecording() {
+        if (recorder != null) {
+            recorder.close();
+            recorder = null;
+        }
+        if (inputLog != null) {
+            inputLog.close();
+            inputLog = null;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import de.steffens.airhockey.control.AIPlayer;
+import de.steffens.airhockey.control.Player;
+import de.steffens.airhockey.model.vector.Vector2D;
+
+/**
+ * The log of the player inputs of a deterministic match, see
+ * {@link Simulation#setDeterministic(boolean)}. AI players are seeded and simulated
+ * again, so only the inputs of the other players are logged: the velocity of their
+ * disk, whenever it changed. Together with the seed and the tick rate, this is enough
+ * to re-simulate the whole match, see {@link Resimulation}. Unlike a recording of the
+ * simulation state (see {@link de.steffens.airhockey.net.MatchRecorder}), the log does
+ * not grow with the number of disks, and steps without input changes cost nothing
+ * but a counter.
+ * <p/>
+ * The file starts with [int {@link #MAGIC}][int {@link #VERSION}][long seed]
+ * [int tick rate][long simulation time][game configuration][int player count], then
+ * for each player [boolean logged][double x][double y] with the initial velocity of
+ * the player's disk, and the player data of each player. The records follow, each
+ * starting with a byte:
+ * <ul>
+ * <li>{@link #RUN} [int n]: n simulation steps</li>
+ * <li>{@link #INPUT} [byte player][double x][double y]: the velocity of the player's
+ * disk from the next step on</li>
+ * <li>{@link #SKIP} [long time]: simulation time skipped to catch up with the real time</li>
+ * <li>{@link #PAUSE}: the simulation was paused or continued</li>
+ * <li>{@link #END} [long time][long checksum][int player count][int score]...: the
+ * final state, see {@link Simulation#getStateChecksum()}</li>
+ * </ul>
+ */
+public class InputLog {
+
+    /** the magic number of an input log, "AHIL" */
+    public static final int MAGIC = 0x4148494c;
+    /** the version of the file format */
+    public static final int VERSION = 1;
+
+    /** record of simulation steps without input changes */
+    public static final int RUN = 0;
+    /** record of a changed input of a player */
+    public static final int INPUT = 1;
+    /** record of skipped simulation time */
+    public static final int SKIP = 2;
+    /** record of a paused or continued simulation */
+    public static final int PAUSE = 3;
+    /** record of the final state, the last record */
+    public static final int END = 4;
+
+    /** the size of the buffer of the file, the log is written to disk when it is full */
+    public static int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final GameSession session;
+    private final DataOutputStream os;
+
+    /** flags of the logged players, AI players are not logged */
+    private final boolean[] logged;
+    /** the velocity of the logged players last written, as double bits */
+    private final long[] lastX;
+    private final long[] lastY;
+    /** the number of steps not written yet */
+    private int run = 0;
+    private int steps = 0;
+    private boolean error = false;
+
+
+    /**
+     * Create a new input log of the given session, that is started already.
+     * The inputs are logged from the next simulation step on.
+     *
+     * @param file    the file to write
+     * @param session the session, with a deterministic simulation
+     * @throws IOException if the file cannot be written
+     */
+    public InputLog(File file, GameSession session) throws IOException {
+        this.file = file;
+        this.session = session;
+        int playerCount = session.getPlayerCount();
+        logged = new boolean[playerCount];
+        lastX = new long[playerCount];
+        lastY = new long[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            Player player = session.getPlayer(i);
+            logged[i] = !(player instanceof AIPlayer);
+            // the logged players start with the velocity of their disk
+            Vector2D velocity = player.getControlledDisk().getVelocity();
+            lastX[i] = Double.doubleToLongBits(velocity.getX());
+            lastY[i] = Double.doubleToLongBits(velocity.getY());
+        }
+
+        os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        try {
+            writeHeader();
+        } catch (IOException e) {
+            os.close();
+            throw e;
+        }
+        session.getSimulation().setInputLog(this);
+    }
+
+
+    private void writeHeader() throws IOException {
+        Simulation simulation = session.getSimulation();
+        os.writeInt(MAGIC);
+        os.writeInt(VERSION);
+        os.writeLong(session.getSeed());
+        os.writeInt(session.getConfiguration().getTickRate());
+        os.writeLong(simulation.getSimulationTime());
+        session.getConfiguration().write(os);
+        os.writeInt(logged.length);
+        for (int i = 0; i < logged.length; i++) {
+            os.writeBoolean(logged[i]);
+            Vector2D velocity = session.getPlayer(i).getControlledDisk().getVelocity();
+            os.writeDouble(velocity.getX());
+            os.writeDouble(velocity.getY());
+        }
+        for (int i = 0; i < logged.length; i++) {
+            session.getPlayer(i).writeData(os);
+        }
+    }
+
+
+    /**
+     * Log the inputs of a simulation step. This is called by the simulation after
+     * the players updated the velocity of their disks.
+     *
+     * @param players the players of the simulation
+     */
+    void logStep(List<Player> players) {
+        if (error) {
+            return;
+        }
+        try {
+            for (int i = 0; i < logged.length; i++) {
+                if (!logged[i]) {
+                    continue;
+                }
+                Vector2D velocity = players.get(i).getControlledDisk().getVelocity();
+                long x = Double.doubleToLongBits(velocity.getX());
+                long y = Double.doubleToLongBits(velocity.getY());
+                if (x != lastX[i] || y != lastY[i]) {
+                    writeRun();
+                    os.writeByte(INPUT);
+                    os.writeByte(i);
+                    os.writeDouble(velocity.getX());
+                    os.writeDouble(velocity.getY());
+                    lastX[i] = x;
+                    lastY[i] = y;
+                }
+            }
+            run++;
+            steps++;
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+
+    /**
+     * Log simulation time skipped, see {@link Simulation#skipTime(long)}.
+     *
+     * @param newTime the new simulation time
+     */
+    void logSkip(long newTime) {
+        if (error) {
+            return;
+        }
+        try {
+            writeRun();
+            os.writeByte(SKIP);
+            os.writeLong(newTime);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+
+    /**
+     * Log that the simulation was paused or continued, see {@link Simulation#togglePause()}.
+     */
+    void logPause() {
+        if (error) {
+            return;
+        }
+        try {
+            writeRun();
+            os.writeByte(PAUSE);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+
+    private void writeRun() throws IOException {
+        if (run > 0) {
+            os.writeByte(RUN);
+            os.writeInt(run);
+            run = 0;
+        }
+    }
+
+
+    private void fail(IOException e) {
+        System.err.println("Error writing the input log " + file + ", stopping it.");
+        e.printStackTrace();
+        error = true;
+    }
+
+
+    /**
+     * Stop logging and close the file. The log ends with the final state of the
+     * simulation, so a re-simulation can be verified.
+     */
+    public void close() {
+        Simulation simulation = session.getSimulation();
+        // waits for a running simulation step
+        simulation.setInputLog(null);
+        try {
+            if (!error) {
+                writeRun();
+                os.writeByte(END);
+                os.writeLong(simulation.getSimulationTime());
+                os.writeLong(simulation.getStateChecksum());
+                int[] score = session.getScore();
+                os.writeInt(score.length);
+                for (int i = 0; i < score.length; i++) {
+                    os.writeInt(score[i]);
+                }
+            }
+            os.close();
+            System.out.println("Logged the inputs of " + steps + " simulation steps to " + file
+                + " (" + file.length() + " bytes).");
+        } catch (IOException e) {
+            System.err.println("Error closing the input log " + file);
+            e.printStackTrace();
+        }
+    }
+}
@@ -9,6 +9,8 @@ import de.steffens.airhockey.model.vector.VectorFactory;
 
 /**
  * Base class for linear moving objects.
+ * The state of the object is kept in a slot of a {@link DiskStore}, position and
+ * velocity vectors returned by this class are mutable views on that slot.
  *
  * @author Steffen Schreiber
  */
@@ -28,21 +30,52 @@ public abstract class MovingObject extends VisualObject {
      */
     public static final double HIGH_VELOCITY_FRICTION = 0.0015;
 
-    private Vector2D position = VectorFactory.getVector(0.0, 0.0);
+    /**
+     * The time in ns the acceleration factor is applied for, longer or shorter
+     * updates apply the friction accordingly. This is one frame at 60 fps.
+     */
+    public static final long FRICTION_REFERENCE_TIME = 1000000000L / 60;
+
+    /** the store holding the state of this object */
+    DiskStore store = new DiskStore(1);
+
+    /** the slot of this object in the store */
+    int slot = 0;
+
+    private Vector2D position = new DiskStore.StateVector(this, false);
+
+    private Vector2D velocity = new DiskStore.StateVector(this, true);
+
+
+    public MovingObject() {
+        store.acceleration[slot] = 1.0;
+    }
+
+
+    /**
+     * Move the state of this object to the given slot of another store.
+     *
+     * @param newStore the new store
+     * @param newSlot  the slot in the new store
+     */
+    void moveTo(DiskStore newStore, int newSlot) {
+        newStore.x[newSlot] = store.x[slot];
+        newStore.y[newSlot] = store.y[slot];
+        newStore.vx[newSlot] = store.vx[slot];
+        newStore.vy[newSlot] = store.vy[slot];
+        newStore.acceleration[newSlot] = store.acceleration[slot];
+        newStore.timestamp[newSlot] = store.timestamp[slot];
+        store = newStore;
+        slot = newSlot;
+    }
 
-    private Vector2D velocity = VectorFactory.getVector(0.0, 0.0);
-    
-    private double acceleration = 1.0;
-    
-    private long timestamp = 0;
-    
     
     public double getAcceleration() {
-        return acceleration;
+        return store.acceleration[slot];
     }
 
     public void setAcceleration(double acceleration) {
-        this.acceleration = acceleration;
+        store.acceleration[slot] = acceleration;
     }
 
     /**
@@ -93,7 +126,7 @@ public abstract class MovingObject extends VisualObject {
     private void checkVelocity() {
         if (velocity.getValue() > MAX_VELOCITY_VALUE) {
             System.out.println("Very high velocity set for " + this);
-            System.out.println("  last collision: " + Collision.lastCollisionEvent);
+            System.out.println("  last collision: " + Collision.getLastCollisionEvent());
             velocity = velocity.getNormalized().multiply(MAX_VELOCITY_VALUE);
         }
     }
@@ -101,10 +134,14 @@ public abstract class MovingObject extends VisualObject {
     /**
      * Get velocity vector components at current time.
      * Velocity unit is 1.0 units per nano second
+     * With immutable vectors, this is a copy of the current velocity.
      * 
      * @return the velocity vector 
      */
     public Vector2D getVelocity() {
+        if (VectorFactory.isImmutable()) {
+            return velocity.copy();
+        }
         return velocity;
     }
     
@@ -114,7 +151,7 @@ public abstract class MovingObject extends VisualObject {
      * @return the current time
      */
     public long getTimestampNs() {
-        return timestamp;
+        return store.timestamp[slot];
     }
     
     /**
@@ -123,15 +160,19 @@ public abstract class MovingObject extends VisualObject {
      * @param time
      */
     public void setTimestampNs(long time) {
-        timestamp = time;
+        store.timestamp[slot] = time;
     }
     
     /**
      * Get the position at the current timestamp.
+     * With immutable vectors, this is a copy of the current position.
      * 
      * @return the position
      */
     public Vector2D getPosition() {
+        if (VectorFactory.isImmutable()) {
+            return position.copy();
+        }
         return position;
     }
     
@@ -145,7 +186,7 @@ public abstract class MovingObject extends VisualObject {
      */
     public Vector2D getPositionAt(long time, Vector2D tmp) {
         // get time difference in ns
-        double deltaT = (time - timestamp);
+        double deltaT = (time - store.timestamp[slot]);
         // calculate new position at that time
         Vector2D result = tmp.reset(position).addMultiple(velocity, deltaT);
         
@@ -158,16 +199,7 @@ public abstract class MovingObject extends VisualObject {
      * @param time the new time
      */
     public void update(long time) {
-        position = getPositionAt(time, position);
-        timestamp = time;
-        // simple friction model:
-        // multiply velocity with an acceleration factor < 1 at each update.
-        if (acceleration != 1.0) {
-            // reduce the acceleration factor even more if the speed is near max speed.
-            double acc = acceleration - 
-                HIGH_VELOCITY_FRICTION * (velocity.getValue() / MAX_VELOCITY_VALUE);
-            velocity = velocity.multiply(acc);
-        }
+        store.update(slot, time, time - store.timestamp[slot]);
     }
 
 }
\ No newline at end of file
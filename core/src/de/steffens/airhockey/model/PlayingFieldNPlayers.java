@@ -73,7 +73,7 @@ public class PlayingFieldNPlayers extends AbstractPlayingFieldBase {
         // remove any breakout disks...
         for (Disk disk : breakoutDisks) {
             Game.getSimulation().removeDisk(disk);
-            Game.getDisplay().removeObject(disk);
+            removeFromDisplay(disk);
         }
         breakoutDisks.clear();
 
@@ -408,7 +408,7 @@ public class PlayingFieldNPlayers extends AbstractPlayingFieldBase {
 
                     // if the disk is not the main puck, remove it
                     if (e.disk != Game.getPuck()) {
-                        Game.getDisplay().removeObject(e.disk);
+                        removeFromDisplay(e.disk);
                         Game.getSimulation().removeDisk(e.disk);
                     }
 
@@ -529,10 +529,10 @@ public class PlayingFieldNPlayers extends AbstractPlayingFieldBase {
         newDisk.setPosition(c1.addMultiple(c2.subtract(c1), 0.5));
         newDisk.setMaterial(Material.doublePuckMaterial);
         newDisk.setMass(newDisk.getMass() / 2.0);
-        newDisk.getVelocity().reset(disk.getVelocity()).getInverse();
+        newDisk.setVelocity(disk.getVelocity().copy().getInverse());
         newDisk.setLastHitPlayerIndex(playerIndex);
         Game.getSimulation().addDisk(newDisk);
-        Game.getDisplay().addObject(newDisk);
+        addToDisplay(newDisk);
         breakoutDisks.add(newDisk);
     }
 
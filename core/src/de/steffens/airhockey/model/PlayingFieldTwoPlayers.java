@@ -423,7 +423,7 @@ public class PlayingFieldTwoPlayers extends AbstractPlayingFieldBase {
 
                     // if the disk is not the main puck, remove it
                     if (e.disk != Game.getPuck()) {
-                        Game.getDisplay().removeObject(e.disk);
+                        removeFromDisplay(e.disk);
                         Game.getSimulation().removeDisk(e.disk);
                     }
 
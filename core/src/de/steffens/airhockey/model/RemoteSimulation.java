@@ -3,22 +3,346 @@
  */
 package de.steffens.airhockey.model;
 
+import java.util.List;
+
 
 /**
  * This special class of simulation does no simulation by itself
  * but receives all position updates from a server.
+ * <p/>
+ * The received delta updates are kept in a buffer together with the simulation
+ * time of the server. The disks are shown as they were {@link #PLAYOUT_DELAY_MS}
+ * ago, or two update intervals if the server sends fewer updates, interpolated
+ * between the two updates before and after that time. So the
+ * disks move smoothly, even if the updates arrive with jitter or at a low rate.
+ * If no newer update arrived in time, the disks are moved on with their velocity
+ * for up to {@link #MAX_EXTRAPOLATION_MS}.
+ * <p/>
+ * The disk of the player of this client may be predicted by the client, see
+ * {@link #setPredictedDisk(Disk)}. It is not set to the received state, instead the
+ * latest received state is kept for the prediction to compare with.
+ * <p/>
+ * A {@link de.steffens.airhockey.net.MatchPlayer} feeds recorded updates instead,
+ * it pauses the simulation and resets it to jump to another time, see
+ * {@link #setPaused(boolean)} and {@link #reset()}.
  * 
  * @author Johannes Scheerer
  */
 public class RemoteSimulation extends Simulation {
 
+    /** Show interpolated disk states instead of applying updates as they arrive. */
+    public static boolean INTERPOLATION = true;
+    /** The minimum delay of the shown state behind the latest update. */
+    public static int PLAYOUT_DELAY_MS = 50;
+    /** The maximum time a late update is bridged by moving the disks with their velocity. */
+    public static int MAX_EXTRAPOLATION_MS = 100;
+
+    /** number of buffered updates */
+    private static final int BUFFER_SIZE = 32;
+    /** weight of a new sample of the clock offset, if it is larger than the current offset */
+    private static final double OFFSET_ADAPTION = 0.01;
+    /** weight of a new sample of the interval between updates */
+    private static final double INTERVAL_ADAPTION = 0.1;
+
+    /**
+     * The state of the disks of one update.
+     */
+    private static class Entry {
+        /** the simulation time of the server */
+        long time;
+        int diskCount;
+        double[] x = new double[0];
+        double[] y = new double[0];
+        double[] vx = new double[0];
+        double[] vy = new double[0];
+        double[] acceleration = new double[0];
+        short[] lastHitPlayerIndex = new short[0];
+        short[] secondLastHitPlayerIndex = new short[0];
+
+        void set(SnapshotDecoder decoder) {
+            int disks = decoder.getDiskCount();
+            if (x.length < disks) {
+                x = new double[disks];
+                y = new double[disks];
+                vx = new double[disks];
+                vy = new double[disks];
+                acceleration = new double[disks];
+                lastHitPlayerIndex = new short[disks];
+                secondLastHitPlayerIndex = new short[disks];
+            }
+            time = decoder.getTime();
+            diskCount = disks;
+            for (int i = 0; i < disks; i++) {
+                x[i] = decoder.getX(i);
+                y[i] = decoder.getY(i);
+                vx[i] = decoder.getVelocityX(i);
+                vy[i] = decoder.getVelocityY(i);
+                acceleration[i] = decoder.getAcceleration(i);
+                lastHitPlayerIndex[i] = decoder.getLastHitPlayerIndex(i);
+                secondLastHitPlayerIndex[i] = decoder.getSecondLastHitPlayerIndex(i);
+            }
+        }
+    }
+
+    private final Entry[] buffer = new Entry[BUFFER_SIZE];
+    /** index of the oldest update in the buffer */
+    private int first = 0;
+    private int count = 0;
+
+    /** local time minus server time, estimated from the updates arriving fastest */
+    private long clockOffset = 0;
+    private boolean clockOffsetValid = false;
+    /** the average interval between two updates in server time */
+    private long updateInterval = 0;
+    /** show the latest update as it is, see {@link #setPaused(boolean)} */
+    private boolean paused = false;
+
+    /** the disk predicted by the client, or null */
+    private Disk predictedDisk = null;
+    /** the sequence number of the last input of this client used by the server */
+    private int acknowledgedInput = -1;
+    /** the latest received state of the predicted disk, and the input it is based on */
+    private boolean serverStateNew = false;
+    private int serverInput = -1;
+    private double serverX;
+    private double serverY;
+
+
+    public RemoteSimulation() {
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            buffer[i] = new Entry();
+        }
+    }
+
+
 	@Override
-	public synchronized void update() {
+	public synchronized void update(long newTime) {
 	    // Just update the time stamp and notify the players.
-	    long newTime = getCurrentTime();
         for (int i = 0; i < Game.getPlayerCount(); i++) {
             Game.getPlayer(i).update(newTime);
         }
 		lastTime = newTime;
+        if (INTERPOLATION && count > 0) {
+            showState(paused ? get(count - 1).time
+                : newTime - clockOffset - Math.max(PLAYOUT_DELAY_MS * 1000000L, 2 * updateInterval));
+            publishSnapshot();
+        }
 	}
+
+
+    @Override
+    protected synchronized void applyUpdate(SnapshotDecoder decoder) {
+        if (predictedDisk != null) {
+            int index = getUpdatedDisks().indexOf(predictedDisk);
+            if (index >= 0 && index < decoder.getDiskCount()) {
+                serverX = decoder.getX(index);
+                serverY = decoder.getY(index);
+                serverInput = acknowledgedInput;
+                serverStateNew = true;
+            }
+        }
+        if (!INTERPOLATION) {
+            if (predictedDisk == null) {
+                super.applyUpdate(decoder);
+                return;
+            }
+            // keep the predicted state
+            double x = predictedDisk.getPosition().getX();
+            double y = predictedDisk.getPosition().getY();
+            double vx = predictedDisk.getVelocity().getX();
+            double vy = predictedDisk.getVelocity().getY();
+            super.applyUpdate(decoder);
+            predictedDisk.setPosition(x, y);
+            predictedDisk.setVelocity(vx, vy);
+            return;
+        }
+        long serverTime = decoder.getTime();
+        long offset = getCurrentTime() - serverTime;
+        if (!clockOffsetValid || offset < clockOffset) {
+            // the fastest update so far, or the server skipped time
+            clockOffset = offset;
+            clockOffsetValid = true;
+        } else {
+            // follow slowly, in case of clock drift or a changing network delay
+            clockOffset += (long) ((offset - clockOffset) * OFFSET_ADAPTION);
+        }
+
+        Entry entry;
+        if (count > 0 && get(count - 1).time >= serverTime) {
+            // the server time did not advance, the update replaces the last one
+            entry = get(count - 1);
+        } else if (count == BUFFER_SIZE) {
+            updateInterval(serverTime);
+            entry = get(0);
+            first = (first + 1) % BUFFER_SIZE;
+        } else {
+            updateInterval(serverTime);
+            entry = get(count);
+            count++;
+        }
+        entry.set(decoder);
+    }
+
+
+    /**
+     * Update the average interval between two updates with a new update. The
+     * server sends updates at a rate adapted to the client, the shown state is
+     * delayed by two intervals at least, so there is a newer update to interpolate to.
+     *
+     * @param serverTime the server time of the new update
+     */
+    private void updateInterval(long serverTime) {
+        if (count == 0) {
+            return;
+        }
+        long interval = serverTime - get(count - 1).time;
+        if (interval <= 0 || interval > 1000000000L) {
+            // the server skipped time
+            return;
+        }
+        if (updateInterval == 0) {
+            updateInterval = interval;
+        } else {
+            updateInterval += (long) ((interval - updateInterval) * INTERVAL_ADAPTION);
+        }
+    }
+
+
+    /**
+     * Set the disks to their state at the given server time.
+     *
+     * @param time the server time to show
+     */
+    private void showState(long time) {
+        // the last update not after the given time
+        int index = count - 1;
+        while (index > 0 && get(index).time > time) {
+            index--;
+        }
+        // older updates are no longer needed
+        first = (first + index) % BUFFER_SIZE;
+        count -= index;
+
+        Entry from = get(0);
+        List<Disk> disks = getUpdatedDisks();
+        int toUpdate = Math.min(from.diskCount, disks.size());
+        if (count > 1 && get(1).diskCount == from.diskCount && time > from.time) {
+            Entry to = get(1);
+            double t = (time - from.time) / (double) (to.time - from.time);
+            for (int i = 0; i < toUpdate; i++) {
+                if (disks.get(i) == predictedDisk) {
+                    continue;
+                }
+                disks.get(i).update(
+                    from.x[i] + (to.x[i] - from.x[i]) * t,
+                    from.y[i] + (to.y[i] - from.y[i]) * t,
+                    from.vx[i] + (to.vx[i] - from.vx[i]) * t,
+                    from.vy[i] + (to.vy[i] - from.vy[i]) * t,
+                    from.acceleration[i], from.lastHitPlayerIndex[i], from.secondLastHitPlayerIndex[i]);
+            }
+            return;
+        }
+
+        // no newer update yet: move on with the velocity for a short time
+        long deltaT = Math.max(0, Math.min(time - from.time, MAX_EXTRAPOLATION_MS * 1000000L));
+        for (int i = 0; i < toUpdate; i++) {
+            if (disks.get(i) == predictedDisk) {
+                continue;
+            }
+            disks.get(i).update(from.x[i] + from.vx[i] * deltaT, from.y[i] + from.vy[i] * deltaT,
+                from.vx[i], from.vy[i],
+                from.acceleration[i], from.lastHitPlayerIndex[i], from.secondLastHitPlayerIndex[i]);
+        }
+    }
+
+
+    /**
+     * Drop all buffered updates, and estimate the clock offset and the update
+     * interval again with the following updates. This is needed, if the server
+     * time of the following updates does not continue the previous updates.
+     */
+    public synchronized void reset() {
+        first = 0;
+        count = 0;
+        clockOffsetValid = false;
+        updateInterval = 0;
+    }
+
+
+    /**
+     * Pause or resume the simulation. While paused, the latest update is shown
+     * without interpolation. Resuming drops the buffered updates, see {@link #reset()},
+     * so the following updates are shown with the playout delay again.
+     *
+     * @param paused <code>true</code> to pause
+     */
+    public synchronized void setPaused(boolean paused) {
+        if (this.paused && !paused) {
+            reset();
+        }
+        this.paused = paused;
+    }
+
+
+    /**
+     * Let the client predict the state of the given disk. The disk is no longer
+     * set to the state received from the server.
+     *
+     * @param disk the disk of the player of this client
+     */
+    public synchronized void setPredictedDisk(Disk disk) {
+        predictedDisk = disk;
+    }
+
+
+    /**
+     * Set the sequence number of the last input of this client used by the server
+     * for the following updates.
+     *
+     * @param sequence the input sequence number
+     */
+    public synchronized void setAcknowledgedInput(int sequence) {
+        acknowledgedInput = sequence;
+    }
+
+
+    /**
+     * Check, if a new state of the predicted disk was received since the last call.
+     * The state is returned by {@link #getServerX()}, {@link #getServerY()} and
+     * {@link #getServerInput()}.
+     *
+     * @return <code>true</code>, if there is a new state
+     */
+    public synchronized boolean pollServerState() {
+        boolean result = serverStateNew;
+        serverStateNew = false;
+        return result;
+    }
+
+
+    /**
+     * Returns the input sequence number the latest received state of the predicted
+     * disk is based on.
+     *
+     * @return the sequence number, or -1 if no input was used yet
+     */
+    public synchronized int getServerInput() {
+        return serverInput;
+    }
+
+    public synchronized double getServerX() {
+        return serverX;
+    }
+
+    public synchronized double getServerY() {
+        return serverY;
+    }
+
+
+    /**
+     * Returns the i-th oldest buffered update.
+     */
+    private Entry get(int i) {
+        return buffer[(first + i) % BUFFER_SIZE];
+    }
 }
@@ -0,0 +1,287 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import de.steffens.airhockey.GameConfiguration;
+import de.steffens.airhockey.control.LoggedPlayer;
+import de.steffens.airhockey.model.vector.VectorFactory;
+
+/**
+ * Re-simulates a match from its {@link InputLog}, headless and as fast as possible.
+ * The match is set up like on the server, with the logged seed of the AI players,
+ * and {@link LoggedPlayer}s replaying the inputs of all other players. The simulation
+ * is advanced step by step without waiting for the real time, see {@link Simulation#step()}.
+ * As the simulation is deterministic, the re-simulation ends with exactly the logged
+ * final state, unless the log was changed or the simulation code behaves differently.
+ * This can be used for regression tests of the simulation, for the analysis of matches,
+ * and to detect manipulated results.
+ */
+public class Resimulation {
+
+    private final File file;
+    /** the complete input log */
+    private final byte[] data;
+
+    // the header of the log
+    private final long seed;
+    private final int tickRate;
+    private final long startTime;
+    private final GameConfiguration config;
+    private final boolean[] logged;
+    private final double[] velocityX;
+    private final double[] velocityY;
+    /** the offset of the player data in the log */
+    private final int playerDataOffset;
+
+    // the final state written to the log, endTime is -1 if the log has no end
+    private long endTime = -1;
+    private long endChecksum;
+    private int[] endScore;
+
+    // the result of the last run
+    private long steps;
+    private long time;
+    private long checksum;
+    private int[] score;
+    private boolean complete;
+
+
+    /**
+     * Read the input log from the given file.
+     *
+     * @param file the input log
+     * @throws IOException if the file cannot be read, or is no input log
+     */
+    public Resimulation(File file) throws IOException {
+        this.file = file;
+        this.data = readFile(file);
+        DataInputStream is = new DataInputStream(new ByteArrayInputStream(data));
+        if (is.readInt() != InputLog.MAGIC) {
+            throw new IOException("Not an input log: " + file);
+        }
+        int version = is.readInt();
+        if (version != InputLog.VERSION) {
+            throw new IOException("Unsupported version " + version + " of the input log " + file);
+        }
+        seed = is.readLong();
+        tickRate = is.readInt();
+        startTime = is.readLong();
+        config = GameConfiguration.createDedicatedServerConfig(new String[0]);
+        config.read(is);
+        int playerCount = is.readInt();
+        logged = new boolean[playerCount];
+        velocityX = new double[playerCount];
+        velocityY = new double[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            logged[i] = is.readBoolean();
+            velocityX[i] = is.readDouble();
+            velocityY[i] = is.readDouble();
+        }
+        playerDataOffset = data.length - is.available();
+    }
+
+
+    private static byte[] readFile(File file) throws IOException {
+        long length = file.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Input log too large: " + file);
+        }
+        byte[] data = new byte[(int) length];
+        DataInputStream is = new DataInputStream(new FileInputStream(file));
+        try {
+            is.readFully(data);
+        } finally {
+            is.close();
+        }
+        return data;
+    }
+
+
+    /**
+     * Re-simulate the match in the calling thread. Afterwards the result is available,
+     * see {@link #isVerified()}.
+     *
+     * @return <code>true</code>, if the re-simulation ended with the logged final state
+     * @throws IOException if the log cannot be parsed
+     */
+    public boolean run() throws IOException {
+        GameSession session = new GameSession();
+        GameSession previous = Game.setSession(session);
+        try {
+            session.setupServerGame(config, seed, logged);
+            Simulation simulation = session.getSimulation();
+            DataInputStream is = new DataInputStream(
+                new ByteArrayInputStream(data, playerDataOffset, data.length - playerDataOffset));
+            for (int i = 0; i < logged.length; i++) {
+                session.getPlayer(i).readData(is);
+                if (logged[i]) {
+                    ((LoggedPlayer) session.getPlayer(i)).setVelocity(velocityX[i], velocityY[i]);
+                }
+            }
+
+            // the simulation is not advanced before the start of the game
+            simulation.skipTime(startTime);
+            simulation.initFixedTimestep(tickRate, 1);
+            session.start();
+
+            steps = 0;
+            complete = false;
+            try {
+                while (!complete) {
+                    int record = is.readByte();
+                    switch (record) {
+                    case InputLog.RUN:
+                        int run = is.readInt();
+                        for (int n = 0; n < run; n++) {
+                            simulation.step();
+                        }
+                        steps += run;
+                        break;
+                    case InputLog.INPUT:
+                        LoggedPlayer player = (LoggedPlayer) session.getPlayer(is.readByte());
+                        player.setVelocity(is.readDouble(), is.readDouble());
+                        break;
+                    case InputLog.SKIP:
+                        simulation.skipTime(is.readLong());
+                        break;
+                    case InputLog.PAUSE:
+                        simulation.togglePause();
+                        break;
+                    case InputLog.END:
+                        readEnd(is);
+                        complete = true;
+                        break;
+                    default:
+                        throw new IOException("Illegal record " + record + " in the input log " + file);
+                    }
+                }
+            } catch (EOFException e) {
+                // the log was not closed, re-simulate up to its end
+            }
+            time = simulation.getSimulationTime();
+            checksum = simulation.getStateChecksum();
+            score = session.getScore().clone();
+        } finally {
+            Game.setSession(previous);
+        }
+        return isVerified();
+    }
+
+
+    private void readEnd(DataInputStream is) throws IOException {
+        endTime = is.readLong();
+        endChecksum = is.readLong();
+        endScore = new int[is.readInt()];
+        for (int i = 0; i < endScore.length; i++) {
+            endScore[i] = is.readInt();
+        }
+    }
+
+
+    /**
+     * Check, if the last run ended with the final state written to the log:
+     * the same simulation time, state checksum and score.
+     *
+     * @return <code>true</code>, if the re-simulation matches the log
+     */
+    public boolean isVerified() {
+        return complete && time == endTime && checksum == endChecksum
+            && Arrays.equals(score, endScore);
+    }
+
+    /**
+     * Check, if the log is complete. A log that was not closed is re-simulated
+     * up to its end, but cannot be verified.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns the number of simulation steps of the last run.
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Returns the simulation time played in the last run, in ns.
+     */
+    public long getPlayedTime() {
+        return time - startTime;
+    }
+
+    /**
+     * Returns the state checksum at the end of the last run, see
+     * {@link Simulation#getStateChecksum()}.
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Returns the score at the end of the last run.
+     */
+    public int[] getScore() {
+        return score;
+    }
+
+
+    /**
+     * Re-simulate an input log and compare the result with the logged final state.
+     * The arguments are the input log and optionally "-runs &lt;n&gt;" to re-simulate
+     * it n times, e.g. to measure the speed. The exit code is 1, if a run does not
+     * match the log.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: Resimulation <input log> [-runs <n>]");
+            System.exit(2);
+        }
+        VectorFactory.useMutableVector();
+        int runs = 1;
+        for (int i = 1; i + 1 < args.length; i++) {
+            if ("-runs".equals(args[i])) {
+                runs = Integer.parseInt(args[++i]);
+            }
+        }
+
+        Resimulation resimulation = new Resimulation(new File(args[0]));
+        boolean verified = true;
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            boolean matches = resimulation.run();
+            long duration = Math.max(1, System.nanoTime() - start);
+            verified &= matches;
+
+            long played = resimulation.getPlayedTime();
+            System.out.println("Re-simulated " + resimulation.getSteps() + " steps ("
+                + (played / 1000000000L) + " s) in " + (duration / 1000000L) + " ms, "
+                + (played / duration) + "x real time.");
+            System.out.print("Score " + Arrays.toString(resimulation.getScore())
+                + ", checksum " + Long.toHexString(resimulation.getChecksum()) + ": ");
+            if (!resimulation.isComplete()) {
+                System.out.println("the log has no final state.");
+            } else if (matches) {
+                System.out.println("matches the log.");
+            } else {
+                System.out.println("DIFFERS from the log with score "
+                    + Arrays.toString(resimulation.endScore) + ", checksum "
+                    + Long.toHexString(resimulation.endChecksum) + " at simulation time "
+                    + resimulation.endTime + " ns (re-simulated " + resimulation.time + " ns).");
+            }
+        }
+        System.exit(verified ? 0 : 1);
+    }
+}
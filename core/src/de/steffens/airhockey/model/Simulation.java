@@ -12,6 +12,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import de.steffens.airhockey.control.Player;
 import de.steffens.airhockey.model.CollisionListener.CollisionEvent;
@@ -35,10 +36,22 @@ public class Simulation {
     private final ArrayList<Disk> disks = new ArrayList<Disk>();
     /** list of all disks that should be updated by the simulation */
     private final ArrayList<Disk> updatePosDisks = new ArrayList<Disk>();
+
+    /** the collision engine of this simulation */
+    private final Collision collision = new Collision();
+
+    /** packed state of all known disks */
+    private final DiskStore diskStore = new DiskStore(16);
     
-    /** list of listeners interested in collision events */ 
-    private final ArrayList<CollisionListener> collisionListeners =
-        new ArrayList<CollisionListener>();
+    /** the collision events of the last update, recycled on the next update */
+    private final ArrayList<CollisionEvent> collisionEvents = new ArrayList<CollisionEvent>();
+
+    /**
+     * list of listeners interested in collision events, added and removed
+     * by other threads while the simulation notifies them
+     */
+    private final CopyOnWriteArrayList<CollisionListener> collisionListeners =
+        new CopyOnWriteArrayList<CollisionListener>();
     
     /** list of players */
     private final ArrayList<Player> players = new ArrayList<Player>();
@@ -58,8 +71,40 @@ public class Simulation {
     /** counter for calls to blockSimulation */
     private int blockSimulationCt = 0;
     
-    /** Timer used to regularly update the simulation */
-    private final Timer timer = new Timer(SIMULATION_THREAD_NAME, true);
+    /** Timer used to regularly update the simulation, created on start */
+    private Timer timer = null;
+
+    /** Thread running the fixed timestep loop, if enabled */
+    private Thread fixedTimestepThread = null;
+
+    /** flag indicating, that the simulation is advanced in fixed time steps */
+    private volatile boolean fixedTimestep = false;
+
+    /** fixed timestep state, see {@link #advanceFixedTimestep()} */
+    private long tickNs;
+    private int maxSubSteps;
+    private long fixedStepTime;
+    private long accumulator;
+    private long lastRealTime;
+
+    /** flag indicating, that the simulation does not depend on the real time */
+    private volatile boolean deterministic = false;
+
+    /** the simulation time the game ends in deterministic mode, see {@link #setGameEndTime(long)} */
+    private long gameEndTime = Long.MAX_VALUE;
+    private boolean gameEndNotified = false;
+
+    /** the log of the player inputs, null if not logged */
+    private InputLog inputLog = null;
+    
+    /**
+     * Snapshots of the disk state, reused once no reader holds them anymore.
+     * Only accessed by the thread updating the simulation.
+     */
+    private final ArrayList<SimulationSnapshot> snapshots = new ArrayList<SimulationSnapshot>();
+
+    /** the latest published snapshot */
+    private volatile SimulationSnapshot latestSnapshot = null;
     
     /** list of simulation listeners interested in position updates */
     private final ArrayList<SimulationListener> simulationListeners =
@@ -148,7 +193,7 @@ public class Simulation {
     /**
      * Notifies all registered game timeout listeners that the game time has been exceeded.
      */
-    private void notifyGameTimeoutListeners() {
+    public void notifyGameTimeoutListeners() {
         synchronized (timeoutListeners) {
             for (GameTimeoutListener l : timeoutListeners) {
                 l.gameTimeout();
@@ -176,6 +221,7 @@ public class Simulation {
     public synchronized void addDisk(Disk disk, boolean updatePositions) {
         disk.setTimestampNs(lastTime);
         disk.setIndex(diskIdx++);
+        diskStore.add(disk, updatePositions);
         disks.add(disk);
         if (updatePositions) {
             updatePosDisks.add(disk);
@@ -185,6 +231,16 @@ public class Simulation {
     public synchronized void removeDisk(Disk disk) {
         disks.remove(disk);
         updatePosDisks.remove(disk);
+        diskStore.remove(disk);
+    }
+
+    /**
+     * Returns the collision engine of this simulation.
+     *
+     * @return the collision engine
+     */
+    public Collision getCollision() {
+        return collision;
     }
 
     public List<Disk> getDisks() {
@@ -223,19 +279,112 @@ public class Simulation {
 
 
     /**
-     * Write current simulation state to the given output stream.
+     * Write the latest simulation state to the given output stream.
+     * This writes the latest snapshot and does not block simulation updates.
      * @param os the output stream
      * @throws IOException
      */
-    public synchronized void writeSimulationUpdate(DataOutputStream os) throws IOException {
-        blockSimulationUpdates();
-        // write number and positions of the moving disks
-        int disksNr = updatePosDisks.size();
-        os.writeInt(disksNr);
-        for (int i=0; i<disksNr; i++) {
-            updatePosDisks.get(i).writeUpdate(os);
+    public void writeSimulationUpdate(DataOutputStream os) throws IOException {
+        SimulationSnapshot snapshot = acquireSnapshot();
+        if (snapshot == null) {
+            synchronized (this) {
+                publishSnapshot();
+            }
+            snapshot = acquireSnapshot();
+        }
+        try {
+            // write number and positions of the moving disks
+            snapshot.writeUpdate(os);
+        } finally {
+            releaseSnapshot(snapshot);
         }
-        allowSimulationUpdates();
+    }
+
+
+    /**
+     * Write the latest simulation state and the given score as compact delta update
+     * to the given output stream. This does not block simulation updates.
+     * @param os the output stream
+     * @param encoder the encoder of the client the update is sent to
+     * @param score the score of all players
+     * @return the sequence number of the update, see {@link SnapshotEncoder#acknowledge(int)}
+     * @throws IOException
+     */
+    public int writeSimulationUpdate(DataOutputStream os, SnapshotEncoder encoder, int[] score)
+            throws IOException {
+        SimulationSnapshot snapshot = acquireSnapshot();
+        if (snapshot == null) {
+            synchronized (this) {
+                publishSnapshot();
+            }
+            snapshot = acquireSnapshot();
+        }
+        try {
+            return encoder.write(os, snapshot, score);
+        } finally {
+            releaseSnapshot(snapshot);
+        }
+    }
+
+
+    /**
+     * Returns the latest snapshot of the disk state, published at the end of the last
+     * simulation update. The snapshot does not change until it is released using
+     * {@link #releaseSnapshot(SimulationSnapshot)}. This never blocks the simulation.
+     *
+     * @return the latest snapshot, or <code>null</code> if the simulation was not
+     *         updated yet
+     */
+    public SimulationSnapshot acquireSnapshot() {
+        while (true) {
+            SimulationSnapshot snapshot = latestSnapshot;
+            if (snapshot == null) {
+                return null;
+            }
+            snapshot.references.incrementAndGet();
+            if (snapshot == latestSnapshot) {
+                return snapshot;
+            }
+            // a new snapshot was published in between, the old one may be reused already
+            snapshot.references.decrementAndGet();
+        }
+    }
+
+
+    /**
+     * Release a snapshot returned by {@link #acquireSnapshot()}. The snapshot
+     * must not be used afterwards.
+     *
+     * @param snapshot the snapshot, may be <code>null</code>
+     */
+    public void releaseSnapshot(SimulationSnapshot snapshot) {
+        if (snapshot != null) {
+            snapshot.references.decrementAndGet();
+        }
+    }
+
+
+    /**
+     * Take a snapshot of the current disk state and publish it as latest snapshot.
+     * This uses a snapshot that is neither the latest one nor held by any reader,
+     * with a single reader three snapshots are enough (triple buffering).
+     */
+    protected void publishSnapshot() {
+        SimulationSnapshot snapshot = null;
+        SimulationSnapshot latest = latestSnapshot;
+        for (int i = 0; i < snapshots.size(); i++) {
+            SimulationSnapshot candidate = snapshots.get(i);
+            if (candidate != latest && candidate.references.get() == 0) {
+                snapshot = candidate;
+                break;
+            }
+        }
+        if (snapshot == null) {
+            snapshot = new SimulationSnapshot();
+            snapshots.add(snapshot);
+        }
+        snapshot.capture(lastTime, disks, updatePosDisks);
+        latestSnapshot = snapshot;
     }
 
 
@@ -256,6 +405,7 @@ public class Simulation {
         for (int i=0; i<toUpdate; i++) {
             updatePosDisks.get(i).update(is);
         }
+        publishSnapshot();
         allowSimulationUpdates();
         // skip update data for unknown disks
         if (toSkip > 0) {
@@ -267,12 +417,69 @@ public class Simulation {
     }
 
     /**
-     * Update the simulation.
+     * Read a delta update written by {@link #writeSimulationUpdate(DataOutputStream, SnapshotEncoder, int[])}
+     * from the given input stream.
+     * @param is the input stream
+     * @param decoder the decoder of this client
+     * @return the sequence number of the update
+     * @throws IOException
+     */
+    public int readSimulationUpdate(DataInputStream is, SnapshotDecoder decoder) throws IOException {
+        // decode outside of the lock, only applying the state blocks the simulation
+        int sequence = decoder.read(is);
+        applyUpdate(decoder);
+        return sequence;
+    }
+
+    /**
+     * Set the disks to the state of the last update read by the given decoder.
+     * @param decoder the decoder of this client
+     */
+    protected synchronized void applyUpdate(SnapshotDecoder decoder) {
+        blockSimulationUpdates();
+        List<Disk> disks = getUpdatedDisks();
+        int toUpdate = Math.min(decoder.getDiskCount(), disks.size());
+        if (toUpdate < disks.size()) {
+            System.out.println("Client: no simulation data for " + (disks.size() - toUpdate) + " disks.");
+        }
+        for (int i = 0; i < toUpdate; i++) {
+            decoder.apply(i, disks.get(i));
+        }
+        publishSnapshot();
+        allowSimulationUpdates();
+    }
+
+    /**
+     * Returns the disks with a changing position, in the order of the simulation updates.
+     * @return the disks sent with every simulation update
+     */
+    protected List<Disk> getUpdatedDisks() {
+        return updatePosDisks;
+    }
+
+    /**
+     * Update the simulation to the current time.
      * This will update the simulation time, the players state and the positions of 
      * all moving objects.
+     * If the simulation runs with a fixed timestep, this does nothing, as the
+     * simulation is updated regularly by the fixed timestep loop.
      * 
      */
-    public synchronized void update() {
+    public void update() {
+        if (fixedTimestep || deterministic) {
+            return;
+        }
+        update(getCurrentTime());
+    }
+
+    /**
+     * Update the simulation to the given time.
+     * This will update the simulation time, the players state and the positions of 
+     * all moving objects.
+     * 
+     * @param newTime the new simulation time
+     */
+    public synchronized void update(long newTime) {
         while (blockSimulationCt > 0) {
             try {
                 wait();
@@ -280,8 +487,11 @@ public class Simulation {
                 e.printStackTrace();
             }
         }
-        
-        long newTime = System.nanoTime() - timeBase;
+
+        if (deterministic) {
+            // the playing field animations change the reachable areas of the players
+            Game.getPlayingField().update();
+        }
         
         if (!Collision.sanityChecks(disks, walls)) {
             System.out.println("Insane before updating time " + lastTime + " to " + newTime);
@@ -291,6 +501,9 @@ public class Simulation {
         for (Player player : players) {
             player.update(newTime);
         }
+        if (inputLog != null) {
+            inputLog.logStep(players);
+        }
 
         if (!Collision.sanityChecks(disks, walls)) {
             System.out.println("Insane after updating players to time " + newTime);
@@ -303,7 +516,38 @@ public class Simulation {
             System.out.println("Insane after updating simulation to time " + newTime);
         }
         
+        publishSnapshot();
         notifySimulationListeners();
+
+        if (deterministic && !gameEndNotified && newTime > gameEndTime) {
+            gameEndNotified = true;
+            notifyGameTimeoutListeners();
+        }
+    }
+
+    /**
+     * Advance the simulation time without moving any objects, like a paused
+     * simulation. This is used to drop simulation time that could not be
+     * simulated in time.
+     *
+     * @param newTime the new simulation time
+     */
+    public synchronized void skipTime(long newTime) {
+        while (blockSimulationCt > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        if (newTime <= lastTime) {
+            return;
+        }
+        if (inputLog != null) {
+            inputLog.logSkip(newTime);
+        }
+        diskStore.setTimestamps(newTime);
+        lastTime = newTime;
     }
 
     /**
@@ -336,12 +580,9 @@ public class Simulation {
             System.err.println("Ignoring time in the past!");
             return;
         }
-        List<CollisionEvent> collisionEvents = null;
-        
         if (advanceSim) {
-            // handle all collisions
-            collisionEvents = Collision.checkCollisions(
-                    walls, disks, lastTime, newTime);
+            // handle all collisions, the events of the last update are recycled
+            collision.checkCollisions(walls, disks, lastTime, newTime, collisionEvents);
 
             if (!Collision.sanityChecks(disks, walls)) {
                 System.out.println("Insane after handling collisions in time [" 
@@ -349,9 +590,7 @@ public class Simulation {
             }
             
             // move all updatable disks to the final position
-            for (Disk disk : updatePosDisks) {
-                disk.update(newTime);
-            }
+            diskStore.updatePositions(newTime, newTime - lastTime);
             
             if (!Collision.sanityChecks(disks, walls)) {
                 System.out.println("Insane after updating positions in time [" 
@@ -360,16 +599,14 @@ public class Simulation {
         }
         
         // make sure the new time is set in all objects
-        for (Disk disk : disks) {
-            disk.setTimestampNs(newTime);
-        }
+        diskStore.setTimestamps(newTime);
         
         lastTime = newTime;
         
         // inform collision listeners about any collision events
-        if (collisionEvents != null) {
-            for (CollisionEvent event : collisionEvents) {
-                notifyCollisionListeners(event);
+        if (advanceSim) {
+            for (int i = 0; i < collisionEvents.size(); i++) {
+                notifyCollisionListeners(collisionEvents.get(i));
             }
         }
     }
@@ -378,14 +615,14 @@ public class Simulation {
     public void notifyCollisionListeners(CollisionEvent event) {
         if (event instanceof DiskDiskCollision) {
             DiskDiskCollision collision = (DiskDiskCollision) event;
-            for (CollisionListener listener : collisionListeners) {
-                listener.collisionOccurred(collision);
+            for (int i = 0; i < collisionListeners.size(); i++) {
+                collisionListeners.get(i).collisionOccurred(collision);
             }
         }
         else {
             DiskWallCollision collision = (DiskWallCollision) event;
-            for (CollisionListener listener : collisionListeners) {
-                listener.collisionOccurred(collision);
+            for (int i = 0; i < collisionListeners.size(); i++) {
+                collisionListeners.get(i).collisionOccurred(collision);
             }
         }
     }
@@ -396,6 +633,9 @@ public class Simulation {
      * won't move.
      */
     public synchronized void togglePause() {
+        if (inputLog != null) {
+            inputLog.logPause();
+        }
         advanceSim = !advanceSim;
         System.out.println("\n Simulation " + (advanceSim ? "running." : "paused."));
     }
@@ -406,12 +646,100 @@ public class Simulation {
      * is relying on. The difference is, that this call will not return the time stamp
      * of the last (or current) simulation time update, but will fetch a new time stamp
      * at the time of the call. 
+     * In deterministic mode, this is the simulation time instead, see
+     * {@link #setDeterministic(boolean)}.
      * 
      * @return the current system time. 
      */
     public long getCurrentTime() {
+        if (deterministic) {
+            return getSimulationTime();
+        }
+        return getRealTime();
+    }
+
+    /**
+     * Returns the current real time stamp in ns, since the time base of the simulation.
+     */
+    private long getRealTime() {
         return System.nanoTime() - timeBase;
     }
+
+    /**
+     * Switch the deterministic mode of the simulation. A deterministic simulation
+     * does not depend on the real time: the time of the game (see {@link #getCurrentTime()})
+     * is the simulation time, the playing field is updated in every simulation step
+     * instead of by the display, and the game timeout is measured in simulation time,
+     * see {@link #setGameEndTime(long)}. With fixed time steps, seeded AI players and
+     * the same inputs of all other players, the simulation then gives exactly the same
+     * result every time, so a match can be re-simulated from its {@link InputLog}.
+     * This has to be set before the simulation is started.
+     *
+     * @param deterministic <code>true</code> for a deterministic simulation
+     */
+    public void setDeterministic(boolean deterministic) {
+        this.deterministic = deterministic;
+    }
+
+    /**
+     * Check, if the simulation is deterministic, see {@link #setDeterministic(boolean)}.
+     */
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    /**
+     * Set the simulation time the game ends in deterministic mode. The game timeout
+     * listeners are notified in the first simulation step after this time.
+     *
+     * @param time the end of the game in simulation time
+     */
+    public synchronized void setGameEndTime(long time) {
+        gameEndTime = time;
+        gameEndNotified = false;
+    }
+
+    /**
+     * Check, if the simulation time passed the end of the game set with
+     * {@link #setGameEndTime(long)}.
+     */
+    public synchronized boolean isGameTimeOver() {
+        return lastTime > gameEndTime;
+    }
+
+    /**
+     * Set the log the inputs of the players are written to in every simulation step,
+     * see {@link InputLog}.
+     *
+     * @param inputLog the log, <code>null</code> to stop logging
+     */
+    public synchronized void setInputLog(InputLog inputLog) {
+        this.inputLog = inputLog;
+    }
+
+    /**
+     * Returns a checksum of the simulation state: the simulation time, the position
+     * and velocity of all disks and the number of walls. Two runs of a deterministic
+     * simulation with the same inputs end with the same checksum.
+     *
+     * @return the checksum
+     */
+    public synchronized long getStateChecksum() {
+        long checksum = lastTime;
+        for (int i = 0; i < disks.size(); i++) {
+            Disk disk = disks.get(i);
+            checksum = checksum(checksum, disk.getPosition().getX());
+            checksum = checksum(checksum, disk.getPosition().getY());
+            checksum = checksum(checksum, disk.getVelocity().getX());
+            checksum = checksum(checksum, disk.getVelocity().getY());
+        }
+        return 31 * checksum + walls.size();
+    }
+
+    private static long checksum(long checksum, double value) {
+        long bits = Double.doubleToLongBits(value);
+        return 31 * checksum + (bits ^ (bits >>> 32));
+    }
     
     /**
      * Returns the current simulation time stamp in ns.
@@ -424,21 +752,48 @@ public class Simulation {
         return lastTime;
     }
 
+    /**
+     * Converts a simulation time stamp to the local clock, i.e. a {@link System#nanoTime()}
+     * value. With a fixed time step, this is the time the step is due, so catch-up
+     * steps get the time they were meant for, not the time they are done.
+     *
+     * @param simulationTime a simulation time stamp in ns
+     * @return the local time in ns
+     */
+    public long toLocalTime(long simulationTime) {
+        return simulationTime + timeBase;
+    }
+
     /**
      * Starts the automatically updated simulation.
+     * If a tick rate is configured, the simulation is advanced in fixed time steps
+     * (see {@link #startFixedTimestep(int, int)}), otherwise it is updated with
+     * the target frame rate to the current time. A deterministic simulation always
+     * uses fixed time steps.
      */
     public void start() {
-    	int fps = Game.getTargetFPS();
-    	if (fps < 0) {
-    		return;
-    	}
-    	int period = 1000 / fps;
-    	timer.scheduleAtFixedRate(new TimerTask() {
-			@Override
-			public void run() {
-				update();
-			}
-		}, 0, period);
+        int tickRate = Game.getTickRate();
+        if (deterministic) {
+            // the game timeout is checked in the simulation steps
+            startFixedTimestep(tickRate, Game.getMaxSubSteps());
+            return;
+        }
+        timer = new Timer(SIMULATION_THREAD_NAME, true);
+        if (tickRate > 0) {
+            startFixedTimestep(tickRate, Game.getMaxSubSteps());
+        } else {
+            int fps = Game.getTargetFPS();
+            if (fps < 0) {
+                return;
+            }
+            int period = 1000 / fps;
+            timer.scheduleAtFixedRate(new TimerTask() {
+                @Override
+                public void run() {
+                    update();
+                }
+            }, 0, period);
+        }
         timer.schedule(new TimerTask() {
             @Override
             public void run() {
@@ -447,11 +802,106 @@ public class Simulation {
         }, Game.getMaximumGameLengthMs());
     }
     
+    /**
+     * Start a thread that advances the simulation in fixed time steps,
+     * see {@link #advanceFixedTimestep()}.
+     *
+     * @param tickRate    the number of simulation steps per second
+     * @param maxSubSteps the maximum number of steps to catch up at once
+     */
+    public void startFixedTimestep(int tickRate, int maxSubSteps) {
+        initFixedTimestep(tickRate, maxSubSteps);
+        fixedTimestepThread = new Thread(SIMULATION_THREAD_NAME) {
+            @Override
+            public void run() {
+                while (fixedTimestep) {
+                    long sleepNs = advanceFixedTimestep();
+                    if (sleepNs > 0) {
+                        try {
+                            Thread.sleep(sleepNs / 1000000, (int) (sleepNs % 1000000));
+                        } catch (InterruptedException e) {
+                            // stopped
+                        }
+                    }
+                }
+            }
+        };
+        fixedTimestepThread.setDaemon(true);
+        fixedTimestepThread.start();
+    }
+
+    /**
+     * Switch the simulation to fixed time steps. Afterwards {@link #update()} does
+     * nothing, the simulation has to be advanced by calling {@link #advanceFixedTimestep()}
+     * regularly, either by the thread of {@link #startFixedTimestep(int, int)} or
+     * by an external scheduler.
+     *
+     * @param tickRate    the number of simulation steps per second
+     * @param maxSubSteps the maximum number of steps to catch up at once
+     */
+    public synchronized void initFixedTimestep(int tickRate, int maxSubSteps) {
+        this.tickNs = 1000000000L / tickRate;
+        this.maxSubSteps = Math.max(1, maxSubSteps);
+        fixedStepTime = getSimulationTime();
+        accumulator = 0;
+        lastRealTime = getRealTime();
+        fixedTimestep = true;
+    }
+
+    /**
+     * Advance the simulation by one fixed time step, independent of the real time.
+     * This is used to re-simulate a deterministic match as fast as possible, see
+     * {@link Resimulation}. The time step is set by {@link #initFixedTimestep(int, int)}.
+     */
+    public void step() {
+        update(getSimulationTime() + tickNs);
+    }
+
+    /**
+     * Advance the simulation in fixed time steps.
+     * The real time passed is accumulated and consumed in steps of constant length,
+     * so the simulation result does not depend on timer jitter or the frame rate.
+     * If the simulation falls behind (e.g. after a GC pause), at most the configured
+     * number of steps is done at once to catch up, the rest of the time is skipped.
+     * This must not be called concurrently.
+     *
+     * @return the time in ns until the next step is due
+     */
+    public long advanceFixedTimestep() {
+        long now = getRealTime();
+        accumulator += now - lastRealTime;
+        lastRealTime = now;
+
+        int steps = 0;
+        while (accumulator >= tickNs && steps < maxSubSteps) {
+            fixedStepTime += tickNs;
+            update(fixedStepTime);
+            accumulator -= tickNs;
+            steps++;
+        }
+        if (accumulator >= tickNs) {
+            // too far behind, drop the remaining full steps
+            long skipped = accumulator - (accumulator % tickNs);
+            fixedStepTime += skipped;
+            skipTime(fixedStepTime);
+            accumulator -= skipped;
+            System.out.println("Simulation skipped " + (skipped / 1000000) + " ms.");
+        }
+        return tickNs - accumulator - (getRealTime() - lastRealTime);
+    }
+
     /**
      * Stops the automatic updates of the simulation.
      */
     public void stop() {
-    	timer.cancel();
+        if (timer != null) {
+            timer.cancel();
+        }
+        fixedTimestep = false;
+        if (fixedTimestepThread != null) {
+            fixedTimestepThread.interrupt();
+            fixedTimestepThread = null;
+        }
     }
 
 
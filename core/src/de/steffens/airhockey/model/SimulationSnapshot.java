@@ -0,0 +1,205 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The state of all disks of a simulation at the end of a simulation update.
+ * Snapshots are published by the simulation thread and read by the render thread
+ * and the network forwarders, see {@link Simulation#acquireSnapshot()}. A snapshot
+ * does not change while it is acquired, so it can be read without any locking.
+ * <p/>
+ * The disk state is indexed by the slot of the disk in the simulation's
+ * {@link DiskStore}, which is the disk index.
+ */
+public class SimulationSnapshot {
+
+    /** number of readers holding this snapshot */
+    final AtomicInteger references = new AtomicInteger();
+
+    private long time;
+
+    private Disk[] disks = new Disk[0];
+    private double[] x = new double[0];
+    private double[] y = new double[0];
+    private double[] vx = new double[0];
+    private double[] vy = new double[0];
+    private double[] acceleration = new double[0];
+    private short[] lastHitPlayerIndex = new short[0];
+    private short[] secondLastHitPlayerIndex = new short[0];
+
+    /** slots of the disks updated by the simulation, in simulation order */
+    private int[] updateSlots = new int[0];
+    private int updateCt = 0;
+
+
+    /**
+     * Copy the state of the given disks into this snapshot.
+     * All disks must be part of the same store.
+     *
+     * @param time           the simulation time
+     * @param disks          all disks of the simulation
+     * @param updatePosDisks the disks updated by the simulation
+     */
+    void capture(long time, List<Disk> disks, List<Disk> updatePosDisks) {
+        this.time = time;
+        int slots = 0;
+        for (int i = 0; i < disks.size(); i++) {
+            slots = Math.max(slots, disks.get(i).slot + 1);
+        }
+        ensureCapacity(slots);
+        for (int i = 0; i < this.disks.length; i++) {
+            this.disks[i] = null;
+        }
+        for (int i = 0; i < disks.size(); i++) {
+            Disk disk = disks.get(i);
+            DiskStore store = disk.store;
+            int slot = disk.slot;
+            this.disks[slot] = disk;
+            x[slot] = store.x[slot];
+            y[slot] = store.y[slot];
+            vx[slot] = store.vx[slot];
+            vy[slot] = store.vy[slot];
+            acceleration[slot] = store.acceleration[slot];
+            lastHitPlayerIndex[slot] = disk.getLastHitPlayerIndex();
+            secondLastHitPlayerIndex[slot] = disk.getSecondLastHitPlayerIndex();
+        }
+        updateCt = updatePosDisks.size();
+        if (updateSlots.length < updateCt) {
+            updateSlots = new int[updateCt];
+        }
+        for (int i = 0; i < updateCt; i++) {
+            updateSlots[i] = updatePosDisks.get(i).slot;
+        }
+    }
+
+
+    /**
+     * Write the state of the disks updated by the simulation to the given stream,
+     * in the format of {@link Disk#writeUpdate(DataOutputStream)}.
+     *
+     * @param os the output stream
+     * @throws IOException if an error occurs during writing
+     */
+    public void writeUpdate(DataOutputStream os) throws IOException {
+        os.writeInt(updateCt);
+        for (int i = 0; i < updateCt; i++) {
+            int slot = updateSlots[i];
+            os.writeDouble(x[slot]);
+            os.writeDouble(y[slot]);
+            os.writeDouble(vx[slot]);
+            os.writeDouble(vy[slot]);
+            os.writeDouble(acceleration[slot]);
+            os.writeShort(lastHitPlayerIndex[slot]);
+            os.writeShort(secondLastHitPlayerIndex[slot]);
+            // NOTE: make sure that this matches Disk.update() and Disk.skipUpdate()!!!!
+        }
+    }
+
+
+    /**
+     * Returns the simulation time of this snapshot.
+     *
+     * @return the simulation time in ns
+     */
+    public long getTime() {
+        return time;
+    }
+
+
+    /**
+     * Check, if the given disk is part of this snapshot.
+     * Disks that were added to the simulation after the snapshot was taken are not.
+     *
+     * @param disk the disk
+     * @return <code>true</code>, if the snapshot contains the state of the disk
+     */
+    public boolean contains(Disk disk) {
+        int slot = disk.getIndex();
+        return slot >= 0 && slot < disks.length && disks[slot] == disk;
+    }
+
+
+    public double getX(Disk disk) {
+        return x[disk.getIndex()];
+    }
+
+    public double getY(Disk disk) {
+        return y[disk.getIndex()];
+    }
+
+    public double getVelocityX(Disk disk) {
+        return vx[disk.getIndex()];
+    }
+
+    public double getVelocityY(Disk disk) {
+        return vy[disk.getIndex()];
+    }
+
+    public short getLastHitPlayerIndex(Disk disk) {
+        return lastHitPlayerIndex[disk.getIndex()];
+    }
+
+
+    /**
+     * Returns the number of disks updated by the simulation.
+     */
+    int getUpdateCount() {
+        return updateCt;
+    }
+
+    /**
+     * Returns the slot of the i-th disk updated by the simulation.
+     */
+    int getUpdateSlot(int i) {
+        return updateSlots[i];
+    }
+
+    double getSlotX(int slot) {
+        return x[slot];
+    }
+
+    double getSlotY(int slot) {
+        return y[slot];
+    }
+
+    double getSlotVelocityX(int slot) {
+        return vx[slot];
+    }
+
+    double getSlotVelocityY(int slot) {
+        return vy[slot];
+    }
+
+    double getSlotAcceleration(int slot) {
+        return acceleration[slot];
+    }
+
+    short getSlotLastHitPlayerIndex(int slot) {
+        return lastHitPlayerIndex[slot];
+    }
+
+    short getSlotSecondLastHitPlayerIndex(int slot) {
+        return secondLastHitPlayerIndex[slot];
+    }
+
+
+    private void ensureCapacity(int slots) {
+        if (disks.length >= slots) {
+            return;
+        }
+        disks = new Disk[slots];
+        x = new double[slots];
+        y = new double[slots];
+        vx = new double[slots];
+        vy = new double[slots];
+        acceleration = new double[slots];
+        lastHitPlayerIndex = new short[slots];
+        secondLastHitPlayerIndex = new short[slots];
+    }
+}
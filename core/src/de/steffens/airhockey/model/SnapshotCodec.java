@@ -0,0 +1,556 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.steffens.airhockey.GameConfiguration;
+import de.steffens.airhockey.model.vector.Vector2D;
+
+/**
+ * Common parts of {@link SnapshotEncoder} and {@link SnapshotDecoder}: the quantization
+ * of the disk state and the history of encoded states used as delta baselines.
+ * <p/>
+ * Positions are quantized to 16 bit fixed point relative to the bounds of the playing
+ * field (plus a margin), velocities to 16 bit signed fixed point relative to
+ * {@link MovingObject#MAX_VELOCITY_VALUE}. Quantized values are sent as zig-zag
+ * variable length deltas against the baseline state, so a slowly moving disk takes
+ * one byte per coordinate.
+ * <p/>
+ * The format of a delta update is:
+ * <pre>
+ * unsigned short  sequence number
+ * unsigned byte   distance to the baseline sequence, 0 for a full update
+ * byte            flags (FLAG_DISK_COUNT, FLAG_SCORE)
+ * long / varint   simulation time in microseconds for a full update, otherwise
+ *                 the delta to the time of the baseline
+ * [varint]        number of disks, if FLAG_DISK_COUNT
+ * per disk:
+ *   byte          change mask (CHANGED_X ... CHANGED_HIT)
+ *   [varint]      delta of x, y, vx, vy for each changed coordinate
+ *   [double]      acceleration, if CHANGED_ACC
+ *   [byte, byte]  last hit player indices, if CHANGED_HIT
+ * [varint]        number of players followed by all scores, if FLAG_SCORE
+ * </pre>
+ */
+abstract class SnapshotCodec {
+
+    /** number of states kept as possible baselines */
+    static final int HISTORY_SIZE = 32;
+
+    static final int FLAG_DISK_COUNT = 1;
+    static final int FLAG_SCORE = 2;
+
+    static final int CHANGED_X = 1;
+    static final int CHANGED_Y = 2;
+    static final int CHANGED_VX = 4;
+    static final int CHANGED_VY = 8;
+    static final int CHANGED_ACC = 16;
+    static final int CHANGED_HIT = 32;
+
+    /** the margin around the walls covered by the position quantization, relative to the field size */
+    private static final double FIELD_MARGIN = 0.25;
+
+    private static final int POSITION_STEPS = 0xffff;
+    private static final int VELOCITY_STEPS = 0x7fff;
+
+
+    /**
+     * The quantized state of the disks and the score at one sequence number.
+     */
+    static class State {
+        int sequence = -1;
+        /** the simulation time in microseconds */
+        long time = 0;
+        int diskCount = 0;
+        int[] x = new int[0];
+        int[] y = new int[0];
+        int[] vx = new int[0];
+        int[] vy = new int[0];
+        double[] acceleration = new double[0];
+        short[] lastHitPlayerIndex = new short[0];
+        short[] secondLastHitPlayerIndex = new short[0];
+        int scoreCount = 0;
+        int[] score = new int[0];
+
+        void ensureCapacity(int disks, int players) {
+            if (x.length < disks) {
+                x = new int[disks];
+                y = new int[disks];
+                vx = new int[disks];
+                vy = new int[disks];
+                acceleration = new double[disks];
+                lastHitPlayerIndex = new short[disks];
+                secondLastHitPlayerIndex = new short[disks];
+            }
+            if (score.length < players) {
+                score = new int[players];
+            }
+        }
+
+        /**
+         * Set this state to a copy of the given baseline, or to the empty state.
+         */
+        void copyFrom(State baseline, int disks, int players) {
+            ensureCapacity(disks, players);
+            int copy = baseline == null ? 0 : Math.min(disks, baseline.diskCount);
+            for (int i = 0; i < disks; i++) {
+                x[i] = i < copy ? baseline.x[i] : 0;
+                y[i] = i < copy ? baseline.y[i] : 0;
+                vx[i] = i < copy ? baseline.vx[i] : 0;
+                vy[i] = i < copy ? baseline.vy[i] : 0;
+                acceleration[i] = i < copy ? baseline.acceleration[i] : Double.NaN;
+                lastHitPlayerIndex[i] = i < copy ? baseline.lastHitPlayerIndex[i] : Short.MIN_VALUE;
+                secondLastHitPlayerIndex[i] = i < copy ? baseline.secondLastHitPlayerIndex[i] : Short.MIN_VALUE;
+            }
+            diskCount = disks;
+            scoreCount = baseline == null ? 0 : Math.min(players, baseline.scoreCount);
+            for (int i = 0; i < scoreCount; i++) {
+                score[i] = baseline.score[i];
+            }
+        }
+    }
+
+
+    private final double minX;
+    private final double minY;
+    private final double scaleX;
+    private final double scaleY;
+    private final double velocityScale;
+
+    /** the last encoded or decoded states, indexed by sequence number */
+    final State[] history = new State[HISTORY_SIZE];
+
+
+    /**
+     * Create a new codec for the given playing field. Encoder and decoder have
+     * to use the same playing field.
+     *
+     * @param field the playing field
+     */
+    SnapshotCodec(PlayingField field) {
+        double x1 = Double.MAX_VALUE;
+        double y1 = Double.MAX_VALUE;
+        double x2 = -Double.MAX_VALUE;
+        double y2 = -Double.MAX_VALUE;
+        List<Wall> walls = field.getWalls();
+        for (int i = 0; i < walls.size(); i++) {
+            for (Vector2D v : walls.get(i).getCoords()) {
+                x1 = Math.min(x1, v.getX());
+                y1 = Math.min(y1, v.getY());
+                x2 = Math.max(x2, v.getX());
+                y2 = Math.max(y2, v.getY());
+            }
+        }
+        if (x1 > x2) {
+            // no walls
+            x1 = y1 = -1.0;
+            x2 = y2 = 1.0;
+        }
+        double marginX = (x2 - x1) * FIELD_MARGIN;
+        double marginY = (y2 - y1) * FIELD_MARGIN;
+        minX = x1 - marginX;
+        minY = y1 - marginY;
+        scaleX = POSITION_STEPS / (x2 - x1 + 2 * marginX);
+        scaleY = POSITION_STEPS / (y2 - y1 + 2 * marginY);
+        velocityScale = VELOCITY_STEPS / MovingObject.MAX_VELOCITY_VALUE;
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            history[i] = new State();
+        }
+    }
+
+
+    int quantizeX(double x) {
+        return quantizePosition((x - minX) * scaleX);
+    }
+
+    int quantizeY(double y) {
+        return quantizePosition((y - minY) * scaleY);
+    }
+
+    /**
+     * Round a scaled position, clamped before the conversion to int, which
+     * would overflow for positions far outside of the playing field.
+     */
+    private static int quantizePosition(double steps) {
+        return steps <= 0 ? 0 : (steps >= POSITION_STEPS ? POSITION_STEPS : (int) Math.round(steps));
+    }
+
+    /**
+     * Quantize a velocity component. This rounds towards zero, so that the
+     * speed of a disk never grows above the maximum speed by quantization.
+     */
+    int quantizeVelocity(double v) {
+        return clamp((int) (v * velocityScale), -VELOCITY_STEPS, VELOCITY_STEPS);
+    }
+
+    double dequantizeX(int x) {
+        return minX + x / scaleX;
+    }
+
+    double dequantizeY(int y) {
+        return minY + y / scaleY;
+    }
+
+    double dequantizeVelocity(int v) {
+        return v / velocityScale;
+    }
+
+
+    /**
+     * Returns the state with the given sequence number from the history.
+     *
+     * @return the state, or <code>null</code> if it is no longer available
+     */
+    State getHistory(int sequence) {
+        State state = history[sequence & (HISTORY_SIZE - 1)];
+        return state.sequence == sequence ? state : null;
+    }
+
+
+    static void writeVarInt(DataOutput os, int value) throws IOException {
+        // zig-zag encoding, so small negative values are short as well
+        int v = (value << 1) ^ (value >> 31);
+        while ((v & ~0x7f) != 0) {
+            os.writeByte((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        os.writeByte(v);
+    }
+
+    static int readVarInt(DataInput is) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = is.readUnsignedByte();
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new IOException("Malformed variable length integer.");
+    }
+
+
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+
+
+    /**
+     * Write the given state as delta against the given baseline. Disks missing
+     * in the baseline are written completely, like the decoder expects it.
+     *
+     * @param baseline the baseline, or <code>null</code> for a full update
+     * @param distance the sequence distance of the baseline, 0 for a full update
+     */
+    void writeState(DataOutputStream os, State state, State baseline, int distance)
+            throws IOException {
+        int disks = state.diskCount;
+        int baseDisks = baseline == null ? 0 : baseline.diskCount;
+
+        int flags = 0;
+        if (baseline == null || baseDisks != disks) {
+            flags |= FLAG_DISK_COUNT;
+        }
+        boolean scoreChanged = baseline == null || baseline.scoreCount != state.scoreCount;
+        for (int i = 0; i < state.scoreCount && !scoreChanged; i++) {
+            scoreChanged = baseline.score[i] != state.score[i];
+        }
+        if (scoreChanged) {
+            flags |= FLAG_SCORE;
+        }
+
+        os.writeShort(state.sequence);
+        os.writeByte(distance);
+        os.writeByte(flags);
+        if (baseline == null) {
+            os.writeLong(state.time);
+        } else {
+            writeVarInt(os, (int) (state.time - baseline.time));
+        }
+        if ((flags & FLAG_DISK_COUNT) != 0) {
+            writeVarInt(os, disks);
+        }
+        for (int i = 0; i < disks; i++) {
+            boolean known = i < baseDisks;
+            int baseX = known ? baseline.x[i] : 0;
+            int baseY = known ? baseline.y[i] : 0;
+            int baseVx = known ? baseline.vx[i] : 0;
+            int baseVy = known ? baseline.vy[i] : 0;
+
+            int mask = 0;
+            if (state.x[i] != baseX) {
+                mask |= CHANGED_X;
+            }
+            if (state.y[i] != baseY) {
+                mask |= CHANGED_Y;
+            }
+            if (state.vx[i] != baseVx) {
+                mask |= CHANGED_VX;
+            }
+            if (state.vy[i] != baseVy) {
+                mask |= CHANGED_VY;
+            }
+            if (!known || Double.compare(state.acceleration[i], baseline.acceleration[i]) != 0) {
+                mask |= CHANGED_ACC;
+            }
+            if (!known || state.lastHitPlayerIndex[i] != baseline.lastHitPlayerIndex[i]
+                || state.secondLastHitPlayerIndex[i] != baseline.secondLastHitPlayerIndex[i]) {
+                mask |= CHANGED_HIT;
+            }
+
+            os.writeByte(mask);
+            if ((mask & CHANGED_X) != 0) {
+                writeVarInt(os, state.x[i] - baseX);
+            }
+            if ((mask & CHANGED_Y) != 0) {
+                writeVarInt(os, state.y[i] - baseY);
+            }
+            if ((mask & CHANGED_VX) != 0) {
+                writeVarInt(os, state.vx[i] - baseVx);
+            }
+            if ((mask & CHANGED_VY) != 0) {
+                writeVarInt(os, state.vy[i] - baseVy);
+            }
+            if ((mask & CHANGED_ACC) != 0) {
+                os.writeDouble(state.acceleration[i]);
+            }
+            if ((mask & CHANGED_HIT) != 0) {
+                os.writeByte(state.lastHitPlayerIndex[i]);
+                os.writeByte(state.secondLastHitPlayerIndex[i]);
+            }
+        }
+
+        if (scoreChanged) {
+            writeVarInt(os, state.scoreCount);
+            for (int i = 0; i < state.scoreCount; i++) {
+                writeVarInt(os, state.score[i]);
+            }
+        }
+    }
+
+
+    /** number of failed checks of {@link #main(String[])} */
+    private static int failures = 0;
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            failures++;
+            System.out.println("  FAILED: " + message);
+        }
+    }
+
+
+    /**
+     * Round trip check of the codec: the variable length integers, the quantization,
+     * and delta updates through the baseline history, with wraparound of the sequence
+     * numbers, evicted baselines and values out of range. Prints the failed checks,
+     * the exit code is 1 if a check failed.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(1);
+
+        System.out.println("Variable length integers:");
+        int[] values = { 0, 1, -1, 63, -64, 64, -65, 8191, -8192, 8192, Integer.MAX_VALUE, Integer.MIN_VALUE };
+        int[] lengths = { 1, 1, 1, 1, 1, 2, 2, 2, 2, 3, 5, 5 };
+        for (int i = 0; i < values.length + 10000; i++) {
+            int value = i < values.length ? values[i] : random.nextInt() >> random.nextInt(32);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writeVarInt(new DataOutputStream(bytes), value);
+            int read = readVarInt(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            check(read == value, "varint " + value + " read as " + read);
+            if (i < values.length) {
+                check(bytes.size() == lengths[i], "varint " + value + " takes " + bytes.size() + " bytes");
+            }
+        }
+        try {
+            byte[] malformed = { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0 };
+            readVarInt(new DataInputStream(new ByteArrayInputStream(malformed)));
+            check(false, "malformed varint accepted");
+        } catch (IOException e) {
+            // expected
+        }
+
+        System.out.println("Quantization:");
+        GameSession session = new GameSession();
+        Game.setSession(session);
+        session.setupServerGame(GameConfiguration.createDedicatedServerConfig(new String[0]));
+        PlayingField field = session.getPlayingField();
+        SnapshotCodec codec = new SnapshotEncoder(field);
+        double stepX = 1.0 / codec.scaleX;
+        double stepY = 1.0 / codec.scaleY;
+        double maxX = codec.minX + POSITION_STEPS * stepX;
+        double maxY = codec.minY + POSITION_STEPS * stepY;
+        for (int i = 0; i < 10000; i++) {
+            double x = codec.minX + random.nextDouble() * (maxX - codec.minX);
+            double y = codec.minY + random.nextDouble() * (maxY - codec.minY);
+            double errorX = Math.abs(codec.dequantizeX(codec.quantizeX(x)) - x);
+            double errorY = Math.abs(codec.dequantizeY(codec.quantizeY(y)) - y);
+            check(errorX <= stepX / 2 + 1e-12 && errorY <= stepY / 2 + 1e-12,
+                "position " + x + ", " + y + " off by " + errorX + ", " + errorY);
+            double v = (random.nextDouble() * 2 - 1) * MovingObject.MAX_VELOCITY_VALUE;
+            double dv = codec.dequantizeVelocity(codec.quantizeVelocity(v));
+            check(Math.abs(dv) <= Math.abs(v) && Math.abs(v - dv) < 1.0 / codec.velocityScale,
+                "velocity " + v + " decoded as " + dv);
+        }
+        check(codec.quantizeX(codec.minX - 100) == 0 && codec.quantizeX(maxX + 100) == POSITION_STEPS,
+            "position outside of the margin not clamped");
+        check(codec.quantizeY(Double.NEGATIVE_INFINITY) == 0 && codec.quantizeY(Double.POSITIVE_INFINITY) == POSITION_STEPS,
+            "infinite position not clamped");
+        check(codec.quantizeVelocity(3 * MovingObject.MAX_VELOCITY_VALUE) == VELOCITY_STEPS
+            && codec.quantizeVelocity(-3 * MovingObject.MAX_VELOCITY_VALUE) == -VELOCITY_STEPS,
+            "velocity above the maximum not clamped");
+
+        System.out.println("Delta updates:");
+        int maxDisks = 6;
+        DiskStore store = new DiskStore(maxDisks);
+        List<Disk> disks = new ArrayList<Disk>();
+        for (int i = 0; i < maxDisks; i++) {
+            Disk disk = new Disk(0.5, 0.1);
+            disk.setIndex(i);
+            store.add(disk, true);
+            disks.add(disk);
+        }
+        SimulationSnapshot snapshot = new SimulationSnapshot();
+        SnapshotEncoder encoder = new SnapshotEncoder(field);
+        SnapshotDecoder decoder = new SnapshotDecoder(field);
+        int[] score = new int[3];
+        int acknowledged = -1;
+        int fullUpdates = 0;
+        int missingBaselines = 0;
+        // more than 2^16 updates, so the sequence numbers wrap around
+        int updates = 0x10000 + 1000;
+        for (int n = 0; n < updates; n++) {
+            // mostly small moves, sometimes jumps out of the field and too fast disks
+            for (int i = 0; i < maxDisks; i++) {
+                Disk disk = disks.get(i);
+                if (random.nextInt(50) == 0) {
+                    disk.setPosition((random.nextDouble() - 0.5) * 100, (random.nextDouble() - 0.5) * 100);
+                    disk.setVelocity((random.nextDouble() - 0.5) * 2 * MovingObject.MAX_VELOCITY_VALUE, 0);
+                } else if (random.nextBoolean()) {
+                    disk.setPosition(disk.getPosition().getX() + random.nextGaussian() * 0.01,
+                        disk.getPosition().getY() + random.nextGaussian() * 0.01);
+                    disk.setVelocity(disk.getVelocity().getX() * 0.99, disk.getVelocity().getY() * 0.99);
+                }
+                if (random.nextInt(200) == 0) {
+                    disk.setAcceleration(random.nextDouble());
+                    disk.setLastHitPlayerIndex((short) random.nextInt(score.length));
+                }
+            }
+            if (random.nextInt(500) == 0) {
+                score[random.nextInt(score.length)]++;
+            }
+            // the number of updated disks changes from time to time
+            int count = n % 1000 < 500 ? maxDisks : maxDisks - 2;
+            snapshot.capture(n * 1000000L, disks, disks.subList(0, count));
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            int sequence = encoder.write(new DataOutputStream(bytes), snapshot, score);
+            byte[] update = bytes.toByteArray();
+            if ((update[2] & 0xff) == 0) {
+                fullUpdates++;
+            }
+            // lose some updates, and for a while all of them, so the baseline is evicted
+            boolean lost = random.nextInt(10) == 0 || n % 5000 >= 4950;
+            if (lost) {
+                continue;
+            }
+            try {
+                check(decoder.read(new DataInputStream(new ByteArrayInputStream(update))) == sequence,
+                    "sequence of update " + n);
+            } catch (IOException e) {
+                missingBaselines++;
+                continue;
+            }
+            // acknowledge with some delay, like over the network
+            if (random.nextInt(4) != 0) {
+                acknowledged = sequence;
+                encoder.acknowledge(acknowledged);
+            }
+
+            check(decoder.getDiskCount() == count, "disk count of update " + n);
+            check(decoder.getTime() == n * 1000000L, "time of update " + n);
+            for (int i = 0; i < count; i++) {
+                Disk disk = disks.get(i);
+                check(decoder.getX(i) == codec.dequantizeX(codec.quantizeX(disk.getPosition().getX()))
+                    && decoder.getY(i) == codec.dequantizeY(codec.quantizeY(disk.getPosition().getY()))
+                    && decoder.getVelocityX(i) == codec.dequantizeVelocity(codec.quantizeVelocity(disk.getVelocity().getX()))
+                    && decoder.getVelocityY(i) == codec.dequantizeVelocity(codec.quantizeVelocity(disk.getVelocity().getY())),
+                    "state of disk " + i + " in update " + n);
+                check(decoder.getAcceleration(i) == disk.getAcceleration()
+                    && decoder.getLastHitPlayerIndex(i) == disk.getLastHitPlayerIndex(),
+                    "acceleration or last hit of disk " + i + " in update " + n);
+            }
+            check(decoder.getScoreCount() == score.length, "score count of update " + n);
+            for (int i = 0; i < score.length; i++) {
+                check(decoder.getScore(i) == score[i], "score of player " + i + " in update " + n);
+            }
+        }
+        System.out.println("  " + updates + " updates, " + fullUpdates + " full updates, "
+            + missingBaselines + " without baseline");
+        check(fullUpdates > 1, "no full update after the baseline was evicted");
+
+        // an update with an evicted baseline cannot be decoded
+        SnapshotEncoder late = new SnapshotEncoder(field);
+        SnapshotDecoder lateDecoder = new SnapshotDecoder(field);
+        for (int n = 0; n <= HISTORY_SIZE; n++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            snapshot.capture(n * 1000000L, disks, disks);
+            int sequence = late.write(new DataOutputStream(bytes), snapshot, score);
+            late.acknowledge(sequence);
+            if (n == 0 || n == HISTORY_SIZE) {
+                try {
+                    lateDecoder.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+                    check(n == 0, "update with an evicted baseline decoded");
+                } catch (IOException e) {
+                    check(n == HISTORY_SIZE, "full update not decoded: " + e);
+                }
+            }
+        }
+
+        // a truncated update is dropped and does not become a baseline
+        SnapshotEncoder truncating = new SnapshotEncoder(field);
+        SnapshotDecoder truncatedDecoder = new SnapshotDecoder(field);
+        for (int n = 0; n < 3; n++) {
+            disks.get(0).setPosition(n, n);
+            snapshot.capture(n * 1000000L, disks, disks);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            int sequence = truncating.write(new DataOutputStream(bytes), snapshot, score);
+            byte[] update = bytes.toByteArray();
+            try {
+                truncatedDecoder.read(new DataInputStream(new ByteArrayInputStream(update, 0,
+                    n == 1 ? update.length / 2 : update.length)));
+                check(n != 1, "truncated update decoded");
+                truncating.acknowledge(sequence);
+                check(truncatedDecoder.getX(0) == codec.dequantizeX(codec.quantizeX(n)),
+                    "state after a truncated update");
+            } catch (IOException e) {
+                check(n == 1, "update after a truncated update not decoded: " + e);
+            }
+        }
+        check(truncatedDecoder.getHistory(1) == null, "truncated update kept as baseline");
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            truncating.writeDelta(new DataOutputStream(bytes), 1);
+            truncatedDecoder.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            check(false, "update against a truncated baseline decoded");
+        } catch (IOException e) {
+            // expected
+        }
+
+        System.out.println(failures == 0 ? "All checks passed." : failures + " checks FAILED.");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Client side decoder of the updates written by a {@link SnapshotEncoder}.
+ * The decoder keeps the last received states, which are the baselines of the
+ * following delta updates.
+ * <p/>
+ * A relay passing the updates on can write the last decoded state as full update,
+ * see {@link #writeFull(DataOutputStream)}, for a client without a baseline.
+ */
+public class SnapshotDecoder extends SnapshotCodec {
+
+    /** the last decoded state */
+    private State current = null;
+    private boolean scoreChanged = false;
+
+
+    /**
+     * Create a new decoder for updates of the given playing field.
+     *
+     * @param field the playing field
+     */
+    public SnapshotDecoder(PlayingField field) {
+        super(field);
+    }
+
+
+    /**
+     * Read the next update from the given input stream.
+     *
+     * @param is the input stream
+     * @return the sequence number of the update, which may be acknowledged to the server
+     * @throws IOException if an error occurs during reading, or the baseline of the
+     *         update is not known
+     */
+    public int read(DataInputStream is) throws IOException {
+        int sequence = is.readUnsignedShort();
+        int distance = is.readUnsignedByte();
+        int flags = is.readUnsignedByte();
+        State baseline = null;
+        if (distance > 0) {
+            baseline = getHistory((sequence - distance) & 0xffff);
+            if (baseline == null) {
+                throw new IOException("Missing baseline for simulation update " + sequence);
+            }
+        }
+
+        long time = baseline == null ? is.readLong() : baseline.time + readVarInt(is);
+        if (baseline == null && (flags & FLAG_DISK_COUNT) == 0) {
+            throw new IOException("Missing number of disks in simulation update " + sequence);
+        }
+        int disks = (flags & FLAG_DISK_COUNT) != 0 ? readVarInt(is) : baseline.diskCount;
+        State state = history[sequence & (HISTORY_SIZE - 1)];
+        state.copyFrom(baseline, disks, baseline == null ? 0 : baseline.scoreCount);
+        // not a baseline until the update is read completely
+        state.sequence = -1;
+        state.time = time;
+
+        for (int i = 0; i < disks; i++) {
+            int mask = is.readUnsignedByte();
+            if ((mask & CHANGED_X) != 0) {
+                state.x[i] += readVarInt(is);
+            }
+            if ((mask & CHANGED_Y) != 0) {
+                state.y[i] += readVarInt(is);
+            }
+            if ((mask & CHANGED_VX) != 0) {
+                state.vx[i] += readVarInt(is);
+            }
+            if ((mask & CHANGED_VY) != 0) {
+                state.vy[i] += readVarInt(is);
+            }
+            if ((mask & CHANGED_ACC) != 0) {
+                state.acceleration[i] = is.readDouble();
+            }
+            if ((mask & CHANGED_HIT) != 0) {
+                state.lastHitPlayerIndex[i] = is.readByte();
+                state.secondLastHitPlayerIndex[i] = is.readByte();
+            }
+        }
+
+        boolean withScore = (flags & FLAG_SCORE) != 0;
+        if (withScore) {
+            int players = readVarInt(is);
+            state.ensureCapacity(disks, players);
+            for (int i = 0; i < players; i++) {
+                state.score[i] = readVarInt(is);
+            }
+            state.scoreCount = players;
+        }
+        state.sequence = sequence;
+        scoreChanged = withScore;
+        current = state;
+        return sequence;
+    }
+
+
+    /**
+     * Write the last decoded update again as full update. A client receiving
+     * it can decode the following delta updates of the same encoder.
+     *
+     * @param os the output stream
+     * @throws IOException if an error occurs during writing
+     */
+    public void writeFull(DataOutputStream os) throws IOException {
+        if (current == null) {
+            throw new IllegalStateException("No update read yet.");
+        }
+        writeState(os, current, null, 0);
+    }
+
+
+    /**
+     * Returns the number of disks of the last update.
+     *
+     * @return the number of disks
+     */
+    public int getDiskCount() {
+        return current == null ? 0 : current.diskCount;
+    }
+
+
+    /**
+     * Set the state of the given disk to the state of the i-th disk of the last update.
+     *
+     * @param i    the index of the disk in the update
+     * @param disk the disk to update
+     */
+    public void apply(int i, Disk disk) {
+        disk.update(getX(i), getY(i), getVelocityX(i), getVelocityY(i), getAcceleration(i),
+            getLastHitPlayerIndex(i), getSecondLastHitPlayerIndex(i));
+    }
+
+
+    /**
+     * Returns the simulation time of the server of the last update.
+     *
+     * @return the simulation time in ns, with a resolution of microseconds
+     */
+    public long getTime() {
+        return current == null ? 0 : current.time * 1000;
+    }
+
+
+    double getX(int i) {
+        return dequantizeX(current.x[i]);
+    }
+
+    double getY(int i) {
+        return dequantizeY(current.y[i]);
+    }
+
+    double getVelocityX(int i) {
+        return dequantizeVelocity(current.vx[i]);
+    }
+
+    double getVelocityY(int i) {
+        return dequantizeVelocity(current.vy[i]);
+    }
+
+    double getAcceleration(int i) {
+        return current.acceleration[i];
+    }
+
+    short getLastHitPlayerIndex(int i) {
+        return current.lastHitPlayerIndex[i];
+    }
+
+    short getSecondLastHitPlayerIndex(int i) {
+        return current.secondLastHitPlayerIndex[i];
+    }
+
+
+    /**
+     * Check, if the last update changed the score.
+     *
+     * @return <code>true</code>, if the score was sent with the last update
+     */
+    public boolean isScoreChanged() {
+        return scoreChanged;
+    }
+
+
+    /**
+     * Returns the score of the last update.
+     *
+     * @param player the player index
+     * @return the score of the player
+     */
+    public int getScore(int player) {
+        return current.score[player];
+    }
+
+
+    /**
+     * Returns the number of players with a score.
+     *
+     * @return the number of players
+     */
+    public int getScoreCount() {
+        return current == null ? 0 : current.scoreCount;
+    }
+}
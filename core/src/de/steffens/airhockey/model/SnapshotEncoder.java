@@ -0,0 +1,135 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Server side encoder of compact simulation updates for one client.
+ * Every update is encoded as delta against the last update acknowledged by the
+ * client, see {@link #acknowledge(int)}. Without an acknowledged update, or if it
+ * is too old, a full update is sent. The client decodes the updates using a
+ * {@link SnapshotDecoder}, see {@link SnapshotCodec} for the format.
+ * <p/>
+ * Clients with a reliable connection can share one encoder, if every update is
+ * acknowledged as soon as it is written: all of them can decode the same delta
+ * updates. A client joining later gets the last update as full update first,
+ * see {@link #writeFull(DataOutputStream)}. A client getting fewer updates than
+ * the others gets the last update as delta against the update it received last,
+ * see {@link #writeDelta(DataOutputStream, int)}.
+ */
+public class SnapshotEncoder extends SnapshotCodec {
+
+    private int sequence = -1;
+    private volatile int acknowledged = -1;
+
+
+    /**
+     * Create a new encoder for updates of the given playing field.
+     *
+     * @param field the playing field
+     */
+    public SnapshotEncoder(PlayingField field) {
+        super(field);
+    }
+
+
+    /**
+     * Write the disks updated by the simulation and the score as delta update.
+     *
+     * @param os       the output stream
+     * @param snapshot the simulation state to write
+     * @param score    the score of all players
+     * @return the sequence number of the written update
+     * @throws IOException if an error occurs during writing
+     */
+    public int write(DataOutputStream os, SimulationSnapshot snapshot, int[] score) throws IOException {
+        sequence = (sequence + 1) & 0xffff;
+        State baseline = null;
+        int distance = 0;
+        int baselineSequence = acknowledged;
+        if (baselineSequence >= 0) {
+            distance = (sequence - baselineSequence) & 0xffff;
+            baseline = distance > 0 && distance < HISTORY_SIZE ? getHistory(baselineSequence) : null;
+        }
+        if (baseline == null) {
+            distance = 0;
+        }
+
+        int disks = snapshot.getUpdateCount();
+        State state = history[sequence & (HISTORY_SIZE - 1)];
+        state.ensureCapacity(disks, score.length);
+        state.sequence = sequence;
+        state.time = snapshot.getTime() / 1000;
+        state.diskCount = disks;
+        for (int i = 0; i < disks; i++) {
+            int slot = snapshot.getUpdateSlot(i);
+            state.x[i] = quantizeX(snapshot.getSlotX(slot));
+            state.y[i] = quantizeY(snapshot.getSlotY(slot));
+            state.vx[i] = quantizeVelocity(snapshot.getSlotVelocityX(slot));
+            state.vy[i] = quantizeVelocity(snapshot.getSlotVelocityY(slot));
+            state.acceleration[i] = snapshot.getSlotAcceleration(slot);
+            state.lastHitPlayerIndex[i] = snapshot.getSlotLastHitPlayerIndex(slot);
+            state.secondLastHitPlayerIndex[i] = snapshot.getSlotSecondLastHitPlayerIndex(slot);
+        }
+        state.scoreCount = score.length;
+        for (int i = 0; i < score.length; i++) {
+            state.score[i] = score[i];
+        }
+
+        writeState(os, state, baseline, distance);
+        return sequence;
+    }
+
+
+    /**
+     * Write the last update again as full update, for a client without a baseline.
+     * The client can decode all following delta updates against this update.
+     *
+     * @param os the output stream
+     * @throws IOException if an error occurs during writing
+     */
+    public void writeFull(DataOutputStream os) throws IOException {
+        if (sequence < 0) {
+            throw new IllegalStateException("No update written yet.");
+        }
+        writeState(os, history[sequence & (HISTORY_SIZE - 1)], null, 0);
+    }
+
+
+    /**
+     * Write the last update again as delta against an older update, for a client
+     * that received this older update last, because it gets fewer updates than
+     * others sharing the encoder. If the older update is no longer available, a
+     * full update is written.
+     *
+     * @param os               the output stream
+     * @param baselineSequence the sequence number of the update last received by the client
+     * @throws IOException if an error occurs during writing
+     */
+    public void writeDelta(DataOutputStream os, int baselineSequence) throws IOException {
+        if (sequence < 0) {
+            throw new IllegalStateException("No update written yet.");
+        }
+        int distance = (sequence - baselineSequence) & 0xffff;
+        State baseline = distance > 0 && distance < HISTORY_SIZE ? getHistory(baselineSequence) : null;
+        writeState(os, history[sequence & (HISTORY_SIZE - 1)], baseline, baseline == null ? 0 : distance);
+    }
+
+
+    /**
+     * Acknowledge that the client received the update with the given sequence number.
+     * Following updates are encoded as delta against this update. Over a reliable
+     * connection, every update can be acknowledged as soon as it is written.
+     * This may be called by another thread than {@link #write}.
+     *
+     * @param sequence the sequence number returned by {@link #write}
+     */
+    public void acknowledge(int sequence) {
+        if (acknowledged < 0 || ((sequence - acknowledged) & 0xffff) < 0x8000) {
+            acknowledged = sequence;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.model.vector;
+
+/**
+ * A stack of mutable scratch vectors for temporary results.
+ * Vectors are taken with {@link #get()} and given back in reverse order, either
+ * one by one with {@link #release()} or all at once with {@link #release(int)}
+ * using a mark from {@link #mark()}:
+ * <pre>
+ * int mark = arena.mark();
+ * Vector2D dir = arena.get().reset(p2).subtract(p1);
+ * ...
+ * arena.release(mark);
+ * </pre>
+ * An arena is confined to one thread at a time: it may only change its thread
+ * while no vectors are taken. Released vectors are reset to (0, 0), with assertions
+ * enabled it is checked that they stay untouched until they are taken again.
+ */
+public class VectorArena {
+
+    private MutableVector2D[] vectors;
+
+    /** number of taken vectors */
+    private int top = 0;
+
+    /** the thread using the arena, while vectors are taken */
+    private Thread owner = null;
+
+
+    /**
+     * Create a new arena with the given initial size.
+     * The arena grows, if more vectors are needed.
+     *
+     * @param size the initial number of vectors
+     */
+    public VectorArena(int size) {
+        vectors = new MutableVector2D[size];
+        for (int i = 0; i < size; i++) {
+            vectors[i] = new MutableVector2D(0.0, 0.0);
+        }
+    }
+
+
+    /**
+     * Take the next scratch vector.
+     *
+     * @return a mutable vector (0, 0)
+     */
+    public Vector2D get() {
+        assert checkThread();
+        if (top == vectors.length) {
+            grow();
+        }
+        MutableVector2D result = vectors[top++];
+        assert result.getX() == 0.0 && result.getY() == 0.0 : "scratch vector modified after release";
+        return result;
+    }
+
+
+    /**
+     * Release the last taken vector.
+     */
+    public void release() {
+        assert top > 0 : "no scratch vector to release";
+        vectors[--top].reset(0.0, 0.0);
+        assert top > 0 || (owner = null) == null;
+    }
+
+
+    /**
+     * Returns the current position, which can be used to release all
+     * vectors taken afterwards with {@link #release(int)}.
+     *
+     * @return the mark
+     */
+    public int mark() {
+        return top;
+    }
+
+
+    /**
+     * Release all vectors that were taken after the given mark.
+     *
+     * @param mark the mark from {@link #mark()}
+     */
+    public void release(int mark) {
+        assert mark <= top : "scratch vectors released twice";
+        while (top > mark) {
+            release();
+        }
+    }
+
+
+    /**
+     * Returns the number of taken vectors.
+     *
+     * @return the number of taken vectors
+     */
+    public int size() {
+        return top;
+    }
+
+
+    private boolean checkThread() {
+        Thread current = Thread.currentThread();
+        if (top == 0) {
+            owner = current;
+        }
+        return owner == current;
+    }
+
+
+    private void grow() {
+        MutableVector2D[] newVectors = new MutableVector2D[Math.max(4, vectors.length * 2)];
+        System.arraycopy(vectors, 0, newVectors, 0, vectors.length);
+        for (int i = vectors.length; i < newVectors.length; i++) {
+            newVectors[i] = new MutableVector2D(0.0, 0.0);
+        }
+        vectors = newVectors;
+    }
+}
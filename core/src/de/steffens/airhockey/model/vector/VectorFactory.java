@@ -7,11 +7,17 @@ import java.lang.reflect.Constructor;
 
 /**
  * Factory for creating vectors depending on currently set policy.
+ * The policy should be chosen once at startup. Vectors are created directly
+ * (no reflection), so the JIT sees only one implementation per call site.
+ * Mutable vectors are used, if no policy is set.
  * 
  * @author Johannes Scheerer
  */
 public class VectorFactory {
 	
+	private static boolean immutable = false;
+
+	/** the constructor of the old reflective creation, only set for comparison */
 	private static Constructor<? extends Vector2D> constructor = null;
 
 	/**
@@ -22,32 +28,65 @@ public class VectorFactory {
 	 * @return a new instance of the currently selected vector implementation.
 	 */
 	public static Vector2D getVector(double x, double y) {
-		try {
-	        return constructor.newInstance(x, y);
-        } catch (Exception e) {
-	        throw new RuntimeException(e);
-        }
+		if (constructor != null) {
+			try {
+				return constructor.newInstance(x, y);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+		if (immutable) {
+			return new ImmutableVector2D(x, y);
+		}
+		return new MutableVector2D(x, y);
 	}
 
 	/**
 	 * Set the creation policy to immutable vectors.
 	 */
 	public static void useImmutableVector() {
-		try {
-	        constructor = ImmutableVector2D.class.getConstructor(Double.TYPE, Double.TYPE);
-        } catch (Exception e) {
-	        throw new RuntimeException(e);
-        }
+		immutable = true;
+		if (constructor != null) {
+			useReflectiveCreation(true);
+		}
+	}
+
+	/**
+	 * Check, if immutable vectors are created.
+	 * 
+	 * @return <code>true</code> for immutable vectors
+	 */
+	public static boolean isImmutable() {
+		return immutable;
 	}
 
 	/**
 	 * Set the creation policy to mutable vectors.
 	 */
 	public static void useMutableVector() {
+		immutable = false;
+		if (constructor != null) {
+			useReflectiveCreation(true);
+		}
+	}
+
+	/**
+	 * Create the vectors with a reflective constructor call, like the factory did
+	 * before. This is slower and only meant for comparison, see
+	 * {@link de.steffens.airhockey.control.PlayerUpdateBenchmark}.
+	 * 
+	 * @param reflective <code>true</code> for the reflective creation
+	 */
+	public static void useReflectiveCreation(boolean reflective) {
+		if (!reflective) {
+			constructor = null;
+			return;
+		}
 		try {
-	        constructor = MutableVector2D.class.getConstructor(Double.TYPE, Double.TYPE);
-        } catch (Exception e) {
-	        throw new RuntimeException(e);
-        }
+			constructor = (immutable ? ImmutableVector2D.class : MutableVector2D.class)
+				.getConstructor(Double.TYPE, Double.TYPE);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
 	}
 }
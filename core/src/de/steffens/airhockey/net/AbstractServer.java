@@ -1,15 +1,23 @@
 package de.steffens.airhockey.net;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import de.steffens.airhockey.GameConfiguration;
 import de.steffens.airhockey.control.Player;
 import de.steffens.airhockey.control.RemotePlayer;
+import de.steffens.airhockey.model.Console;
 import de.steffens.airhockey.model.Disk;
 import de.steffens.airhockey.model.Game;
+import de.steffens.airhockey.model.GameSession;
 import de.steffens.airhockey.model.PlayingField;
 import de.steffens.airhockey.model.Simulation;
 import de.steffens.airhockey.view.GLMenu;
@@ -30,15 +38,56 @@ public abstract class AbstractServer {
     private GameConfiguration gameCfg;
     private Set<RemotePlayer> remotePlayers = Collections.synchronizedSet(new HashSet<RemotePlayer>());
 
+    /** the session of the game served */
+    private GameSession session;
+    /** the number of remote players to wait for */
+    protected int numRemotePlayers;
+    /** the player index of the first remote player */
+    protected int firstRemotePlayer;
+    /**
+     * guards the player slots, the number of connected players and the start of the
+     * game, as several clients may be in the handshake at the same time
+     */
+    private final Object slotLock = new Object();
+    /** the number of connected remote players */
+    private int connectedPlayers = 0;
+    /** the number of remote players, that received the initial game data */
+    private int readyPlayers = 0;
+    /**
+     * the remote player slots given to clients, including clients still sending their
+     * data, by player index relative to the first remote player
+     */
+    private final BitSet reservedSlots = new BitSet();
+    /** set, once all remote players are connected and the game start is signaled */
+    private boolean startSignaled = false;
+    /** starts the game of a hosted session, see {@link #startHosted} */
+    private Runnable hostedStart = null;
+    /** the menu item showing the number of players to wait for, may be null */
+    protected GLMenu.MenuItem menuItem = null;
+    /** sends the simulation updates to all clients with a reliable connection, created on demand */
+    private SimulationBroadcast broadcast = null;
+    /** the message queues of the connected clients */
+    private final List<OutboundQueue> clientQueues = new CopyOnWriteArrayList<OutboundQueue>();
+
+    /**
+     * Use the {@link NioTcpServer} with a single I/O thread for all clients, instead
+     * of the {@link TcpServer} with a thread per client.
+     */
+    public static boolean NON_BLOCKING_TCP = true;
+
     public static AbstractServer createServer(String type) {
         if (TCP.equals(type)) {
-            return new TcpServer();
+            return NON_BLOCKING_TCP ? new NioTcpServer() : new TcpServer();
+        }
+        if (UDP.equals(type)) {
+            return new UdpServer();
         }
         throw new UnsupportedOperationException("Server type not supported: " + type);
     }
 
     public void start(final GameConfiguration config, final Simulation simulation) {
         gameCfg = config;
+        session = Game.getSession();
 
         // this is called in the render-thread, but we have to wait for
         // all remote players to be connected, so start a new thread
@@ -73,6 +122,11 @@ public abstract class AbstractServer {
         // temporarily enable the console
         Game.getConsole().setVisible(true);
         playersReady = false;
+        synchronized (slotLock) {
+            this.numRemotePlayers = numRemotePlayers;
+            this.firstRemotePlayer = firstRemotePlayer;
+            startSignaled = false;
+        }
         try {
             acceptPlayerConnections(port, numRemotePlayers, firstRemotePlayer);
             if (numRemotePlayers > 0) {
@@ -87,14 +141,7 @@ public abstract class AbstractServer {
                 }
             }
 
-            // broadcast player data  to all clients and send the "Start" signal
-            System.out.println("[" + Thread.currentThread().getName()+"]: broadcast player data");
-            for (RemotePlayer remotePlayer : remotePlayers) {
-                for(short playerIndex=0; playerIndex < Game.getPlayerCount(); playerIndex++) {
-                    sendNewPlayerData(remotePlayer, playerIndex, Game.getPlayer(playerIndex));
-                }
-                sendStartGame(remotePlayer);
-            }
+            broadcastStartGame();
 
         } catch (IOException e) {
             System.err.println("Creating server failed.");
@@ -102,6 +149,82 @@ public abstract class AbstractServer {
         }
     }
 
+    /**
+     * Serve the game of the current session for a {@link GameHost}. Instead of
+     * listening on a port of its own, the server gets the connections routed to
+     * the session by the host. Once all remote players are connected, the start
+     * signal is sent to the clients and the given task is run to start the game.
+     *
+     * @param config            the game configuration
+     * @param numRemotePlayers  the number of remote players to wait for
+     * @param firstRemotePlayer the player index of the first remote player
+     * @param startGame         the task starting the game
+     */
+    public void startHosted(GameConfiguration config, int numRemotePlayers,
+                            int firstRemotePlayer, Runnable startGame) {
+        gameCfg = config;
+        session = Game.getSession();
+        synchronized (slotLock) {
+            this.numRemotePlayers = numRemotePlayers;
+            this.firstRemotePlayer = firstRemotePlayer;
+            startSignaled = false;
+        }
+        hostedStart = startGame;
+        playersReady = false;
+    }
+
+    /**
+     * Returns the session of the game served.
+     *
+     * @return the session
+     */
+    public GameSession getSession() {
+        return session;
+    }
+
+    /**
+     * Returns the number of remote players that can still connect.
+     *
+     * @return the number of free player slots
+     */
+    public int getFreePlayerSlots() {
+        synchronized (slotLock) {
+            return numRemotePlayers - reservedSlots.cardinality();
+        }
+    }
+
+    /**
+     * Called, once a client received the initial game data and its forwards are
+     * registered. The game starts with the last remote player being ready, so no
+     * player gets the start signal before its game data, even if several handshakes
+     * run at the same time.
+     *
+     * @param player the player of the client, with index -1 for a viewer
+     */
+    protected void clientReady(RemotePlayer player) {
+        int players;
+        synchronized (slotLock) {
+            if (player.getIndex() >= 0) {
+                readyPlayers++;
+            }
+            players = readyPlayers;
+        }
+        checkForGameStart(players, numRemotePlayers);
+    }
+
+    /**
+     * Broadcast the player data to all clients and send the "Start" signal.
+     */
+    protected void broadcastStartGame() throws IOException {
+        System.out.println("[" + Thread.currentThread().getName()+"]: broadcast player data");
+        for (RemotePlayer remotePlayer : remotePlayers) {
+            for(short playerIndex=0; playerIndex < Game.getPlayerCount(); playerIndex++) {
+                sendNewPlayerData(remotePlayer, playerIndex, Game.getPlayer(playerIndex));
+            }
+            sendStartGame(remotePlayer);
+        }
+    }
+
     protected abstract void acceptPlayerConnections(int port, int numRemotePlayers,
                                                     int firstRemotePlayer) throws IOException;
     protected abstract void sendNewPlayerData(RemotePlayer remotePlayer, int index, Player player) throws IOException;
@@ -111,6 +234,10 @@ public abstract class AbstractServer {
                                                 Disk[] playerDisks) throws IOException;
 
     protected GLMenu.MenuItem getWaitMenuItem(int numRemotePlayers) {
+        if (Game.getDisplay() == null) {
+            // headless server
+            return null;
+        }
         GLMenu menu = Game.getDisplay().getMenu();
         menu.enable();
         menu.disableBack();
@@ -148,6 +275,197 @@ public abstract class AbstractServer {
         remotePlayers.remove(player);
     }
 
+    /**
+     * Register a new client: the client becomes the next remote player, or a viewer
+     * if all remote players are connected already. For a player, this sends the player
+     * index, receives the player data and broadcasts it to the other players.
+     *
+     * @param is the stream receiving data from the client
+     * @param os the stream sending data to the client
+     * @return the remote player of the client, with index -1 for a viewer
+     * @throws IOException if an error occurs during the handshake
+     */
+    protected RemotePlayer registerClient(DataInputStream is, DataOutputStream os) throws IOException {
+        RemotePlayer player = acceptClient(os);
+        if (player.getIndex() >= 0) {
+            try {
+                completeClient(player, is, os);
+            } catch (IOException e) {
+                releaseClient(player);
+                throw e;
+            }
+        }
+        return player;
+    }
+
+    /**
+     * Give back the player slot of a client that failed to complete the handshake.
+     * The next client gets the lowest free slot.
+     *
+     * @param player the player returned by {@link #acceptClient}
+     */
+    protected void releaseClient(RemotePlayer player) {
+        if (player.getIndex() < 0) {
+            return;
+        }
+        synchronized (slotLock) {
+            reservedSlots.clear(player.getIndex() - firstRemotePlayer);
+        }
+    }
+
+    /**
+     * First step of {@link #registerClient}: the client becomes the remote player of
+     * the lowest free slot, or a viewer if all player slots are taken already. The player
+     * index (-1 for a viewer) is sent to the client, which answers with its player data.
+     *
+     * @param os the stream sending data to the client
+     * @return the remote player of the client, with index -1 for a viewer
+     * @throws IOException if an error occurs during sending
+     */
+    protected RemotePlayer acceptClient(DataOutputStream os) throws IOException {
+        RemotePlayer player;
+        int playerIndex = -1;
+        synchronized (slotLock) {
+            int slot = reservedSlots.nextClearBit(0);
+            if (slot < numRemotePlayers) {
+                reservedSlots.set(slot);
+                playerIndex = slot + firstRemotePlayer;
+            }
+        }
+        if (playerIndex >= 0) {
+            System.out.println("Server: Remote Player connected.");
+            player = (RemotePlayer) Game.getPlayer(playerIndex);
+            // handshake: send the player index
+            System.out.println("Server: Sending player index " + playerIndex);
+            try {
+                os.writeInt(playerIndex);
+                os.flush();
+            } catch (IOException e) {
+                releaseClient(player);
+                throw e;
+            }
+        } else {
+            System.out.println("Remote Viewer connected.");
+            Game.getConsole().addLine("Remote Viewer connected.", true);
+            // No player, just a viewer.
+            os.writeInt(-1);
+            os.flush();
+            player = new RemotePlayer(-1, null, null);
+            player.setConnection(os);
+        }
+        return player;
+    }
+
+    /**
+     * Second step of {@link #registerClient} for players: receive the player data,
+     * broadcast it to the other players and register the player.
+     *
+     * @param player the player returned by {@link #acceptClient}
+     * @param is     the stream receiving data from the client
+     * @param os     the stream sending data to the client
+     * @throws IOException if an error occurs during the handshake
+     */
+    protected void completeClient(RemotePlayer player, DataInputStream is, DataOutputStream os)
+            throws IOException {
+        // receive the player name, without holding the lock, as this may block
+        System.out.println("Server: waiting for player data...");
+        player.readData(is);
+        Game.getConsole().addLine("Player " + player.getName() + " connected.", true);
+
+        synchronized (slotLock) {
+            // broadcast new player to the other players
+            sendPlayerDataToOtherPlayers(player.getIndex(), player);
+            // register the new player
+            player.setConnection(os);
+            addRemotePlayer(player);
+
+            connectedPlayers++;
+            if (menuItem != null) {
+                menuItem.updateLabel(getWaitString(numRemotePlayers, connectedPlayers));
+            }
+        }
+    }
+
+    /**
+     * Forward the simulation updates and collisions to a client with a reliable connection.
+     * The updates are encoded once for all clients, see {@link SimulationBroadcast}.
+     *
+     * @param forward the forward to the client
+     */
+    protected void forwardSimulation(TcpServerSimulationForward forward) {
+        synchronized (MONITOR) {
+            if (broadcast == null) {
+                broadcast = new SimulationBroadcast();
+                Game.getSimulation().addSimulationListener(broadcast);
+            }
+        }
+        broadcast.addClient(forward);
+        Game.getSimulation().addCollisionListener(forward);
+        if (forward.getQueue() != null) {
+            clientQueues.add(forward.getQueue());
+        }
+    }
+
+    /**
+     * Returns the message queues of the connected clients, for monitoring the
+     * connections: the queue depth and the number of dropped simulation updates.
+     *
+     * @return the queues of the clients still connected
+     */
+    public List<OutboundQueue> getClientQueues() {
+        for (OutboundQueue queue : clientQueues) {
+            if (queue.isClosed()) {
+                clientQueues.remove(queue);
+            }
+        }
+        return new ArrayList<OutboundQueue>(clientQueues);
+    }
+
+    /**
+     * Forward all console changes to a client.
+     *
+     * @param os the stream sending data to the client
+     */
+    protected void forwardConsole(final DataOutputStream os) {
+        Game.getConsole().addConsoleListener(new Console.ConsoleListener() {
+            private boolean error = false;
+
+            @Override
+            public void clear() {
+                if (error) {
+                    return;
+                }
+                try {
+                    os.writeInt(MSG.CONSOLE_CLEAR);
+                    os.flush();
+                } catch (IOException e) {
+                    System.err.println("Error sending console clear.");
+                    e.printStackTrace();
+                    Game.getConsole().removeConsoleListener(this);
+                    error = true;
+                }
+            }
+
+            @Override
+            public void addLine(String line, boolean sticky) {
+                if (error) {
+                    return;
+                }
+                try {
+                    os.writeInt(MSG.CONSOLE_LINE);
+                    os.writeUTF(line);
+                    os.writeBoolean(sticky);
+                    os.flush();
+                } catch (IOException e) {
+                    System.err.println("Error sending console line.");
+                    e.printStackTrace();
+                    Game.getConsole().removeConsoleListener(this);
+                    error = true;
+                }
+            }
+        });
+    }
+
     protected void remotePlayerConnected(RemotePlayer player) throws IOException {
         Disk[] playerDisks = new Disk[Game.getPlayerCount()];
         for (int i = 0; i < Game.getPlayerCount(); i++) {
@@ -158,14 +476,34 @@ public abstract class AbstractServer {
     }
 
     protected void checkForGameStart(int players, int numRemotePlayers) {
-        if (players == numRemotePlayers && !playersReady) {
-            GLMenu menu = Game.getDisplay().getMenu();
-            menu.enableBack();
-            menu.selectBack();
-            menu.disable();
+        synchronized (slotLock) {
+            // only the last of several clients completing the handshake at once starts the game
+            if (players != numRemotePlayers || startSignaled) {
+                return;
+            }
+            startSignaled = true;
+        }
+        if (!playersReady) {
+            if (Game.getDisplay() != null) {
+                GLMenu menu = Game.getDisplay().getMenu();
+                menu.enableBack();
+                menu.selectBack();
+                menu.disable();
+            }
             System.out.println("[" + Thread.currentThread().getName()+"]: ready");
             Game.getConsole().addLine("Ready!", false);
             Game.getConsole().setVisible(gameCfg.showConsole());
+            if (hostedStart != null) {
+                playersReady = true;
+                try {
+                    broadcastStartGame();
+                } catch (IOException e) {
+                    System.err.println("Error sending start signal.");
+                    e.printStackTrace();
+                }
+                hostedStart.run();
+                return;
+            }
             // signal the server startup thread that all players connected
             // and simulation my run now
             synchronized (MONITOR) {
@@ -3,6 +3,7 @@
  */
 package de.steffens.airhockey.net;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -12,6 +13,8 @@ import de.steffens.airhockey.GameConfiguration;
 import de.steffens.airhockey.control.Player;
 import de.steffens.airhockey.model.CollisionListener;
 import de.steffens.airhockey.model.Game;
+import de.steffens.airhockey.model.RemoteSimulation;
+import de.steffens.airhockey.model.SnapshotDecoder;
 
 /**
  * Client waiting for server updates and updating local data structures.
@@ -24,35 +27,153 @@ public class Client {
     private static DataInputStream is;
     private static DataOutputStream os;
     private static int playerIndex = -1;
+    private static SnapshotDecoder decoder = null;
+
+    /** the connection to a UDP server, null for a TCP server */
+    private static UdpConnection connection = null;
+    /** set, once the game data was read and simulation updates can be applied */
+    private static volatile boolean started = false;
+    private static int lastUpdate = -1;
+    /** the inputs of the local player */
+    private static InputBatch inputs = new InputBatch();
+    /** the telemetry of the connection, and the stream counting the received bytes */
+    private static ConnectionStats stats = null;
+    private static CountingInputStream counter;
 
     /**
-     * Connects to the address and port given in the game config.
+     * Connects to the address and port given in the game config,
+     * using the configured network protocol.
      * 
      * @throws IOException if an error occurs during connecting
      */
     public static void connect(GameConfiguration config) throws IOException {
-        socket = new Socket(config.getServerAddress(), config.getPort());
-        socket.setTcpNoDelay(true);
         System.out.println("Client: connect...");
-        is = new DataInputStream(socket.getInputStream());
+        decoder = null;
+        started = false;
+        lastUpdate = -1;
+        inputs = new InputBatch();
+        if (stats != null) {
+            stats.close();
+        }
+        stats = new ConnectionStats("server " + config.getServerAddress() + ":" + config.getPort(), null);
+        if (AbstractServer.UDP.equals(config.getNetworkProtocol())) {
+            connection = UdpConnection.connect(config.getServerAddress(), config.getPort());
+            connection.setListener(new UdpConnection.Listener() {
+                @Override
+                public void datagramReceived(int kind, DataInputStream in) throws IOException {
+                    switch (kind) {
+                        case UdpConnection.UPDATE:
+                            readSimulationDatagram(in);
+                            break;
+                        case UdpConnection.PING:
+                            stats.messageReceived(MSG.PING, 8);
+                            connection.sendTime(UdpConnection.PONG, in.readLong());
+                            stats.messageSent(MSG.PONG, 8);
+                            break;
+                        case UdpConnection.PONG:
+                            stats.pongReceived(in.readLong());
+                            stats.messageReceived(MSG.PONG, 8);
+                            break;
+                        default:
+                            // unknown datagrams are ignored
+                    }
+                }
+
+                @Override
+                public void connectionClosed() {
+                    System.err.println("Client: connection to server closed.");
+                }
+            });
+            counter = new CountingInputStream(connection.getInputStream());
+        } else {
+            connection = null;
+            socket = new Socket(config.getServerAddress(), config.getPort());
+            socket.setTcpNoDelay(true);
+            counter = new CountingInputStream(socket.getInputStream());
+        }
+        is = new DataInputStream(counter);
         playerIndex = is.readInt();
         System.out.println("Client: player " + playerIndex);
+        // viewers only answer the pings of the server
+        if (connection != null) {
+            os = new DataOutputStream(connection.getOutputStream());
+        } else {
+            os = new DataOutputStream(socket.getOutputStream());
+        }
         if (playerIndex == -1) {
             // only viewer...
         }
         else {
             System.out.println("Client: sending data " + config.getPlayerName());
-            os = new DataOutputStream(socket.getOutputStream());
             Player.writeData(os, config);
+            os.flush();
+        }
+    }
+
+    /**
+     * Send the mouse position of the local player to the server. This is called
+     * every frame: the positions are numbered and collected, and sent as batch once
+     * the interval of {@link InputBatch#INPUT_INTERVAL_MS} elapsed. A position equal
+     * to the previous one is not sent again. Over UDP, every batch repeats the inputs
+     * not acknowledged by the server yet. Every {@link ConnectionStats#PING_INTERVAL_MS},
+     * a {@link MSG#PING} is sent along, for the round trip time. Over UDP, it is a
+     * {@link UdpConnection#PING} datagram of its own.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the sequence number of the input
+     * @throws IOException if an error occurs during sending
+     */
+    public static int sendMouse(double x, double y) throws IOException {
+        long now = System.nanoTime();
+        synchronized (Client.class) {
+            int sequence = inputs.add(now, x, y);
+            boolean reliable = connection == null;
+            boolean due = inputs.isDue(now, reliable);
+            boolean ping = stats.isPingDue(now);
+            if (!due && !ping) {
+                return sequence;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            if (reliable) {
+                if (ping) {
+                    out.writeInt(MSG.PING);
+                    out.writeLong(now);
+                    stats.messageSent(MSG.PING, bytes.size());
+                }
+                if (due) {
+                    int size = bytes.size();
+                    inputs.writeUnsent(out, now);
+                    stats.messageSent(MSG.INPUT, bytes.size() - size);
+                }
+                // one write for the whole batch
+                long start = System.nanoTime();
+                bytes.writeTo(getOs());
+                getOs().flush();
+                stats.sendTime(System.nanoTime() - start);
+            } else {
+                if (ping) {
+                    connection.sendTime(UdpConnection.PING, now);
+                    stats.messageSent(MSG.PING, 8);
+                }
+                if (due) {
+                    inputs.writeUnacknowledged(out, now);
+                    connection.send(UdpConnection.INPUT, bytes.toByteArray(), bytes.size());
+                }
+            }
+            return sequence;
         }
     }
 
     public static void start() {
+        started = true;
         Thread t = new Thread(new Runnable() {
             @Override
             public void run() {
                 try {
                     while (true) {
+                        long start = counter.getCount();
                         int msg = getIs().readInt();
                         switch (msg) {
                             case MSG.START_GAME:
@@ -61,6 +182,18 @@ public class Client {
                             case MSG.SIMULATION_UPDATE:
                                 readSimulationUpdate();
                                 break;
+                            case MSG.SIMULATION_DELTA:
+                                readSimulationDelta();
+                                break;
+                            case MSG.INPUT_ACK:
+                                inputAcknowledged(getIs().readUnsignedShort());
+                                break;
+                            case MSG.PING:
+                                sendPong(getIs().readLong());
+                                break;
+                            case MSG.PONG:
+                                stats.pongReceived(getIs().readLong());
+                                break;
                             case MSG.COLLISION_DISK_DISK:
                                 Game.getSimulation().notifyCollisionListeners(
                                     CollisionListener.DiskDiskCollision.read(getIs()));
@@ -69,6 +202,9 @@ public class Client {
                                 Game.getSimulation().notifyCollisionListeners(
                                     CollisionListener.DiskWallCollision.read(getIs()));
                                 break;
+                            case MSG.COLLISIONS:
+                                readCollisions();
+                                break;
                             case MSG.CONSOLE_CLEAR:
                                 Game.getConsole().clear();
                                 break;
@@ -86,6 +222,7 @@ public class Client {
                                 getIs().close();
                                 throw new IOException("Illegal server message type " + msg);
                         }
+                        stats.messageReceived(msg, (int) (counter.getCount() - start));
                     }
                 } catch (IOException e) {
                     System.err.println("Error receiving update: " + e.getMessage());
@@ -97,6 +234,26 @@ public class Client {
         t.start();
     }
 
+    /**
+     * Read the collisions of a simulation frame, see {@link MSG#COLLISIONS}.
+     */
+    private static void readCollisions() throws IOException {
+        int count = getIs().readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            int kind = getIs().readUnsignedByte();
+            if (kind == MSG.COLLISION_DISK_WALL) {
+                Game.getSimulation().notifyCollisionListeners(
+                    CollisionListener.DiskWallCollision.read(getIs()));
+            } else if (kind == MSG.COLLISION_DISK_DISK) {
+                Game.getSimulation().notifyCollisionListeners(
+                    CollisionListener.DiskDiskCollision.read(getIs()));
+            } else {
+                throw new IOException("Illegal collision kind " + kind);
+            }
+        }
+    }
+
+
     private static void readSimulationUpdate() throws IOException {
         Game.getSimulation().readSimulationUpdate(getIs());
         int players = getIs().readInt();
@@ -111,6 +268,101 @@ public class Client {
     }
 
 
+    private static void readSimulationDelta() throws IOException {
+        readSimulationDelta(getIs());
+    }
+
+
+    /**
+     * Read a simulation update received as datagram. Updates older than the last
+     * applied update are dropped. The update is acknowledged to the server.
+     * An update that cannot be decoded, e.g. without its baseline or truncated,
+     * is dropped as well: it is not acknowledged, so the following updates are
+     * encoded against an update the client has.
+     */
+    private static void readSimulationDatagram(DataInputStream in) throws IOException {
+        if (!started) {
+            // the game data is not read yet
+            return;
+        }
+        stats.messageReceived(MSG.SIMULATION_DELTA, in.available());
+        int input = in.readBoolean() ? in.readUnsignedShort() : -1;
+        in.mark(2);
+        int sequence = in.readUnsignedShort();
+        in.reset();
+        int distance = (sequence - lastUpdate) & 0xffff;
+        if (lastUpdate >= 0 && (distance == 0 || distance >= 0x8000)) {
+            // late or duplicate update
+            return;
+        }
+        if (input >= 0) {
+            inputAcknowledged(input);
+        }
+        try {
+            readSimulationDelta(in);
+        } catch (IOException e) {
+            System.err.println("Client: dropped simulation update " + sequence + ": " + e.getMessage());
+            return;
+        }
+        lastUpdate = sequence;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(2);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(sequence);
+        connection.send(UdpConnection.UPDATE_ACK, bytes.toByteArray(), bytes.size());
+    }
+
+
+    private static void readSimulationDelta(DataInputStream in) throws IOException {
+        if (decoder == null) {
+            decoder = new SnapshotDecoder(Game.getPlayingField());
+        }
+        Game.getSimulation().readSimulationUpdate(in, decoder);
+        if (decoder.isScoreChanged()) {
+            if (decoder.getScoreCount() != Game.getPlayerCount()) {
+                System.err.println("Client: got wrong number of players: " + decoder.getScoreCount());
+                assert false;
+            }
+            int[] score = Game.getScore();
+            for (int i = 0; i < Math.min(score.length, decoder.getScoreCount()); i++) {
+                score[i] = decoder.getScore(i);
+            }
+        }
+    }
+
+
+    /**
+     * The server used the input with the given sequence number for the following
+     * simulation updates.
+     */
+    private static void inputAcknowledged(int sequence) {
+        synchronized (Client.class) {
+            inputs.acknowledge(sequence);
+        }
+        if (Game.getSimulation() instanceof RemoteSimulation) {
+            ((RemoteSimulation) Game.getSimulation()).setAcknowledgedInput(sequence);
+        }
+    }
+
+
+    /**
+     * Answer a {@link MSG#PING} of the server.
+     */
+    private static void sendPong(long time) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(12);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MSG.PONG);
+        out.writeLong(time);
+        synchronized (Client.class) {
+            long start = System.nanoTime();
+            bytes.writeTo(getOs());
+            getOs().flush();
+            stats.sendTime(System.nanoTime() - start);
+            stats.messageSent(MSG.PONG, bytes.size());
+        }
+    }
+
+
     private static void readNewPlayerData() throws IOException {
         int newPlayerIndex = getIs().readInt();
         Game.getPlayer(newPlayerIndex).readData(getIs());
@@ -128,4 +380,13 @@ public class Client {
     public static int getPlayer() {
         return playerIndex;
     }
+
+    /**
+     * Returns the telemetry of the connection to the server.
+     *
+     * @return the telemetry, or <code>null</code> if not connected yet
+     */
+    public static ConnectionStats getStats() {
+        return stats;
+    }
 }
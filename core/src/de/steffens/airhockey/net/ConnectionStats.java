@@ -0,0 +1,389 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.net;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Telemetry of one network connection: messages and bytes sent and received per
+ * message type, the round trip time measured with {@link MSG#PING} and {@link MSG#PONG},
+ * the depth of the send queue and the time spent sending. Rates are averaged over
+ * the last full second.
+ * <p/>
+ * All open connections of the process are registered, so they can be shown on the
+ * HUD, see {@link #getSummary()}, or dumped in a machine readable format, see
+ * {@link #dumpAll()}. The counters are updated by the I/O threads.
+ */
+public class ConnectionStats {
+
+    /** interval of the {@link MSG#PING} messages in ms */
+    public static int PING_INTERVAL_MS = 1000;
+
+    /** the message types counted separately, all others are counted as "other" */
+    private static final String[] TYPE_NAMES = {
+        "PLAYING_FIELD", "SIMULATION_UPDATE", "COLLISION_DISK_WALL", "COLLISION_DISK_DISK",
+        "CONSOLE_CLEAR", "CONSOLE_LINE", "NEW_PLAYER_DATA", "START_GAME", "SIMULATION_DELTA",
+        "INPUT_ACK", "INPUT", "PING", "PONG", "COLLISIONS", "other"
+    };
+    private static final int OTHER = TYPE_NAMES.length - 1;
+    /** the number of round trip times kept for the percentiles */
+    private static final int RTT_SAMPLES = 64;
+    private static final long SECOND = 1000000000L;
+
+    /** all open connections */
+    private static final CopyOnWriteArrayList<ConnectionStats> all = new CopyOnWriteArrayList<ConnectionStats>();
+
+    private final String name;
+    /** the send queue of the connection, may be null */
+    private final OutboundQueue queue;
+
+    private final long[] sentMessages = new long[TYPE_NAMES.length];
+    private final long[] sentBytes = new long[TYPE_NAMES.length];
+    private final long[] receivedMessages = new long[TYPE_NAMES.length];
+    private final long[] receivedBytes = new long[TYPE_NAMES.length];
+
+    /** the totals at the start of the current second, and the rates of the last second */
+    private long rateTime = System.nanoTime();
+    private final long[] lastSentBytes = new long[TYPE_NAMES.length];
+    private final long[] lastReceivedBytes = new long[TYPE_NAMES.length];
+    private final long[] lastSentMessages = new long[TYPE_NAMES.length];
+    private final long[] lastReceivedMessages = new long[TYPE_NAMES.length];
+    private final double[] sentBytesRate = new double[TYPE_NAMES.length];
+    private final double[] receivedBytesRate = new double[TYPE_NAMES.length];
+    private final double[] sentMessagesRate = new double[TYPE_NAMES.length];
+    private final double[] receivedMessagesRate = new double[TYPE_NAMES.length];
+
+    private final long[] rtt = new long[RTT_SAMPLES];
+    private int rttCount = 0;
+    private int rttNext = 0;
+    private long lastPingTime = 0;
+
+    private long sends = 0;
+    private long sendNanos = 0;
+    private long maxSendNanos = 0;
+    /** the rate of simulation updates sent, or 0 if not known */
+    private double updateRate = 0;
+
+
+    /**
+     * Create the telemetry of a new connection and register it.
+     *
+     * @param name  the name of the connection
+     * @param queue the send queue of the connection, or <code>null</code>
+     */
+    public ConnectionStats(String name, OutboundQueue queue) {
+        this.name = name;
+        this.queue = queue;
+        all.add(this);
+    }
+
+
+    /**
+     * Unregister the connection, once it is closed.
+     */
+    public void close() {
+        all.remove(this);
+    }
+
+
+    /**
+     * Returns the telemetry of all open connections.
+     *
+     * @return the connections
+     */
+    public static List<ConnectionStats> getAll() {
+        return new ArrayList<ConnectionStats>(all);
+    }
+
+
+    private static int index(int type) {
+        return type >= 0 && type < OTHER ? type : OTHER;
+    }
+
+
+    /**
+     * Returns the message type of a complete message, which starts with the type.
+     *
+     * @param message the message
+     * @return the message type
+     */
+    static int getType(byte[] message) {
+        return message.length < 4 ? -1 : getType(message, 0);
+    }
+
+    /**
+     * Returns the message type of a message at the given offset.
+     *
+     * @param data   the data containing the message
+     * @param offset the start of the message, followed by at least 4 bytes
+     * @return the message type
+     */
+    static int getType(byte[] data, int offset) {
+        return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+            | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+
+
+    public synchronized void messageSent(int type, int bytes) {
+        sentMessages[index(type)]++;
+        sentBytes[index(type)] += bytes;
+    }
+
+    public synchronized void messageReceived(int type, int bytes) {
+        receivedMessages[index(type)]++;
+        receivedBytes[index(type)] += bytes;
+    }
+
+    /**
+     * Count the time spent writing to the network, including the flush.
+     *
+     * @param nanos the time in ns
+     */
+    public synchronized void sendTime(long nanos) {
+        sends++;
+        sendNanos += nanos;
+        maxSendNanos = Math.max(maxSendNanos, nanos);
+    }
+
+
+    /**
+     * Set the current rate of simulation updates sent over the connection.
+     *
+     * @param updateRate the number of updates per second
+     */
+    public synchronized void setUpdateRate(double updateRate) {
+        this.updateRate = updateRate;
+    }
+
+    public synchronized double getUpdateRate() {
+        return updateRate;
+    }
+
+
+    /**
+     * Check, if the next {@link MSG#PING} is due, and if so, assume it is sent.
+     *
+     * @param now the current time in ns
+     * @return <code>true</code>, if a ping should be sent
+     */
+    public synchronized boolean isPingDue(long now) {
+        if (now - lastPingTime < PING_INTERVAL_MS * 1000000L) {
+            return false;
+        }
+        lastPingTime = now;
+        return true;
+    }
+
+
+    /**
+     * Add a round trip time, measured with a {@link MSG#PONG} answering one of our pings.
+     *
+     * @param pingTime the time the ping was sent, echoed by the pong
+     */
+    public synchronized void pongReceived(long pingTime) {
+        long time = System.nanoTime() - pingTime;
+        if (time < 0 || time > 60 * SECOND) {
+            // not one of our pings
+            return;
+        }
+        rtt[rttNext] = time;
+        rttNext = (rttNext + 1) % RTT_SAMPLES;
+        rttCount = Math.min(rttCount + 1, RTT_SAMPLES);
+    }
+
+
+    /**
+     * Returns a percentile of the recent round trip times.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the round trip time in ms, or -1 if none was measured yet
+     */
+    public synchronized double getRtt(double percentile) {
+        if (rttCount == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(rtt, rttCount);
+        Arrays.sort(sorted);
+        int i = (int) Math.ceil(percentile / 100.0 * rttCount) - 1;
+        return sorted[Math.max(0, Math.min(rttCount - 1, i))] / 1000000.0;
+    }
+
+
+    /**
+     * Start a new second for the rates, once the current second is over.
+     */
+    private void updateRates() {
+        long now = System.nanoTime();
+        long elapsed = now - rateTime;
+        if (elapsed < SECOND) {
+            return;
+        }
+        double seconds = elapsed / (double) SECOND;
+        for (int i = 0; i < TYPE_NAMES.length; i++) {
+            sentBytesRate[i] = (sentBytes[i] - lastSentBytes[i]) / seconds;
+            receivedBytesRate[i] = (receivedBytes[i] - lastReceivedBytes[i]) / seconds;
+            sentMessagesRate[i] = (sentMessages[i] - lastSentMessages[i]) / seconds;
+            receivedMessagesRate[i] = (receivedMessages[i] - lastReceivedMessages[i]) / seconds;
+            lastSentBytes[i] = sentBytes[i];
+            lastReceivedBytes[i] = receivedBytes[i];
+            lastSentMessages[i] = sentMessages[i];
+            lastReceivedMessages[i] = receivedMessages[i];
+        }
+        rateTime = now;
+    }
+
+
+    public synchronized double getSentBytesPerSecond() {
+        updateRates();
+        return sum(sentBytesRate);
+    }
+
+    public synchronized double getReceivedBytesPerSecond() {
+        updateRates();
+        return sum(receivedBytesRate);
+    }
+
+    /**
+     * Returns the average time spent writing to the network.
+     *
+     * @return the time in ms
+     */
+    public synchronized double getAverageSendTime() {
+        return sends == 0 ? 0 : sendNanos / (double) sends / 1000000.0;
+    }
+
+    /**
+     * Returns the number of messages waiting in the send queue.
+     *
+     * @return the queue depth, 0 without a queue
+     */
+    public int getQueueDepth() {
+        return queue == null ? 0 : queue.getDepth();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+
+    private static double sum(double[] values) {
+        double result = 0;
+        for (double value : values) {
+            result += value;
+        }
+        return result;
+    }
+
+
+    /**
+     * Returns a short summary of all open connections for the HUD. Several
+     * connections are summed up, with the worst round trip time and queue depth.
+     *
+     * @return the summary, or <code>null</code> if there are no connections
+     */
+    public static String getSummary() {
+        List<ConnectionStats> connections = getAll();
+        if (connections.isEmpty()) {
+            return null;
+        }
+        double rtt50 = -1;
+        double rtt90 = -1;
+        double in = 0;
+        double out = 0;
+        int depth = 0;
+        double send = 0;
+        for (ConnectionStats stats : connections) {
+            rtt50 = Math.max(rtt50, stats.getRtt(50));
+            rtt90 = Math.max(rtt90, stats.getRtt(90));
+            in += stats.getReceivedBytesPerSecond();
+            out += stats.getSentBytesPerSecond();
+            depth = Math.max(depth, stats.getQueueDepth());
+            send = Math.max(send, stats.getAverageSendTime());
+        }
+        StringBuilder result = new StringBuilder();
+        if (connections.size() > 1) {
+            result.append(connections.size()).append(" connections, ");
+        }
+        result.append("RTT ");
+        result.append(rtt50 < 0 ? "-" : format(rtt50)).append('/').append(rtt90 < 0 ? "-" : format(rtt90));
+        result.append(" ms, in ").append(format(in / 1024)).append(" kB/s, out ");
+        result.append(format(out / 1024)).append(" kB/s, queue ").append(depth);
+        result.append(", send ").append(format(send)).append(" ms");
+        return result.toString();
+    }
+
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 10) / 10.0);
+    }
+
+
+    /**
+     * Returns the telemetry of this connection as JSON object.
+     *
+     * @return the JSON text
+     */
+    public synchronized String dump() {
+        updateRates();
+        StringBuilder result = new StringBuilder();
+        result.append("{\"name\":\"").append(name.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        result.append(",\"rttMs\":{\"p50\":").append(getRtt(50)).append(",\"p90\":").append(getRtt(90));
+        result.append(",\"p99\":").append(getRtt(99)).append(",\"samples\":").append(rttCount).append('}');
+        result.append(",\"queueDepth\":").append(getQueueDepth());
+        result.append(",\"sends\":").append(sends);
+        result.append(",\"sendMsAvg\":").append(getAverageSendTime());
+        result.append(",\"sendMsMax\":").append(maxSendNanos / 1000000.0);
+        result.append(",\"updateRate\":").append(updateRate);
+        result.append(",\"types\":{");
+        boolean first = true;
+        for (int i = 0; i < TYPE_NAMES.length; i++) {
+            if (sentMessages[i] == 0 && receivedMessages[i] == 0) {
+                continue;
+            }
+            if (!first) {
+                result.append(',');
+            }
+            first = false;
+            result.append('"').append(TYPE_NAMES[i]).append("\":{");
+            result.append("\"sentMessages\":").append(sentMessages[i]);
+            result.append(",\"sentBytes\":").append(sentBytes[i]);
+            result.append(",\"sentMessagesPerSecond\":").append(sentMessagesRate[i]);
+            result.append(",\"sentBytesPerSecond\":").append(sentBytesRate[i]);
+            result.append(",\"receivedMessages\":").append(receivedMessages[i]);
+            result.append(",\"receivedBytes\":").append(receivedBytes[i]);
+            result.append(",\"receivedMessagesPerSecond\":").append(receivedMessagesRate[i]);
+            result.append(",\"receivedBytesPerSecond\":").append(receivedBytesRate[i]);
+            result.append('}');
+        }
+        result.append("}}");
+        return result.toString();
+    }
+
+
+    /**
+     * Returns the telemetry of all open connections as JSON array.
+     *
+     * @return the JSON text
+     */
+    public static String dumpAll() {
+        StringBuilder result = new StringBuilder("[");
+        for (ConnectionStats stats : getAll()) {
+            if (result.length() > 1) {
+                result.append(',');
+            }
+            result.append(stats.dump());
+        }
+        return result.append(']').toString();
+    }
+
+
+    @Override
+    public String toString() {
+        return name + ": RTT " + getRtt(50) + "/" + getRtt(90) + " ms, in " + getReceivedBytesPerSecond()
+            + " B/s, out " + getSentBytesPerSecond() + " B/s, queue " + getQueueDepth();
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.net;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.steffens.airhockey.GameConfiguration;
+import de.steffens.airhockey.model.Game;
+import de.steffens.airhockey.model.GameSession;
+import de.steffens.airhockey.model.Simulation;
+import de.steffens.airhockey.model.vector.VectorFactory;
+
+/**
+ * Host running many matches in one process without display.
+ * Every match is a {@link GameSession} with its own simulation, playing field and
+ * players. The simulations of all sessions are advanced in fixed time steps by a
+ * shared pool of threads, sized to the available cores by default.
+ * <p/>
+ * Clients connect to a single port and are routed to the next session waiting for
+ * remote players. If no session is waiting, a new one is created. A session starts
+ * once all its remote players are connected, sessions without remote players (AI
+ * only) start right away. Finished sessions are removed.
+ */
+public class GameHost {
+
+    private final GameConfiguration config;
+    private final ScheduledExecutorService scheduler;
+    private final long tickNs;
+
+    /** all sessions, waiting or running */
+    private final ArrayList<HostedSession> sessions = new ArrayList<HostedSession>();
+
+    /** number of simulation ticks of all sessions */
+    private final AtomicLong ticks = new AtomicLong();
+
+    /** number of started sessions, numbering the recorded matches */
+    private final AtomicInteger started = new AtomicInteger();
+
+
+    /**
+     * A session run by the host.
+     */
+    private class HostedSession implements Runnable {
+
+        final GameSession session;
+        /** the server of the session, null if there are no remote players */
+        TcpServer server = null;
+        /** the number of clients routed to the session, in the handshake or connected */
+        int clients = 0;
+        volatile ScheduledFuture<?> future = null;
+        /** set when the session ended, its task has to be cancelled */
+        volatile boolean ended = false;
+
+        HostedSession(GameSession session) {
+            this.session = session;
+        }
+
+        @Override
+        public void run() {
+            if (ended) {
+                // ended before the future was published, see startSession
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            Game.setSession(session);
+            try {
+                Simulation simulation = session.getSimulation();
+                if (!simulation.isDeterministic()) {
+                    // update any playing field animations (done by the display otherwise)
+                    session.getPlayingField().update();
+                }
+                simulation.advanceFixedTimestep();
+                ticks.incrementAndGet();
+
+                if (!simulation.isDeterministic() && session.isTimedOut()) {
+                    // a deterministic simulation notifies the timeout itself
+                    simulation.notifyGameTimeoutListeners();
+                }
+                if (session.isGameOver()) {
+                    endSession(this);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error in hosted session, stopping it.");
+                e.printStackTrace();
+                endSession(this);
+            } finally {
+                // the pooled thread runs other sessions next
+                Game.setSession(null);
+            }
+        }
+    }
+
+
+    /**
+     * Create a new host for games with the given configuration.
+     *
+     * @param config  the game configuration for all sessions
+     * @param threads the number of threads running the simulations
+     */
+    public GameHost(GameConfiguration config, int threads) {
+        this.config = config;
+        int tickRate = config.getTickRate() > 0 ? config.getTickRate() : 60;
+        this.tickNs = 1000000000L / tickRate;
+        this.scheduler = Executors.newScheduledThreadPool(threads, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(final Runnable r) {
+                Thread t = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // do not keep the session inherited from the creating thread
+                        Game.setSession(null);
+                        r.run();
+                    }
+                }, Simulation.SIMULATION_THREAD_NAME + " " + count++);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Create a new host for games with the given configuration, using one
+     * simulation thread per available core.
+     *
+     * @param config the game configuration for all sessions
+     */
+    public GameHost(GameConfiguration config) {
+        this(config, Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /**
+     * Create a new session. A session with remote players waits for them
+     * to connect, a session without remote players is started right away.
+     *
+     * @return the new session
+     */
+    public GameSession createSession() {
+        GameSession session = new GameSession();
+        GameSession previous = Game.setSession(session);
+        try {
+            session.setupServerGame(config);
+            final HostedSession hosted = new HostedSession(session);
+            int remotePlayers = Math.max(0, config.getRemotePlayers());
+            if (remotePlayers > 0) {
+                hosted.server = new TcpServer();
+                hosted.server.startHosted(config, remotePlayers,
+                    config.isDedicatedServer() ? 0 : 1, new Runnable() {
+                        @Override
+                        public void run() {
+                            startSession(hosted);
+                        }
+                    });
+            }
+            synchronized (sessions) {
+                sessions.add(hosted);
+            }
+            if (remotePlayers == 0) {
+                startSession(hosted);
+            }
+        } finally {
+            Game.setSession(previous);
+        }
+        return session;
+    }
+
+
+    /**
+     * Accept connections on the given port and route every connection to the
+     * next session waiting for players. The handshake of every client runs in a
+     * thread of its own, so a slow client does not block the others, not even
+     * those of the same session. This does not return, unless accepting fails.
+     * The port is closed then.
+     *
+     * @param port the network port to listen to
+     * @throws IOException if the port cannot be opened
+     */
+    public void listen(int port) throws IOException {
+        ServerSocket serverSocket = new ServerSocket(port);
+        try {
+            System.out.println("Host: listening on port " + port);
+            while (true) {
+                final Socket socket = serverSocket.accept();
+                HostedSession target = routeToWaitingSession();
+                if (target == null) {
+                    createSession();
+                    target = routeToWaitingSession();
+                }
+                final HostedSession hosted = target;
+                Thread t = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // threads started for the client inherit the session
+                        Game.setSession(hosted.session);
+                        boolean connected = false;
+                        try {
+                            hosted.server.handleConnection(socket);
+                            connected = true;
+                        } catch (IOException e) {
+                            System.err.println("Connection error.");
+                            e.printStackTrace();
+                        } finally {
+                            if (!connected) {
+                                // the server released the player slot, route the next client here
+                                synchronized (sessions) {
+                                    hosted.clients--;
+                                }
+                            }
+                        }
+                    }
+                }, "Handshake " + socket.getRemoteSocketAddress());
+                t.setDaemon(true);
+                t.start();
+            }
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+
+    /**
+     * Returns the number of waiting and running sessions.
+     *
+     * @return the number of sessions
+     */
+    public int getSessionCount() {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+
+
+    /**
+     * Returns the number of simulation ticks of all sessions so far.
+     *
+     * @return the number of ticks
+     */
+    public long getTickCount() {
+        return ticks.get();
+    }
+
+
+    /**
+     * Stop all sessions.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        synchronized (sessions) {
+            for (HostedSession hosted : sessions) {
+                hosted.session.getSimulation().stop();
+                hosted.session.stopRecording();
+            }
+            sessions.clear();
+        }
+    }
+
+
+    /**
+     * Find the next session waiting for players, with a player slot not taken
+     * by other clients routed to it, and count the new client.
+     */
+    private HostedSession routeToWaitingSession() {
+        synchronized (sessions) {
+            for (HostedSession hosted : sessions) {
+                if (hosted.server != null && hosted.clients < config.getRemotePlayers()) {
+                    hosted.clients++;
+                    return hosted;
+                }
+            }
+        }
+        return null;
+    }
+
+
+    private void startSession(HostedSession hosted) {
+        GameSession previous = Game.setSession(hosted.session);
+        try {
+            hosted.session.getSimulation().initFixedTimestep((int) (1000000000L / tickNs),
+                config.getMaxSubSteps());
+            hosted.session.start();
+            int match = started.incrementAndGet();
+            if (config.getRecordFile() != null) {
+                hosted.session.startRecording(MatchRecorder.getMatchFile(config.getRecordFile(), match));
+            }
+            if (config.getInputLogFile() != null) {
+                hosted.session.startInputLog(MatchRecorder.getMatchFile(config.getInputLogFile(), match));
+            }
+        } finally {
+            Game.setSession(previous);
+        }
+        hosted.future = scheduler.scheduleAtFixedRate(hosted, 0, tickNs, TimeUnit.NANOSECONDS);
+        if (hosted.ended) {
+            // the first tick ended the session before the future was published
+            hosted.future.cancel(false);
+        }
+    }
+
+
+    private void endSession(HostedSession hosted) {
+        hosted.ended = true;
+        if (hosted.future != null) {
+            hosted.future.cancel(false);
+        }
+        hosted.session.getSimulation().stop();
+        hosted.session.stopRecording();
+        synchronized (sessions) {
+            sessions.remove(hosted);
+        }
+    }
+
+
+    /**
+     * Run a headless host. The arguments are the same as for the game (see
+     * {@link GameConfiguration#create(String[])}), in addition "-matches &lt;n&gt;"
+     * starts n sessions right away and "-threads &lt;n&gt;" sets the number of
+     * simulation threads. With "-wait &lt;n&gt;", clients are accepted on the
+     * server port and every match waits for n remote players. With "-record &lt;file&gt;",
+     * every match is recorded, to the file name numbered with the match. With
+     * "-inputlog &lt;file&gt;", the matches are deterministic and the player inputs of
+     * every match are logged the same way, see {@link de.steffens.airhockey.model.Resimulation}.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws Exception {
+        VectorFactory.useMutableVector();
+        GameConfiguration config = GameConfiguration.createDedicatedServerConfig(args);
+        int matches = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i + 1 < args.length; i++) {
+            if ("-matches".equals(args[i])) {
+                matches = Integer.parseInt(args[++i]);
+            } else if ("-threads".equals(args[i])) {
+                threads = Integer.parseInt(args[++i]);
+            }
+        }
+
+        final GameHost host = new GameHost(config, threads);
+        for (int i = 0; i < matches; i++) {
+            host.createSession();
+        }
+        if (config.getRemotePlayers() > 0) {
+            host.listen(config.getPort());
+            return;
+        }
+
+        // AI matches only: report the progress until all matches are finished
+        long lastTicks = 0;
+        long lastTime = System.nanoTime();
+        while (host.getSessionCount() > 0) {
+            Thread.sleep(5000);
+            long now = System.nanoTime();
+            long ticks = host.getTickCount();
+            System.out.println("Host: " + host.getSessionCount() + " sessions, "
+                + ((ticks - lastTicks) * 1000000000L / (now - lastTime)) + " ticks/s");
+            lastTicks = ticks;
+            lastTime = now;
+        }
+        host.shutdown();
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.net;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import de.steffens.airhockey.control.InputBuffer;
+import de.steffens.airhockey.control.RemotePlayer;
+
+/**
+ * The mouse positions of a client player, sent to the server in batches.
+ * Every position sampled by the client is numbered, unless it is the same as the
+ * previous one, and keeps the time it was sampled. The positions are collected and
+ * sent at most every {@link #INPUT_INTERVAL_MS}, several of them in one packet.
+ * The server applies them at the right time, see {@link InputBuffer}.
+ * <p/>
+ * Format of a batch:
+ * <pre>
+ * unsigned short  sequence number of the first input
+ * unsigned byte   number of inputs n
+ * long            client time of sending the batch in µs
+ * n times:
+ *   int           age of the input in µs when the batch was sent
+ *   double        x coordinate
+ *   double        y coordinate
+ * </pre>
+ * Over TCP, the batch is preceded by {@link MSG#INPUT} and contains the inputs not
+ * sent yet. Over UDP, it is sent as {@link UdpConnection#INPUT} datagram, which
+ * repeats all inputs not acknowledged by the server yet, so a lost datagram is
+ * covered by the next one.
+ */
+public class InputBatch {
+
+    /** minimum interval between two batches in ms */
+    public static int INPUT_INTERVAL_MS = 30;
+
+    /** maximum number of inputs in one batch */
+    static final int MAX_INPUTS = 16;
+    /** size of the header of a batch, and of every input */
+    private static final int HEADER_SIZE = 11;
+    private static final int INPUT_SIZE = 20;
+    /** the number of recent inputs kept, must be a power of two */
+    private static final int HISTORY_SIZE = 64;
+    /** maximum age of an input in a batch, the time of older inputs is not exact */
+    private static final long MAX_AGE_NS = 1000000000L;
+
+    private final long[] time = new long[HISTORY_SIZE];
+    private final double[] x = new double[HISTORY_SIZE];
+    private final double[] y = new double[HISTORY_SIZE];
+
+    /** the sequence number of the last added input, the last sent and the last acknowledged input */
+    private int sequence = -1;
+    private int sent = -1;
+    private int acknowledged = -1;
+    private long lastSendTime = 0;
+
+    private int batches = 0;
+    private int coalesced = 0;
+
+
+    /**
+     * Add a mouse position. A position equal to the last one is not added again.
+     *
+     * @param now the current time in ns
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the sequence number of the input with this position
+     */
+    public int add(long now, double x, double y) {
+        if (sequence >= 0) {
+            int last = sequence & (HISTORY_SIZE - 1);
+            if (this.x[last] == x && this.y[last] == y) {
+                coalesced++;
+                return sequence;
+            }
+        }
+        sequence = (sequence + 1) & 0xffff;
+        int slot = sequence & (HISTORY_SIZE - 1);
+        time[slot] = now;
+        this.x[slot] = x;
+        this.y[slot] = y;
+        return sequence;
+    }
+
+
+    /**
+     * Acknowledge that the server received all inputs up to the given one.
+     * These inputs are not repeated by {@link #writeUnacknowledged}.
+     *
+     * @param sequence the sequence number of the acknowledged input
+     */
+    public void acknowledge(int sequence) {
+        if (acknowledged < 0 || ((sequence - acknowledged) & 0xffff) < 0x8000) {
+            acknowledged = sequence;
+        }
+    }
+
+
+    /**
+     * Check, if the next batch is due: the interval since the last batch elapsed,
+     * and there are inputs to send.
+     *
+     * @param now the current time in ns
+     * @param reliable <code>true</code> for a reliable connection, which needs the
+     *                 inputs not sent yet only, instead of all not acknowledged inputs
+     * @return <code>true</code>, if a batch should be sent
+     */
+    public boolean isDue(long now, boolean reliable) {
+        if (sequence < 0 || now - lastSendTime < INPUT_INTERVAL_MS * 1000000L) {
+            return false;
+        }
+        return sequence != (reliable ? sent : acknowledged);
+    }
+
+
+    /**
+     * Write all inputs not sent yet, as one or more {@link MSG#INPUT} messages.
+     *
+     * @param os the output stream
+     * @param now the current time in ns
+     * @throws IOException if an error occurs during writing
+     */
+    public void writeUnsent(DataOutputStream os, long now) throws IOException {
+        int next = (sent + 1) & 0xffff;
+        int pending = sent < 0 ? sequence + 1 : (sequence - sent) & 0xffff;
+        if (pending > HISTORY_SIZE) {
+            // the older inputs are lost, as if they were coalesced
+            next = (sequence - HISTORY_SIZE + 1) & 0xffff;
+            pending = HISTORY_SIZE;
+        }
+        while (pending > 0) {
+            int n = Math.min(pending, MAX_INPUTS);
+            os.writeInt(MSG.INPUT);
+            write(os, next, n, now);
+            next = (next + n) & 0xffff;
+            pending -= n;
+        }
+        sent = sequence;
+        lastSendTime = now;
+    }
+
+
+    /**
+     * Write a batch of the inputs not acknowledged by the server, at most the
+     * last {@link #MAX_INPUTS}.
+     *
+     * @param os the output stream
+     * @param now the current time in ns
+     * @throws IOException if an error occurs during writing
+     */
+    public void writeUnacknowledged(DataOutputStream os, long now) throws IOException {
+        int pending = acknowledged < 0 ? sequence + 1 : (sequence - acknowledged) & 0xffff;
+        if (pending <= 0 || pending >= 0x8000) {
+            // nothing new, repeat the last input
+            pending = 1;
+        }
+        int n = Math.min(pending, MAX_INPUTS);
+        write(os, (sequence - n + 1) & 0xffff, n, now);
+        sent = sequence;
+        lastSendTime = now;
+    }
+
+
+    private void write(DataOutputStream os, int first, int n, long now) throws IOException {
+        os.writeShort(first);
+        os.writeByte(n);
+        os.writeLong(now / 1000);
+        for (int i = 0; i < n; i++) {
+            int slot = (first + i) & (HISTORY_SIZE - 1);
+            os.writeInt((int) (Math.min(now - time[slot], MAX_AGE_NS) / 1000));
+            os.writeDouble(x[slot]);
+            os.writeDouble(y[slot]);
+        }
+        batches++;
+    }
+
+
+    /**
+     * Read a batch and pass the inputs to the input buffer of the given player.
+     *
+     * @param is the input stream
+     * @param player the player sending the inputs
+     * @throws IOException if an error occurs during reading
+     */
+    public static void read(DataInputStream is, RemotePlayer player) throws IOException {
+        int first = is.readUnsignedShort();
+        int n = is.readUnsignedByte();
+        long sendTime = is.readLong() * 1000;
+        InputBuffer inputs = player.getInputs();
+        inputs.synchronize(sendTime, System.nanoTime());
+        for (int i = 0; i < n; i++) {
+            long clientTime = sendTime - is.readInt() * 1000L;
+            double x = is.readDouble();
+            double y = is.readDouble();
+            inputs.add((first + i) & 0xffff, clientTime, x, y);
+        }
+    }
+
+
+    /**
+     * Returns the size of a batch, without the message type.
+     *
+     * @param n the number of inputs of the batch
+     * @return the size in bytes
+     */
+    static int getSize(int n) {
+        return HEADER_SIZE + n * INPUT_SIZE;
+    }
+
+
+    /**
+     * Returns the number of batches written so far.
+     *
+     * @return the number of batches
+     */
+    public int getBatches() {
+        return batches;
+    }
+
+    /**
+     * Returns the number of positions not added, as they were equal to the last one.
+     *
+     * @return the number of coalesced positions
+     */
+    public int getCoalesced() {
+        return coalesced;
+    }
+}
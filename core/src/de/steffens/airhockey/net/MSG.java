@@ -23,4 +23,20 @@ public interface MSG {
     int NEW_PLAYER_DATA = 6;
 
     int START_GAME = 7;
+
+    int SIMULATION_DELTA = 8;
+
+    int INPUT_ACK = 9;
+
+    /** sent by the client: a batch of player inputs, see {@link InputBatch} */
+    int INPUT = 10;
+
+    /** sent by client and server: a long time stamp, to be echoed as {@link #PONG} */
+    int PING = 11;
+
+    /** the answer to a {@link #PING}, with its time stamp, see {@link ConnectionStats} */
+    int PONG = 12;
+
+    /** the collisions since the last simulation update, sent in front of the next update */
+    int COLLISIONS = 13;
 }
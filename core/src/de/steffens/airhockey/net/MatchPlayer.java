@@ -0,0 +1,472 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.net;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import de.steffens.airhockey.model.CollisionListener;
+import de.steffens.airhockey.model.Game;
+import de.steffens.airhockey.model.RemoteSimulation;
+import de.steffens.airhockey.model.SnapshotDecoder;
+
+/**
+ * Plays back a match recorded by a {@link MatchRecorder}, like a client watching
+ * the match: the recorded updates are fed into the {@link RemoteSimulation} of the
+ * current session as they were sent by a server, so the display shows the match
+ * as usual.
+ * <p/>
+ * The file is mapped into memory. The playback can be paused, and moved to any
+ * time of the match: the keyframe before the time is found by a binary search
+ * of the keyframe index, and the frames from there on are decoded up to the time.
+ * Collisions are passed to the collision listeners during normal playback only,
+ * so the state changed by collisions only (like destroyed walls) is not restored
+ * when moving to another time.
+ * <p/>
+ * Usage: {@link #open(File)} the recording, set up the session from the game data
+ * (see {@link #getGameData()}), then {@link #start()} the playback.
+ */
+public class MatchPlayer {
+
+    /** the time the playback is moved by a seek key */
+    public static int SEEK_STEP_MS = 5000;
+    /** the time between two checks for due frames */
+    private static final int PLAYBACK_INTERVAL_MS = 5;
+
+    /** the player of the current session, if any */
+    private static volatile MatchPlayer active = null;
+
+    /**
+     * Input stream reading from a part of a byte buffer.
+     */
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void setRange(int position, int limit) {
+            buffer.limit(limit);
+            buffer.position(position);
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    private final File file;
+    private final MappedByteBuffer data;
+    private final BufferInputStream frameIn;
+    private final DataInputStream frameIs;
+    /** the stream reading the game data at the start of the file */
+    private final BufferInputStream headerIn;
+
+    /** the file position of the first frame, and the end of the last frame */
+    private int framesStart;
+    private int framesEnd;
+    /** time and file position of the keyframes */
+    private long[] keyframeTimes;
+    private int[] keyframePositions;
+    private int keyframes = 0;
+    private long firstTime;
+    private long lastTime;
+
+    private RemoteSimulation simulation;
+    private SnapshotDecoder decoder;
+
+    /** the file position of the next frame, and the time of the last frame played */
+    private int position;
+    private long time;
+    /** the playback is at the given time of the match at the given real time */
+    private long anchorTime;
+    private long anchorRealTime;
+    private boolean paused = false;
+    private volatile boolean closed = false;
+
+
+    private MatchPlayer(File file, MappedByteBuffer data) {
+        this.file = file;
+        this.data = data;
+        this.frameIn = new BufferInputStream(data.duplicate());
+        this.frameIs = new DataInputStream(frameIn);
+        this.headerIn = new BufferInputStream(data.duplicate());
+    }
+
+
+    /**
+     * Open a recording.
+     *
+     * @param file the recorded file
+     * @return the player of the recording
+     * @throws IOException if the file cannot be read, or is no recording
+     */
+    public static MatchPlayer open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long size = raf.length();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Recording too large: " + file);
+            }
+            MappedByteBuffer data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < 8 || data.getInt(0) != MatchRecorder.MAGIC) {
+                throw new IOException("No recorded match: " + file);
+            }
+            if (data.getInt(4) != MatchRecorder.VERSION) {
+                throw new IOException("Unsupported recording version " + data.getInt(4) + ": " + file);
+            }
+            MatchPlayer player = new MatchPlayer(file, data);
+            player.headerIn.setRange(8, (int) size);
+            return player;
+        } finally {
+            // the mapping stays valid
+            raf.close();
+        }
+    }
+
+
+    /**
+     * Returns the player of the current session.
+     *
+     * @return the player, or <code>null</code> if no recording is played
+     */
+    public static MatchPlayer getActive() {
+        return active;
+    }
+
+
+    /**
+     * Returns the stream of the game data at the start of the recording, in the
+     * format sent to a client connecting to the server: the game configuration,
+     * the playing field, the puck, the number of players and the player disks.
+     * It is followed by the data of every player, see
+     * {@link de.steffens.airhockey.control.Player#readData(DataInputStream)}.
+     * All of it has to be read before starting the playback.
+     *
+     * @return the stream of the game data
+     */
+    public DataInputStream getGameData() {
+        return new DataInputStream(headerIn);
+    }
+
+
+    /**
+     * Start playing the recording in the current session, which has to be set up
+     * from the game data already. This starts the game, and a thread passing the
+     * recorded updates to the simulation in real time.
+     */
+    public void start() {
+        if (!(Game.getSimulation() instanceof RemoteSimulation)) {
+            throw new IllegalStateException("A recording is played by a remote simulation.");
+        }
+        simulation = (RemoteSimulation) Game.getSimulation();
+        decoder = new SnapshotDecoder(Game.getPlayingField());
+        framesStart = data.capacity() - headerIn.available();
+        if (!readIndex()) {
+            System.out.println("No index in recording " + file + ", reading all frames.");
+            scanFrames();
+        }
+        position = framesStart;
+        time = firstTime;
+        anchorTime = firstTime;
+        anchorRealTime = System.nanoTime();
+        System.out.println("Playing " + file + ": " + ((lastTime - firstTime) / 1000000000L) + " s, "
+            + keyframes + " keyframes");
+
+        if (active != null) {
+            active.close();
+        }
+        active = this;
+        Game.start();
+
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!closed) {
+                    try {
+                        play();
+                        Thread.sleep(PLAYBACK_INTERVAL_MS);
+                    } catch (InterruptedException e) {
+                        // closed
+                    } catch (IOException e) {
+                        System.err.println("Error playing the recording " + file);
+                        e.printStackTrace();
+                        close();
+                    }
+                }
+            }
+        }, "MatchPlayerThread");
+        t.setDaemon(true);
+        t.start();
+    }
+
+
+    /**
+     * Read the keyframe index at the end of the recording.
+     *
+     * @return <code>false</code>, if the recording has no index
+     */
+    private boolean readIndex() {
+        int size = data.capacity();
+        if (size - framesStart < 24 || data.getInt(size - 4) != MatchRecorder.MAGIC) {
+            return false;
+        }
+        long indexPosition = data.getLong(size - 12);
+        if (indexPosition < framesStart || indexPosition > size - 32
+            || data.getInt((int) indexPosition) != MatchRecorder.INDEX) {
+            return false;
+        }
+        int index = (int) indexPosition;
+        int count = data.getInt(index + 4);
+        if (count < 1 || index + 8 + count * 16L + 20 != size) {
+            return false;
+        }
+        keyframes = count;
+        keyframeTimes = new long[count];
+        keyframePositions = new int[count];
+        for (int i = 0; i < count; i++) {
+            keyframeTimes[i] = data.getLong(index + 8 + i * 16);
+            keyframePositions[i] = (int) data.getLong(index + 16 + i * 16);
+        }
+        framesEnd = index;
+        firstTime = keyframeTimes[0];
+        lastTime = data.getLong(size - 20);
+        return true;
+    }
+
+
+    /**
+     * Find all frames by reading the file from the start, for a recording that
+     * was not closed. The frames up to the first incomplete frame are played.
+     */
+    private void scanFrames() {
+        keyframeTimes = new long[64];
+        keyframePositions = new int[64];
+        keyframes = 0;
+        int size = data.capacity();
+        int pos = framesStart;
+        while (size - pos >= 4) {
+            int length = data.getInt(pos);
+            if (length < 9 || length > size - pos - 4) {
+                // the index, the unused part of the last chunk, or an incomplete frame
+                break;
+            }
+            long frameTime = data.getLong(pos + 5);
+            if ((data.get(pos + 4) & MatchRecorder.KEYFRAME) != 0) {
+                if (keyframes == keyframeTimes.length) {
+                    keyframeTimes = Arrays.copyOf(keyframeTimes, keyframes * 2);
+                    keyframePositions = Arrays.copyOf(keyframePositions, keyframes * 2);
+                }
+                keyframeTimes[keyframes] = frameTime;
+                keyframePositions[keyframes] = pos;
+                keyframes++;
+            }
+            lastTime = frameTime;
+            pos += 4 + length;
+        }
+        framesEnd = keyframes == 0 ? framesStart : pos;
+        firstTime = keyframes == 0 ? 0 : keyframeTimes[0];
+    }
+
+
+    /**
+     * Play all frames due at the current time.
+     */
+    private synchronized void play() throws IOException {
+        long now = paused ? anchorTime : anchorTime + (System.nanoTime() - anchorRealTime);
+        while (position < framesEnd && getFrameTime(position) <= now) {
+            readFrame(true, true);
+        }
+        if (position >= framesEnd && !paused) {
+            // the end of the match
+            setPaused(true);
+        }
+    }
+
+
+    private long getFrameTime(int framePosition) {
+        return data.getLong(framePosition + 5);
+    }
+
+
+    /**
+     * Read the frame at the current position.
+     *
+     * @param apply  pass the state to the simulation, otherwise it is decoded only
+     * @param notify pass the collisions to the collision listeners
+     */
+    private void readFrame(boolean apply, boolean notify) throws IOException {
+        int end = position + 4 + data.getInt(position);
+        time = getFrameTime(position);
+        frameIn.setRange(position + 13, end);
+        position = end;
+
+        if (apply) {
+            simulation.readSimulationUpdate(frameIs, decoder);
+        } else {
+            decoder.read(frameIs);
+        }
+        if (decoder.isScoreChanged()) {
+            int[] score = Game.getScore();
+            for (int i = 0; i < Math.min(score.length, decoder.getScoreCount()); i++) {
+                score[i] = decoder.getScore(i);
+            }
+        }
+        if (!notify) {
+            return;
+        }
+        int count = frameIs.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            int kind = frameIs.readUnsignedByte();
+            if (kind == MSG.COLLISION_DISK_WALL) {
+                simulation.notifyCollisionListeners(CollisionListener.DiskWallCollision.read(frameIs));
+            } else if (kind == MSG.COLLISION_DISK_DISK) {
+                simulation.notifyCollisionListeners(CollisionListener.DiskDiskCollision.read(frameIs));
+            } else {
+                throw new IOException("Illegal collision kind " + kind);
+            }
+        }
+        // the recorded inputs are not needed to show the match
+    }
+
+
+    /**
+     * Move the playback to the given time of the match. The state of the last
+     * frame not after this time is shown.
+     *
+     * @param newTime the time of the match in ns, see {@link #getTime()}
+     */
+    public synchronized void seek(long newTime) {
+        if (keyframes == 0 || closed) {
+            return;
+        }
+        long target = Math.max(firstTime, Math.min(lastTime, newTime));
+        int index = Arrays.binarySearch(keyframeTimes, 0, keyframes, target);
+        if (index < 0) {
+            // the keyframe before the insertion point
+            index = Math.max(0, -index - 2);
+        }
+        simulation.reset();
+        position = keyframePositions[index];
+        try {
+            while (true) {
+                int next = position + 4 + data.getInt(position);
+                boolean last = next >= framesEnd || getFrameTime(next) > target;
+                readFrame(last, false);
+                if (last) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading the recording " + file);
+            e.printStackTrace();
+            close();
+            return;
+        }
+        anchorTime = time;
+        anchorRealTime = System.nanoTime();
+    }
+
+
+    /**
+     * Move the playback by the given time.
+     *
+     * @param ms the time in ms, negative to move back
+     */
+    public synchronized void skip(int ms) {
+        seek(time + ms * 1000000L);
+    }
+
+
+    /**
+     * Pause or resume the playback.
+     *
+     * @param paused <code>true</code> to pause
+     */
+    public synchronized void setPaused(boolean paused) {
+        if (this.paused == paused) {
+            return;
+        }
+        if (!paused && position >= framesEnd) {
+            // start again
+            seek(firstTime);
+        }
+        this.paused = paused;
+        anchorTime = time;
+        anchorRealTime = System.nanoTime();
+        simulation.setPaused(paused);
+    }
+
+
+    public synchronized void togglePause() {
+        setPaused(!paused);
+    }
+
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+
+    /**
+     * Returns the time of the frame shown last.
+     *
+     * @return the simulation time of the recorded match in ns
+     */
+    public synchronized long getTime() {
+        return time;
+    }
+
+
+    /**
+     * Returns a short description of the playback state, for the display.
+     *
+     * @return the played and total time of the match
+     */
+    public synchronized String getStatus() {
+        return "Replay " + formatTime(time - firstTime) + " / " + formatTime(lastTime - firstTime)
+            + (paused ? " [paused]" : "");
+    }
+
+
+    private static String formatTime(long ns) {
+        long seconds = ns / 1000000000L;
+        return (seconds / 60) + ":" + (seconds % 60 < 10 ? "0" : "") + (seconds % 60);
+    }
+
+
+    /**
+     * Stop the playback.
+     */
+    public void close() {
+        closed = true;
+        if (active == this) {
+            active = null;
+        }
+    }
+}
@@ -0,0 +1,462 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import de.steffens.airhockey.GameConfiguration;
+import de.steffens.airhockey.control.Player;
+import de.steffens.airhockey.control.RemotePlayer;
+import de.steffens.airhockey.model.CollisionListener;
+import de.steffens.airhockey.model.GameSession;
+import de.steffens.airhockey.model.Simulation;
+import de.steffens.airhockey.model.Simulation.SimulationListener;
+import de.steffens.airhockey.model.SnapshotEncoder;
+
+/**
+ * Records a match on the server side into an append-only file, which can be
+ * played back by a {@link MatchPlayer}.
+ * <p/>
+ * The file starts with the game data a client gets when connecting: the game
+ * configuration, the playing field, the puck, the player disks and the player data.
+ * It is followed by one frame per simulation step:
+ * <ul>
+ * <li>the frame length as int, not including the length itself</li>
+ * <li>a byte, {@link #KEYFRAME} if the frame can be decoded on its own</li>
+ * <li>the simulation time in ns as long</li>
+ * <li>the disk states and the score, encoded by a {@link SnapshotEncoder}: a full
+ * update for a keyframe, a delta update against the previous frame otherwise</li>
+ * <li>the collisions of the step, in the format of a {@link MSG#COLLISIONS} section</li>
+ * <li>the inputs of the remote players used for the first time by the step: the number
+ * of inputs as byte, followed by player index (byte), input sequence number (short),
+ * x and y (double) of each input</li>
+ * </ul>
+ * A keyframe is written every {@link #KEYFRAME_INTERVAL_MS}. When the recording is
+ * closed, the index of all keyframes is appended: {@link #INDEX} as int, the number
+ * of keyframes as int, time and file position (long) of every keyframe, the time of
+ * the last frame and the position of the index (long), and {@link #MAGIC} again.
+ * A recording that was not closed has no index, the player finds the frames by
+ * reading the file from the start.
+ * <p/>
+ * The simulation thread only encodes the frames, into blocks of {@link #BLOCK_SIZE}.
+ * Full blocks, and the last block before every keyframe, are appended to the file by
+ * a writer thread, through memory mapped chunks of {@link #CHUNK_SIZE}. So the
+ * simulation is not delayed by the file system, and at most the frames since the
+ * last keyframe are lost if the process ends without closing the recording.
+ */
+public class MatchRecorder implements SimulationListener, CollisionListener {
+
+    /** the first int of a recording */
+    public static final int MAGIC = 0x41485243;
+    /** the version of the file format */
+    public static final int VERSION = 1;
+    /** the flag of a frame written as full update */
+    public static final int KEYFRAME = 1;
+    /** the length marking the start of the index */
+    public static final int INDEX = -1;
+
+    /** the time between two keyframes */
+    public static int KEYFRAME_INTERVAL_MS = 1000;
+    /** the size of the blocks of frames passed to the writer thread */
+    public static int BLOCK_SIZE = 64 * 1024;
+    /** the size of the file region mapped at once */
+    public static int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /** the maximum number of collisions and inputs of one frame */
+    private static final int MAX_EVENTS = 0xffff;
+    private static final int MAX_INPUTS = 0xff;
+    /** the time to wait for the writer thread when closing */
+    private static final int CLOSE_TIMEOUT_MS = 5000;
+
+    /**
+     * Byte buffer giving access to its data without copying.
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+        final DataOutputStream os = new DataOutputStream(this);
+
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] getData() {
+            return buf;
+        }
+    }
+
+    /** the block passed to the writer thread after the last block */
+    private static final Buffer END = new Buffer(0);
+
+    private final File file;
+    private final GameSession session;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    /** the mapped chunk of the file, and the file position of its start, used by the writer thread */
+    private MappedByteBuffer chunk;
+    private long chunkPosition;
+
+    /** the blocks to write, and the written blocks to fill again */
+    private final BlockingQueue<Buffer> pending = new LinkedBlockingQueue<Buffer>();
+    private final BlockingQueue<Buffer> free = new LinkedBlockingQueue<Buffer>();
+    private final Thread writer;
+    private volatile boolean failed = false;
+
+    /** the block the frames are encoded into, and the file position of its start */
+    private Buffer block = new Buffer(BLOCK_SIZE);
+    private long blockPosition = 0;
+
+    private final SnapshotEncoder encoder;
+    /** the delta update of the current simulation step */
+    private final Buffer update = new Buffer(256);
+    /** the collisions of the current simulation step */
+    private final Buffer events = new Buffer(256);
+    private int eventCount = 0;
+    /** the last recorded input of every player, -1 if none */
+    private final int[] inputs;
+
+    /** time and file position of the keyframes */
+    private long[] keyframeTimes = new long[64];
+    private long[] keyframePositions = new long[64];
+    private int keyframes = 0;
+    private long lastKeyframeTime = 0;
+    private long lastFrameTime = 0;
+
+    private boolean closed = false;
+
+
+    /**
+     * Start recording the given session into the given file. The file is replaced.
+     * The session has to be set up completely, the recording starts with the next
+     * simulation step.
+     *
+     * @param file    the file to write
+     * @param session the session to record
+     * @throws IOException if the file cannot be written
+     */
+    public MatchRecorder(File file, GameSession session) throws IOException {
+        this.file = file;
+        this.session = session;
+        this.encoder = new SnapshotEncoder(session.getPlayingField());
+        this.inputs = new int[session.getPlayerCount()];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = -1;
+        }
+
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        channel = raf.getChannel();
+        chunkPosition = 0;
+        chunk = channel.map(FileChannel.MapMode.READ_WRITE, 0, CHUNK_SIZE);
+
+        block.os.writeInt(MAGIC);
+        block.os.writeInt(VERSION);
+        writeGameData(block.os);
+        writeBlock();
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeBlocks();
+            }
+        }, "MatchRecorderThread");
+        writer.setDaemon(true);
+        writer.start();
+
+        Simulation simulation = session.getSimulation();
+        simulation.addCollisionListener(this);
+        simulation.addSimulationListener(this);
+        System.out.println("Recording the match to " + file);
+    }
+
+
+    /**
+     * Returns the file of one of several matches recorded by a process: the
+     * number of the match is added to the name, before the extension.
+     *
+     * @param name  the configured file name, see {@link GameConfiguration#getRecordFile()}
+     * @param match the number of the match
+     * @return the file of the match
+     */
+    public static File getMatchFile(String name, int match) {
+        File file = new File(name);
+        String fileName = file.getName();
+        int dot = fileName.lastIndexOf('.');
+        fileName = dot > 0 ? fileName.substring(0, dot) + "-" + match + fileName.substring(dot)
+            : fileName + "-" + match;
+        return new File(file.getParentFile(), fileName);
+    }
+
+
+    /**
+     * Write the game data, like it is sent to a connecting client.
+     */
+    private void writeGameData(DataOutputStream os) throws IOException {
+        session.getConfiguration().write(os);
+        session.getPlayingField().write(os);
+        session.getPuck().write(os);
+        os.writeInt(session.getPlayerCount());
+        for (int i = 0; i < session.getPlayerCount(); i++) {
+            session.getPlayer(i).getControlledDisk().write(os);
+        }
+        for (int i = 0; i < session.getPlayerCount(); i++) {
+            session.getPlayer(i).writeData(os);
+        }
+    }
+
+
+    @Override
+    public synchronized void update() {
+        if (closed || failed) {
+            return;
+        }
+        try {
+            Simulation simulation = session.getSimulation();
+            long time = simulation.getSimulationTime();
+            boolean keyframe = keyframes == 0
+                || time - lastKeyframeTime >= KEYFRAME_INTERVAL_MS * 1000000L;
+            if (keyframe || block.size() >= BLOCK_SIZE) {
+                // a keyframe starts a new block, the frames before are written
+                writeBlock();
+            }
+
+            int start = block.size();
+            DataOutputStream os = block.os;
+            os.writeInt(0);
+            os.writeByte(keyframe ? KEYFRAME : 0);
+            os.writeLong(time);
+            update.reset();
+            int sequence = simulation.writeSimulationUpdate(update.os, encoder, session.getScore());
+            // every frame is the baseline of the next one
+            encoder.acknowledge(sequence);
+            if (keyframe) {
+                // the same state again, without baseline
+                encoder.writeFull(os);
+            } else {
+                update.writeTo(os);
+            }
+
+            os.writeShort(eventCount);
+            events.writeTo(os);
+            events.reset();
+            eventCount = 0;
+            writeInputs(os);
+
+            // the length in front of the frame
+            int length = block.size() - start - 4;
+            byte[] data = block.getData();
+            data[start] = (byte) (length >>> 24);
+            data[start + 1] = (byte) (length >>> 16);
+            data[start + 2] = (byte) (length >>> 8);
+            data[start + 3] = (byte) length;
+
+            if (keyframe) {
+                addKeyframe(time, blockPosition + start);
+            }
+            lastFrameTime = time;
+        } catch (IOException e) {
+            // not possible for a byte array
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * Write the inputs of the remote players, that were used for the first time
+     * by the last simulation step.
+     */
+    private void writeInputs(DataOutputStream os) throws IOException {
+        int count = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            if (isNewInput(i)) {
+                count++;
+            }
+        }
+        count = Math.min(count, MAX_INPUTS);
+        os.writeByte(count);
+        for (int i = 0; i < inputs.length && count > 0; i++) {
+            if (!isNewInput(i)) {
+                continue;
+            }
+            RemotePlayer player = (RemotePlayer) session.getPlayer(i);
+            os.writeByte(i);
+            os.writeShort(player.getAppliedInput());
+            os.writeDouble(player.getInputs().getX());
+            os.writeDouble(player.getInputs().getY());
+            inputs[i] = player.getAppliedInput();
+            count--;
+        }
+    }
+
+
+    private boolean isNewInput(int playerIndex) {
+        Player player = session.getPlayer(playerIndex);
+        return player instanceof RemotePlayer
+            && ((RemotePlayer) player).getAppliedInput() != inputs[playerIndex];
+    }
+
+
+    private void addKeyframe(long time, long position) {
+        if (keyframes == keyframeTimes.length) {
+            long[] times = new long[keyframes * 2];
+            long[] positions = new long[keyframes * 2];
+            System.arraycopy(keyframeTimes, 0, times, 0, keyframes);
+            System.arraycopy(keyframePositions, 0, positions, 0, keyframes);
+            keyframeTimes = times;
+            keyframePositions = positions;
+        }
+        keyframeTimes[keyframes] = time;
+        keyframePositions[keyframes] = position;
+        keyframes++;
+        lastKeyframeTime = time;
+    }
+
+
+    /**
+     * Pass the current block to the writer thread, and continue with an empty block.
+     */
+    private void writeBlock() {
+        if (block.size() == 0) {
+            return;
+        }
+        blockPosition += block.size();
+        pending.add(block);
+        Buffer next = free.poll();
+        block = next != null ? next : new Buffer(BLOCK_SIZE);
+    }
+
+
+    /**
+     * Append the blocks to the file, until the recording is closed. This is
+     * run by the writer thread.
+     */
+    private void writeBlocks() {
+        try {
+            while (true) {
+                Buffer next = pending.take();
+                if (next == END) {
+                    break;
+                }
+                append(next.getData(), next.size());
+                next.reset();
+                free.add(next);
+            }
+            long end = chunkPosition + chunk.position();
+            chunk.force();
+            chunk = null;
+            try {
+                channel.truncate(end);
+            } catch (IOException e) {
+                // some systems do not allow truncating a mapped file, the rest of the chunk stays empty
+                System.err.println("Unable to truncate the recording " + file + ": " + e.getMessage());
+            }
+        } catch (IOException e) {
+            System.err.println("Error recording the match to " + file + ", stopping the recording.");
+            e.printStackTrace();
+            failed = true;
+        } catch (InterruptedException e) {
+            failed = true;
+        } finally {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+
+    /**
+     * Append the given data to the file. If the mapped chunk is full, the next
+     * chunk is mapped.
+     */
+    private void append(byte[] data, int length) throws IOException {
+        if (chunk.remaining() < length) {
+            chunkPosition += chunk.position();
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkPosition,
+                Math.max(CHUNK_SIZE, length));
+        }
+        chunk.put(data, 0, length);
+    }
+
+
+    /**
+     * Stop recording: write the keyframe index after the frames, and wait until
+     * the writer thread wrote everything and cut off the part of the last chunk not used.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                long indexPosition = blockPosition + block.size();
+                DataOutputStream os = block.os;
+                os.writeInt(INDEX);
+                os.writeInt(keyframes);
+                for (int i = 0; i < keyframes; i++) {
+                    os.writeLong(keyframeTimes[i]);
+                    os.writeLong(keyframePositions[i]);
+                }
+                os.writeLong(lastFrameTime);
+                os.writeLong(indexPosition);
+                os.writeInt(MAGIC);
+            } catch (IOException e) {
+                // not possible for a byte array
+                throw new IllegalStateException(e);
+            }
+            writeBlock();
+            pending.add(END);
+        }
+        // collisions notified until the removal are ignored, as the recorder is closed
+        session.getSimulation().removeCollisionListener(this);
+        session.getSimulation().removeSimulationListener(this);
+        try {
+            writer.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            // the writer thread finishes anyway
+        }
+        if (!failed) {
+            long duration = keyframes == 0 ? 0 : lastFrameTime - keyframeTimes[0];
+            System.out.println("Recorded " + (duration / 1000000000L) + " s of the match to " + file);
+        }
+    }
+
+
+    /**
+     * Add a collision to the frame of the current simulation step.
+     */
+    private void addCollision(int kind, CollisionEvent collision) {
+        if (closed || eventCount == MAX_EVENTS) {
+            return;
+        }
+        try {
+            events.os.writeByte(kind);
+            collision.write(events.os);
+            eventCount++;
+        } catch (IOException e) {
+            // not possible for a byte array
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    @Override
+    public synchronized void collisionOccurred(DiskWallCollision collision) {
+        addCollision(MSG.COLLISION_DISK_WALL, collision);
+    }
+
+
+    @Override
+    public synchronized void collisionOccurred(DiskDiskCollision collision) {
+        addCollision(MSG.COLLISION_DISK_DISK, collision);
+    }
+}
@@ -0,0 +1,446 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import de.steffens.airhockey.GameConfiguration;
+import de.steffens.airhockey.control.Player;
+import de.steffens.airhockey.control.RemotePlayer;
+import de.steffens.airhockey.model.Disk;
+import de.steffens.airhockey.model.Game;
+import de.steffens.airhockey.model.PlayingField;
+
+/**
+ * A server using tcp/ip for communication with its clients, with non-blocking
+ * channels. A single thread accepts the connections, reads the client input and
+ * writes the queued server messages of all clients, so no thread is needed per
+ * client. The protocol is the same as for the {@link TcpServer}.
+ * <p/>
+ * Messages are written to the {@link DataOutputStream} of the client as before.
+ * Flushing the stream appends the data to the {@link OutboundQueue} of the client
+ * and wakes up the I/O thread, so writing never blocks the simulation. A client
+ * that does not read its data fast enough is disconnected, once its queue exceeds
+ * {@link OutboundQueue#MAX_QUEUED_BYTES}.
+ */
+public class NioTcpServer extends AbstractServer {
+
+    /** size of the direct buffers for reading and writing */
+    static final int BUFFER_SIZE = 16 * 1024;
+
+    private Selector selector;
+    /** the read buffer of the I/O thread, shared by all clients */
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    /** clients with new data in their write queue */
+    private final ConcurrentLinkedQueue<ClientChannel> pendingWrites = new ConcurrentLinkedQueue<ClientChannel>();
+    /** players still in the handshake, only accessed by the I/O thread */
+    private final List<ClientChannel> handshakes = new ArrayList<ClientChannel>();
+
+
+    /**
+     * The connection to a client.
+     */
+    private class ClientChannel {
+
+        final SocketChannel channel;
+        SelectionKey key;
+        RemotePlayer player = null;
+        /** set, once the handshake is complete */
+        boolean registered = false;
+        /** the time of the connection, to detect clients not completing the handshake */
+        final long acceptedNs = System.nanoTime();
+
+        /** received data not handled yet */
+        byte[] input = new byte[64];
+        int inputLength = 0;
+
+        /** the messages waiting to be copied to the write buffer */
+        final OutboundQueue queue;
+        final DataOutputStream os;
+        /** the message copied to the write buffer partially, and the number of bytes copied */
+        byte[] message = null;
+        int writeOffset = 0;
+        /** the data written, but not sent yet, in read mode */
+        final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        ClientChannel(SocketChannel channel) {
+            this.channel = channel;
+            this.queue = new OutboundQueue(String.valueOf(channel.socket().getRemoteSocketAddress())) {
+                @Override
+                protected void dataAvailable() {
+                    pendingWrites.add(ClientChannel.this);
+                    selector.wakeup();
+                }
+            };
+            this.os = queue.getOutputStream();
+            writeBuffer.flip();
+        }
+
+        /**
+         * Write as much queued data as the channel takes.
+         * Called by the I/O thread only.
+         *
+         * @return <code>true</code>, if all data was written
+         */
+        boolean write() throws IOException {
+            while (true) {
+                writeBuffer.compact();
+                while (writeBuffer.hasRemaining()) {
+                    if (message == null) {
+                        message = queue.poll();
+                        writeOffset = 0;
+                        if (message == null) {
+                            break;
+                        }
+                        queue.getStats().messageSent(ConnectionStats.getType(message), message.length);
+                    }
+                    int n = Math.min(writeBuffer.remaining(), message.length - writeOffset);
+                    writeBuffer.put(message, writeOffset, n);
+                    writeOffset += n;
+                    if (writeOffset == message.length) {
+                        message = null;
+                    }
+                }
+                writeBuffer.flip();
+                if (!writeBuffer.hasRemaining()) {
+                    return true;
+                }
+                long start = System.nanoTime();
+                channel.write(writeBuffer);
+                queue.getStats().sendTime(System.nanoTime() - start);
+                if (writeBuffer.hasRemaining()) {
+                    // the socket buffer is full, continue when the channel is writable
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Append received data to the input.
+         */
+        void append(ByteBuffer buffer) {
+            int n = buffer.remaining();
+            if (inputLength + n > input.length) {
+                byte[] newInput = new byte[Math.max(input.length * 2, inputLength + n)];
+                System.arraycopy(input, 0, newInput, 0, inputLength);
+                input = newInput;
+            }
+            buffer.get(input, inputLength, n);
+            inputLength += n;
+        }
+
+        /**
+         * Remove handled data from the input.
+         */
+        void consume(int n) {
+            System.arraycopy(input, n, input, 0, inputLength - n);
+            inputLength -= n;
+        }
+    }
+
+
+    @Override
+    protected void acceptPlayerConnections(int port, final int numRemotePlayers,
+                                           final int firstRemotePlayer) throws IOException {
+        selector = Selector.open();
+        final ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                System.out.println(getWaitString(numRemotePlayers, 0));
+                if (numRemotePlayers > 0) {
+                    menuItem = getWaitMenuItem(numRemotePlayers);
+                }
+                ioLoop(serverChannel);
+            }
+        }, "ServerThread");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @Override
+    protected void sendNewPlayerData(RemotePlayer remotePlayer, int index, Player player) throws IOException {
+        DataOutputStream out = remotePlayer.getConnection();
+        out.writeInt(MSG.NEW_PLAYER_DATA);
+        out.writeInt(index);
+        player.writeData(out);
+        out.flush();
+    }
+
+    @Override
+    protected void sendStartGame(RemotePlayer remotePlayer) throws IOException {
+        DataOutputStream out = remotePlayer.getConnection();
+        out.writeInt(MSG.START_GAME);
+        out.flush();
+    }
+
+    @Override
+    protected void sendInitialGameData(RemotePlayer remotePlayer, GameConfiguration gameCfg, PlayingField field, Disk puck, int playerCount, Disk[] playerDisks) throws IOException {
+        DataOutputStream os = remotePlayer.getConnection();
+        gameCfg.write(os);
+        field.write(os);
+        puck.write(os);
+        os.writeInt(playerCount);
+        for (int i = 0; i < playerDisks.length; i++) {
+            playerDisks[i].write(os);
+        }
+        os.flush();
+    }
+
+
+    /**
+     * The loop of the I/O thread. It wakes up at least once per second, to close the
+     * connections of players, that do not complete the handshake in time.
+     */
+    private void ioLoop(ServerSocketChannel serverChannel) {
+        while (true) {
+            try {
+                selector.select(1000);
+            } catch (IOException e) {
+                System.err.println("Server: select failed.");
+                e.printStackTrace();
+                return;
+            }
+
+            ClientChannel client;
+            while ((client = pendingWrites.poll()) != null) {
+                flushClient(client);
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept(serverChannel);
+                    continue;
+                }
+                client = (ClientChannel) key.attachment();
+                if (key.isReadable()) {
+                    read(client);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    flushClient(client);
+                }
+            }
+            closeStaleHandshakes();
+        }
+    }
+
+
+    /**
+     * Close the connections of players, that did not send their data within
+     * {@link TcpServer#HANDSHAKE_TIMEOUT_MS}, giving their slots to other clients.
+     */
+    private void closeStaleHandshakes() {
+        long now = System.nanoTime();
+        for (Iterator<ClientChannel> it = handshakes.iterator(); it.hasNext();) {
+            ClientChannel client = it.next();
+            if (client.registered || !client.channel.isOpen()) {
+                it.remove();
+            } else if (now - client.acceptedNs > TcpServer.HANDSHAKE_TIMEOUT_MS * 1000000L) {
+                System.err.println("Server: closing connection of player " + client.player.getIndex()
+                    + ", the handshake timed out.");
+                it.remove();
+                close(client);
+            }
+        }
+    }
+
+
+    private void accept(ServerSocketChannel serverChannel) {
+        ClientChannel client = null;
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            client = new ClientChannel(channel);
+            client.key = channel.register(selector, SelectionKey.OP_READ, client);
+            client.player = acceptClient(client.os);
+            if (client.player.getIndex() < 0) {
+                // viewers do not send any data
+                clientRegistered(client);
+            } else {
+                handshakes.add(client);
+            }
+        } catch (IOException e) {
+            System.err.println("Connection error.");
+            e.printStackTrace();
+            if (client != null) {
+                close(client);
+            }
+        }
+    }
+
+
+    private void read(ClientChannel client) {
+        try {
+            readBuffer.clear();
+            int n = client.channel.read(readBuffer);
+            if (n < 0) {
+                throw new EOFException("Connection closed by client.");
+            }
+            readBuffer.flip();
+            client.append(readBuffer);
+
+            if (!client.registered && client.player.getIndex() >= 0) {
+                // the handshake: wait for the complete player data
+                DataInputStream is = new DataInputStream(
+                    new ByteArrayInputStream(client.input, 0, client.inputLength));
+                try {
+                    client.player.readData(is);
+                } catch (EOFException e) {
+                    return;
+                }
+                completeClient(client.player, new DataInputStream(
+                    new ByteArrayInputStream(client.input, 0, client.inputLength)), client.os);
+                client.consume(client.inputLength - is.available());
+                clientRegistered(client);
+            }
+
+            // input batches of a player, pings and pongs of players and viewers
+            int handled = 0;
+            DataInputStream is = new DataInputStream(
+                new ByteArrayInputStream(client.input, 0, client.inputLength));
+            int size;
+            while ((size = getMessageSize(client.input, handled, client.inputLength)) > 0) {
+                int msg = is.readInt();
+                TcpServer.readClientMessage(msg, is, client.os, client.player, client.queue.getStats());
+                client.queue.getStats().messageReceived(msg, size);
+                handled += size;
+            }
+            client.consume(handled);
+        } catch (IOException e) {
+            System.err.println("Error while reading from client " + client.player.getIndex() +
+                " (Player " + client.player.getName() + "): " + e.getMessage());
+            close(client);
+        }
+    }
+
+
+    /**
+     * Returns the size of the client message at the given offset of the received data.
+     *
+     * @return the size of the message, or 0 if it is not received completely
+     * @throws IOException if the message type is not allowed
+     */
+    private static int getMessageSize(byte[] data, int offset, int length) throws IOException {
+        int available = length - offset;
+        if (available < 4) {
+            return 0;
+        }
+        int size;
+        int msg = ConnectionStats.getType(data, offset);
+        switch (msg) {
+            case MSG.INPUT:
+                // the message type and the batch header up to the number of inputs
+                if (available < 7) {
+                    return 0;
+                }
+                size = 4 + InputBatch.getSize(data[offset + 6] & 0xff);
+                break;
+            case MSG.PING:
+            case MSG.PONG:
+                size = 12;
+                break;
+            default:
+                throw new IOException("Illegal client message type " + msg);
+        }
+        return available >= size ? size : 0;
+    }
+
+
+    /**
+     * Send the game data to a client after the handshake, and start forwarding the events.
+     */
+    private void clientRegistered(ClientChannel client) throws IOException {
+        client.registered = true;
+
+        // Write initial data.
+        remotePlayerConnected(client.player);
+
+        // Register listeners that forward events to the client
+        forwardSimulation(new TcpServerSimulationForward(client.queue, client.player));
+        forwardConsole(client.os);
+
+        clientReady(client.player);
+    }
+
+
+    private void flushClient(ClientChannel client) {
+        if (client.queue.isClosed()) {
+            if (client.channel.isOpen() && client.queue.isOverflow()) {
+                System.err.println("Server: disconnecting client " + client.player.getIndex()
+                    + ", it does not receive its data fast enough.");
+            }
+            close(client);
+            return;
+        }
+        try {
+            boolean done = client.write();
+            if (client.key.isValid()) {
+                client.key.interestOps(done ? SelectionKey.OP_READ
+                    : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        } catch (ClosedChannelException e) {
+            close(client);
+        } catch (IOException e) {
+            System.err.println("Error while writing to client " + client.player.getIndex() +
+                " (Player " + client.player.getName() + "): " + e.getMessage());
+            close(client);
+        }
+    }
+
+
+    /**
+     * Close the connection to a client. The {@link SimulationBroadcast} drops the
+     * forward of the client with its next update, in the simulation thread, and
+     * removes it as collision listener.
+     */
+    private void close(ClientChannel client) {
+        if (!client.channel.isOpen()) {
+            return;
+        }
+        client.queue.close();
+        if (client.key != null) {
+            client.key.cancel();
+        }
+        try {
+            client.channel.close();
+        } catch (IOException e) {
+            // nothing to do here
+        }
+        if (client.player != null && client.player.getIndex() >= 0) {
+            if (client.registered) {
+                removeRemotePlayer(client.player);
+            } else {
+                releaseClient(client.player);
+            }
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+
+/**
+ * The queue of the messages waiting to be sent to one client. The messages are
+ * added by the game threads and taken by an I/O thread, so a slow client never
+ * blocks the simulation.
+ * <p/>
+ * There are two kinds of messages: messages written to the {@link #getOutputStream()
+ * output stream} (console lines, collisions, game data) are always delivered, in the
+ * order they were flushed. If they exceed {@link #MAX_QUEUED_BYTES}, the client does
+ * not keep up and the queue is closed. Simulation updates are only of interest until
+ * the next update: at most one update is queued, a newer update replaces an update
+ * not sent yet, see {@link #offerUpdate(byte[])}.
+ * <p/>
+ * The number of queued messages, sent and dropped updates are available for
+ * monitoring the connection, and the {@link ConnectionStats} of the connection,
+ * which are updated by the I/O thread.
+ */
+public class OutboundQueue {
+
+    /** maximum number of bytes of messages queued for a client */
+    public static int MAX_QUEUED_BYTES = 1024 * 1024;
+
+    private final String name;
+    private final ArrayDeque<byte[]> messages = new ArrayDeque<byte[]>();
+    /** the simulation update not sent yet, or null */
+    private byte[] update = null;
+    private int queuedBytes = 0;
+    private int maxQueuedBytes = 0;
+    private boolean closed = false;
+    private boolean overflow = false;
+
+    private long sentMessages = 0;
+    private long sentUpdates = 0;
+    private long droppedUpdates = 0;
+    private final ConnectionStats stats;
+
+    /** the message written by each thread, until it flushes the stream */
+    private final ThreadLocal<ByteArrayOutputStream> staging = new ThreadLocal<ByteArrayOutputStream>() {
+        @Override
+        protected ByteArrayOutputStream initialValue() {
+            return new ByteArrayOutputStream();
+        }
+    };
+
+    private final DataOutputStream os = new DataOutputStream(new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            checkClosed();
+            staging.get().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkClosed();
+            staging.get().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            ByteArrayOutputStream message = staging.get();
+            if (message.size() > 0) {
+                byte[] data = message.toByteArray();
+                message.reset();
+                add(data);
+            }
+        }
+    });
+
+
+    /**
+     * Create a new queue.
+     *
+     * @param name the name of the client, used for monitoring
+     */
+    public OutboundQueue(String name) {
+        this.name = name;
+        this.stats = new ConnectionStats(name, this);
+    }
+
+
+    /**
+     * Returns the stream for messages that are always delivered. Every thread writes
+     * its own message, which is queued as a whole when the thread flushes the stream.
+     *
+     * @return the output stream of the client
+     */
+    public DataOutputStream getOutputStream() {
+        return os;
+    }
+
+
+    /**
+     * Add a message that is always delivered. The message is queued without
+     * copying, so it must not be modified afterwards.
+     *
+     * @param message the message
+     * @throws IOException if the queue is closed, or the client does not keep up
+     */
+    public void add(byte[] message) throws IOException {
+        synchronized (this) {
+            checkClosed();
+            messages.add(message);
+            queuedBytes += message.length;
+            maxQueuedBytes = Math.max(maxQueuedBytes, queuedBytes);
+            if (queuedBytes > MAX_QUEUED_BYTES) {
+                overflow = true;
+                close();
+            }
+            notifyAll();
+        }
+        dataAvailable();
+        checkClosed();
+    }
+
+
+    /**
+     * Queue a simulation update. An update not sent yet is dropped. The update is
+     * queued without copying, so it may be shared with other clients, but must not
+     * be modified afterwards.
+     *
+     * @param message the complete update message
+     * @throws IOException if the queue is closed
+     */
+    public void offerUpdate(byte[] message) throws IOException {
+        synchronized (this) {
+            checkClosed();
+            if (update != null) {
+                droppedUpdates++;
+            }
+            update = message;
+            notifyAll();
+        }
+        dataAvailable();
+    }
+
+
+    /**
+     * Check, if a simulation update is queued, which was not sent yet.
+     *
+     * @return <code>true</code>, if the next update replaces a queued update
+     */
+    public synchronized boolean isUpdatePending() {
+        return update != null;
+    }
+
+
+    /**
+     * Take the next message to send. Messages are sent before a queued simulation update.
+     * Called by the I/O thread.
+     *
+     * @return the next message, or <code>null</code> if the queue is empty
+     */
+    public synchronized byte[] poll() {
+        byte[] message = messages.poll();
+        if (message != null) {
+            queuedBytes -= message.length;
+            sentMessages++;
+            return message;
+        }
+        message = update;
+        if (message != null) {
+            update = null;
+            sentUpdates++;
+        }
+        return message;
+    }
+
+
+    /**
+     * Wait for the next message to send, see {@link #poll()}.
+     *
+     * @return the next message, or <code>null</code> if the queue was closed
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public synchronized byte[] take() throws InterruptedException {
+        while (!closed) {
+            byte[] message = poll();
+            if (message != null) {
+                return message;
+            }
+            wait();
+        }
+        return null;
+    }
+
+
+    /**
+     * Check, if there is no message to send.
+     *
+     * @return <code>true</code>, if the queue is empty
+     */
+    public synchronized boolean isEmpty() {
+        return messages.isEmpty() && update == null;
+    }
+
+
+    /**
+     * Close the queue. Queued messages are discarded, adding messages fails.
+     */
+    public synchronized void close() {
+        closed = true;
+        messages.clear();
+        queuedBytes = 0;
+        update = null;
+        stats.close();
+        notifyAll();
+    }
+
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+
+    /**
+     * Check, if the queue was closed because the client did not receive its
+     * messages fast enough.
+     *
+     * @return <code>true</code>, if the queue overflowed
+     */
+    public synchronized boolean isOverflow() {
+        return overflow;
+    }
+
+
+    /**
+     * Called after a message was added, without holding the lock of the queue.
+     * Lets the I/O thread know that there is something to send.
+     */
+    protected void dataAvailable() {
+        // the waiting thread is notified already
+    }
+
+
+    private void checkClosed() throws IOException {
+        if (isClosed()) {
+            throw new IOException("Connection to client " + name + " is closed.");
+        }
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+    public ConnectionStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Returns the number of queued messages, including a queued simulation update.
+     *
+     * @return the queue depth
+     */
+    public synchronized int getDepth() {
+        return messages.size() + (update == null ? 0 : 1);
+    }
+
+    /**
+     * Returns the number of bytes of the queued messages, without a simulation update.
+     *
+     * @return the number of bytes
+     */
+    public synchronized int getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * Returns the maximum number of bytes queued so far.
+     *
+     * @return the number of bytes
+     */
+    public synchronized int getMaxQueuedBytes() {
+        return maxQueuedBytes;
+    }
+
+    public synchronized long getSentMessages() {
+        return sentMessages;
+    }
+
+    public synchronized long getSentUpdates() {
+        return sentUpdates;
+    }
+
+    /**
+     * Returns the number of simulation updates replaced by a newer update before
+     * they were sent.
+     *
+     * @return the number of dropped updates
+     */
+    public synchronized long getDroppedUpdates() {
+        return droppedUpdates;
+    }
+
+
+    @Override
+    public synchronized String toString() {
+        return name + ": depth=" + getDepth() + ", bytes=" + queuedBytes + " (max " + maxQueuedBytes
+            + "), messages=" + sentMessages + ", updates=" + sentUpdates + ", dropped="
+            + droppedUpdates + (closed ? (overflow ? ", overflow" : ", closed") : "");
+    }
+}
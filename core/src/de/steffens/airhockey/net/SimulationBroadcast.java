@@ -0,0 +1,185 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import de.steffens.airhockey.model.Game;
+import de.steffens.airhockey.model.Simulation;
+import de.steffens.airhockey.model.Simulation.SimulationListener;
+import de.steffens.airhockey.model.SnapshotEncoder;
+
+/**
+ * Sends the simulation updates to all clients with a reliable connection.
+ * Every update is encoded only once, as delta against the previous update, and the
+ * same immutable message is passed to all clients. A newly added client gets the
+ * update as full update once, which is encoded at most once per update as well.
+ * The cost of an update is therefore independent of the number of clients, apart
+ * from passing the message to the connections.
+ * <p/>
+ * Every client gets the updates at its own send rate, see {@link TcpServerSimulationForward}.
+ * An update is only encoded in a simulation step in which at least one client is due,
+ * so the cost does not grow with the simulation rate. A client that skipped some of
+ * the updates gets a delta against the last update it received, encoded once for
+ * all clients with the same baseline.
+ * <p/>
+ * Clients with an {@link OutboundQueue} drop an update not sent yet, when the next
+ * update is queued. As they miss the baseline of the next delta, they get the full
+ * update instead.
+ */
+public class SimulationBroadcast implements SimulationListener {
+
+    private final Simulation simulation;
+    private final SnapshotEncoder encoder;
+    private final CopyOnWriteArrayList<TcpServerSimulationForward> clients =
+        new CopyOnWriteArrayList<TcpServerSimulationForward>();
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final DataOutputStream bufferOs = new DataOutputStream(buffer);
+
+    /** the clients due in the current step, and the updates for their baselines */
+    private final ArrayList<TcpServerSimulationForward> dueClients = new ArrayList<TcpServerSimulationForward>();
+    private final HashMap<Integer, byte[]> deltas = new HashMap<Integer, byte[]>();
+    /** the sequence number of the previous update */
+    private int previous = -1;
+
+
+    /**
+     * Create a new broadcast of the updates of the simulation of the current game session.
+     */
+    public SimulationBroadcast() {
+        this.simulation = Game.getSimulation();
+        this.encoder = new SnapshotEncoder(Game.getPlayingField());
+    }
+
+
+    /**
+     * Add a client receiving the simulation updates.
+     *
+     * @param client the forward to the client
+     */
+    public void addClient(TcpServerSimulationForward client) {
+        clients.add(client);
+    }
+
+
+    /**
+     * Returns the number of clients receiving the simulation updates.
+     *
+     * @return the number of clients
+     */
+    public int getClientCount() {
+        return clients.size();
+    }
+
+
+    @Override
+    public void update() {
+        if (clients.isEmpty()) {
+            // new clients start with a full update anyway
+            return;
+        }
+        long now = System.nanoTime();
+        dueClients.clear();
+        for (TcpServerSimulationForward client : clients) {
+            if (client.isDisconnected()) {
+                // the forward buffers collisions for the client as long as it is registered
+                clients.remove(client);
+                simulation.removeCollisionListener(client);
+            } else if (client.isSendDue(now)) {
+                dueClients.add(client);
+            }
+        }
+        if (dueClients.isEmpty()) {
+            return;
+        }
+
+        byte[] update;
+        byte[] fullUpdate = null;
+        int sequence = -1;
+        try {
+            buffer.reset();
+            if (TcpServerSimulationForward.DELTA_UPDATES) {
+                bufferOs.writeInt(MSG.SIMULATION_DELTA);
+                sequence = simulation.writeSimulationUpdate(bufferOs, encoder, Game.getScore());
+                // all clients are reliable, so the next update can be based on this one
+                encoder.acknowledge(sequence);
+                update = buffer.toByteArray();
+            } else {
+                bufferOs.writeInt(MSG.SIMULATION_UPDATE);
+                simulation.writeSimulationUpdate(bufferOs);
+                int players = Game.getPlayerCount();
+                bufferOs.writeInt(players);
+                int[] score = Game.getScore();
+                for (int i = 0; i < players; i++) {
+                    bufferOs.writeInt(score[i]);
+                }
+                update = buffer.toByteArray();
+                fullUpdate = update;
+            }
+        } catch (IOException e) {
+            // not possible for a byte array
+            throw new IllegalStateException(e);
+        }
+
+        deltas.clear();
+        for (TcpServerSimulationForward client : dueClients) {
+            client.writeFrame();
+            if (client.baseline < 0 || client.isUpdatePending()) {
+                // the client misses the update it got last, which is the baseline of the delta
+                if (fullUpdate == null) {
+                    fullUpdate = encodeFullUpdate();
+                }
+                client.sendUpdate(fullUpdate);
+            } else if (client.baseline == previous) {
+                client.sendUpdate(update);
+            } else {
+                // the client skipped some updates
+                byte[] delta = deltas.get(client.baseline);
+                if (delta == null) {
+                    delta = encodeDelta(client.baseline);
+                    deltas.put(client.baseline, delta);
+                }
+                client.sendUpdate(delta);
+            }
+            client.baseline = sequence;
+        }
+        previous = sequence;
+    }
+
+
+    /**
+     * Encode the last update again as delta against an older update.
+     */
+    private byte[] encodeDelta(int baseline) {
+        try {
+            buffer.reset();
+            bufferOs.writeInt(MSG.SIMULATION_DELTA);
+            encoder.writeDelta(bufferOs, baseline);
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * Encode the last delta update again as full update.
+     */
+    private byte[] encodeFullUpdate() {
+        try {
+            buffer.reset();
+            bufferOs.writeInt(MSG.SIMULATION_DELTA);
+            encoder.writeFull(bufferOs);
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
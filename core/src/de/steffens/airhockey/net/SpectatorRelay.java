@@ -0,0 +1,428 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.net;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import de.steffens.airhockey.GameConfiguration;
+import de.steffens.airhockey.control.RemotePlayer;
+import de.steffens.airhockey.model.AbstractPlayingFieldBase;
+import de.steffens.airhockey.model.CollisionListener;
+import de.steffens.airhockey.model.Disk;
+import de.steffens.airhockey.model.Game;
+import de.steffens.airhockey.model.GameSession;
+import de.steffens.airhockey.model.PlayingField;
+import de.steffens.airhockey.model.RemoteSimulation;
+import de.steffens.airhockey.model.SnapshotDecoder;
+import de.steffens.airhockey.model.vector.VectorFactory;
+
+/**
+ * Relay passing the game of a server on to many viewers, without loading the
+ * server. The relay connects to the server as a single viewer, keeps the initial
+ * game data and sends it to every viewer connecting to the relay, followed by the
+ * messages received from the server: simulation updates, collisions and console
+ * changes. For a viewer, the relay looks like the server itself, so relays can
+ * be chained to reach even more viewers.
+ * <p/>
+ * The delta updates of the server are passed on unchanged, as all of them are
+ * based on the previous update. A viewer connecting later, or missing an update
+ * because it does not receive its data fast enough, gets the last update as full
+ * update instead, encoded from the state of the relay's {@link SnapshotDecoder}.
+ * Every viewer has an {@link OutboundQueue} with its own writer thread, like the
+ * clients of a {@link TcpServer}.
+ */
+public class SpectatorRelay {
+
+    /** delay between connection attempts, while the server still waits for players */
+    private static final long RETRY_MS = 1000;
+
+    private final String serverAddress;
+    private final int serverPort;
+
+    /** the session of the relay, only needed to set up the playing field */
+    private final GameSession session = new GameSession();
+    private Socket socket;
+    private RecordingInputStream record;
+    private DataInputStream is;
+
+    /** the initial game data sent by the server, and the decoder of the updates */
+    private byte[] gameData;
+    private SnapshotDecoder decoder;
+
+    private final CopyOnWriteArrayList<Viewer> viewers = new CopyOnWriteArrayList<Viewer>();
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final DataOutputStream bufferOs = new DataOutputStream(buffer);
+
+
+    /**
+     * A viewer connected to the relay.
+     */
+    private static class Viewer {
+        final OutboundQueue queue;
+        /** set, once the viewer got an update that the next delta update is based on */
+        boolean hasBaseline = false;
+
+        Viewer(OutboundQueue queue) {
+            this.queue = queue;
+        }
+    }
+
+
+    /**
+     * Input stream keeping a copy of all data read, so a message can be passed on
+     * after it was parsed.
+     */
+    private static class RecordingInputStream extends FilterInputStream {
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        RecordingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                data.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                data.write(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            throw new IOException("Skipping is not supported.");
+        }
+
+        /**
+         * Returns the data read since the last call, and starts recording anew.
+         */
+        byte[] take() {
+            byte[] result = data.toByteArray();
+            data.reset();
+            return result;
+        }
+    }
+
+
+    /**
+     * Create a new relay for the game of the given server.
+     *
+     * @param serverAddress the address of the server
+     * @param serverPort    the port of the server
+     */
+    public SpectatorRelay(String serverAddress, int serverPort) {
+        this.serverAddress = serverAddress;
+        this.serverPort = serverPort;
+    }
+
+
+    /**
+     * Connect to the server as viewer and read the initial game data. As long as
+     * the server gives the relay a player slot, because it still waits for players,
+     * the relay disconnects and tries again later.
+     *
+     * @throws IOException if an error occurs during connecting
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public void connect() throws IOException, InterruptedException {
+        while (true) {
+            socket = new Socket(serverAddress, serverPort);
+            socket.setTcpNoDelay(true);
+            record = new RecordingInputStream(new BufferedInputStream(socket.getInputStream()));
+            is = new DataInputStream(record);
+            int playerIndex = is.readInt();
+            if (playerIndex == -1) {
+                break;
+            }
+            System.out.println("Relay: server waits for players, retrying...");
+            socket.close();
+            Thread.sleep(RETRY_MS);
+        }
+        record.take();
+
+        // read the game data like a client, it needs the playing field for decoding
+        GameSession previous = Game.setSession(session);
+        try {
+            GameConfiguration config = GameConfiguration.createDedicatedServerConfig(new String[0]);
+            config.read(is);
+            session.setConfiguration(config);
+            session.setSimulation(new RemoteSimulation());
+            PlayingField field = AbstractPlayingFieldBase.read(is);
+            session.setPlayingField(field);
+            Disk.read(is);
+            int playerCount = is.readInt();
+            for (int i = 0; i < playerCount; i++) {
+                Disk.read(is);
+            }
+            decoder = new SnapshotDecoder(field);
+        } finally {
+            Game.setSession(previous);
+        }
+        gameData = record.take();
+        System.out.println("Relay: connected to " + serverAddress + ":" + serverPort);
+    }
+
+
+    /**
+     * Start accepting viewers on the given port, in a thread of its own.
+     *
+     * @param port the port to listen to
+     * @throws IOException if the port cannot be opened
+     */
+    public void listen(int port) throws IOException {
+        final ServerSocket serverSocket = new ServerSocket(port);
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        addViewer(serverSocket.accept());
+                    } catch (IOException e) {
+                        System.err.println("Connection error.");
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }, "Relay Accept Thread");
+        t.setDaemon(true);
+        t.start();
+        System.out.println("Relay: waiting for viewers on port " + port);
+    }
+
+
+    /**
+     * Add a viewer: it gets the game data, and the messages of the server from now on.
+     */
+    private void addViewer(Socket viewerSocket) throws IOException {
+        viewerSocket.setTcpNoDelay(true);
+        OutboundQueue queue = new OutboundQueue(String.valueOf(viewerSocket.getRemoteSocketAddress()));
+        TcpServer.startWriter(viewerSocket, queue);
+        DataOutputStream os = queue.getOutputStream();
+        synchronized (this) {
+            // the same handshake as for a viewer of the server
+            os.writeInt(-1);
+            os.write(gameData);
+            os.flush();
+            viewers.add(new Viewer(queue));
+        }
+        System.out.println("Relay: viewer " + queue.getName() + " connected, " + viewers.size() + " viewers.");
+    }
+
+
+    /**
+     * Pass the messages of the server on to the viewers, until the connection to the
+     * server is closed.
+     */
+    public void run() {
+        try {
+            while (true) {
+                int msg = is.readInt();
+                switch (msg) {
+                    case MSG.SIMULATION_DELTA:
+                        decoder.read(is);
+                        relayDelta(record.take());
+                        break;
+                    case MSG.SIMULATION_UPDATE:
+                        // the old format is a complete update
+                        int disks = is.readInt();
+                        for (int i = 0; i < disks; i++) {
+                            Disk.skipUpdate(is);
+                        }
+                        int players = is.readInt();
+                        for (int i = 0; i < players; i++) {
+                            is.readInt();
+                        }
+                        relay(record.take(), true);
+                        break;
+                    case MSG.COLLISION_DISK_DISK:
+                        CollisionListener.DiskDiskCollision.skip(is);
+                        relay(record.take(), false);
+                        break;
+                    case MSG.COLLISION_DISK_WALL:
+                        CollisionListener.DiskWallCollision.skip(is);
+                        relay(record.take(), false);
+                        break;
+                    case MSG.COLLISIONS:
+                        skipCollisions();
+                        relay(record.take(), false);
+                        break;
+                    case MSG.CONSOLE_LINE:
+                        is.readUTF();
+                        is.readBoolean();
+                        relay(record.take(), false);
+                        break;
+                    case MSG.NEW_PLAYER_DATA:
+                        is.readInt();
+                        new RemotePlayer(-1, null, null).readData(is);
+                        relay(record.take(), false);
+                        break;
+                    case MSG.CONSOLE_CLEAR:
+                    case MSG.START_GAME:
+                        relay(record.take(), false);
+                        break;
+                    case MSG.INPUT_ACK:
+                        // the relay is no player
+                        is.readUnsignedShort();
+                        record.take();
+                        break;
+                    default:
+                        throw new IOException("Illegal server message type " + msg);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Relay: connection to server lost: " + e.getMessage());
+        } finally {
+            for (Viewer viewer : viewers) {
+                viewer.queue.close();
+            }
+            viewers.clear();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // nothing to do here
+            }
+        }
+    }
+
+
+    /**
+     * Skip the collisions of a simulation frame, see {@link MSG#COLLISIONS}.
+     */
+    private void skipCollisions() throws IOException {
+        int count = is.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            int kind = is.readUnsignedByte();
+            if (kind == MSG.COLLISION_DISK_WALL) {
+                CollisionListener.DiskWallCollision.skip(is);
+            } else if (kind == MSG.COLLISION_DISK_DISK) {
+                CollisionListener.DiskDiskCollision.skip(is);
+            } else {
+                throw new IOException("Illegal collision kind " + kind);
+            }
+        }
+    }
+
+
+    /**
+     * Pass a message on to all viewers.
+     *
+     * @param message the message, including the message type
+     * @param update  <code>true</code> for a simulation update, which may be dropped
+     *                for a viewer not receiving the previous update yet
+     */
+    private synchronized void relay(byte[] message, boolean update) {
+        for (Viewer viewer : viewers) {
+            try {
+                if (update) {
+                    viewer.queue.offerUpdate(message);
+                } else {
+                    viewer.queue.add(message);
+                }
+            } catch (IOException e) {
+                viewers.remove(viewer);
+            }
+        }
+    }
+
+
+    /**
+     * Pass a delta update on to all viewers. Viewers without the baseline get the
+     * update as full update.
+     */
+    private synchronized void relayDelta(byte[] update) {
+        byte[] fullUpdate = null;
+        for (Viewer viewer : viewers) {
+            try {
+                if (viewer.hasBaseline && !viewer.queue.isUpdatePending()) {
+                    viewer.queue.offerUpdate(update);
+                    continue;
+                }
+                if (fullUpdate == null) {
+                    fullUpdate = encodeFullUpdate();
+                }
+                viewer.queue.offerUpdate(fullUpdate);
+                viewer.hasBaseline = true;
+            } catch (IOException e) {
+                viewers.remove(viewer);
+            }
+        }
+    }
+
+
+    /**
+     * Encode the last delta update again as full update.
+     */
+    private byte[] encodeFullUpdate() {
+        try {
+            buffer.reset();
+            bufferOs.writeInt(MSG.SIMULATION_DELTA);
+            decoder.writeFull(bufferOs);
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            // not possible for a byte array
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * Returns the number of connected viewers.
+     *
+     * @return the number of viewers
+     */
+    public int getViewerCount() {
+        for (Viewer viewer : viewers) {
+            if (viewer.queue.isClosed()) {
+                viewers.remove(viewer);
+            }
+        }
+        return viewers.size();
+    }
+
+
+    /**
+     * Start a relay: <code>-connect &lt;server address&gt;:&lt;port&gt; -listen &lt;port&gt;</code>
+     */
+    public static void main(String[] args) throws Exception {
+        VectorFactory.useMutableVector();
+        String address = "localhost";
+        int serverPort = 50000;
+        int port = 50001;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if ("-connect".equals(args[i])) {
+                String[] addressAndPort = args[++i].split(":", 2);
+                address = addressAndPort[0];
+                if (addressAndPort.length == 2) {
+                    serverPort = Integer.parseInt(addressAndPort[1]);
+                }
+            } else if ("-listen".equals(args[i])) {
+                port = Integer.parseInt(args[++i]);
+            }
+        }
+
+        SpectatorRelay relay = new SpectatorRelay(address, serverPort);
+        relay.connect();
+        relay.listen(port);
+        relay.run();
+    }
+}
@@ -1,15 +1,16 @@
 package de.steffens.airhockey.net;
 
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 
 import de.steffens.airhockey.GameConfiguration;
 import de.steffens.airhockey.control.Player;
 import de.steffens.airhockey.control.RemotePlayer;
-import de.steffens.airhockey.model.Console;
 import de.steffens.airhockey.model.Disk;
 import de.steffens.airhockey.model.Game;
 import de.steffens.airhockey.model.PlayingField;
@@ -21,6 +22,10 @@ import de.steffens.airhockey.view.GLMenu;
  * @author Johannes Scheerer
  */
 public class TcpServer extends AbstractServer {
+
+    /** the read timeout during the handshake of a client, in ms */
+    public static int HANDSHAKE_TIMEOUT_MS = 10000;
+
     @Override
     protected void acceptPlayerConnections(int port, final int numRemotePlayers,
                                            final int firstRemotePlayer) throws IOException {
@@ -78,114 +83,151 @@ public class TcpServer extends AbstractServer {
      */
     private void acceptLoop(final int numRemotePlayers, final int firstRemotePlayer,
                             final ServerSocket serverSocket, GLMenu.MenuItem menuItem) {
-
-        int players = 0;
+        this.menuItem = menuItem;
         while (true) {
             try {
-                Socket socket = serverSocket.accept();
-                socket.setTcpNoDelay(true);
-                final DataOutputStream os = new DataOutputStream(socket.getOutputStream());
-                final RemotePlayer player;
-                if (players < numRemotePlayers) {
-                    System.out.println("Server: Remote Player connected.");
-                    final int playerIndex = players + firstRemotePlayer;
-                    final DataInputStream is = new DataInputStream(socket.getInputStream());
-                    // handshake: send the player index
-                    System.out.println("Server: Sending player index " + playerIndex);
-                    os.writeInt(playerIndex);
-                    // receive the player name
-                    System.out.println("Server: waiting for player data...");
-                    player = (RemotePlayer) Game.getPlayer(playerIndex);
-                    player.readData(is);
-                    Game.getConsole().addLine("Player " + player.getName() + " connected.", true);
-
-                    // broadcast new player to the other players
-                    sendPlayerDataToOtherPlayers(playerIndex, player);
-                    // register the new player
-                    player.setConnection(os);
-                    addRemotePlayer(player);
-
-                    // start thread to handle client input
-                    // this is just for position updates for now
-                    Thread t = new Thread(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                while (true) {
-                                    player.setMouse(is.readDouble(), is.readDouble());
-                                }
-                            } catch (IOException e) {
-                                System.err.println("Error while reading from client " + playerIndex +
-                                        " (Player " +player.getName() + ").");
-                                e.printStackTrace();
-                                // disconnect the player
-                                removeRemotePlayer(player);
-                            }
-                        }
-                    }, "ClientListener " + playerIndex);
-                    t.start();
-
-                    players++;
-                    menuItem.updateLabel(getWaitString(numRemotePlayers, players));
-                } else {
-                    System.out.println("Remote Viewer connected.");
-                    Game.getConsole().addLine("Remote Viewer connected.", true);
-                    // No player, just a viewer.
-                    os.writeInt(-1);
-                    player = new RemotePlayer(-1, null, null);
-                    player.setConnection(os);
+                handleConnection(serverSocket.accept());
+            } catch (IOException e) {
+                System.err.println("Connection error.");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Handle a new client connection: the client becomes the next remote player,
+     * or a viewer if all remote players are connected already.
+     * This has to be called in a thread bound to the session of the game. The handshake
+     * fails, if the client does not answer within {@link #HANDSHAKE_TIMEOUT_MS}.
+     *
+     * @param socket the socket of the client
+     * @throws IOException if an error occurs during the handshake
+     */
+    public void handleConnection(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        final OutboundQueue queue = new OutboundQueue(String.valueOf(socket.getRemoteSocketAddress()));
+        startWriter(socket, queue);
+        final DataOutputStream os = queue.getOutputStream();
+        final CountingInputStream counter = new CountingInputStream(socket.getInputStream());
+        final DataInputStream is = new DataInputStream(counter);
+        final RemotePlayer player;
+        try {
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            player = registerClient(is, os);
+            socket.setSoTimeout(0);
+        } catch (IOException e) {
+            queue.close();
+            throw e;
+        }
+        final int playerIndex = player.getIndex();
+        // start thread to handle the messages of the client: the inputs of a
+        // player, and the pings and pongs for the round trip time, also of viewers
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        long start = counter.getCount();
+                        int msg = is.readInt();
+                        readClientMessage(msg, is, os, player, queue.getStats());
+                        queue.getStats().messageReceived(msg, (int) (counter.getCount() - start));
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error while reading from client " + playerIndex +
+                            " (Player " +player.getName() + ").");
+                    e.printStackTrace();
+                    // disconnect the player
+                    removeRemotePlayer(player);
                 }
+            }
+        }, "ClientListener " + playerIndex);
+        t.start();
 
-                // Write initial data.
-                remotePlayerConnected(player);
+        // Write initial data.
+        remotePlayerConnected(player);
 
-                // Register listeners that forward events to the client
-                TcpServerSimulationForward simListener = new TcpServerSimulationForward(os);
-                Game.getSimulation().addSimulationListener(simListener);
-                Game.getSimulation().addCollisionListener(simListener);
-                Game.getConsole().addConsoleListener(new Console.ConsoleListener() {
-                    private boolean error = false;
+        // Register listeners that forward events to the client
+        forwardSimulation(new TcpServerSimulationForward(queue, player));
+        forwardConsole(os);
 
-                    @Override
-                    public void clear() {
-                        if (error) {
-                            return;
-                        }
-                        try {
-                            os.writeInt(MSG.CONSOLE_CLEAR);
-                            os.flush();
-                        } catch (IOException e) {
-                            System.err.println("Error sending console clear.");
-                            e.printStackTrace();
-                            Game.getConsole().removeConsoleListener(this);
-                            error = true;
-                        }
-                    }
+        clientReady(player);
+    }
 
-                    @Override
-                    public void addLine(String line, boolean sticky) {
-                        if (error) {
-                            return;
-                        }
-                        try {
-                            os.writeInt(MSG.CONSOLE_LINE);
-                            os.writeUTF(line);
-                            os.writeBoolean(sticky);
-                            os.flush();
-                        } catch (IOException e) {
-                            System.err.println("Error sending console line.");
-                            e.printStackTrace();
-                            Game.getConsole().removeConsoleListener(this);
-                            error = true;
+    /**
+     * Read a message of a player, after the message type.
+     *
+     * @param msg    the message type
+     * @param is     the input stream of the client
+     * @param os     the output stream of the client, for answers
+     * @param player the player of the client
+     * @param stats  the telemetry of the connection
+     * @throws IOException if an error occurs, or the message type is not allowed
+     */
+    static void readClientMessage(int msg, DataInputStream is, DataOutputStream os,
+                                  RemotePlayer player, ConnectionStats stats) throws IOException {
+        switch (msg) {
+            case MSG.INPUT:
+                InputBatch.read(is, player);
+                break;
+            case MSG.PING:
+                long time = is.readLong();
+                os.writeInt(MSG.PONG);
+                os.writeLong(time);
+                os.flush();
+                break;
+            case MSG.PONG:
+                stats.pongReceived(is.readLong());
+                break;
+            default:
+                throw new IOException("Illegal client message type " + msg);
+        }
+    }
+
+    /**
+     * Start the thread sending the queued messages to a client, so writing to a slow
+     * client does not block the simulation. The socket is closed, if sending fails
+     * or the queue is closed.
+     *
+     * @param socket the socket of the client
+     * @param queue the queue of the messages to the client
+     */
+    static void startWriter(final Socket socket, final OutboundQueue queue) throws IOException {
+        final OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ConnectionStats stats = queue.getStats();
+                try {
+                    byte[] message;
+                    while ((message = queue.take()) != null) {
+                        long start = System.nanoTime();
+                        out.write(message);
+                        if (queue.isEmpty()) {
+                            out.flush();
                         }
+                        stats.sendTime(System.nanoTime() - start);
+                        stats.messageSent(ConnectionStats.getType(message), message.length);
                     }
-                });
-
-                checkForGameStart(players, numRemotePlayers);
-            } catch (IOException e) {
-                System.err.println("Connection error.");
-                e.printStackTrace();
+                    if (queue.isOverflow()) {
+                        System.err.println("Server: disconnecting client " + queue.getName()
+                            + ", it does not receive its data fast enough.");
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error while writing to client " + queue.getName()
+                        + ": " + e.getMessage());
+                } catch (InterruptedException e) {
+                    // stop sending
+                } finally {
+                    queue.close();
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                        // nothing to do here
+                    }
+                }
             }
-        }
+        }, "ClientWriter " + queue.getName());
+        t.setDaemon(true);
+        t.start();
     }
 }
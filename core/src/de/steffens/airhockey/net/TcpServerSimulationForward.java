@@ -3,79 +3,369 @@
  */
 package de.steffens.airhockey.net;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
+import de.steffens.airhockey.control.RemotePlayer;
 import de.steffens.airhockey.model.CollisionListener;
-import de.steffens.airhockey.model.DestroyableWall;
 import de.steffens.airhockey.model.Game;
 import de.steffens.airhockey.model.Simulation.SimulationListener;
 
 /**
  * The listener for simulation and collision events on the server side that
  * sends updates to the connected client.
+ * <p/>
+ * Simulation updates are not sent for every simulation step, but at the send rate
+ * of the client: {@link #PLAYER_SEND_RATE} for players, {@link #VIEWER_SEND_RATE}
+ * for viewers. The update is taken from the first simulation step after the send
+ * time, so the simulation can run at a higher rate than the network updates.
+ * With {@link #ADAPTIVE_SEND_RATE}, the rate is lowered for a client that does not
+ * receive its updates fast enough, and raised again slowly once it keeps up.
+ * <p/>
+ * Collisions are not sent as they occur, but collected until the next update of
+ * the client. Together with the input acknowledge and a ping, they are written as
+ * one frame before the update, see {@link #writeFrame()}, with a single flush.
  */
 public class TcpServerSimulationForward implements SimulationListener, CollisionListener {
 
-    private final DataOutputStream os;
-    private boolean error = false;
+    /**
+     * Use compact delta updates ({@link MSG#SIMULATION_DELTA}) instead of full
+     * updates with the complete disk state and score ({@link MSG#SIMULATION_UPDATE}).
+     */
+    public static boolean DELTA_UPDATES = true;
 
+    /** the number of simulation updates per second sent to a player */
+    public static int PLAYER_SEND_RATE = 60;
 
-    public TcpServerSimulationForward(DataOutputStream os) {
+    /** the number of simulation updates per second sent to a viewer */
+    public static int VIEWER_SEND_RATE = 20;
+
+    /** the lowest number of simulation updates per second of a slow client */
+    public static int MIN_SEND_RATE = 5;
+
+    /** Lower the send rate of a client not receiving its updates fast enough. */
+    public static boolean ADAPTIVE_SEND_RATE = true;
+
+    /** factor of the send rate of a client that does not keep up */
+    private static final double RATE_DECREASE = 0.75;
+    /** increase of the send rate per update, while the client keeps up */
+    private static final double RATE_INCREASE = 0.5;
+    /** the maximum number of collisions of one {@link MSG#COLLISIONS} section */
+    private static final int MAX_EVENTS = 0xffff;
+
+    protected final DataOutputStream os;
+    protected volatile boolean error = false;
+    /**
+     * the sequence number of the last update sent by the {@link SimulationBroadcast},
+     * -1 until the client got a full update
+     */
+    int baseline = -1;
+
+
+    /** the queue of the messages to the client, null if written directly to the stream */
+    protected final OutboundQueue queue;
+    /** the player of the client, null or with index -1 for a viewer */
+    protected final RemotePlayer player;
+    /** the input sequence number last acknowledged to the client */
+    private int acknowledgedInput = -1;
+
+    /** the current send rate, the time the next update is due, and the queued bytes at the last update */
+    private double sendRate;
+    private long sendInterval = 0;
+    private long nextSendTime = 0;
+    private int lastQueuedBytes = 0;
+
+    /** the collisions since the last update of the client, encoded for the next frame */
+    private final ByteArrayOutputStream events = new ByteArrayOutputStream();
+    private final DataOutputStream eventsOs = new DataOutputStream(events);
+    private int eventCount = 0;
+
+
+    /**
+     * Create a new forward to a client, that writes the messages directly to the stream.
+     *
+     * @param os the output stream of the client
+     * @param player the player of the client, null or with index -1 for a viewer
+     */
+    public TcpServerSimulationForward(DataOutputStream os, RemotePlayer player) {
         this.os = os;
+        this.queue = null;
+        this.player = player;
+        this.sendRate = getTargetSendRate();
     }
 
+
+    /**
+     * Create a new forward to a client, that queues the messages for an I/O thread.
+     * Simulation updates not sent yet are replaced by newer updates.
+     *
+     * @param queue the queue of the messages to the client
+     * @param player the player of the client, with index -1 for a viewer
+     */
+    public TcpServerSimulationForward(OutboundQueue queue, RemotePlayer player) {
+        this.os = queue.getOutputStream();
+        this.queue = queue;
+        this.player = player;
+        this.sendRate = getTargetSendRate();
+    }
+
+    /**
+     * Nothing to do here: clients with a reliable connection get their updates
+     * from the {@link SimulationBroadcast}, see {@link #sendUpdate(byte[])}.
+     */
     @Override
     public void update() {
+    }
+
+
+    /**
+     * Returns the send rate of the client, if it keeps up with its updates.
+     *
+     * @return the number of updates per second
+     */
+    private double getTargetSendRate() {
+        return player != null && player.getIndex() >= 0 ? PLAYER_SEND_RATE : VIEWER_SEND_RATE;
+    }
+
+
+    /**
+     * Check, if the next simulation update is due for the client. If so, the
+     * following update is scheduled, at the send rate adapted to the client.
+     * An update is due in the simulation step closest to its send time, so a send
+     * rate close to the simulation rate does not skip steps because of timer jitter.
+     *
+     * @param now the current time in ns
+     * @return <code>true</code>, if an update should be sent
+     */
+    boolean isSendDue(long now) {
+        if (nextSendTime != 0 && now - nextSendTime < -sendInterval / 2) {
+            return false;
+        }
+        adaptSendRate();
+        sendInterval = (long) (1000000000L / sendRate);
+        if (nextSendTime == 0 || now - nextSendTime >= sendInterval) {
+            // the first update, or the simulation was late
+            nextSendTime = now + sendInterval;
+        } else {
+            nextSendTime += sendInterval;
+        }
+        return true;
+    }
+
+
+    /**
+     * Adapt the send rate to the throughput of the connection. If the previous
+     * update is still queued, or other messages were waiting already at the previous
+     * update and even more are waiting now, the client does not receive its data
+     * fast enough, and the rate is reduced. Otherwise it approaches the target rate again.
+     */
+    private void adaptSendRate() {
+        double target = getTargetSendRate();
+        if (!ADAPTIVE_SEND_RATE || queue == null) {
+            sendRate = target;
+            return;
+        }
+        int queuedBytes = queue.getQueuedBytes();
+        if (queue.isUpdatePending() || (lastQueuedBytes > 0 && queuedBytes > lastQueuedBytes)) {
+            sendRate = Math.max(MIN_SEND_RATE, sendRate * RATE_DECREASE);
+        } else {
+            sendRate = Math.min(target, sendRate + RATE_INCREASE);
+        }
+        lastQueuedBytes = queuedBytes;
+        queue.getStats().setUpdateRate(sendRate);
+    }
+
+
+    /**
+     * Returns the current send rate of the client.
+     *
+     * @return the number of simulation updates per second
+     */
+    public double getSendRate() {
+        return sendRate;
+    }
+
+
+    /**
+     * Send a simulation update encoded by the {@link SimulationBroadcast}.
+     * The update is shared by all clients and must not be modified.
+     *
+     * @param update the complete update message
+     */
+    void sendUpdate(byte[] update) {
         if (error) {
             return;
         }
         try {
-            os.writeInt(MSG.SIMULATION_UPDATE);
-            Game.getSimulation().writeSimulationUpdate(os);
-            os.writeInt(Game.getPlayerCount());
-            int[] score = Game.getScore();
-            for (int i = 0; i < Game.getPlayerCount(); i++) {
-                os.writeInt(score[i]);
-            }
-            os.flush();
+            writeUpdate(update);
         } catch (IOException e) {
             disconnectOnError("Error sending simulation update.", e);
         }
     }
 
 
-    @Override
-    public void collisionOccurred(DiskWallCollision collision) {
+    /**
+     * Write the messages belonging to the next simulation update of the client, and
+     * flush them at once: the acknowledge of the last input used by the simulation,
+     * a ping if due, and the collisions since the last update.
+     */
+    void writeFrame() {
         if (error) {
             return;
         }
         try {
-            System.out.println("[" + Thread.currentThread().getName()+"]: Collision with wall " + collision.wall.getIndex() + (collision.wall instanceof DestroyableWall ? " (destroyable)" : ""));
-            os.writeInt(MSG.COLLISION_DISK_WALL);
-            collision.write(os);
-            os.flush();
+            boolean written = writeInputAck();
+            written |= writePing();
+            written |= writeCollisions();
+            if (written) {
+                os.flush();
+            }
         } catch (IOException e) {
-            disconnectOnError("Error sending disk-wall collision.", e);
+            disconnectOnError("Error sending simulation frame.", e);
         }
     }
 
 
-    @Override
-    public void collisionOccurred(DiskDiskCollision collision) {
-        if (error) {
+    /**
+     * Write the sequence number of the last input of the client used by the simulation,
+     * if it changed. This is sent before the next simulation update, which is the
+     * first update based on this input. Clients written to directly get it with the update.
+     */
+    private boolean writeInputAck() throws IOException {
+        if (queue == null || player == null || player.getIndex() < 0) {
+            return false;
+        }
+        int input = player.getAppliedInput();
+        if (input < 0 || input == acknowledgedInput) {
+            return false;
+        }
+        os.writeInt(MSG.INPUT_ACK);
+        os.writeShort(input);
+        acknowledgedInput = input;
+        return true;
+    }
+
+
+    /**
+     * Write a {@link MSG#PING} to a player or viewer, if the next one is due. The
+     * client answers with a {@link MSG#PONG}, which gives the round trip time of the
+     * connection. Clients connected by UDP are pinged by the {@link UdpServerSimulationForward}.
+     */
+    private boolean writePing() throws IOException {
+        if (queue == null) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (!queue.getStats().isPingDue(now)) {
+            return false;
+        }
+        os.writeInt(MSG.PING);
+        os.writeLong(now);
+        return true;
+    }
+
+
+    /**
+     * Write the collisions since the last update as one {@link MSG#COLLISIONS} section:
+     * the number of collisions as unsigned short, followed by the collisions, each with
+     * its kind as byte, {@link MSG#COLLISION_DISK_WALL} or {@link MSG#COLLISION_DISK_DISK}.
+     */
+    private boolean writeCollisions() throws IOException {
+        if (eventCount == 0) {
+            return false;
+        }
+        os.writeInt(MSG.COLLISIONS);
+        os.writeShort(eventCount);
+        events.writeTo(os);
+        events.reset();
+        eventCount = 0;
+        return true;
+    }
+
+
+    /**
+     * Add a collision to the next frame.
+     */
+    private void addCollision(int kind, CollisionEvent collision) {
+        if (eventCount == MAX_EVENTS) {
+            // not possible in a single simulation update, the client does not get updates
             return;
         }
         try {
-            os.writeInt(MSG.COLLISION_DISK_DISK);
-            collision.write(os);
-            os.flush();
+            eventsOs.writeByte(kind);
+            collision.write(eventsOs);
+            eventCount++;
         } catch (IOException e) {
-            disconnectOnError("Error sending disk-disk collision.", e);
+            // not possible for a byte array
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * Write a shared simulation update message to the client.
+     *
+     * @param update the complete update message, must not be modified
+     * @throws IOException if an error occurs during writing
+     */
+    protected void writeUpdate(byte[] update) throws IOException {
+        if (queue != null) {
+            queue.offerUpdate(update);
+            return;
+        }
+        os.write(update);
+        os.flush();
+    }
+
+
+    /**
+     * Check, if the last simulation update is still waiting to be sent. The next
+     * update replaces it, so the client misses an update.
+     *
+     * @return <code>true</code>, if the next update replaces a queued update
+     */
+    public boolean isUpdatePending() {
+        return queue != null && queue.isUpdatePending();
+    }
+
+
+    /**
+     * Returns the queue of the messages to the client.
+     *
+     * @return the queue, or <code>null</code> if messages are written directly
+     */
+    public OutboundQueue getQueue() {
+        return queue;
+    }
+
+
+    /**
+     * Check, if sending to the client failed.
+     *
+     * @return <code>true</code>, if the client is disconnected
+     */
+    public boolean isDisconnected() {
+        return error || (queue != null && queue.isClosed());
+    }
+
+
+    @Override
+    public void collisionOccurred(DiskWallCollision collision) {
+        if (!isDisconnected()) {
+            addCollision(MSG.COLLISION_DISK_WALL, collision);
+        }
+    }
+
+
+    @Override
+    public void collisionOccurred(DiskDiskCollision collision) {
+        if (!isDisconnected()) {
+            addCollision(MSG.COLLISION_DISK_DISK, collision);
         }
     }
 
-    private void disconnectOnError(String msg, IOException e) {
+    protected void disconnectOnError(String msg, IOException e) {
         System.err.println(msg);
         e.printStackTrace();
         error = true;
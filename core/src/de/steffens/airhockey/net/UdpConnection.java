@@ -0,0 +1,589 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * A connection between client and server over UDP.
+ * <p/>
+ * The connection provides a small reliable channel as pair of streams, used for the
+ * same messages as a tcp connection (game data, console lines, player data, start
+ * signal). Written data is split into numbered segments which are retransmitted
+ * until the peer acknowledges them, and the received segments are delivered in order.
+ * Simulation updates and player input are sent as single unreliable datagrams,
+ * see {@link #send(int, byte[], int)}, so a lost datagram never delays later ones.
+ * <p/>
+ * Every datagram starts with its kind, the reliable kinds are handled by the connection
+ * itself, all others are passed to the {@link Listener}.
+ */
+public class UdpConnection {
+
+    /** client asks for a connection, resent until the server answers */
+    public static final int CONNECT = 0;
+    /** reliable segment: int segment number, data */
+    public static final int RELIABLE = 1;
+    /** acknowledgement of reliable segments: int number of the next expected segment */
+    public static final int ACK = 2;
+    /**
+     * simulation update: boolean, [unsigned short last input used], followed by the
+     * update of the {@link de.steffens.airhockey.model.SnapshotEncoder}
+     */
+    public static final int UPDATE = 3;
+    /** client acknowledges an update: unsigned short update sequence */
+    public static final int UPDATE_ACK = 4;
+    /** client input: the inputs not acknowledged yet, see {@link InputBatch} */
+    public static final int INPUT = 5;
+    /** round trip time probe, sent by both sides: long send time, answered with a {@link #PONG} */
+    public static final int PING = 6;
+    /** answer of a {@link #PING}: long send time of the ping */
+    public static final int PONG = 7;
+
+    /** maximum data size of a reliable segment */
+    static final int MAX_SEGMENT_SIZE = 1024;
+    /**
+     * maximum size of a datagram: the largest UDP payload over IPv4, so a received
+     * datagram is never truncated, however many disks an update contains
+     */
+    static final int MAX_DATAGRAM_SIZE = 65507;
+    /** maximum number of segments kept, that were received before a missing one */
+    static final int MAX_OUT_OF_ORDER = 1024;
+
+    /** interval of the retransmission checks in ms */
+    static final long TICK_MS = 20;
+    /** the connection is closed if nothing was received for this time */
+    static final long TIMEOUT_MS = 10000;
+    /** interval of keep alive datagrams, if nothing else is sent */
+    private static final long KEEP_ALIVE_MS = 1000;
+    private static final long CONNECT_INTERVAL_MS = 250;
+    private static final long MIN_RETRANSMIT_MS = 40;
+    private static final long MAX_RETRANSMIT_MS = 1000;
+
+
+    /**
+     * Listener for the unreliable datagrams of a connection.
+     */
+    public interface Listener {
+
+        /**
+         * Called by the receiving thread for every datagram that is not handled
+         * by the connection itself. The data has to be read before returning.
+         *
+         * @param kind the datagram kind
+         * @param in   the datagram data following the kind
+         * @throws IOException if the data cannot be read
+         */
+        void datagramReceived(int kind, DataInputStream in) throws IOException;
+
+        /**
+         * Called once the connection is closed.
+         */
+        void connectionClosed();
+    }
+
+
+    /**
+     * A reliable segment waiting for its acknowledgement.
+     */
+    private static class Segment {
+        final int number;
+        final byte[] datagram;
+        long sentMs;
+        boolean retransmitted = false;
+
+        Segment(int number, byte[] datagram) {
+            this.number = number;
+            this.datagram = datagram;
+        }
+    }
+
+
+    private final DatagramSocket socket;
+    private final SocketAddress remote;
+    private Listener listener = null;
+
+    // sending side of the reliable channel
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final ArrayList<Segment> unacknowledged = new ArrayList<Segment>();
+    private int nextSegment = 0;
+    private double smoothedRttMs = 100.0;
+
+    // receiving side of the reliable channel
+    private int expectedSegment = 0;
+    private final Map<Integer, byte[]> outOfOrder = new HashMap<Integer, byte[]>();
+    private byte[] received = new byte[4096];
+    private int receivedStart = 0;
+    private int receivedEnd = 0;
+
+    private volatile long lastReceivedMs = System.currentTimeMillis();
+    private volatile long lastSentMs = 0;
+    private volatile boolean closed = false;
+    /** client side: waiting for the first answer of the server */
+    private volatile boolean connecting = false;
+    private long lastConnectMs = 0;
+
+    private final OutputStream outputStream = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            synchronized (UdpConnection.this) {
+                checkClosed();
+                pending.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (UdpConnection.this) {
+                checkClosed();
+                pending.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            sendPending();
+        }
+    };
+
+    private final InputStream inputStream = new InputStream() {
+        @Override
+        public int read() throws IOException {
+            synchronized (UdpConnection.this) {
+                if (!waitForData()) {
+                    return -1;
+                }
+                return received[receivedStart++] & 0xff;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            synchronized (UdpConnection.this) {
+                if (!waitForData()) {
+                    return -1;
+                }
+                int n = Math.min(len, receivedEnd - receivedStart);
+                System.arraycopy(received, receivedStart, b, off, n);
+                receivedStart += n;
+                return n;
+            }
+        }
+
+        @Override
+        public int available() {
+            synchronized (UdpConnection.this) {
+                return receivedEnd - receivedStart;
+            }
+        }
+    };
+
+
+    /**
+     * Create a new connection to the given peer, using the given socket for sending.
+     * Received datagrams of the peer have to be passed to {@link #handleDatagram}.
+     *
+     * @param socket the socket
+     * @param remote the address of the peer
+     */
+    public UdpConnection(DatagramSocket socket, SocketAddress remote) {
+        this.socket = socket;
+        this.remote = remote;
+    }
+
+
+    /**
+     * Connect to a server. This opens a socket, starts a thread receiving the datagrams
+     * of the server and a timer for retransmissions. The server answers the connection
+     * request with the first data on the reliable channel.
+     *
+     * @param host the server address
+     * @param port the server port
+     * @return the new connection
+     * @throws IOException if the socket cannot be opened
+     */
+    public static UdpConnection connect(String host, int port) throws IOException {
+        final DatagramSocket socket = new DatagramSocket();
+        final UdpConnection connection = new UdpConnection(socket, new InetSocketAddress(host, port));
+        connection.connecting = true;
+        connection.sendConnect();
+
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                DatagramPacket packet = new DatagramPacket(new byte[MAX_DATAGRAM_SIZE], MAX_DATAGRAM_SIZE);
+                try {
+                    while (!connection.isClosed()) {
+                        packet.setLength(MAX_DATAGRAM_SIZE);
+                        socket.receive(packet);
+                        if (connection.remote.equals(packet.getSocketAddress())) {
+                            try {
+                                connection.handleDatagram(packet);
+                            } catch (IOException e) {
+                                // drop the datagram, like the server does
+                                System.err.println("Dropped datagram from server: " + e.getMessage());
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    if (!connection.isClosed()) {
+                        System.err.println("Error receiving from server: " + e.getMessage());
+                        connection.close();
+                    }
+                }
+            }
+        }, "UdpClientThread");
+        t.setDaemon(true);
+        t.start();
+
+        final Timer timer = new Timer("UdpClientTimer", true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                if (connection.isClosed()) {
+                    timer.cancel();
+                    socket.close();
+                } else {
+                    connection.tick(System.currentTimeMillis());
+                }
+            }
+        }, TICK_MS, TICK_MS);
+        return connection;
+    }
+
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public SocketAddress getRemoteAddress() {
+        return remote;
+    }
+
+    /**
+     * Returns the stream of the reliable channel for sending. Written data is sent
+     * when the stream is flushed, at the latest with the next retransmission check.
+     *
+     * @return the output stream
+     */
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Returns the stream of the reliable channel for receiving.
+     *
+     * @return the input stream
+     */
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+
+    /**
+     * Send an unreliable datagram.
+     *
+     * @param kind   the datagram kind
+     * @param data   the data
+     * @param length the length of the data
+     * @throws IOException if the datagram cannot be sent, or is larger than
+     *         {@link #MAX_DATAGRAM_SIZE}
+     */
+    public void send(int kind, byte[] data, int length) throws IOException {
+        checkClosed();
+        if (length + 1 > MAX_DATAGRAM_SIZE) {
+            throw new IOException("Datagram of " + (length + 1) + " bytes exceeds the maximum size "
+                + MAX_DATAGRAM_SIZE);
+        }
+        byte[] datagram = new byte[length + 1];
+        datagram[0] = (byte) kind;
+        System.arraycopy(data, 0, datagram, 1, length);
+        sendDatagram(datagram, datagram.length);
+    }
+
+
+    /**
+     * Send an unreliable datagram with a time stamp, a {@link #PING} or a {@link #PONG}.
+     *
+     * @param kind the datagram kind
+     * @param time the time stamp in ns
+     * @throws IOException if the datagram cannot be sent
+     */
+    public void sendTime(int kind, long time) throws IOException {
+        byte[] data = new byte[8];
+        for (int i = 0; i < 8; i++) {
+            data[i] = (byte) (time >>> (56 - 8 * i));
+        }
+        send(kind, data, data.length);
+    }
+
+
+    /**
+     * Handle a datagram received from the peer.
+     *
+     * @param packet the datagram
+     * @throws IOException if the datagram cannot be handled
+     */
+    public void handleDatagram(DatagramPacket packet) throws IOException {
+        lastReceivedMs = System.currentTimeMillis();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(packet.getData(),
+            packet.getOffset(), packet.getLength()));
+        int kind = in.readUnsignedByte();
+        switch (kind) {
+            case CONNECT:
+                // repeated connection request, the answer is on its way
+                break;
+            case RELIABLE:
+                int number = in.readInt();
+                byte[] data = new byte[in.available()];
+                in.readFully(data);
+                receiveSegment(number, data);
+                break;
+            case ACK:
+                acknowledge(in.readInt());
+                break;
+            default:
+                Listener l = listener;
+                if (l != null) {
+                    l.datagramReceived(kind, in);
+                }
+        }
+    }
+
+
+    /**
+     * Send pending data, resend segments that were not acknowledged in time and
+     * close the connection if the peer is gone. This has to be called regularly,
+     * every {@link #TICK_MS}.
+     *
+     * @param now the current time in ms
+     */
+    public void tick(long now) {
+        if (closed) {
+            return;
+        }
+        if (now - lastReceivedMs > TIMEOUT_MS) {
+            System.err.println("Connection to " + remote + " timed out.");
+            close();
+            return;
+        }
+        try {
+            if (connecting && now - lastConnectMs > CONNECT_INTERVAL_MS) {
+                sendConnect();
+            }
+            sendPending();
+            if (now - lastSentMs > KEEP_ALIVE_MS) {
+                sendAcknowledge();
+            }
+            ArrayList<Segment> resend = new ArrayList<Segment>();
+            synchronized (this) {
+                long timeout = Math.max(MIN_RETRANSMIT_MS,
+                    Math.min(MAX_RETRANSMIT_MS, (long) (2 * smoothedRttMs)));
+                for (int i = 0; i < unacknowledged.size(); i++) {
+                    Segment segment = unacknowledged.get(i);
+                    if (now - segment.sentMs > timeout) {
+                        segment.sentMs = now;
+                        segment.retransmitted = true;
+                        resend.add(segment);
+                    }
+                }
+            }
+            for (int i = 0; i < resend.size(); i++) {
+                byte[] datagram = resend.get(i).datagram;
+                sendDatagram(datagram, datagram.length);
+            }
+        } catch (IOException e) {
+            System.err.println("Error sending to " + remote + ": " + e.getMessage());
+            close();
+        }
+    }
+
+
+    /**
+     * Close the connection. Reading from the reliable channel returns the end of the stream.
+     */
+    public void close() {
+        Listener l;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+            l = listener;
+        }
+        if (l != null) {
+            l.connectionClosed();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+
+    private void sendConnect() throws IOException {
+        lastConnectMs = System.currentTimeMillis();
+        byte[] datagram = new byte[] {CONNECT};
+        sendDatagram(datagram, datagram.length);
+    }
+
+
+    /**
+     * Split the pending data of the reliable channel into segments and send them.
+     */
+    private void sendPending() throws IOException {
+        ArrayList<Segment> segments = null;
+        synchronized (this) {
+            checkClosed();
+            if (pending.size() == 0) {
+                return;
+            }
+            byte[] data = pending.toByteArray();
+            pending.reset();
+            segments = new ArrayList<Segment>();
+            long now = System.currentTimeMillis();
+            for (int off = 0; off < data.length; off += MAX_SEGMENT_SIZE) {
+                int len = Math.min(MAX_SEGMENT_SIZE, data.length - off);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(len + 5);
+                DataOutputStream os = new DataOutputStream(bytes);
+                os.writeByte(RELIABLE);
+                os.writeInt(nextSegment);
+                os.write(data, off, len);
+                Segment segment = new Segment(nextSegment++, bytes.toByteArray());
+                segment.sentMs = now;
+                unacknowledged.add(segment);
+                segments.add(segment);
+            }
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            byte[] datagram = segments.get(i).datagram;
+            sendDatagram(datagram, datagram.length);
+        }
+    }
+
+
+    /**
+     * The peer received all segments before the given one.
+     */
+    private synchronized void acknowledge(int next) {
+        long now = System.currentTimeMillis();
+        while (!unacknowledged.isEmpty() && unacknowledged.get(0).number < next) {
+            Segment segment = unacknowledged.remove(0);
+            if (!segment.retransmitted) {
+                // only use segments sent once for the round trip time (Karn's algorithm)
+                smoothedRttMs = 0.875 * smoothedRttMs + 0.125 * (now - segment.sentMs);
+            }
+        }
+    }
+
+
+    private void receiveSegment(int number, byte[] data) throws IOException {
+        synchronized (this) {
+            connecting = false;
+            if (number == expectedSegment) {
+                append(data);
+                expectedSegment++;
+                byte[] next;
+                while ((next = outOfOrder.remove(expectedSegment)) != null) {
+                    append(next);
+                    expectedSegment++;
+                }
+                notifyAll();
+            } else if (number > expectedSegment && number - expectedSegment < MAX_OUT_OF_ORDER) {
+                outOfOrder.put(number, data);
+            }
+            // older segments are duplicates, acknowledge them again
+        }
+        sendAcknowledge();
+    }
+
+
+    /**
+     * Acknowledge all segments received in order.
+     */
+    private void sendAcknowledge() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(5);
+        DataOutputStream os = new DataOutputStream(bytes);
+        os.writeByte(ACK);
+        synchronized (this) {
+            os.writeInt(expectedSegment);
+        }
+        sendDatagram(bytes.toByteArray(), bytes.size());
+    }
+
+
+    private void sendDatagram(byte[] datagram, int length) throws IOException {
+        lastSentMs = System.currentTimeMillis();
+        socket.send(new DatagramPacket(datagram, length, remote));
+    }
+
+
+    /**
+     * Append received data to the buffer of the input stream.
+     */
+    private void append(byte[] data) {
+        if (receivedStart == receivedEnd) {
+            receivedStart = receivedEnd = 0;
+        }
+        if (receivedEnd + data.length > received.length) {
+            int size = receivedEnd - receivedStart;
+            byte[] buffer = received;
+            if (size + data.length > received.length) {
+                buffer = new byte[Math.max(received.length * 2, size + data.length)];
+            }
+            System.arraycopy(received, receivedStart, buffer, 0, size);
+            received = buffer;
+            receivedStart = 0;
+            receivedEnd = size;
+        }
+        System.arraycopy(data, 0, received, receivedEnd, data.length);
+        receivedEnd += data.length;
+    }
+
+
+    /**
+     * Wait until data is available on the reliable channel.
+     * Has to be called holding the monitor of the connection.
+     *
+     * @return <code>false</code>, if the connection was closed
+     */
+    private boolean waitForData() throws IOException {
+        while (receivedStart == receivedEnd) {
+            if (closed) {
+                return false;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted while waiting for data.");
+            }
+        }
+        return true;
+    }
+
+
+    private void checkClosed() throws IOException {
+        if (closed) {
+            throw new IOException("Connection to " + remote + " is closed.");
+        }
+    }
+}
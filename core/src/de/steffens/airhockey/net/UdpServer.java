@@ -0,0 +1,227 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.net;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import de.steffens.airhockey.GameConfiguration;
+import de.steffens.airhockey.control.Player;
+import de.steffens.airhockey.control.RemotePlayer;
+import de.steffens.airhockey.model.Disk;
+import de.steffens.airhockey.model.Game;
+import de.steffens.airhockey.model.PlayingField;
+
+/**
+ * A server using UDP for communication with its clients.
+ * All clients share one socket, the datagrams are passed to the {@link UdpConnection}
+ * of their sender. Simulation updates and player input are unreliable and sequenced,
+ * all other messages use the reliable channel of the connections.
+ */
+public class UdpServer extends AbstractServer {
+
+    private DatagramSocket socket;
+    private final Map<SocketAddress, UdpConnection> connections =
+        new HashMap<SocketAddress, UdpConnection>();
+
+    @Override
+    protected void acceptPlayerConnections(int port, final int numRemotePlayers,
+                                           final int firstRemotePlayer) throws IOException {
+        socket = new DatagramSocket(port);
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                System.out.println(getWaitString(numRemotePlayers, 0));
+                if (numRemotePlayers > 0) {
+                    menuItem = getWaitMenuItem(numRemotePlayers);
+                }
+                receiveLoop();
+            }
+        }, "ServerThread");
+        t.setDaemon(true);
+        t.start();
+
+        Timer timer = new Timer("UdpServerTimer", true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                ArrayList<UdpConnection> all;
+                synchronized (connections) {
+                    all = new ArrayList<UdpConnection>(connections.values());
+                }
+                long now = System.currentTimeMillis();
+                for (UdpConnection connection : all) {
+                    connection.tick(now);
+                }
+            }
+        }, UdpConnection.TICK_MS, UdpConnection.TICK_MS);
+    }
+
+    @Override
+    protected void sendNewPlayerData(RemotePlayer remotePlayer, int index, Player player) throws IOException {
+        DataOutputStream out = remotePlayer.getConnection();
+        out.writeInt(MSG.NEW_PLAYER_DATA);
+        out.writeInt(index);
+        player.writeData(out);
+        out.flush();
+    }
+
+    @Override
+    protected void sendStartGame(RemotePlayer remotePlayer) throws IOException {
+        DataOutputStream out = remotePlayer.getConnection();
+        out.writeInt(MSG.START_GAME);
+        out.flush();
+    }
+
+    @Override
+    protected void sendInitialGameData(RemotePlayer remotePlayer, GameConfiguration gameCfg, PlayingField field, Disk puck, int playerCount, Disk[] playerDisks) throws IOException {
+        DataOutputStream os = remotePlayer.getConnection();
+        gameCfg.write(os);
+        field.write(os);
+        puck.write(os);
+        os.writeInt(playerCount);
+        for (int i = 0; i < playerDisks.length; i++) {
+            playerDisks[i].write(os);
+        }
+        os.flush();
+    }
+
+
+    /**
+     * Receive the datagrams of all clients. A connection request of an unknown
+     * client creates a new connection.
+     */
+    private void receiveLoop() {
+        DatagramPacket packet = new DatagramPacket(new byte[UdpConnection.MAX_DATAGRAM_SIZE],
+            UdpConnection.MAX_DATAGRAM_SIZE);
+        while (true) {
+            try {
+                packet.setLength(UdpConnection.MAX_DATAGRAM_SIZE);
+                socket.receive(packet);
+                SocketAddress address = packet.getSocketAddress();
+                UdpConnection connection;
+                synchronized (connections) {
+                    connection = connections.get(address);
+                    if (connection == null && packet.getLength() > 0
+                        && packet.getData()[packet.getOffset()] == UdpConnection.CONNECT) {
+                        connection = new UdpConnection(socket, address);
+                        connections.put(address, connection);
+                        startHandshake(connection);
+                        continue;
+                    }
+                }
+                if (connection != null) {
+                    connection.handleDatagram(packet);
+                }
+            } catch (IOException e) {
+                System.err.println("Connection error.");
+                e.printStackTrace();
+            }
+        }
+    }
+
+
+    /**
+     * Register the client of a new connection in a new thread, as this waits
+     * for the player data sent by the client.
+     */
+    private void startHandshake(final UdpConnection connection) {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    handleConnection(connection);
+                } catch (IOException e) {
+                    System.err.println("Connection error.");
+                    e.printStackTrace();
+                    connection.close();
+                    synchronized (connections) {
+                        connections.remove(connection.getRemoteAddress());
+                    }
+                }
+            }
+        }, "ClientHandshake " + connection.getRemoteAddress());
+        t.setDaemon(true);
+        t.start();
+    }
+
+
+    /**
+     * Handle a new client connection: the client becomes the next remote player,
+     * or a viewer if all remote players are connected already.
+     * Handshakes are done one after the other, like connections accepted by a
+     * {@link TcpServer}.
+     *
+     * @param connection the connection to the client
+     * @throws IOException if an error occurs during the handshake
+     */
+    private synchronized void handleConnection(final UdpConnection connection) throws IOException {
+        final DataOutputStream os = new DataOutputStream(connection.getOutputStream());
+        final DataInputStream is = new DataInputStream(connection.getInputStream());
+        final RemotePlayer player = registerClient(is, os);
+
+        // Write initial data.
+        remotePlayerConnected(player);
+
+        // Register listeners that forward events to the client
+        final UdpServerSimulationForward simListener = new UdpServerSimulationForward(os, connection, player);
+        connection.setListener(new UdpConnection.Listener() {
+            @Override
+            public void datagramReceived(int kind, DataInputStream in) throws IOException {
+                switch (kind) {
+                    case UdpConnection.UPDATE_ACK:
+                        simListener.acknowledge(in.readUnsignedShort());
+                        break;
+                    case UdpConnection.INPUT:
+                        if (player.getIndex() >= 0) {
+                            // repeated and late inputs are dropped by the player
+                            InputBatch.read(in, player);
+                        }
+                        break;
+                    case UdpConnection.PING:
+                        // players and viewers measure the round trip time as well
+                        simListener.getStats().messageReceived(MSG.PING, 8);
+                        connection.sendTime(UdpConnection.PONG, in.readLong());
+                        simListener.getStats().messageSent(MSG.PONG, 8);
+                        break;
+                    case UdpConnection.PONG:
+                        simListener.getStats().pongReceived(in.readLong());
+                        simListener.getStats().messageReceived(MSG.PONG, 8);
+                        break;
+                    default:
+                        // unknown datagrams are ignored
+                }
+            }
+
+            @Override
+            public void connectionClosed() {
+                System.err.println("Connection to client " + player.getIndex() + " (Player "
+                    + player.getName() + ") closed.");
+                Game.getSimulation().removeSimulationListener(simListener);
+                Game.getSimulation().removeCollisionListener(simListener);
+                simListener.getStats().close();
+                if (player.getIndex() >= 0) {
+                    removeRemotePlayer(player);
+                }
+                synchronized (connections) {
+                    connections.remove(connection.getRemoteAddress());
+                }
+            }
+        });
+        Game.getSimulation().addSimulationListener(simListener);
+        Game.getSimulation().addCollisionListener(simListener);
+        forwardConsole(os);
+
+        clientReady(player);
+    }
+}
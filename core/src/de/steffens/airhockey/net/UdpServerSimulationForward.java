@@ -0,0 +1,104 @@
+/*
+ * Created on 17.10.2026
+ */
+package de.steffens.airhockey.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import de.steffens.airhockey.control.RemotePlayer;
+import de.steffens.airhockey.model.Game;
+import de.steffens.airhockey.model.SnapshotEncoder;
+
+/**
+ * The listener for simulation and collision events on the server side that
+ * sends updates to a client connected by UDP. Simulation updates are sent as
+ * unreliable datagrams, encoded as delta against the last update acknowledged
+ * by the client, together with the last input of the client used by the simulation,
+ * at the send rate of the client. The collisions since the last update are sent on
+ * the reliable channel. For the round trip time, a {@link UdpConnection#PING} datagram
+ * is sent every {@link ConnectionStats#PING_INTERVAL_MS}.
+ */
+public class UdpServerSimulationForward extends TcpServerSimulationForward {
+
+    /**
+     * Byte buffer giving access to its data without copying.
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+        byte[] getData() {
+            return buf;
+        }
+    }
+
+    private final UdpConnection connection;
+    private final ConnectionStats stats;
+    private final SnapshotEncoder encoder;
+    private final Buffer buffer = new Buffer();
+    private final DataOutputStream bufferOs = new DataOutputStream(buffer);
+
+
+    /**
+     * Create a new forward to a client.
+     *
+     * @param os         the reliable channel of the connection
+     * @param connection the connection to the client
+     * @param player     the player of the client, with index -1 for a viewer
+     */
+    public UdpServerSimulationForward(DataOutputStream os, UdpConnection connection, RemotePlayer player) {
+        super(os, player);
+        this.connection = connection;
+        this.stats = new ConnectionStats("client " + connection.getRemoteAddress(), null);
+        this.encoder = new SnapshotEncoder(Game.getPlayingField());
+    }
+
+
+    @Override
+    public void update() {
+        if (error || !isSendDue(System.nanoTime())) {
+            return;
+        }
+        // the collisions go on the reliable channel
+        writeFrame();
+        try {
+            buffer.reset();
+            // the last input used for the update, for the prediction of the client
+            int input = player.getIndex() >= 0 ? player.getAppliedInput() : -1;
+            bufferOs.writeBoolean(input >= 0);
+            if (input >= 0) {
+                bufferOs.writeShort(input);
+            }
+            Game.getSimulation().writeSimulationUpdate(bufferOs, encoder, Game.getScore());
+            connection.send(UdpConnection.UPDATE, buffer.getData(), buffer.size());
+            stats.messageSent(MSG.SIMULATION_DELTA, buffer.size());
+
+            long now = System.nanoTime();
+            if (stats.isPingDue(now)) {
+                connection.sendTime(UdpConnection.PING, now);
+                stats.messageSent(MSG.PING, 8);
+            }
+        } catch (IOException e) {
+            disconnectOnError("Error sending simulation update.", e);
+        }
+    }
+
+
+    /**
+     * The client received the update with the given sequence number.
+     *
+     * @param sequence the sequence number of the update
+     */
+    public void acknowledge(int sequence) {
+        encoder.acknowledge(sequence);
+    }
+
+
+    /**
+     * Returns the telemetry of the connection. It has to be closed with the connection.
+     *
+     * @return the telemetry
+     */
+    public ConnectionStats getStats() {
+        return stats;
+    }
+}
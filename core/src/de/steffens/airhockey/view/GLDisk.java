@@ -92,12 +92,23 @@ public class GLDisk extends GLRenderable {
     @Override
     public void update() {
         super.update();
-        Vector2D position = model.getPosition();
-        instance.transform.setToTranslation((float) position.getX(), (float) position.getY(), (float) (model.getHeight() / 2.0));
+        float x, y;
+        short playerIndex;
+        if (snapshot != null && snapshot.contains(model)) {
+            x = (float) snapshot.getX(model);
+            y = (float) snapshot.getY(model);
+            playerIndex = snapshot.getLastHitPlayerIndex(model);
+        } else {
+            // not simulated (yet)
+            Vector2D position = model.getPosition();
+            x = (float) position.getX();
+            y = (float) position.getY();
+            playerIndex = model.getLastHitPlayerIndex();
+        }
+        instance.transform.setToTranslation(x, y, (float) (model.getHeight() / 2.0));
         instance.transform.rotate(1f, 0f, 0f, 90f);
 
         // update marker color
-        short playerIndex = model.getLastHitPlayerIndex();
         if (playerIndex >= 0) {
             float[] playerCol = Game.getPlayer(playerIndex).getColor();
             markerColors[0].color.set(playerCol[0],  playerCol[1], playerCol[2], 1f);
@@ -26,11 +26,14 @@ import de.steffens.airhockey.model.Game;
 import de.steffens.airhockey.model.GameMenu;
 import de.steffens.airhockey.model.PlayingField;
 import de.steffens.airhockey.model.Simulation;
+import de.steffens.airhockey.model.SimulationSnapshot;
 import de.steffens.airhockey.model.VisualObject;
 import de.steffens.airhockey.model.Wall;
 import de.steffens.airhockey.model.vector.Vector2D;
 import de.steffens.airhockey.model.vector.VectorFactory;
 import de.steffens.airhockey.net.Client;
+import de.steffens.airhockey.net.MatchPlayer;
+import de.steffens.airhockey.net.ConnectionStats;
 
 
 /**
@@ -85,6 +88,8 @@ public class GLDisplay {
 
     private GLConsole console;
     private GLBitmapText fpsText;
+    private GLBitmapText netText;
+    private boolean showNetworkStats = false;
     private GLBitmapText[] score;
     private GLMenu menu;
 
@@ -165,6 +170,8 @@ public class GLDisplay {
 
         fpsText = new GLBitmapText("FPS: " + fps, (int)Math.round(ORTHO_WIDTH * 0.9), HUD_TOP_Y);
         fpsText.scale = 0.4f;
+        netText = new GLBitmapText("", 10, 25);
+        netText.scale = 0.3f;
         console = new GLConsole(Game.getConsole());
 
         menu = new GLMenu();
@@ -191,6 +198,7 @@ public class GLDisplay {
 
         addViewer(console);
         addViewer(fpsText);
+        addViewer(netText);
         for (int i=0; i<score.length; i++) {
             addViewer(score[i]);
         }
@@ -302,6 +310,25 @@ public class GLDisplay {
         }
     }
 
+    /**
+     * Toggle showing the telemetry of the network connections, see {@link ConnectionStats}.
+     */
+    public void toggleNetworkStats() {
+        showNetworkStats = !showNetworkStats;
+        updateNetworkStats();
+    }
+
+
+    private void updateNetworkStats() {
+        String summary = showNetworkStats ? ConnectionStats.getSummary() : null;
+        netText.text = summary == null ? "" : summary;
+        if (MatchPlayer.getActive() != null) {
+            // the position of the replay instead
+            netText.text = MatchPlayer.getActive().getStatus();
+        }
+    }
+
+
     public void display(ModelBatch modelBatch, Environment environment, PerspectiveCamera cam) {
         if (Game.getTargetFPS() < 0) {
             simulation.update();
@@ -309,11 +336,17 @@ public class GLDisplay {
         // handle adding / removing viewers for pending objects
         handlePendingObjects();
 
-        // block simulation updates during rendering
-        simulation.blockSimulationUpdates();
+        // update any playing field animations, this changes the reachable areas
+        // used by the simulation (a deterministic simulation updates them itself)
+        if (!simulation.isDeterministic()) {
+            simulation.blockSimulationUpdates();
+            field.update();
+            simulation.allowSimulationUpdates();
+        }
 
-        // update any playing field animations
-        field.update();
+        // render the latest simulation state, the simulation continues meanwhile
+        SimulationSnapshot snapshot = simulation.acquireSnapshot();
+        GLRenderable.snapshot = snapshot;
 
         long newTime = simulation.getSimulationTime();
         lastSecondFrames++;
@@ -323,6 +356,10 @@ public class GLDisplay {
             lastSecondFrames = 0;
             lastFpsTime = newTime;
             fpsText.text = "FPS: " + fps;
+            updateNetworkStats();
+        } else if (MatchPlayer.getActive() != null) {
+            // follow the replay moved by the user
+            updateNetworkStats();
         }
         boolean scoreChanged = false;
         int playerIdx = Math.max(0, Client.getPlayer());
@@ -342,16 +379,15 @@ public class GLDisplay {
 
         // setup camera and lights
         setupCamera(cam);
-        setupLight(environment);
+        setupLight(environment, snapshot);
 
         modelBatch.begin(cam);
         displayImpl(modelBatch, environment, cam);
 
-        // allow simulation updates again
-        simulation.allowSimulationUpdates();
+        // the positions are copied to the model instances, release the snapshot
+        GLRenderable.snapshot = null;
+        simulation.releaseSnapshot(snapshot);
 
-        // this is where most time is spent for rendering, so we do this after allowing
-        // the simulation to update again.
         modelBatch.end();
     }
 
@@ -462,7 +498,7 @@ public class GLDisplay {
      * Setup the scene lights.
      *
      */
-    private void setupLight(Environment environment) {
+    private void setupLight(Environment environment, SimulationSnapshot snapshot) {
         environment.clear();
 
         // setup lighting...
@@ -473,11 +509,16 @@ public class GLDisplay {
         environment.add(camLight);
 
         // third light from puck position
-        Vector2D puckPosition = Game.getPuck().getPosition();
-        puckLight.position.set(
-                (float)puckPosition.getX(),
-                (float)puckPosition.getY(),
-                3.5f);
+        Disk puck = Game.getPuck();
+        if (snapshot != null && snapshot.contains(puck)) {
+            puckLight.position.set((float) snapshot.getX(puck), (float) snapshot.getY(puck), 3.5f);
+        } else {
+            Vector2D puckPosition = puck.getPosition();
+            puckLight.position.set(
+                    (float)puckPosition.getX(),
+                    (float)puckPosition.getY(),
+                    3.5f);
+        }
         short playerIdx = Game.getPuck().getLastHitPlayerIndex();
         if (playerIdx >= 0) {
             float[] color = Game.getPlayer(playerIdx).getColor();
@@ -542,4 +583,4 @@ public class GLDisplay {
     public TextInput getInput() {
         return input;
     }
-}
\ No newline at end of file
+}
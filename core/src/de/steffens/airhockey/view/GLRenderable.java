@@ -14,6 +14,7 @@ import com.badlogic.gdx.graphics.g3d.attributes.BlendingAttribute;
 import com.badlogic.gdx.graphics.g3d.attributes.DepthTestAttribute;
 import com.badlogic.gdx.math.Vector3;
 
+import de.steffens.airhockey.model.SimulationSnapshot;
 import de.steffens.airhockey.model.VisualObject;
 import de.steffens.airhockey.model.vector.Vector2D;
 
@@ -23,6 +24,9 @@ import de.steffens.airhockey.model.vector.Vector2D;
  */
 abstract public class GLRenderable implements GLViewer {
 
+    /** the simulation state to render, set by the display for each frame */
+    static SimulationSnapshot snapshot = null;
+
     protected VisualObject visualObject;
     protected Model meshModel;
     protected ModelInstance instance;
@@ -30,6 +30,6 @@ public class DesktopLauncher {
         config.height = gameConfig.getHeight();
         config.fullscreen = gameConfig.isFullScreen();
 
-        new LwjglApplication(new AirhockeyGame(), config);
+        new LwjglApplication(new AirhockeyGame(arg), config);
 	}
 }